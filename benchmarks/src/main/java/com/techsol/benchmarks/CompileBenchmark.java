@@ -0,0 +1,147 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.benchmarks;
+
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.parser.SchemaCompilation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Schema compile benchmarks</h1>
+ * <p>Each compilation phase is measured on its own, starting from a compilation that ran the phases before it</p>
+ * <p>The loader creates the objects while it parses, so {@link #parse(SchemaFile)} measures the bare StAX pass
+ * and the createObjects cost is the difference between {@link #load(SchemaFile)} and it</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileBenchmark {
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    @State(Scope.Thread)
+    public static class Loaded {
+        SchemaCompilation compilation;
+
+        @Setup(Level.Invocation)
+        public void setUp(SchemaFile schemaFile) throws XMLStreamException {
+            compilation = new SchemaCompilation();
+            compilation.load(schemaFile.open());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Mapped {
+        SchemaCompilation compilation;
+
+        @Setup(Level.Invocation)
+        public void setUp(SchemaFile schemaFile) throws XMLStreamException {
+            compilation = new SchemaCompilation();
+            compilation.load(schemaFile.open());
+            compilation.mapElementsToComplexType();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Typed {
+        SchemaCompilation compilation;
+
+        @Setup(Level.Invocation)
+        public void setUp(SchemaFile schemaFile) throws XMLStreamException {
+            compilation = new SchemaCompilation();
+            compilation.load(schemaFile.open());
+            compilation.mapElementsToComplexType();
+            compilation.elementTypeMapper();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Linked {
+        SchemaCompilation compilation;
+
+        @Setup(Level.Invocation)
+        public void setUp(SchemaFile schemaFile) throws XMLStreamException {
+            compilation = new SchemaCompilation();
+            compilation.compile(schemaFile.open());
+        }
+    }
+
+    /**
+     * XSD parse: a bare StAX pass over the schema
+     */
+    @Benchmark
+    public int parse(SchemaFile schemaFile) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(schemaFile.open());
+        int events = 0;
+        while (reader.hasNext()) {
+            reader.next();
+            events++;
+        }
+        reader.close();
+        return events;
+    }
+
+    /**
+     * XSD parse and createObjects
+     */
+    @Benchmark
+    public SchemaCompilation load(SchemaFile schemaFile) throws XMLStreamException {
+        SchemaCompilation compilation = new SchemaCompilation();
+        compilation.load(schemaFile.open());
+        return compilation;
+    }
+
+    @Benchmark
+    public SchemaCompilation mapElementsToComplexType(Loaded loaded) {
+        loaded.compilation.mapElementsToComplexType();
+        return loaded.compilation;
+    }
+
+    @Benchmark
+    public SchemaCompilation elementTypeMapper(Mapped mapped) {
+        mapped.compilation.elementTypeMapper();
+        return mapped.compilation;
+    }
+
+    @Benchmark
+    public SchemaCompilation createComplexTypesForChildElements(Typed typed) {
+        typed.compilation.createComplexTypesForChildElements();
+        return typed.compilation;
+    }
+
+    /**
+     * Turning the linked objects into the immutable compiled schema
+     */
+    @Benchmark
+    public CompiledSchema compileTypeGraph(Linked linked) {
+        return linked.compilation.getCompiledSchema();
+    }
+
+    /**
+     * All the phases, from the schema content to the linked objects
+     */
+    @Benchmark
+    public SchemaCompilation compile(SchemaFile schemaFile) throws XMLStreamException {
+        SchemaCompilation compilation = new SchemaCompilation();
+        compilation.compile(schemaFile.open());
+        return compilation;
+    }
+}
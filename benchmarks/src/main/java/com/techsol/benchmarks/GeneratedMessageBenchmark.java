@@ -0,0 +1,164 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.benchmarks;
+
+import com.techsol.generated.mt103_schema.Document;
+import com.techsol.generated.mt103_schema.FieldSetters;
+import com.techsol.generated.mt103_schema.MessageSerializer;
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.models.message.MessageInstance;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.output.XMLOutput;
+import com.techsol.parser.SchemaCompilation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * <h1>Generated message benchmarks</h1>
+ * <p>Population and rendering of one mt103_schema.xsd message through the classes the codegen plugin generates at build time,
+ * against the message instance and template skeleton of the runtime. Every seventh leaf element of a simple type is mapped to a
+ * synthetic MT tag, since the generated setters only write simple elements.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratedMessageBenchmark {
+    //Messages of the batch benchmarks
+    private static final int BATCH_SIZE = 1024;
+
+    private SchemaCompilation compilation;
+    private TemplateSkeleton templateSkeleton;
+    private CompiledMapping compiledMapping;
+    private Map<String, BiConsumer<Document, String>> setters;
+    private String[] mtFields;
+    private MessageInstance populatedMessage;
+    private Document populatedDocument;
+    private final XMLOutput output = new XMLOutput();
+    private final NullChannel channel = new NullChannel();
+
+    @Setup(Level.Trial)
+    public void setUp() throws XMLStreamException, IOException {
+        compilation = new SchemaCompilation();
+        compilation.compile(SchemaFile.directory().resolve("mt103_schema.xsd").toFile());
+        templateSkeleton = compilation.getTemplateSkeleton();
+
+        ArrayList<String> mappings = new ArrayList<>();
+        ArrayList<String> fields = new ArrayList<>();
+        int leaves = 0;
+        for (int slot = 0; slot < templateSkeleton.getSlotCount(); slot++) {
+            //The generated setters only write elements
+            if (!templateSkeleton.isExpandable(slot) && templateSkeleton.getSlotAttribute(slot) == null && leaves++ % 7 == 0) {
+                mappings.add("T" + slot + ":" + templateSkeleton.getSlotNames().get(slot));
+                fields.add("T" + slot + ":VALUE " + slot);
+            }
+        }
+        compiledMapping = CompiledMapping.compileStrict(compilation.getCompiledSchema(), mappings.toArray(new String[0]));
+        setters = FieldSetters.compile(mappings.toArray(new String[0]));
+        mtFields = fields.toArray(new String[0]);
+        populatedMessage = compilation.createMessage();
+        compiledMapping.populate(populatedMessage, mtFields);
+        populatedDocument = new Document();
+        FieldSetters.populate(populatedDocument, setters, mtFields);
+
+        //The generated classes are only worth measuring while they render what the runtime renders
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        templateSkeleton.render(populatedMessage, output.open(expected));
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        MessageSerializer.write(populatedDocument, output.open(actual));
+        if (!Arrays.equals(expected.toByteArray(), actual.toByteArray())) {
+            throw new IllegalStateException("The generated classes render differently from the template skeleton of " + compilation.getSchemaName());
+        }
+    }
+
+    /**
+     * Population of the message instance through the compiled child-index paths of the mapping
+     */
+    @Benchmark
+    public MessageInstance populateRuntime() {
+        MessageInstance message = compilation.createMessage();
+        compiledMapping.populate(message, mtFields);
+        return message;
+    }
+
+    /**
+     * Population through the generated setters of the mapping
+     */
+    @Benchmark
+    public Document populateGenerated() {
+        Document message = new Document();
+        FieldSetters.populate(message, setters, mtFields);
+        return message;
+    }
+
+    /**
+     * Rendering of the message instance through the template skeleton
+     */
+    @Benchmark
+    public long renderRuntime() throws IOException {
+        templateSkeleton.render(populatedMessage, output.open(channel));
+        return output.getBytesWritten();
+    }
+
+    /**
+     * Rendering through the generated serialiser
+     */
+    @Benchmark
+    public long renderGenerated() throws IOException {
+        MessageSerializer.write(populatedDocument, output.open(channel));
+        return output.getBytesWritten();
+    }
+
+    /**
+     * A batch of messages populated and rendered one message instance at a time
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long populateAndRenderRuntimeBatch() throws IOException {
+        output.open(channel);
+        for (int message = 0; message < BATCH_SIZE; message++) {
+            MessageInstance instance = compilation.createMessage();
+            compiledMapping.populate(instance, mtFields);
+            templateSkeleton.render(instance, output);
+        }
+        return output.getBytesWritten();
+    }
+
+    /**
+     * The same batch populated and rendered one generated message at a time
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long populateAndRenderGeneratedBatch() throws IOException {
+        output.open(channel);
+        for (int message = 0; message < BATCH_SIZE; message++) {
+            Document instance = new Document();
+            FieldSetters.populate(instance, setters, mtFields);
+            MessageSerializer.write(instance, output);
+        }
+        return output.getBytesWritten();
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.benchmarks;
+
+import com.techsol.batch.MTMessage;
+import com.techsol.batch.MXMessageReader;
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.mapping.PathTrie;
+import com.techsol.models.message.MessageInstance;
+import com.techsol.output.ColumnarRenderer;
+import com.techsol.output.MessageRenderer;
+import com.techsol.output.PrunedRenderer;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.output.XMLOutput;
+import com.techsol.parser.SchemaCompilation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Message benchmarks</h1>
+ * <p>Population and rendering of one message of a compiled schema. Every seventh leaf element of the schema is mapped
+ * to a synthetic MT tag, so the same benchmarks run against all the bundled schemas.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBenchmark {
+    //Messages of the batch benchmarks
+    private static final int BATCH_SIZE = 1024;
+
+    private SchemaCompilation compilation;
+    private TemplateSkeleton templateSkeleton;
+    private PrunedRenderer prunedRenderer;
+    private CompiledMapping compiledMapping;
+    private String[] mtFields;
+    private String[][] mappingPaths;
+    private String[] values;
+    private MessageInstance populatedMessage;
+    private ColumnarRenderer columnarRenderer;
+    private String[][] columns;
+    private PathTrie pathTrie;
+    //The populated message rendered BATCH_SIZE times one after the other
+    private byte[] renderedBatch;
+    private final XMLOutput output = new XMLOutput();
+    private final NullChannel channel = new NullChannel();
+
+    @Setup(Level.Trial)
+    public void setUp(SchemaFile schemaFile) throws XMLStreamException, IOException {
+        compilation = new SchemaCompilation();
+        compilation.compile(schemaFile.open());
+        templateSkeleton = compilation.getTemplateSkeleton();
+        prunedRenderer = compilation.getPrunedRenderer();
+
+        //The element slots, writeToElement only takes element paths
+        List<String> slotNames = templateSkeleton.getSlotNames().stream().filter(slotName -> slotName.indexOf('@') < 0).toList();
+        ArrayList<String> mappings = new ArrayList<>();
+        ArrayList<String> fields = new ArrayList<>();
+        for (int i = 0; i < slotNames.size(); i += 7) {
+            mappings.add("T" + i + ":" + slotNames.get(i));
+            fields.add("T" + i + ":VALUE " + i);
+        }
+        compiledMapping = CompiledMapping.compileStrict(compilation.getCompiledSchema(), mappings.toArray(new String[0]));
+        mtFields = fields.toArray(new String[0]);
+        mappingPaths = new String[mappings.size()][];
+        values = new String[mappings.size()];
+        for (int i = 0; i < mappings.size(); i++) {
+            mappingPaths[i] = slotNames.get(i * 7).split("\\.");
+            values[i] = "VALUE " + (i * 7);
+        }
+
+        populatedMessage = compilation.createMessage();
+        compiledMapping.populate(populatedMessage, mtFields);
+
+        ArrayList<String> paths = new ArrayList<>();
+        for (int i = 0; i < mappings.size(); i++) {
+            paths.add(slotNames.get(i * 7));
+        }
+        pathTrie = PathTrie.compile(compiledMapping);
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        for (int message = 0; message < BATCH_SIZE; message++) {
+            templateSkeleton.render(populatedMessage, output.open(rendered));
+            rendered.write('\n');
+        }
+        renderedBatch = rendered.toByteArray();
+
+        columnarRenderer = ColumnarRenderer.compile(templateSkeleton, paths);
+        columns = new String[paths.size()][BATCH_SIZE];
+        for (String[] column : columns) {
+            for (int message = 0; message < BATCH_SIZE; message++) {
+                column[message] = values[message % values.length];
+            }
+        }
+    }
+
+    /**
+     * writeToElement population: walking the message by element name for every field
+     */
+    @Benchmark
+    public MessageInstance writeToElement() {
+        MessageInstance message = compilation.createMessage();
+        for (int i = 0; i < mappingPaths.length; i++) {
+            message.writeToElement(mappingPaths[i], values[i]);
+        }
+        return message;
+    }
+
+    /**
+     * Population through the compiled child-index paths of the mapping
+     */
+    @Benchmark
+    public MessageInstance populateCompiledMapping() {
+        MessageInstance message = compilation.createMessage();
+        compiledMapping.populate(message, mtFields);
+        return message;
+    }
+
+    /**
+     * createOutputXML rendering: walking the compiled types and the message nodes
+     */
+    @Benchmark
+    public long renderTree() throws IOException {
+        MessageRenderer.render(populatedMessage, output.open(channel));
+        return output.getBytesWritten();
+    }
+
+    /**
+     * Rendering through the pre-encoded template skeleton
+     */
+    @Benchmark
+    public long renderSkeleton() throws IOException {
+        templateSkeleton.render(populatedMessage, output.open(channel));
+        return output.getBytesWritten();
+    }
+
+    /**
+     * Rendering of the populated and mandatory elements only
+     */
+    @Benchmark
+    public long renderPruned() throws IOException {
+        prunedRenderer.render(populatedMessage, output.open(channel));
+        return output.getBytesWritten();
+    }
+
+    /**
+     * A batch of messages populated and rendered one message tree at a time
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long populateAndRenderBatch() throws IOException {
+        output.open(channel);
+        for (int message = 0; message < BATCH_SIZE; message++) {
+            MessageInstance instance = compilation.createMessage();
+            compiledMapping.populate(instance, mtFields);
+            templateSkeleton.render(instance, output);
+        }
+        return output.getBytesWritten();
+    }
+
+    /**
+     * The same batch rendered straight from its columns of values
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long renderColumnarBatch() throws IOException {
+        columnarRenderer.renderAll(columns, output.open(channel));
+        return output.getBytesWritten();
+    }
+
+    /**
+     * MX to MT extraction of a batch of rendered documents through the path trie of the mapping
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long extractMTFields() throws IOException, XMLStreamException {
+        long fields = 0;
+        try (MXMessageReader reader = new MXMessageReader(new InputStreamReader(new ByteArrayInputStream(renderedBatch), StandardCharsets.UTF_8), pathTrie)) {
+            MTMessage message;
+            while ((message = reader.next()) != null) {
+                fields += message.fields().length;
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel that drops everything written to it, so that rendering is measured without I/O
+ */
+public class NullChannel implements WritableByteChannel {
+    private long bytesWritten;
+
+    @Override
+    public int write(ByteBuffer source) {
+        int length = source.remaining();
+        source.position(source.limit());
+        bytesWritten += length;
+        return length;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
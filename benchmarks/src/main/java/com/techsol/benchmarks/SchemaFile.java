@@ -0,0 +1,46 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * <p>The content of a bundled schema, read once so that the benchmarks do not measure disk reads</p>
+ * <p>The schemas are read from the directory in the schemas.dir system property, by default the schemas directory of the working directory</p>
+ */
+@State(Scope.Benchmark)
+public class SchemaFile {
+    @Param({"mt103_schema.xsd", "mt104_schema.xsd", "mt202_schema.xsd"})
+    public String schema;
+
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void read() throws IOException {
+        content = Files.readAllBytes(directory().resolve(schema));
+    }
+
+    static Path directory() {
+        Path directory = Path.of(System.getProperty("schemas.dir", "schemas"));
+        if (!Files.isDirectory(directory)) {
+            directory = Path.of("..", "schemas");
+        }
+        return directory;
+    }
+
+    public InputStream open() {
+        return new ByteArrayInputStream(content);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.benchmarks;
+
+import com.techsol.generator.MessageGenerator;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.output.XMLOutput;
+import com.techsol.parser.SchemaCompilation;
+import com.techsol.validation.MessageValidator;
+import com.techsol.validation.Violation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Validation benchmarks</h1>
+ * <p>Validation of one generated message of a compiled schema by the compiled validator, against a JAXP validation of the
+ * rendered document with the schema parsed once. Every value of a generated message is checked, whether it is valid or not.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+    private MessageValidator messageValidator;
+    private String[] slotValues;
+    private Validator jaxpValidator;
+    private byte[] document;
+
+    @Setup(Level.Trial)
+    public void setUp(SchemaFile schemaFile) throws XMLStreamException, IOException, SAXException {
+        SchemaCompilation compilation = new SchemaCompilation();
+        compilation.compile(schemaFile.open());
+        TemplateSkeleton templateSkeleton = compilation.getTemplateSkeleton();
+        messageValidator = compilation.getMessageValidator();
+        slotValues = new MessageGenerator(templateSkeleton, 42, 1).generateChunk(1, 1)[0];
+
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        XMLOutput output = new XMLOutput();
+        templateSkeleton.render(slotValues, output.open(rendered));
+        output.flush();
+        //The template has no namespace, JAXP needs the target namespace of the schema to find the declarations
+        String namespace = targetNamespace(schemaFile);
+        document = rendered.toString(StandardCharsets.UTF_8)
+                .replaceFirst("<Document>", "<Document xmlns=\"" + namespace + "\">")
+                .getBytes(StandardCharsets.UTF_8);
+
+        Schema schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new StreamSource(schemaFile.open()));
+        jaxpValidator = schema.newValidator();
+        //Report every error instead of stopping at the first, as the generated messages are not all valid
+        jaxpValidator.setErrorHandler(new ErrorHandler() {
+            @Override
+            public void warning(SAXParseException exception) {
+            }
+
+            @Override
+            public void error(SAXParseException exception) {
+            }
+
+            @Override
+            public void fatalError(SAXParseException exception) throws SAXException {
+                throw exception;
+            }
+        });
+    }
+
+    private static String targetNamespace(SchemaFile schemaFile) throws XMLStreamException {
+        XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(schemaFile.open());
+        try {
+            reader.nextTag();
+            String namespace = reader.getAttributeValue(null, "targetNamespace");
+            return namespace != null ? namespace : "";
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The compiled validator over the slot values
+     */
+    @Benchmark
+    public Violation validateSlots() {
+        return messageValidator.validate(slotValues);
+    }
+
+    /**
+     * JAXP validation of the rendered document with a schema compiled once
+     */
+    @Benchmark
+    public Validator validateJaxp() throws IOException, SAXException {
+        jaxpValidator.validate(new StreamSource(new ByteArrayInputStream(document)));
+        return jaxpValidator;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.codegen.plugin;
+
+import com.techsol.codegen.MessageClassGenerator;
+import com.techsol.parser.SchemaCompilation;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1>Generate message classes</h1>
+ * <p>Generates the message classes, serialiser and field setters of every XSD file of the schema directory into a package of
+ * its own below the configured package, e.g. com.techsol.generated.mt103_schema for mt103_schema.xsd, and adds them to the
+ * sources of the project</p>
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class GenerateMessageClassesMojo extends AbstractMojo {
+    @Parameter(defaultValue = "${project.basedir}/schemas", required = true)
+    private File schemaDirectory;
+
+    /**
+     * The file names of the schemas to generate, all the XSD files of the schema directory when empty
+     */
+    @Parameter
+    private List<String> schemas;
+
+    @Parameter(defaultValue = "com.techsol.generated", required = true)
+    private String packageName;
+
+    @Parameter(defaultValue = "${project.build.directory}/generated-sources/xsd", required = true)
+    private File outputDirectory;
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        File[] files = schemas == null || schemas.isEmpty()
+                ? schemaDirectory.listFiles((directory, name) -> name.endsWith(".xsd"))
+                : schemas.stream().map(schema -> new File(schemaDirectory, schema)).toArray(File[]::new);
+        if (files == null) {
+            throw new MojoExecutionException("Schema directory not found : " + schemaDirectory);
+        }
+        Arrays.sort(files);
+        MessageClassGenerator generator = new MessageClassGenerator(packageName);
+        for (File file : files) {
+            try {
+                SchemaCompilation compilation = new SchemaCompilation();
+                compilation.compile(file);
+                if (!compilation.hasRootElement()) {
+                    getLog().info("Skipping XSD file without a root element : " + file.getName());
+                    continue;
+                }
+                List<Path> sources = generator.generate(compilation, outputDirectory.toPath());
+                getLog().info("Generated " + sources.size() + " sources for " + file.getName() + " in package " + packageName + "."
+                        + MessageClassGenerator.packageNameOf(file.getName()));
+            } catch (Exception e) {
+                throw new MojoExecutionException("Failed to generate the message classes of " + file + " : " + e.getMessage(), e);
+            }
+        }
+        project.addCompileSourceRoot(outputDirectory.getPath());
+    }
+}
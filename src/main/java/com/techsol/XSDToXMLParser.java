@@ -4,21 +4,42 @@
 
 package com.techsol;
 
-import com.techsol.models.handler.XSDObjectsHandler;
-import com.techsol.models.xsd.ComplexType;
-import com.techsol.models.xsd.Element;
-import com.techsol.models.xsd.SimpleType;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import com.techsol.archive.ArchiveFormat;
+import com.techsol.archive.ArchiveWriter;
+import com.techsol.batch.BatchConverter;
+import com.techsol.batch.MTMessage;
+import com.techsol.batch.MTMessageReader;
+import com.techsol.batch.MTMessageWriter;
+import com.techsol.batch.MXMessageReader;
+import com.techsol.cache.CompiledSchemaCache;
+import com.techsol.generator.MessageGenerator;
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.mapping.PathTrie;
+import com.techsol.metrics.CompilationMetrics;
+import com.techsol.models.compiled.TypePool;
+import com.techsol.models.message.MessageInstance;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.parser.SchemaCompilation;
+import com.techsol.server.GenerationServer;
+import com.techsol.validation.MessageValidator;
+import com.techsol.watch.SchemaRegistry;
+import com.techsol.watch.SchemaWatcher;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * <h1>XSD Schema to Model XML Parser</h1>
@@ -26,24 +47,123 @@ import java.io.IOException;
  * <p>Strictly works with ISO20022 Schemas</p>
  */
 public class XSDToXMLParser {
-    //Class that orchestrates the management of the objects in use
-    private static XSDObjectsHandler objectsHandler;
-    private static XSDObjectsHandler finalObjectsHandler;
+    //Cache of compiled schemas, null when the schemas are always compiled from scratch
+    private static CompiledSchemaCache compiledSchemaCache;
+    //The directory the XML files are written to
+    private static Path outputFolderPath = Path.of("..");
+    //The .zip or .gz archive the documents are compressed into, null when they are written as files
+    private static Path archivePath;
+    //How long the schema directory has to be quiet before the changed schemas are regenerated
+    private static final long WATCH_DEBOUNCE_MILLIS = 200;
+    //Reported for a schema of common types that is only included or imported by the others
+    private static final String NO_ROOT_ELEMENT = "Skipping XSD file without a root element : ";
+    //How many levels of complex types the templates expand
+    private static int maxTemplateDepth = TemplateSkeleton.UNLIMITED_DEPTH;
+    //Whether batch and generated documents only hold their populated and mandatory elements
+    private static boolean prunedOutput;
+    //Pool the compiled types are shared through while the schemas are kept in memory, null otherwise
+    private static TypePool typePool;
 
-    //The different types of elements that are in use
-    private enum types {element, complexType, simpleType}
+    public static void main(String[] args) {
+        String schemasPath = "schemas";
+        //Number of schemas compiled at the same time, 0 processes the schemas one at a time on the main thread
+        int parallelism = 0;
+        //Batch conversion of a file of MT messages
+        String batchPath = null;
+        //Extraction of the MT fields of a file of MX documents
+        String reversePath = null;
+        String schemaPath = null;
+        String mappingPath = null;
+        String outputPath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        //Number of synthetic messages to generate, -1 when no messages are generated
+        long generateCount = -1;
+        long seed = 0;
+        //Validate every generated message
+        boolean validate = false;
+        //Port of the local generation service, -1 when the schemas are written to files and the application exits
+        int port = -1;
+        //Keep running and regenerate the schemas that change
+        boolean watch = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--parallelism") && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--output-dir") && i + 1 < args.length) {
+                outputFolderPath = Path.of(args[++i]);
+            } else if (args[i].equals("--cache-dir") && i + 1 < args.length) {
+                compiledSchemaCache = new CompiledSchemaCache(Path.of(args[++i]));
+            } else if (args[i].equals("--metrics")) {
+                CompilationMetrics.enableSummary();
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batchPath = args[++i];
+            } else if (args[i].equals("--reverse") && i + 1 < args.length) {
+                reversePath = args[++i];
+            } else if (args[i].equals("--schema") && i + 1 < args.length) {
+                schemaPath = args[++i];
+            } else if (args[i].equals("--mapping") && i + 1 < args.length) {
+                mappingPath = args[++i];
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--output") && i + 1 < args.length) {
+                outputPath = args[++i];
+            } else if (args[i].equals("--serve") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--max-depth") && i + 1 < args.length) {
+                maxTemplateDepth = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--generate") && i + 1 < args.length) {
+                generateCount = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--archive") && i + 1 < args.length) {
+                archivePath = Path.of(args[++i]);
+            } else if (args[i].equals("--pruned")) {
+                prunedOutput = true;
+            } else if (args[i].equals("--watch")) {
+                watch = true;
+            } else if (args[i].equals("--validate")) {
+                validate = true;
+            } else {
+                schemasPath = args[i];
+            }
+        }
 
-    //A global string builder to used to store the contents of the XML output
-    private static StringBuilder outputXMLStringBuilder;
-    //The path
-    private static String outputFolderPath;
+        if (archivePath != null) {
+            try {
+                ArchiveFormat.of(archivePath);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage() + ". Exiting ...");
+                return;
+            }
+        }
 
-    public static void main(String[] args) {
-        String schemasPath;
-        if (args.length > 0) {
-            schemasPath = args[0];
-        } else {
-            schemasPath = "schemas";
+        if (generateCount >= 0) {
+            if (schemaPath == null) {
+                System.out.println("Message generation needs --schema. Exiting ...");
+                return;
+            }
+            generateMessages(new File(schemaPath), generateCount, seed, outputPath, threads, validate);
+            CompilationMetrics.printSummary(System.out);
+            return;
+        }
+
+        if (batchPath != null) {
+            if (schemaPath == null || mappingPath == null) {
+                System.out.println("Batch conversion needs --schema and --mapping. Exiting ...");
+                return;
+            }
+            convertBatch(new File(batchPath), new File(schemaPath), Path.of(mappingPath), outputPath, threads);
+            CompilationMetrics.printSummary(System.out);
+            return;
+        }
+
+        if (reversePath != null) {
+            if (schemaPath == null || mappingPath == null) {
+                System.out.println("MX to MT extraction needs --schema and --mapping. Exiting ...");
+                return;
+            }
+            extractMTMessages(new File(reversePath), new File(schemaPath), Path.of(mappingPath), outputPath);
+            CompilationMetrics.printSummary(System.out);
+            return;
         }
 
         System.out.println("Schema directory is : " + schemasPath);
@@ -55,261 +175,390 @@ public class XSDToXMLParser {
             return;
         }
 
-        //Get all the files in the directory specified and store the files in an array
-        File[] files = directory.listFiles();
+        //Get all the files in the directory specified and store the files in an array, the subdirectories e.g. of included schemas are left out
+        File[] files = directory.listFiles(File::isFile);
 
         if (files == null) {
             System.out.println("No files found in schema directory.");
             return;
         }
 
-        //Loop through each file to process it
-        for (File file : files) {
-            System.out.println("Creating XML representation for XSD file : " + file.getName());
-            createDocument(file);
+        GenerationServer server = null;
+        if (port >= 0) {
+            typePool = TypePool.shared();
+            server = startServer(port);
+            if (server == null) {
+                return;
+            }
+        }
+
+        if (watch) {
+            watchSchemas(directory.toPath(), server);
+            return;
         }
+
+        if (server != null) {
+            registerSchemas(server, files);
+            return;
+        }
+
+        if (archivePath != null) {
+            createArchive(files, parallelism);
+        } else if (parallelism > 0) {
+            createDocumentsInParallel(files, parallelism);
+        } else {
+            //Loop through each file to process it
+            for (File file : files) {
+                System.out.println("Creating XML representation for XSD file : " + file.getName());
+                createDocument(file);
+            }
+        }
+        CompilationMetrics.printSummary(System.out);
     }
 
     /**
-     * Create a DOM representation of the XSD schema and then process it
+     * Compile and render the schemas on a work-stealing pool, each schema in its own compilation
      *
-     * @param file @description
+     * @param files
+     * @param parallelism the number of worker threads
      */
-    private static void createDocument(File file) {
+    private static void createDocumentsInParallel(File[] files, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
         try {
-            //Initialize the  class
-            objectsHandler = new XSDObjectsHandler();
-            finalObjectsHandler = new XSDObjectsHandler();
-            //Initialize the string builder
-            outputXMLStringBuilder = new StringBuilder();
-
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            //Parse the file
-            Document document = builder.parse(file);
-
-            //Get schema node
-            Node schemaNode = document.getElementsByTagName("xs:schema").item(0);
-            //Get all the nodes with the tag "xs:complexType"
-            NodeList complexNodeList = document.getElementsByTagName("xs:complexType");
-            //Get all the nodes with the tag "xs:element"
-            NodeList elementsNodeList = document.getElementsByTagName("xs:element");
-            //Get all the nodes with the tag "xs:simpleType"
-            NodeList simpleTypeNodeList = document.getElementsByTagName("xs:simpleType");
-
-            //Create element objects ... these elements will be mapped to the complex types to create the relationship
-            createObjects(elementsNodeList, String.valueOf(types.element));
-            //Create simple type objects ... these elements will be used to ensure that the simple types do not appear as tags in the XML
-            //since simple types are also elements
-            createObjects(simpleTypeNodeList, String.valueOf(types.simpleType));
-            createObjects(complexNodeList, String.valueOf(types.complexType));
-
-            mapElementsToComplexType(complexNodeList, null);
-            elementTypeMapper(elementsNodeList);
-
-            createComplexTypesForChildElements();
-//            dynamicMappingLogicSample();
-            ComplexType complexType = finalObjectsHandler.getComplexTypeByName(objectsHandler.getRootElement().getType());
-            outputXMLStringBuilder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>").append("\n");
-            outputXMLStringBuilder.append("<").append(complexType.getName()).append(">");
-            createOutputXML(complexType);
-            outputXMLStringBuilder.append("</").append(complexType.getName()).append(">");
-
-            writeToFile(file.getName());
-        } catch (ParserConfigurationException | IOException | SAXException e) {
-            e.printStackTrace();
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (File file : files) {
+                tasks.add(pool.submit(() -> {
+                    System.out.println("Creating XML representation for XSD file : " + file.getName());
+                    createDocument(file);
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
         }
     }
 
     /**
-     * Create the objects based on the type of object passed
-     * The method creates the corresponding Java object, initializes it then adds it to the orchestration class
+     * Compile and render the schemas into one archive, one entry per schema in the order of the files
      *
-     * @param nodeList
-     * @param type
+     * @param files
+     * @param parallelism the number of worker threads, 0 processes the schemas one at a time on the main thread
      */
-    private static void createObjects(NodeList nodeList, String type) {
-        if (nodeList.getLength() != 0) {
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                if (type.equals(String.valueOf(types.element))) {
-                    Element element = new Element();
-                    element.setName(nodeList.item(i).getAttributes().getNamedItem("name").getNodeValue());
-                    element.setType(nodeList.item(i).getAttributes().getNamedItem("type").getNodeValue());
-                    if (nodeList.item(i).getAttributes().getNamedItem("minOccurs") != null) {
-                        element.setMinOccurs(Integer.parseInt(nodeList.item(i).getAttributes().getNamedItem("minOccurs").getNodeValue()));
+    private static void createArchive(File[] files, int parallelism) {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(archivePath), 1 << 16)) {
+            ArchiveWriter archive = new ArchiveWriter(outputStream, ArchiveFormat.of(archivePath));
+            if (parallelism > 0) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+                    for (int i = 0; i < files.length; i++) {
+                        File file = files[i];
+                        long sequence = i + 1;
+                        tasks.add(pool.submit(() -> archiveDocument(file, sequence, archive)));
+                    }
+                    for (ForkJoinTask<?> task : tasks) {
+                        task.join();
                     }
-                    objectsHandler.addElementToArrayList(element);
-                } else if (type.equals(String.valueOf(types.complexType))) {
-                    ComplexType complexType = new ComplexType();
-                    complexType.setName(nodeList.item(i).getAttributes().getNamedItem("name").getNodeValue());
-                    objectsHandler.addComplexTypeToArrayList(complexType);
-                } else if (type.equals(String.valueOf(types.simpleType))) {
-                    SimpleType simpleType = new SimpleType();
-                    simpleType.setName(nodeList.item(i).getAttributes().getNamedItem("name").getNodeValue());
-                    objectsHandler.addSimpleTypeToArrayList(simpleType);
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                for (int i = 0; i < files.length; i++) {
+                    archiveDocument(files[i], i + 1, archive);
                 }
             }
+            archive.finish();
+        } catch (Exception e) {
+            System.err.println("Failed to write the archive : " + archivePath);
+            e.printStackTrace();
         }
     }
 
     /**
-     * Adds the element children to the enclosing complex type
+     * Compile the schema and compress its XML into the archive
      *
-     * @param nodeList
-     * @param complexType
+     * @param file
+     * @param sequence the position of the schema in the archive, starting at 1
+     * @param archive
      */
-    private static void mapElementsToComplexType(NodeList nodeList, ComplexType complexType) {
-        if (nodeList != null && nodeList.getLength() > 0) {
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                if (nodeList.item(i).getNodeName().equals("xs:element")) {
-                    Element element;
-                    if (objectsHandler.elementTypeExistsAsSimpleType(nodeList.item(i).getAttributes().getNamedItem("type").getNodeValue())) {
-                        element = objectsHandler.getSimpleTypeNotSetElement(nodeList.item(i).getAttributes().getNamedItem("type").getNodeValue(), nodeList.item(i).getAttributes().getNamedItem("name").getNodeValue());
-                    } else {
-                        element = objectsHandler.getParentComplexTypeNotSetElement(nodeList.item(i).getAttributes().getNamedItem("type").getNodeValue(), nodeList.item(i).getAttributes().getNamedItem("name").getNodeValue());
-                        element.setParentComplexType(complexType);
-                    }
-                    complexType.addChildElementToArrayList(element);
-                } else if (nodeList.item(i).getNodeName().equals("xs:complexType")) {
-                    ComplexType complexType1 = objectsHandler.getComplexTypeByName(nodeList.item(i).getAttributes().getNamedItem("name").getNodeValue());
-                    NodeList newList = nodeList.item(i).getChildNodes();
-                    mapElementsToComplexType(newList, complexType1);
-                } else {
-                    NodeList newList = nodeList.item(i).getChildNodes();
-                    mapElementsToComplexType(newList, complexType);
-                }
+    private static void archiveDocument(File file, long sequence, ArchiveWriter archive) {
+        System.out.println("Creating XML representation for XSD file : " + file.getName());
+        try {
+            SchemaCompilation compilation = compileSchema(file);
+            if (!compilation.hasRootElement()) {
+                archive.skip(sequence);
+                System.out.println(NO_ROOT_ELEMENT + file.getName());
+                return;
             }
+            ByteArrayOutputStream document = new ByteArrayOutputStream();
+            compilation.render(compilation.createMessage(), document);
+            int length = document.size();
+            document.write('\n');
+            archive.append(sequence, document.toByteArray(), List.of(new ArchiveWriter.Entry(file.getName().replace(".xsd", ".xml"), 0, length)));
+        } catch (Exception e) {
+            archive.skip(sequence);
+            System.err.println("Failed to create XML representation for XSD file : " + file.getName());
+            e.printStackTrace();
         }
     }
 
     /**
-     * Go through each element in the node list, adding the complex type or simple type as necessary
+     * Serve the XML of the registered schemas over HTTP on the loopback address until the process is stopped
      *
-     * @param nodeList
+     * @param port the port to listen on, 0 picks a free port
+     * @return the started server, or null if it could not be started
      */
-    private static void elementTypeMapper(NodeList nodeList) {
-        if (nodeList != null && nodeList.getLength() > 0) {
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                String type = nodeList.item(i).getAttributes().getNamedItem("type").getNodeValue();
-                String name = nodeList.item(i).getAttributes().getNamedItem("name").getNodeValue();
-                Element element;
-                if (objectsHandler.elementTypeExistsAsSimpleType(type)) {
-                    element = objectsHandler.getSimpleTypeNotSetElement(type, name);
-                    SimpleType simpleType = new SimpleType(objectsHandler.getSimpleTypeByName(type));
-                    element.setSimpleType(simpleType);
-                } else {
-                    element = objectsHandler.getElementWithoutComplex(type, name);
-                    ComplexType complexType = new ComplexType(objectsHandler.getComplexTypeByName(type));
-                    element.setComplexType(complexType);
-                }
-            }
+    private static GenerationServer startServer(int port) {
+        try {
+            GenerationServer server = new GenerationServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.start();
+            System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+            return server;
+        } catch (IOException e) {
+            System.err.println("Failed to start the generation service on port : " + port);
+            e.printStackTrace();
+            return null;
         }
     }
 
     /**
-     * Create the corresponding complex types for the child elements in each complex type
+     * Compile every schema once and serve it
+     *
+     * @param server
+     * @param files
      */
-    private static void createComplexTypesForChildElements() {
-        for (ComplexType complexType : objectsHandler.getComplexTypeArrayList()) {
-            ComplexType complexType1 = new ComplexType();
-            complexType1.setName(complexType.getName());
-            for (Element element : complexType.getChildrenElements()) {
-                Element element1 = new Element(element);
-                if (!objectsHandler.elementTypeExistsAsSimpleType(element1.getType())) {
-                    ComplexType complexType2 = new ComplexType(objectsHandler.getComplexTypeByName(element1.getType()));
-                    element1.setComplexType(complexType2);
+    private static void registerSchemas(GenerationServer server, File[] files) {
+        for (File file : files) {
+            try {
+                SchemaCompilation compilation = compileSchema(file);
+                if (!compilation.hasRootElement()) {
+                    System.out.println(NO_ROOT_ELEMENT + file.getName());
+                    continue;
                 }
-                complexType1.addChildElementToArrayList(element1);
+                server.register(messageTypeOf(file.toPath()), compilation);
+                System.out.println("Serving message type : " + messageTypeOf(file.toPath()));
+            } catch (Exception e) {
+                System.err.println("Failed to compile XSD file : " + file.getName());
+                e.printStackTrace();
             }
-            finalObjectsHandler.addComplexTypeToArrayList(complexType1);
         }
+        System.out.println("Distinct complex types shared by the schemas : " + typePool.getTypeCount());
     }
 
     /**
-     * Sample code for obtaining the field values from an MT,
-     * grabbing the mapping path for the field
-     * and setting the field value to the element at the end of the path
+     * Compile every schema of the directory, then keep compiling the schemas whose content changes until the process is stopped
+     * <p>The schemas are served when the server is running and written to the output directory otherwise</p>
+     *
+     * @param directory the schema directory
+     * @param server    the running server, or null
      */
-    private static void dynamicMappingLogicSample() {
-        String[] mtFields = {"20:FX1708062250", "57D:J.P Morgan Chase Co", "58D:Standard Chartered Bank Kenya", "21:123456789", "22:987654321", "53A:Cyrus Wanyaga", "56A:Shem Muchemi", "23:893512519", "32A:STANBICKKEEE", "53B:PARKLANDS 256789"};
-        String[] mappings = {"20:FIToFICstmrCdtTrf.GrpHdr.MsgId", "57D:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.PstlAdr.AdrLine", "58D:FIToFICstmrCdtTrf.CdtTrfTxInf.InstdAgt.FinInstnId.PstlAdr.AdrLine", "21:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.BICFI", "23:FIToFICstmrCdtTrf.CdtTrfTxInf.InstdAgt.FinInstnId.BICFI", "22:FIToFICstmrCdtTrf.CdtTrfTxInf.PmtId.TxId", "56A:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.Nm", "53A:FIToFICstmrCdtTrf.CdtTrfTxInf.DbtrAcct.Nm", "32A:FIToFICstmrCdtTrf.GrpHdr.CreDtTm", "53B:FIToFICstmrCdtTrf.CdtTrfTxInf.ChrgsInf.Agt.FinInstnId.PstlAdr.AdrLine"};
-
-        for (String field : mtFields) {
-            String[] splitField = field.split(":");
-            String fieldNo = splitField[0];
-            String value = splitField[1];
-            for (String mapping : mappings) {
-                String[] splitMapping = mapping.split(":");
-                if (splitMapping[0].equals(fieldNo)) {
-                    String[] elementTags = splitMapping[1].split("\\.");
-                    Element element = objectsHandler.getRootElement();
-                    ComplexType rootComplexType = finalObjectsHandler.getComplexTypeByName(element.getType());
-                    writeToElement(rootComplexType, elementTags, 0, value);
-                    break;
+    private static void watchSchemas(Path directory, GenerationServer server) {
+        SchemaWatcher.Listener listener = new SchemaWatcher.Listener() {
+            @Override
+            public void schemaChanged(Path file, SchemaCompilation compilation) throws IOException {
+                if (!compilation.hasRootElement()) {
+                    System.out.println(NO_ROOT_ELEMENT + file.getFileName());
+                    return;
+                }
+                compilation.setMaxTemplateDepth(maxTemplateDepth);
+                if (server != null) {
+                    compilation.setTypePool(typePool);
+                    server.register(messageTypeOf(file), compilation);
+                } else {
+                    compilation.writeToFile(compilation.createMessage(), outputFolderPath, file.getFileName().toString());
+                }
+            }
+
+            @Override
+            public void schemaRemoved(Path file) {
+                if (server != null) {
+                    server.unregister(messageTypeOf(file));
                 }
+                System.out.println("Schema removed : " + file.getFileName());
             }
+        };
+        try (SchemaWatcher watcher = new SchemaWatcher(directory, new SchemaRegistry(compiledSchemaCache), listener, WATCH_DEBOUNCE_MILLIS)) {
+            watcher.scan();
+            System.out.println("Watching schema directory : " + directory);
+            watcher.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Failed to watch schema directory : " + directory);
+            e.printStackTrace();
         }
     }
 
     /**
-     * Write the value to the last element specified in the mapping path
+     * The message type a schema is served under, the file name without the extension
+     */
+    private static String messageTypeOf(Path file) {
+        return file.getFileName().toString().replace(".xsd", "");
+    }
+
+    /**
+     * Convert every MT message of the batch file with one compiled schema and mapping
      *
-     * @param complexType
-     * @param tags
-     * @param i
-     * @param writeValue
+     * @param batchFile   the file of MT messages
+     * @param schemaFile  the XSD of the target MX message
+     * @param mappingFile the mapping of MT tags to MX paths
+     * @param outputPath  the file to write all the documents to, or null to write one file per message to the output directory,
+     *                    unless the documents go to an archive
+     * @param threads     the number of worker threads
      */
-    private static void writeToElement(ComplexType complexType, String[] tags, int i, String writeValue) {
-        if (complexType.getChildrenElements().size() > 0 && complexType.getChildrenElements() != null) {
-            for (Element element : complexType.getChildrenElements()) {
-                //The element name is the same as the tag being searched for, but we are not at the end of the mapping path
-                if (element.getName().equals(tags[i]) && tags.length - 1 != i) {
-                    //Some elements that are supposed to have a complex type, e.g. PstlAdr, do not have their appropriate complex types
-                    //This is fixed here ...
-                    if (!objectsHandler.elementTypeExistsAsSimpleType(element.getType()) && element.getComplexType() == null) {
-                        ComplexType complexType1 = new ComplexType(objectsHandler.getComplexTypeByName(element.getType()));
-                        element.setComplexType(complexType1);
+    private static void convertBatch(File batchFile, File schemaFile, Path mappingFile, String outputPath, int threads) {
+        try {
+            SchemaCompilation compilation = compileSchema(schemaFile);
+            CompiledMapping mapping = CompiledMapping.compileStrict(compilation.getCompiledSchema(), CompiledMapping.readMappingFile(mappingFile));
+            BatchConverter batchConverter = new BatchConverter(mapping, compilation.getTemplateSkeleton(), threads, prunedOutput);
+
+            System.out.println("Converting MT messages in : " + batchFile.getName());
+            BatchConverter.BatchResult result;
+            try (MTMessageReader reader = new MTMessageReader(Files.newBufferedReader(batchFile.toPath(), StandardCharsets.UTF_8))) {
+                if (archivePath != null) {
+                    try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(archivePath), 1 << 16)) {
+                        result = batchConverter.convertToArchive(reader, new ArchiveWriter(outputStream, ArchiveFormat.of(archivePath)));
                     }
-                    if (element.getComplexType() != null) {
-                        writeToElement(element.getComplexType(), tags, i + 1, writeValue);
+                } else if (outputPath != null) {
+                    try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(Path.of(outputPath)), 1 << 16)) {
+                        result = batchConverter.convertToStream(reader, outputStream);
                     }
-                } else if (element.getName().equals(tags[i]) && tags.length - 1 == i) {
-                    element.setValue(writeValue);
+                } else {
+                    result = batchConverter.convertToDirectory(reader, outputFolderPath);
                 }
             }
+            System.out.println(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Failed to convert MT messages in : " + batchFile.getName());
+            e.printStackTrace();
         }
     }
 
     /**
-     * Create the output xml by mapping through the initial complex type e.g.
-     * <p>
-     * Document has child element FIToFICstmrCdtTrf, of which this element has a complex type with child elements, and so on and so forth
+     * Extract the mapped fields of every MX document of the file into MT messages, reading the mapping the other way round
      *
-     * @param complexType
+     * @param mxFile      the file of MX documents
+     * @param schemaFile  the XSD of the MX documents
+     * @param mappingFile the mapping of MT tags to MX paths
+     * @param outputPath  the file to write the MT messages to, or null to write them to the output directory next to the MX file name
      */
-    private static void createOutputXML(ComplexType complexType) {
-        if (complexType.getChildrenElements().size() > 0 && complexType.getChildrenElements() != null) {
-            for (Element element : complexType.getChildrenElements()) {
-                outputXMLStringBuilder.append("<").append(element.getName()).append(">");
-                if (element.getComplexType() != null) {
-                    createOutputXML(element.getComplexType());
-                } else {
-                    outputXMLStringBuilder.append(element.getValue() != null ? element.getValue() : "");
+    private static void extractMTMessages(File mxFile, File schemaFile, Path mappingFile, String outputPath) {
+        try {
+            SchemaCompilation compilation = compileSchema(schemaFile);
+            CompiledMapping mapping = CompiledMapping.compileStrict(compilation.getCompiledSchema(), CompiledMapping.readMappingFile(mappingFile));
+            PathTrie trie = PathTrie.compile(mapping);
+            Path mtPath = outputPath != null ? Path.of(outputPath) : outputFolderPath.resolve(mxFile.getName().replaceFirst("\\.xml$", "") + ".mt");
+
+            System.out.println("Extracting MT messages from : " + mxFile.getName());
+            long start = System.nanoTime();
+            long count = 0;
+            try (MXMessageReader reader = new MXMessageReader(Files.newBufferedReader(mxFile.toPath(), StandardCharsets.UTF_8), trie);
+                 MTMessageWriter writer = new MTMessageWriter(Files.newBufferedWriter(mtPath, StandardCharsets.UTF_8))) {
+                MTMessage message;
+                while ((message = reader.next()) != null) {
+                    writer.write(message);
+                    count++;
                 }
-                outputXMLStringBuilder.append("</").append(element.getName()).append(">").append("\n");
             }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+            System.out.printf("Extracted %d MT messages to %s in %.3f s : %.1f messages per second%n", count, mtPath, seconds, count / seconds);
+        } catch (Exception e) {
+            System.err.println("Failed to extract MT messages from : " + mxFile.getName());
+            e.printStackTrace();
         }
     }
 
     /**
-     * Write the string to a file
+     * Generate synthetic messages of the schema with values that follow the facets of its simple types
+     *
+     * @param schemaFile the XSD of the message
+     * @param count      the number of messages
+     * @param seed       the seed, the same seed generates the same messages
+     * @param outputPath the file to write all the documents to, or null to write one file per message to the output directory,
+     *                   unless the documents go to an archive
+     * @param threads    the number of worker threads
+     * @param validate   whether to validate every message against the schema, an invalid message fails its chunk
      */
-    private static void writeToFile(String outputFileName) {
+    private static void generateMessages(File schemaFile, long count, long seed, String outputPath, int threads, boolean validate) {
         try {
-            FileWriter outputFile = new FileWriter(".." + File.separator + outputFileName.replace(".xsd", ".xml"));
-            outputFile.write(outputXMLStringBuilder.toString());
-            outputFile.close();
-        } catch (IOException e) {
+            SchemaCompilation compilation = compileSchema(schemaFile);
+            TemplateSkeleton skeleton = compilation.getTemplateSkeleton();
+            MessageValidator validator = validate ? compilation.getMessageValidator() : null;
+            if (prunedOutput) {
+                //Expand the declared complex types, so the required elements the linked template leaves empty get values
+                skeleton = TemplateSkeleton.compile(compilation.getCompiledSchema(), compilation.getMaxTemplateDepth(), true);
+                validator = validate ? MessageValidator.compile(skeleton) : null;
+            } else {
+                System.out.println("Only the --pruned output is valid against the schema, the template writes every optional element");
+            }
+            MessageGenerator generator = new MessageGenerator(skeleton, seed, threads, prunedOutput, validator);
+
+            System.out.println("Generating messages of : " + schemaFile.getName());
+            BatchConverter.BatchResult result;
+            if (archivePath != null) {
+                try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(archivePath), 1 << 16)) {
+                    result = generator.generateToArchive(count, new ArchiveWriter(outputStream, ArchiveFormat.of(archivePath)));
+                }
+            } else if (outputPath != null) {
+                try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(Path.of(outputPath)), 1 << 16)) {
+                    result = generator.generateToStream(count, outputStream);
+                }
+            } else {
+                result = generator.generateToDirectory(count, outputFolderPath);
+            }
+            System.out.printf("Generated %d messages (%d failed) in %.3f s : %.1f messages per second%n",
+                    result.converted(), result.failed(), result.elapsedNanos() / 1_000_000_000d, result.messagesPerSecond());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Failed to generate messages of : " + schemaFile.getName());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compile the schema, from the cache if one is in use
+     *
+     * @param file
+     * @return the linked compilation
+     */
+    private static SchemaCompilation compileSchema(File file) throws IOException, XMLStreamException {
+        SchemaCompilation compilation;
+        if (compiledSchemaCache != null) {
+            compilation = compiledSchemaCache.compile(file);
+        } else {
+            compilation = new SchemaCompilation();
+            compilation.compile(file);
+        }
+        compilation.setMaxTemplateDepth(maxTemplateDepth);
+        if (typePool != null) {
+            compilation.setTypePool(typePool);
+        }
+        return compilation;
+    }
+
+    /**
+     * Compile the XSD schema and write its XML representation
+     * <p>A failure is reported against the file and does not stop the other files from being processed</p>
+     *
+     * @param file @description
+     */
+    private static void createDocument(File file) {
+        try {
+            SchemaCompilation compilation = compileSchema(file);
+            if (!compilation.hasRootElement()) {
+                System.out.println(NO_ROOT_ELEMENT + file.getName());
+                return;
+            }
+            MessageInstance message = compilation.createMessage();
+//            compilation.dynamicMappingLogicSample(message);
+            compilation.writeToFile(message, outputFolderPath, file.getName());
+        } catch (Exception e) {
+            System.err.println("Failed to create XML representation for XSD file : " + file.getName());
             e.printStackTrace();
         }
     }
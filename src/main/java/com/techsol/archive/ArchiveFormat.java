@@ -0,0 +1,36 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.archive;
+
+import java.nio.file.Path;
+
+/**
+ * <h1>Archive format</h1>
+ * <p>The formats the documents of a bulk run can be archived in</p>
+ */
+public enum ArchiveFormat {
+    //One entry per document
+    ZIP,
+    //The documents one after the other, each followed by a new line
+    GZIP;
+
+    /**
+     * The format named by the extension of the archive file, .zip or .gz
+     *
+     * @param path
+     * @return the format
+     * @throws IllegalArgumentException when the extension names no format
+     */
+    public static ArchiveFormat of(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".zip")) {
+            return ZIP;
+        }
+        if (name.endsWith(".gz") || name.endsWith(".gzip")) {
+            return GZIP;
+        }
+        throw new IllegalArgumentException("Archive " + path + " is neither a .zip nor a .gz file");
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.archive;
+
+import com.techsol.batch.OrderedWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <h1>Archive writer</h1>
+ * <p>Streams the documents of a bulk run into a single ZIP or gzip archive. The threads rendering the documents also compress
+ * them, each chunk of documents with a deflater of a shared pool, and the compressed chunks are appended to the archive in
+ * sequence order as an {@link OrderedWriter} writes chunks.</p>
+ * <ul>
+ *     <li>ZIP: every document is an entry of its own, deflated on its own. The central directory is built as the chunks are
+ *     appended and written by {@link #finish()}, with the Zip64 records once there are more than 65535 entries or 4 GB.</li>
+ *     <li>gzip: every chunk is a gzip member of its own. Concatenated members are a valid gzip file, which decompresses to the
+ *     documents one after the other, each followed by a new line.</li>
+ * </ul>
+ */
+public class ArchiveWriter {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    //Version 2.0 for deflate, 4.5 for Zip64
+    private static final int VERSION_DEFLATE = 20;
+    private static final int VERSION_ZIP64 = 45;
+    //The entry names are UTF-8
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_DEFLATE = 8;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    //Deflate, no modification time, no flags, unknown operating system
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final ArchiveFormat format;
+    private final OutputStream outputStream;
+    private final DeflaterPool deflaters;
+    private final OrderedWriter orderedWriter;
+    //The entries of each compressed chunk not yet appended, by chunk
+    private final ConcurrentHashMap<Long, List<CentralEntry>> pendingEntries = new ConcurrentHashMap<>();
+    //Only touched while the ordered writer appends a chunk, and by finish
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private long entryCount;
+    private long position;
+    //MS-DOS time and date of every entry, the time the archive was started
+    private final int dosTime;
+    private final int dosDate;
+
+    /**
+     * @param outputStream the stream of the archive file
+     * @param format
+     */
+    public ArchiveWriter(OutputStream outputStream, ArchiveFormat format) {
+        this(outputStream, format, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param outputStream the stream of the archive file
+     * @param format
+     * @param level        the compression level, 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public ArchiveWriter(OutputStream outputStream, ArchiveFormat format, int level) {
+        this.format = format;
+        this.outputStream = outputStream;
+        this.deflaters = new DeflaterPool(level);
+        this.orderedWriter = new OrderedWriter(outputStream) {
+            @Override
+            protected void writeChunk(long sequence, byte[] bytes) throws IOException {
+                List<CentralEntry> entries = pendingEntries.remove(sequence);
+                if (entries != null) {
+                    for (CentralEntry entry : entries) {
+                        writeCentralEntry(entry, position + entry.chunkOffset);
+                    }
+                }
+                outputStream.write(bytes);
+                position += bytes.length;
+            }
+        };
+        LocalDateTime now = LocalDateTime.now();
+        this.dosTime = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() / 2;
+        this.dosDate = Math.max(now.getYear() - 1980, 0) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+    }
+
+    /**
+     * Compress a chunk of documents on the calling thread and append it once the chunks before it are appended
+     *
+     * @param sequence  the position of the chunk, starting at 1
+     * @param documents the documents of the chunk one after the other, each followed by a new line
+     * @param entries   where each document lies in the documents, without its new line, and the name of its ZIP entry
+     */
+    public void append(long sequence, byte[] documents, List<Entry> entries) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(documents.length / 4 + 64);
+        if (format == ArchiveFormat.GZIP) {
+            compressed.writeBytes(GZIP_HEADER);
+            deflaters.deflate(documents, 0, documents.length, compressed);
+            writeInt(compressed, crc32(documents, 0, documents.length));
+            writeInt(compressed, documents.length);
+        } else {
+            CentralEntry[] centralEntries = new CentralEntry[entries.size()];
+            for (int i = 0; i < centralEntries.length; i++) {
+                Entry entry = entries.get(i);
+                byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+                int crc = crc32(documents, entry.offset(), entry.length());
+                int headerOffset = compressed.size();
+                //The sizes are patched in once the document is deflated
+                writeInt(compressed, LOCAL_HEADER);
+                writeShort(compressed, VERSION_DEFLATE);
+                writeShort(compressed, FLAG_UTF8);
+                writeShort(compressed, METHOD_DEFLATE);
+                writeShort(compressed, dosTime);
+                writeShort(compressed, dosDate);
+                writeInt(compressed, crc);
+                writeInt(compressed, 0);
+                writeInt(compressed, entry.length());
+                writeShort(compressed, name.length);
+                writeShort(compressed, 0);
+                compressed.writeBytes(name);
+                int dataOffset = compressed.size();
+                deflaters.deflate(documents, entry.offset(), entry.length(), compressed);
+                centralEntries[i] = new CentralEntry(name, crc, compressed.size() - dataOffset, entry.length(), headerOffset);
+            }
+            byte[] bytes = compressed.toByteArray();
+            for (CentralEntry entry : centralEntries) {
+                putInt(bytes, (int) entry.chunkOffset + 18, entry.compressedSize);
+            }
+            pendingEntries.put(sequence, List.of(centralEntries));
+            orderedWriter.write(sequence, bytes);
+            return;
+        }
+        orderedWriter.write(sequence, compressed.toByteArray());
+    }
+
+    /**
+     * Let the chunks after a chunk that could not be produced be appended
+     *
+     * @param sequence the position of the chunk
+     */
+    public void skip(long sequence) {
+        orderedWriter.write(sequence, null);
+    }
+
+    /**
+     * Wait until the chunk is less than the window ahead of the next chunk to append
+     *
+     * @see OrderedWriter#awaitWindow(long, int)
+     */
+    public void awaitWindow(long sequence, int window) throws InterruptedException {
+        orderedWriter.awaitWindow(sequence, window);
+    }
+
+    /**
+     * Write the end of the archive once every chunk was appended or skipped and flush it, the output stream is left open
+     *
+     * @throws IOException when a chunk could not be written
+     */
+    public void finish() throws IOException {
+        deflaters.close();
+        orderedWriter.checkError();
+        synchronized (orderedWriter) {
+            if (format == ArchiveFormat.GZIP) {
+                //An empty gzip file is not valid, an archive of no documents holds one empty member
+                if (position == 0) {
+                    ByteArrayOutputStream empty = new ByteArrayOutputStream();
+                    empty.writeBytes(GZIP_HEADER);
+                    empty.writeBytes(new byte[]{3, 0});
+                    writeInt(empty, 0);
+                    writeInt(empty, 0);
+                    empty.writeTo(outputStream);
+                }
+            } else {
+                writeEndOfCentralDirectory();
+            }
+        }
+        outputStream.flush();
+    }
+
+    private void writeCentralEntry(CentralEntry entry, long headerOffset) {
+        boolean zip64 = headerOffset >= MAX_32;
+        writeInt(centralDirectory, CENTRAL_HEADER);
+        writeShort(centralDirectory, zip64 ? VERSION_ZIP64 : VERSION_DEFLATE);
+        writeShort(centralDirectory, zip64 ? VERSION_ZIP64 : VERSION_DEFLATE);
+        writeShort(centralDirectory, FLAG_UTF8);
+        writeShort(centralDirectory, METHOD_DEFLATE);
+        writeShort(centralDirectory, dosTime);
+        writeShort(centralDirectory, dosDate);
+        writeInt(centralDirectory, entry.crc);
+        writeInt(centralDirectory, entry.compressedSize);
+        writeInt(centralDirectory, entry.size);
+        writeShort(centralDirectory, entry.name.length);
+        writeShort(centralDirectory, zip64 ? 12 : 0);
+        //Comment, disk, internal and external attributes
+        writeShort(centralDirectory, 0);
+        writeShort(centralDirectory, 0);
+        writeShort(centralDirectory, 0);
+        writeInt(centralDirectory, 0);
+        writeInt(centralDirectory, zip64 ? (int) MAX_32 : (int) headerOffset);
+        centralDirectory.writeBytes(entry.name);
+        if (zip64) {
+            writeShort(centralDirectory, ZIP64_EXTRA);
+            writeShort(centralDirectory, 8);
+            writeLong(centralDirectory, headerOffset);
+        }
+        entryCount++;
+    }
+
+    private void writeEndOfCentralDirectory() throws IOException {
+        long directoryOffset = position;
+        long directorySize = centralDirectory.size();
+        ByteArrayOutputStream end = new ByteArrayOutputStream();
+        boolean zip64 = entryCount > MAX_16 || directoryOffset >= MAX_32 || directorySize >= MAX_32;
+        if (zip64) {
+            long zip64EndOffset = directoryOffset + directorySize;
+            writeInt(end, ZIP64_END_OF_CENTRAL_DIRECTORY);
+            //The size of the rest of the record
+            writeLong(end, 44);
+            writeShort(end, VERSION_ZIP64);
+            writeShort(end, VERSION_ZIP64);
+            writeInt(end, 0);
+            writeInt(end, 0);
+            writeLong(end, entryCount);
+            writeLong(end, entryCount);
+            writeLong(end, directorySize);
+            writeLong(end, directoryOffset);
+            writeInt(end, ZIP64_LOCATOR);
+            writeInt(end, 0);
+            writeLong(end, zip64EndOffset);
+            writeInt(end, 1);
+        }
+        writeInt(end, END_OF_CENTRAL_DIRECTORY);
+        writeShort(end, 0);
+        writeShort(end, 0);
+        writeShort(end, zip64 ? MAX_16 : (int) entryCount);
+        writeShort(end, zip64 ? MAX_16 : (int) entryCount);
+        writeInt(end, zip64 ? (int) MAX_32 : (int) directorySize);
+        writeInt(end, zip64 ? (int) MAX_32 : (int) directoryOffset);
+        writeShort(end, 0);
+        centralDirectory.writeTo(outputStream);
+        end.writeTo(outputStream);
+        position += directorySize + end.size();
+    }
+
+    private static int crc32(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeShort(ByteArrayOutputStream outputStream, int value) {
+        outputStream.write(value);
+        outputStream.write(value >>> 8);
+    }
+
+    private static void writeInt(ByteArrayOutputStream outputStream, int value) {
+        writeShort(outputStream, value);
+        writeShort(outputStream, value >>> 16);
+    }
+
+    private static void writeLong(ByteArrayOutputStream outputStream, long value) {
+        writeInt(outputStream, (int) value);
+        writeInt(outputStream, (int) (value >>> 32));
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    public ArchiveFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * A document of a chunk
+     *
+     * @param name   the name of its ZIP entry
+     * @param offset where it starts in the documents of the chunk
+     * @param length its length, without the new line that follows it
+     */
+    public record Entry(String name, int offset, int length) {
+    }
+
+    /**
+     * What the central directory needs of an entry, the entry starting at chunkOffset in its compressed chunk
+     */
+    private record CentralEntry(byte[] name, int crc, int compressedSize, int size, long chunkOffset) {
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+/**
+ * <h1>Deflater pool</h1>
+ * <p>Raw deflaters shared by the threads compressing documents, so that the native state of a deflater is allocated once
+ * per thread compressing at the same time instead of once per document</p>
+ */
+final class DeflaterPool {
+    private final int level;
+    private final ConcurrentLinkedQueue<Deflater> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param level the compression level, 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    DeflaterPool(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Deflate the bytes with a deflater of the pool, without the zlib header and trailer
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param compressed where the deflated bytes are appended
+     */
+    void deflate(byte[] bytes, int offset, int length, ByteArrayOutputStream compressed) {
+        Deflater deflater = idle.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        try {
+            deflater.setInput(bytes, offset, length);
+            deflater.finish();
+            byte[] buffer = new byte[Math.min(Math.max(length / 2, 512), 1 << 16)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                compressed.write(buffer, 0, count);
+            }
+        } finally {
+            deflater.reset();
+            idle.offer(deflater);
+        }
+    }
+
+    /**
+     * Release the native state of the deflaters
+     */
+    void close() {
+        Deflater deflater;
+        while ((deflater = idle.poll()) != null) {
+            deflater.end();
+        }
+    }
+}
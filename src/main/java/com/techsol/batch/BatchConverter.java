@@ -0,0 +1,325 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.batch;
+
+import com.techsol.archive.ArchiveWriter;
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.models.message.MessageInstance;
+import com.techsol.output.ColumnarRenderer;
+import com.techsol.output.PrunedRenderer;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.output.XMLOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Batch MT to MX converter</h1>
+ * <p>Converts a stream of MT messages with one compiled mapping, and so one compiled schema, shared by all the worker threads</p>
+ * <p>The reading thread hands the messages to the workers in chunks through a bounded queue and never has more than a fixed number
+ * of chunks in flight, so memory stays flat whatever the size of the input. Every worker lays the values of a chunk out in one
+ * column per mapped path and renders the documents straight from the columns with its own reusable output buffer, so no message
+ * tree is built per message.</p>
+ * <p>In pruned mode only the populated and mandatory elements of the documents are written, and each message is populated into
+ * its own message tree and rendered by a {@link PrunedRenderer}.</p>
+ */
+public class BatchConverter {
+    //Messages per chunk handed to a worker
+    private static final int CHUNK_SIZE = 64;
+    //Marks the end of the input for a worker
+    private static final Chunk END_OF_INPUT = new Chunk(0, new ArrayList<>());
+
+    private final ColumnarRenderer renderer;
+    private final CompiledMapping mapping;
+    //Renders the populated and mandatory elements only, null when every element is rendered
+    private final PrunedRenderer prunedRenderer;
+    //MT tag -> column of its mapped path
+    private final HashMap<String, Integer> columnsByTag = new HashMap<>();
+    private final int threads;
+    private final int maxInFlight;
+
+    /**
+     * @param mapping  the compiled mapping of MT fields to the paths of the target schema
+     * @param skeleton the template skeleton of the target schema, compiled to the template depth of its compilation
+     * @param threads  the number of worker threads
+     */
+    public BatchConverter(CompiledMapping mapping, TemplateSkeleton skeleton, int threads) {
+        this(mapping, skeleton, threads, false);
+    }
+
+    /**
+     * @param mapping  the compiled mapping of MT fields to the paths of the target schema
+     * @param skeleton the template skeleton of the target schema, compiled to the template depth of its compilation
+     * @param threads  the number of worker threads
+     * @param pruned   whether to only write the populated and mandatory elements
+     */
+    public BatchConverter(CompiledMapping mapping, TemplateSkeleton skeleton, int threads, boolean pruned) {
+        if (skeleton.getSchema() != mapping.getSchema()) {
+            throw new IllegalArgumentException("The mapping and the template skeleton are compiled from different schemas");
+        }
+        ArrayList<String> paths = new ArrayList<>();
+        for (CompiledMapping.ResolvedPath resolvedPath : mapping.getResolvedPaths()) {
+            if (!paths.contains(resolvedPath.path())) {
+                paths.add(resolvedPath.path());
+            }
+        }
+        this.renderer = ColumnarRenderer.compile(skeleton, paths);
+        this.mapping = mapping;
+        this.prunedRenderer = pruned ? PrunedRenderer.compile(skeleton) : null;
+        for (CompiledMapping.ResolvedPath resolvedPath : mapping.getResolvedPaths()) {
+            columnsByTag.put(resolvedPath.tag(), renderer.getColumn(resolvedPath.path()));
+        }
+        this.threads = Math.max(1, threads);
+        this.maxInFlight = this.threads * 4;
+    }
+
+    /**
+     * Write one XML file per message to the output directory, named after the position of the message in the input
+     *
+     * @param reader
+     * @param outputDirectory
+     * @return the counts and timing of the run
+     */
+    public BatchResult convertToDirectory(MTMessageReader reader, Path outputDirectory) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        return convert(reader, (chunk, columns, output) -> {
+            int converted = 0;
+            for (int i = 0; i < chunk.messages().size(); i++) {
+                MTMessage message = chunk.messages().get(i);
+                Path outputPath = outputDirectory.resolve(String.format("message_%08d.xml", message.sequence()));
+                try (FileChannel channel = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    render(chunk, columns, i, output.open(channel));
+                    output.flush();
+                    converted++;
+                } catch (IOException e) {
+                    System.err.println("Failed to convert message " + message.sequence() + " : " + e);
+                }
+            }
+            return converted;
+        }, sequence -> {
+        });
+    }
+
+    /**
+     * Write the XML documents of all the messages one after the other to the output stream, in input order
+     *
+     * @param reader
+     * @param outputStream
+     * @return the counts and timing of the run
+     */
+    public BatchResult convertToStream(MTMessageReader reader, OutputStream outputStream) throws IOException, InterruptedException {
+        OrderedWriter orderedWriter = new OrderedWriter(outputStream);
+        ThreadLocal<ByteArrayOutputStream> chunkBuffers = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(CHUNK_SIZE * 16384));
+        BatchResult result = convert(reader, (chunk, columns, output) -> {
+            ByteArrayOutputStream documents = chunkBuffers.get();
+            documents.reset();
+            int converted;
+            if (prunedRenderer != null) {
+                output.open(documents);
+                for (converted = 0; converted < chunk.messages().size(); converted++) {
+                    render(chunk, columns, converted, output);
+                    output.newLine();
+                }
+                output.flush();
+            } else {
+                converted = renderer.renderAll(columns, output.open(documents));
+            }
+            orderedWriter.write(chunk.sequence(), documents.toByteArray());
+            return converted;
+        }, sequence -> orderedWriter.write(sequence, null));
+        orderedWriter.checkError();
+        outputStream.flush();
+        return result;
+    }
+
+    /**
+     * Compress the XML documents of all the messages into the archive, in input order, and finish the archive
+     *
+     * @param reader
+     * @param archive
+     * @return the counts and timing of the run
+     */
+    public BatchResult convertToArchive(MTMessageReader reader, ArchiveWriter archive) throws IOException, InterruptedException {
+        ThreadLocal<ByteArrayOutputStream> chunkBuffers = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(CHUNK_SIZE * 16384));
+        BatchResult result = convert(reader, (chunk, columns, output) -> {
+            ByteArrayOutputStream documents = chunkBuffers.get();
+            documents.reset();
+            output.open(documents);
+            ArrayList<ArchiveWriter.Entry> entries = new ArrayList<>(chunk.messages().size());
+            for (int i = 0; i < chunk.messages().size(); i++) {
+                int start = (int) output.getBytesWritten();
+                render(chunk, columns, i, output);
+                entries.add(new ArchiveWriter.Entry(String.format("message_%08d.xml", chunk.messages().get(i).sequence()), start,
+                        (int) output.getBytesWritten() - start));
+                output.newLine();
+            }
+            output.flush();
+            archive.append(chunk.sequence(), documents.toByteArray(), entries);
+            return chunk.messages().size();
+        }, archive::skip);
+        archive.finish();
+        return result;
+    }
+
+    private BatchResult convert(MTMessageReader reader, ChunkSink sink, SkippedChunkSink skippedChunkSink) throws IOException, InterruptedException {
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(maxInFlight);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong converted = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long start = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(workers.submit(() -> {
+                XMLOutput output = new XMLOutput();
+                Chunk chunk;
+                while ((chunk = queue.take()) != END_OF_INPUT) {
+                    try {
+                        //Pruned documents are rendered from the messages themselves
+                        int chunkConverted = sink.write(chunk, prunedRenderer == null ? toColumns(chunk) : null, output);
+                        converted.addAndGet(chunkConverted);
+                        failed.addAndGet(chunk.messages().size() - chunkConverted);
+                    } catch (Exception e) {
+                        failed.addAndGet(chunk.messages().size());
+                        System.err.println("Failed to convert messages " + chunk.messages().get(0).sequence() + " to "
+                                + chunk.messages().get(chunk.messages().size() - 1).sequence() + " : " + e);
+                        skippedChunkSink.skip(chunk.sequence());
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        try {
+            long chunkSequence = 0;
+            ArrayList<MTMessage> messages = new ArrayList<>(CHUNK_SIZE);
+            MTMessage message;
+            while ((message = reader.next()) != null) {
+                messages.add(message);
+                if (messages.size() == CHUNK_SIZE) {
+                    inFlight.acquire();
+                    queue.put(new Chunk(++chunkSequence, messages));
+                    messages = new ArrayList<>(CHUNK_SIZE);
+                }
+            }
+            if (!messages.isEmpty()) {
+                inFlight.acquire();
+                queue.put(new Chunk(++chunkSequence, messages));
+            }
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                queue.put(END_OF_INPUT);
+            }
+            workers.shutdown();
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        return new BatchResult(converted.get(), failed.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Render one message of the chunk, without flushing the output
+     */
+    private void render(Chunk chunk, String[][] columns, int message, XMLOutput output) throws IOException {
+        if (prunedRenderer != null) {
+            MessageInstance instance = new MessageInstance(mapping.getSchema());
+            mapping.populate(instance, chunk.messages().get(message).fields());
+            prunedRenderer.render(instance, output);
+        } else {
+            renderer.render(columns, message, output);
+        }
+    }
+
+    /**
+     * Lay the mapped fields of the messages out in one column per mapped path, a field of a tag that appears more than once
+     * in a message keeps its last value
+     */
+    private String[][] toColumns(Chunk chunk) {
+        String[][] columns = new String[renderer.getColumnCount()][chunk.messages().size()];
+        for (int i = 0; i < chunk.messages().size(); i++) {
+            for (String field : chunk.messages().get(i).fields()) {
+                int separator = field.indexOf(':');
+                if (separator > 0) {
+                    Integer column = columnsByTag.get(field.substring(0, separator));
+                    if (column != null) {
+                        columns[column][i] = field.substring(separator + 1);
+                    }
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Consecutive messages of the input, converted together
+     *
+     * @param sequence the position of the chunk in the input
+     * @param messages
+     */
+    private record Chunk(long sequence, List<MTMessage> messages) {
+    }
+
+    /**
+     * Where a worker sends the columns of a chunk, null in pruned mode
+     */
+    private interface ChunkSink {
+        /**
+         * @return the number of messages written
+         */
+        int write(Chunk chunk, String[][] columns, XMLOutput output) throws IOException;
+    }
+
+    /**
+     * Told about a chunk that could not be converted
+     */
+    private interface SkippedChunkSink {
+        void skip(long sequence) throws IOException;
+    }
+
+    /**
+     * Counts and timing of a batch run
+     *
+     * @param converted    the messages written
+     * @param failed       the messages that could not be converted
+     * @param elapsedNanos the time taken to read, convert and write all the messages
+     */
+    public record BatchResult(long converted, long failed, long elapsedNanos) {
+
+        public double messagesPerSecond() {
+            return elapsedNanos > 0 ? converted * 1_000_000_000d / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Converted %d messages (%d failed) in %.3f s : %.1f messages per second",
+                    converted, failed, elapsedNanos / 1_000_000_000d, messagesPerSecond());
+        }
+    }
+}
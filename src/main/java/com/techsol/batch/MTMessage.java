@@ -0,0 +1,26 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.batch;
+
+/**
+ * The text block fields of one MT message
+ *
+ * @param sequence the position of the message in its input, starting at 1
+ * @param fields   the fields in the form tag:value e.g. 20:FX1708062250, multi-line values keep their line breaks
+ */
+public record MTMessage(long sequence, String[] fields) {
+
+    /**
+     * The value of the first field with the tag, or null
+     */
+    public String getField(String tag) {
+        for (String field : fields) {
+            if (field.length() > tag.length() && field.charAt(tag.length()) == ':' && field.startsWith(tag)) {
+                return field.substring(tag.length() + 1);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.batch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * <h1>MT message reader</h1>
+ * <p>Reads MT messages one at a time from a file holding any number of them</p>
+ * <p>Only the fields of the text block are kept. A field starts with a line of the form <code>:20:FX1708062250</code> and continues
+ * on the following lines until the next field. A message ends at the end of its text block (<code>-}</code>), at a <code>$</code>
+ * separator line or where the basic header block of the next message (<code>{1:</code>) starts.</p>
+ */
+public class MTMessageReader implements Closeable {
+    private final BufferedReader reader;
+    private long sequence;
+    //The header line of the next message, read while looking for the end of the previous one
+    private String pendingLine;
+
+    public MTMessageReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader bufferedReader ? bufferedReader : new BufferedReader(reader);
+    }
+
+    /**
+     * Read the next message
+     *
+     * @return the message, or null at the end of the input
+     */
+    public MTMessage next() throws IOException {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = null;
+        String line;
+        while ((line = pendingLine != null ? pendingLine : reader.readLine()) != null) {
+            pendingLine = null;
+            if (line.startsWith("-}") || line.equals("$")) {
+                if (field != null) {
+                    fields.add(field.toString());
+                    field = null;
+                }
+                if (!fields.isEmpty()) {
+                    break;
+                }
+            } else if (line.startsWith("{1:") && (field != null || !fields.isEmpty())) {
+                pendingLine = line;
+                break;
+            } else if (isFieldStart(line)) {
+                if (field != null) {
+                    fields.add(field.toString());
+                }
+                //":20:value" becomes "20:value"
+                field = new StringBuilder(line.length()).append(line, 1, line.length());
+            } else if (field != null) {
+                field.append('\n').append(line);
+            }
+        }
+        if (field != null) {
+            fields.add(field.toString());
+        }
+        return fields.isEmpty() ? null : new MTMessage(++sequence, fields.toArray(new String[0]));
+    }
+
+    /**
+     * A field tag is two digits optionally followed by an option letter, between colons
+     */
+    private static boolean isFieldStart(String line) {
+        if (line.length() < 4 || line.charAt(0) != ':' || !Character.isDigit(line.charAt(1)) || !Character.isDigit(line.charAt(2))) {
+            return false;
+        }
+        return line.charAt(3) == ':' || (Character.isLetter(line.charAt(3)) && line.length() > 4 && line.charAt(4) == ':');
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
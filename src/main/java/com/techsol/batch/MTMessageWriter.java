@@ -0,0 +1,53 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.batch;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * <h1>MT message writer</h1>
+ * <p>Writes MT messages as text blocks, one after the other, in the form {@link MTMessageReader} reads them back:</p>
+ * <pre>
+ * {4:
+ * :20:FX1708062250
+ * :32A:230101USD1000,00
+ * -}
+ * </pre>
+ */
+public class MTMessageWriter implements Closeable, Flushable {
+    private final Writer writer;
+
+    public MTMessageWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Write the text block of the message
+     *
+     * @param message
+     */
+    public void write(MTMessage message) throws IOException {
+        writer.write("{4:\n");
+        for (String field : message.fields()) {
+            writer.write(':');
+            writer.write(field);
+            writer.write('\n');
+        }
+        writer.write("-}\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
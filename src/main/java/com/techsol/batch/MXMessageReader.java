@@ -0,0 +1,275 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.batch;
+
+import com.techsol.mapping.PathTrie;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * <h1>MX message reader</h1>
+ * <p>Reads MX documents one at a time with StAX and extracts the leaves of the mapped paths as the fields of an MT message,
+ * in document order, e.g. the text of <code>FIToFICstmrCdtTrf.GrpHdr.MsgId</code> as <code>20:value</code></p>
+ * <p>The elements are matched against a {@link PathTrie} as they are read and a subtree without a mapped leaf is skipped without
+ * being looked at, so only the fields of the document being read are held in memory. Empty leaves give no field, and a leaf that
+ * occurs several times gives a field per occurrence. The mapped attributes of an element give their fields before the text of the
+ * element does.</p>
+ * <p>The input holds one document, any number of documents inside an enclosing element, or documents one after the other each
+ * with its own XML declaration as the batch conversion writes them. Documents are found by the local name of the root element,
+ * namespaces are ignored.</p>
+ */
+public class MXMessageReader implements Closeable {
+    private static final XMLInputFactory XML_INPUT_FACTORY = newInputFactory();
+
+    private final PathTrie trie;
+    private final XMLStreamReader reader;
+    private final Reader input;
+    private long sequence;
+
+    /**
+     * @param input the characters of the documents
+     * @param trie  the mapped paths of the schema of the documents
+     */
+    public MXMessageReader(Reader input, PathTrie trie) throws XMLStreamException {
+        this.trie = trie;
+        this.input = input;
+        this.reader = XML_INPUT_FACTORY.createXMLStreamReader(new ConcatenatedDocuments(input));
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        //Inbound documents are never allowed to pull in a DTD or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Read the next document
+     *
+     * @return its mapped fields, or null at the end of the input
+     * @throws XMLStreamException when the input is not well-formed
+     */
+    public MTMessage next() throws XMLStreamException {
+        String rootName = trie.getRoot().getName();
+        ArrayList<String> fields = new ArrayList<>();
+        //The trie nodes of the open elements of the document, and the text of the open mapped elements that have children
+        ArrayList<PathTrie.Node> nodes = new ArrayList<>();
+        ArrayList<StringBuilder> texts = new ArrayList<>();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (nodes.isEmpty()) {
+                    //Outside a document, look for one at any depth
+                    if (reader.getLocalName().equals(rootName)) {
+                        nodes.add(trie.getRoot());
+                        texts.add(null);
+                    }
+                    continue;
+                }
+                PathTrie.Node child = nodes.get(nodes.size() - 1).getChild(reader.getLocalName());
+                if (child == null) {
+                    skipElement();
+                    continue;
+                }
+                String[] attributeNames = child.getAttributeNames();
+                for (int i = 0; i < attributeNames.length; i++) {
+                    String value = reader.getAttributeValue(null, attributeNames[i]);
+                    if (value != null && !value.isEmpty()) {
+                        fields.add(child.getAttributeTags()[i] + ':' + value);
+                    }
+                }
+                if (!child.hasChildren()) {
+                    addFields(fields, child, reader.getElementText());
+                } else {
+                    nodes.add(child);
+                    texts.add(child.getTags().length > 0 ? new StringBuilder() : null);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && !nodes.isEmpty()) {
+                PathTrie.Node node = nodes.remove(nodes.size() - 1);
+                StringBuilder text = texts.remove(texts.size() - 1);
+                if (text != null) {
+                    addFields(fields, node, text.toString());
+                }
+                if (nodes.isEmpty()) {
+                    return new MTMessage(++sequence, fields.toArray(new String[0]));
+                }
+            } else if ((event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) && !texts.isEmpty()
+                    && texts.get(texts.size() - 1) != null) {
+                texts.get(texts.size() - 1).append(reader.getText());
+            }
+        }
+        if (!nodes.isEmpty()) {
+            throw new XMLStreamException("Document " + (sequence + 1) + " ends before its " + rootName + " element is closed");
+        }
+        return null;
+    }
+
+    private static void addFields(ArrayList<String> fields, PathTrie.Node node, String value) {
+        if (value.isEmpty()) {
+            return;
+        }
+        for (String tag : node.getTags()) {
+            fields.add(tag + ':' + value);
+        }
+    }
+
+    /**
+     * Skip past the end of the element whose start was just read
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * The input enclosed in a single element with the XML declarations taken out, so that documents written one after the other
+     * read as one well-formed document
+     */
+    private static class ConcatenatedDocuments extends Reader {
+        private static final char[] START = "<mx-documents>".toCharArray();
+        private static final char[] END = "</mx-documents>".toCharArray();
+        private static final char[] DECLARATION = "<?xml".toCharArray();
+
+        private final Reader input;
+        private final char[] buffer = new char[1 << 16];
+        private int position;
+        private int limit;
+        private boolean endOfInput;
+        //Characters of START already returned, then of END once the input is exhausted
+        private int startWritten;
+        private int endWritten;
+
+        private ConcatenatedDocuments(Reader input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read(char[] characters, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (startWritten < START.length) {
+                int count = Math.min(length, START.length - startWritten);
+                System.arraycopy(START, startWritten, characters, offset, count);
+                startWritten += count;
+                return count;
+            }
+            int count = 0;
+            while (count < length) {
+                if (!fill(DECLARATION.length)) {
+                    break;
+                }
+                if (buffer[position] == '<' && isDeclaration()) {
+                    if (!skipDeclaration()) {
+                        throw new IOException("Unterminated XML declaration");
+                    }
+                    continue;
+                }
+                //Copy up to the next '<' that may start a declaration
+                int end = position + 1;
+                int max = Math.min(limit, position + length - count);
+                while (end < max && buffer[end] != '<') {
+                    end++;
+                }
+                System.arraycopy(buffer, position, characters, offset + count, end - position);
+                count += end - position;
+                position = end;
+            }
+            if (count > 0) {
+                return count;
+            }
+            if (endWritten < END.length) {
+                count = Math.min(length, END.length - endWritten);
+                System.arraycopy(END, endWritten, characters, offset, count);
+                endWritten += count;
+                return count;
+            }
+            return -1;
+        }
+
+        /**
+         * Whether the buffer starts with an XML declaration, as long as the buffer holds enough characters to tell
+         */
+        private boolean isDeclaration() {
+            if (limit - position <= DECLARATION.length) {
+                return false;
+            }
+            for (int i = 0; i < DECLARATION.length; i++) {
+                if (buffer[position + i] != DECLARATION[i]) {
+                    return false;
+                }
+            }
+            return Character.isWhitespace(buffer[position + DECLARATION.length]);
+        }
+
+        /**
+         * Move past the ?> that ends the declaration
+         */
+        private boolean skipDeclaration() throws IOException {
+            position += DECLARATION.length;
+            while (fill(2)) {
+                if (buffer[position] == '?' && position + 1 < limit && buffer[position + 1] == '>') {
+                    position += 2;
+                    return true;
+                }
+                position++;
+            }
+            return false;
+        }
+
+        /**
+         * Read more of the input until the buffer holds more than the wanted characters or the input is exhausted
+         *
+         * @return whether any character is left
+         */
+        private boolean fill(int wanted) throws IOException {
+            while (limit - position <= wanted && !endOfInput) {
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                }
+                int read = input.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    limit += read;
+                }
+            }
+            return position < limit;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
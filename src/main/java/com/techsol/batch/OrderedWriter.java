@@ -0,0 +1,81 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * <h1>Ordered writer</h1>
+ * <p>Writes the chunks rendered by several threads in sequence order, holding back the chunks that are finished early.
+ * The number of held back chunks is bounded by the chunks the producers keep in flight.</p>
+ */
+public class OrderedWriter {
+    private final OutputStream outputStream;
+    private final HashMap<Long, byte[]> pending = new HashMap<>();
+    private long nextSequence = 1;
+    private IOException error;
+
+    /**
+     * @param outputStream the stream the chunks are written to, chunk 1 first
+     */
+    public OrderedWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * @param sequence the position of the chunk, starting at 1
+     * @param bytes    the bytes of the chunk, or null for a chunk that was skipped
+     */
+    public synchronized void write(long sequence, byte[] bytes) {
+        pending.put(sequence, bytes != null ? bytes : new byte[0]);
+        byte[] next;
+        boolean written = false;
+        while ((next = pending.remove(nextSequence)) != null) {
+            nextSequence++;
+            written = true;
+            if (error == null) {
+                try {
+                    writeChunk(nextSequence - 1, next);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+        if (written) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Write a chunk whose turn has come, called in sequence order while holding the lock of the writer
+     *
+     * @param sequence the position of the chunk
+     * @param bytes    the bytes of the chunk, empty for a chunk that was skipped
+     */
+    protected void writeChunk(long sequence, byte[] bytes) throws IOException {
+        outputStream.write(bytes);
+    }
+
+    /**
+     * Wait until the chunk is less than the window ahead of the next chunk to write, so a producer that runs ahead of the others
+     * does not hold back more than the window of chunks
+     *
+     * @param sequence the position of the chunk about to be produced
+     * @param window   the number of chunks that may be held back
+     */
+    public synchronized void awaitWindow(long sequence, int window) throws InterruptedException {
+        while (sequence - nextSequence >= window) {
+            wait();
+        }
+    }
+
+    public synchronized void checkError() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.cache;
+
+import com.techsol.models.handler.SymbolTable;
+import com.techsol.models.handler.XSDObjectsHandler;
+import com.techsol.models.xsd.Attribute;
+import com.techsol.models.xsd.ComplexType;
+import com.techsol.models.xsd.ComplexTypeLinker;
+import com.techsol.models.xsd.Element;
+import com.techsol.models.xsd.SimpleType;
+import com.techsol.parser.SchemaCompilation;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * <h1>Compilation snapshot</h1>
+ * <p>Binary form of the linked object graph of a {@link SchemaCompilation}</p>
+ * <p>Every string, complex type, element and simple type is written once and referenced by its index,
+ * so the objects shared between complex types stay shared when the snapshot is read back</p>
+ */
+public final class CompilationSnapshot {
+    //"XSDC"
+    private static final int MAGIC = 0x58534443;
+    //Increase whenever the format or the linking logic changes, so that older snapshots are rebuilt
+    public static final int FORMAT_VERSION = 9;
+
+    private static final int NONE = -1;
+
+    private CompilationSnapshot() {
+    }
+
+    /**
+     * Write the linked handlers of the compilation
+     *
+     * @param compilation
+     * @param output
+     */
+    public static void write(SchemaCompilation compilation, DataOutputStream output) throws IOException {
+        ObjectTable table = new ObjectTable();
+        XSDObjectsHandler[] handlers = {compilation.getObjectsHandler(), compilation.getFinalObjectsHandler()};
+        for (XSDObjectsHandler handler : handlers) {
+            handler.getElementArrayList().forEach(table::add);
+            handler.getComplexTypeArrayList().forEach(table::add);
+            handler.getSimpleTypeArrayList().forEach(table::add);
+        }
+        table.close();
+
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+
+        writeVarInt(output, table.strings.size());
+        for (String string : table.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(output, bytes.length);
+            output.write(bytes);
+        }
+
+        writeVarInt(output, table.complexTypes.size());
+        writeVarInt(output, table.elements.size());
+        writeVarInt(output, table.simpleTypes.size());
+        for (ComplexType complexType : table.complexTypes) {
+            writeVarInt(output, table.stringId(complexType.getName()));
+            writeVarInt(output, table.stringId(complexType.getTagName()));
+            writeVarInt(output, complexType.getChildrenElements().size());
+            for (Element element : complexType.getChildrenElements()) {
+                writeVarInt(output, table.elementIds.get(element));
+            }
+            writeVarInt(output, table.stringId(complexType.getSimpleContentBase()));
+            output.writeBoolean(complexType.isAnyElementRequired());
+            writeVarInt(output, complexType.getAttributes().size());
+            for (Attribute attribute : complexType.getAttributes()) {
+                writeVarInt(output, table.stringId(attribute.getName()));
+                writeVarInt(output, table.stringId(attribute.getType()));
+                output.writeBoolean(attribute.isRequired());
+            }
+        }
+        for (Element element : table.elements) {
+            writeVarInt(output, table.stringId(element.getName()));
+            writeVarInt(output, table.stringId(element.getType()));
+            writeVarInt(output, table.stringId(element.getValue()));
+            writeOptionalInt(output, element.getMinOccurs());
+            writeOptionalInt(output, element.getMaxOccurs());
+            output.writeBoolean(element.isChoice());
+            writeVarInt(output, element.getComplexTypeLinker() == null ? table.complexTypeId(element.getComplexType()) : NONE);
+            writeVarInt(output, table.complexTypeId(element.getParentComplexType()));
+            writeVarInt(output, table.simpleTypeId(element.getSimpleType()));
+            writeLinkOrder(output, element.getLinkOrder());
+            //The position the lazily linked complex type is materialised at, the complex type itself is not written
+            if (element.getComplexTypeLinker() == null) {
+                writeVarInt(output, NONE);
+            } else {
+                writeLinkOrder(output, element.getComplexTypeOrder());
+            }
+        }
+        for (SimpleType simpleType : table.simpleTypes) {
+            writeVarInt(output, table.stringId(simpleType.getName()));
+            writeVarInt(output, table.elementId(simpleType.getElement()));
+            writeVarInt(output, table.stringId(simpleType.getBase()));
+            writeVarInt(output, table.stringId(simpleType.getPattern()));
+            writeOptionalInt(output, simpleType.getMinLength());
+            writeOptionalInt(output, simpleType.getMaxLength());
+            writeOptionalInt(output, simpleType.getTotalDigits());
+            writeOptionalInt(output, simpleType.getFractionDigits());
+            writeVarInt(output, table.stringId(simpleType.getMinInclusive()));
+            writeVarInt(output, table.stringId(simpleType.getMaxInclusive()));
+            writeVarInt(output, simpleType.getEnumerations().size());
+            for (String enumeration : simpleType.getEnumerations()) {
+                writeVarInt(output, table.stringId(enumeration));
+            }
+        }
+
+        for (XSDObjectsHandler handler : handlers) {
+            writeVarInt(output, handler.getElementArrayList().size());
+            for (Element element : handler.getElementArrayList()) {
+                writeVarInt(output, table.elementIds.get(element));
+            }
+            writeVarInt(output, handler.getComplexTypeArrayList().size());
+            for (ComplexType complexType : handler.getComplexTypeArrayList()) {
+                writeVarInt(output, table.complexTypeIds.get(complexType));
+            }
+            writeVarInt(output, handler.getSimpleTypeArrayList().size());
+            for (SimpleType simpleType : handler.getSimpleTypeArrayList()) {
+                writeVarInt(output, table.simpleTypeIds.get(simpleType));
+            }
+            writeVarInt(output, handler.getTopLevelElements().size());
+            for (Element element : handler.getTopLevelElements()) {
+                writeVarInt(output, table.elementIds.get(element));
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Read a compilation back from its snapshot
+     *
+     * @param input
+     * @return the compilation, or null if the snapshot was written in another format version
+     */
+    public static SchemaCompilation read(ByteBuffer input) {
+        if (input.remaining() < 8 || input.getInt() != MAGIC || input.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+
+        String[] strings = new String[readVarInt(input)];
+        for (int i = 0; i < strings.length; i++) {
+            int length = readVarInt(input);
+            strings[i] = new String(input.array(), input.arrayOffset() + input.position(), length, StandardCharsets.UTF_8);
+            input.position(input.position() + length);
+        }
+
+        SymbolTable symbolTable = new SymbolTable();
+        XSDObjectsHandler[] handlers = {new XSDObjectsHandler(symbolTable), new XSDObjectsHandler(symbolTable)};
+        SchemaCompilation compilation = new SchemaCompilation(handlers[0], handlers[1]);
+
+        ComplexType[] complexTypes = new ComplexType[readVarInt(input)];
+        Element[] elements = new Element[readVarInt(input)];
+        SimpleType[] simpleTypes = new SimpleType[readVarInt(input)];
+        for (int i = 0; i < complexTypes.length; i++) {
+            complexTypes[i] = new ComplexType();
+        }
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = new Element();
+        }
+        for (int i = 0; i < simpleTypes.length; i++) {
+            simpleTypes[i] = new SimpleType();
+        }
+
+        for (ComplexType complexType : complexTypes) {
+            complexType.setName(string(strings, readVarInt(input)));
+            complexType.setTagName(string(strings, readVarInt(input)));
+            int childCount = readVarInt(input);
+            ArrayList<Element> childrenElements = new ArrayList<>(childCount);
+            for (int i = 0; i < childCount; i++) {
+                childrenElements.add(elements[readVarInt(input)]);
+            }
+            complexType.setChildrenElements(childrenElements);
+            complexType.setSimpleContentBase(string(strings, readVarInt(input)));
+            complexType.setAnyElementRequired(input.get() != 0);
+            int attributeCount = readVarInt(input);
+            ArrayList<Attribute> attributes = new ArrayList<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.add(new Attribute(string(strings, readVarInt(input)), string(strings, readVarInt(input)), input.get() != 0));
+            }
+            complexType.setAttributes(attributes);
+        }
+        for (Element element : elements) {
+            element.setName(string(strings, readVarInt(input)));
+            element.setType(string(strings, readVarInt(input)));
+            element.setValue(string(strings, readVarInt(input)));
+            element.setMinOccurs(readOptionalInt(input));
+            element.setMaxOccurs(readOptionalInt(input));
+            element.setChoice(input.get() != 0);
+            int complexTypeId = readVarInt(input);
+            element.setComplexType(complexTypeId != NONE ? complexTypes[complexTypeId] : null);
+            int parentComplexTypeId = readVarInt(input);
+            element.setParentComplexType(parentComplexTypeId != NONE ? complexTypes[parentComplexTypeId] : null);
+            int simpleTypeId = readVarInt(input);
+            element.setSimpleType(simpleTypeId != NONE ? simpleTypes[simpleTypeId] : null);
+            element.setLinkOrder(linkOrder(readVarInt(input)));
+            int complexTypeOrder = readVarInt(input);
+            if (complexTypeOrder != NONE) {
+                element.linkComplexType(compilation.getComplexTypeLinker(), linkOrder(complexTypeOrder));
+            }
+        }
+        for (SimpleType simpleType : simpleTypes) {
+            simpleType.setName(string(strings, readVarInt(input)));
+            int elementId = readVarInt(input);
+            simpleType.setElement(elementId != NONE ? elements[elementId] : null);
+            simpleType.setBase(string(strings, readVarInt(input)));
+            simpleType.setPattern(string(strings, readVarInt(input)));
+            simpleType.setMinLength(readOptionalInt(input));
+            simpleType.setMaxLength(readOptionalInt(input));
+            simpleType.setTotalDigits(readOptionalInt(input));
+            simpleType.setFractionDigits(readOptionalInt(input));
+            simpleType.setMinInclusive(string(strings, readVarInt(input)));
+            simpleType.setMaxInclusive(string(strings, readVarInt(input)));
+            int enumerationCount = readVarInt(input);
+            for (int i = 0; i < enumerationCount; i++) {
+                simpleType.addEnumeration(string(strings, readVarInt(input)));
+            }
+        }
+
+        for (XSDObjectsHandler handler : handlers) {
+            int elementCount = readVarInt(input);
+            for (int i = 0; i < elementCount; i++) {
+                handler.addElementToArrayList(elements[readVarInt(input)]);
+            }
+            int complexTypeCount = readVarInt(input);
+            for (int i = 0; i < complexTypeCount; i++) {
+                handler.addComplexTypeToArrayList(complexTypes[readVarInt(input)]);
+            }
+            int simpleTypeCount = readVarInt(input);
+            for (int i = 0; i < simpleTypeCount; i++) {
+                handler.addSimpleTypeToArrayList(simpleTypes[readVarInt(input)]);
+            }
+            int topLevelElementCount = readVarInt(input);
+            for (int i = 0; i < topLevelElementCount; i++) {
+                handler.addTopLevelElement(elements[readVarInt(input)]);
+            }
+        }
+
+        return compilation;
+    }
+
+    /**
+     * Write a value of at least -1 as an unsigned LEB128 varint of the value plus one, so that the small indexes take a single byte
+     */
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        int encoded = value + 1;
+        while ((encoded & ~0x7F) != 0) {
+            output.writeByte((encoded & 0x7F) | 0x80);
+            encoded >>>= 7;
+        }
+        output.writeByte(encoded);
+    }
+
+    private static int readVarInt(ByteBuffer input) {
+        int encoded = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = input.get();
+            encoded |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return encoded - 1;
+    }
+
+    /**
+     * Write a value of at least -1 or null, e.g. the occurrence bounds and the facets
+     */
+    private static void writeOptionalInt(DataOutputStream output, Integer value) throws IOException {
+        writeVarInt(output, value != null ? value + 1 : NONE);
+    }
+
+    private static Integer readOptionalInt(ByteBuffer input) {
+        int value = readVarInt(input);
+        return value != NONE ? value - 1 : null;
+    }
+
+    /**
+     * Write a link position as its value plus one, with 0 for {@link ComplexTypeLinker#UNLINKED}
+     */
+    private static void writeLinkOrder(DataOutputStream output, int linkOrder) throws IOException {
+        writeVarInt(output, linkOrder == ComplexTypeLinker.UNLINKED ? 0 : linkOrder + 1);
+    }
+
+    private static int linkOrder(int encoded) {
+        return encoded == 0 ? ComplexTypeLinker.UNLINKED : encoded - 1;
+    }
+
+    private static String string(String[] strings, int id) {
+        return id != NONE ? strings[id] : null;
+    }
+
+    /**
+     * Assigns an index to every object reachable from the handlers, walking the graph with an explicit work list
+     */
+    private static class ObjectTable {
+        private final ArrayList<String> strings = new ArrayList<>();
+        private final HashMap<String, Integer> stringIds = new HashMap<>();
+        private final ArrayList<ComplexType> complexTypes = new ArrayList<>();
+        private final IdentityHashMap<ComplexType, Integer> complexTypeIds = new IdentityHashMap<>();
+        private final ArrayList<Element> elements = new ArrayList<>();
+        private final IdentityHashMap<Element, Integer> elementIds = new IdentityHashMap<>();
+        private final ArrayList<SimpleType> simpleTypes = new ArrayList<>();
+        private final IdentityHashMap<SimpleType, Integer> simpleTypeIds = new IdentityHashMap<>();
+        private final ArrayDeque<Object> workList = new ArrayDeque<>();
+
+        private void add(Object object) {
+            if (object != null) {
+                workList.add(object);
+            }
+        }
+
+        /**
+         * Visit everything reachable from the objects added so far
+         */
+        private void close() {
+            while (!workList.isEmpty()) {
+                Object object = workList.poll();
+                if (object instanceof ComplexType complexType) {
+                    if (!complexTypeIds.containsKey(complexType)) {
+                        complexTypeIds.put(complexType, complexTypes.size());
+                        complexTypes.add(complexType);
+                        intern(complexType.getName());
+                        intern(complexType.getTagName());
+                        intern(complexType.getSimpleContentBase());
+                        for (Attribute attribute : complexType.getAttributes()) {
+                            intern(attribute.getName());
+                            intern(attribute.getType());
+                        }
+                        complexType.getChildrenElements().forEach(this::add);
+                    }
+                } else if (object instanceof Element element) {
+                    if (!elementIds.containsKey(element)) {
+                        elementIds.put(element, elements.size());
+                        elements.add(element);
+                        intern(element.getName());
+                        intern(element.getType());
+                        intern(element.getValue());
+                        //A lazily linked complex type is materialised again after reading, so it is not written
+                        if (element.getComplexTypeLinker() == null) {
+                            add(element.getComplexType());
+                        }
+                        add(element.getParentComplexType());
+                        add(element.getSimpleType());
+                    }
+                } else if (object instanceof SimpleType simpleType) {
+                    if (!simpleTypeIds.containsKey(simpleType)) {
+                        simpleTypeIds.put(simpleType, simpleTypes.size());
+                        simpleTypes.add(simpleType);
+                        intern(simpleType.getName());
+                        intern(simpleType.getBase());
+                        intern(simpleType.getPattern());
+                        intern(simpleType.getMinInclusive());
+                        intern(simpleType.getMaxInclusive());
+                        simpleType.getEnumerations().forEach(this::intern);
+                        add(simpleType.getElement());
+                    }
+                }
+            }
+        }
+
+        private void intern(String string) {
+            if (string != null && !stringIds.containsKey(string)) {
+                stringIds.put(string, strings.size());
+                strings.add(string);
+            }
+        }
+
+        private int stringId(String string) {
+            return string != null ? stringIds.get(string) : NONE;
+        }
+
+        private int complexTypeId(ComplexType complexType) {
+            return complexType != null ? complexTypeIds.get(complexType) : NONE;
+        }
+
+        private int elementId(Element element) {
+            return element != null ? elementIds.get(element) : NONE;
+        }
+
+        private int simpleTypeId(SimpleType simpleType) {
+            return simpleType != null ? simpleTypeIds.get(simpleType) : NONE;
+        }
+    }
+}
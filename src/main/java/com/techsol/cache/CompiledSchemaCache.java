@@ -0,0 +1,117 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.cache;
+
+import com.techsol.parser.SchemaCompilation;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * <h1>Compiled schema cache</h1>
+ * <p>Keeps a {@link CompilationSnapshot} of every compiled schema in a local directory, keyed by the SHA-256 hash of the XSD content</p>
+ * <p>A schema whose content has not changed is read back from its snapshot instead of being parsed and linked again.
+ * Snapshots written by another format version are rebuilt.</p>
+ * <p>A schema that includes or imports other schemas is not kept, since its hash does not cover the files it references.
+ * Those files are cached in memory by the {@link com.techsol.parser.ReferencedSchemaCache} instead.</p>
+ */
+public class CompiledSchemaCache {
+    private static final String SNAPSHOT_EXTENSION = ".xsdc";
+
+    private final Path cacheDirectory;
+
+    public CompiledSchemaCache(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Get the compilation of the schema file, from its snapshot if there is an up-to-date one
+     *
+     * @param file
+     * @return the linked compilation
+     */
+    public SchemaCompilation compile(File file) throws IOException, XMLStreamException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        return compile(file.toPath(), content, contentHash(content));
+    }
+
+    /**
+     * Get the compilation of schema content that was already read and hashed, from its snapshot if there is an up-to-date one
+     *
+     * @param file        the schema file, which the locations of its references are relative to
+     * @param content     the XSD content
+     * @param contentHash the {@link #contentHash(byte[])} of the content
+     * @return the linked compilation
+     */
+    public SchemaCompilation compile(Path file, byte[] content, String contentHash) throws IOException, XMLStreamException {
+        String schemaName = file.getFileName().toString();
+        Path snapshotPath = cacheDirectory.resolve(contentHash + SNAPSHOT_EXTENSION);
+
+        if (Files.isRegularFile(snapshotPath)) {
+            try {
+                SchemaCompilation compilation = CompilationSnapshot.read(ByteBuffer.wrap(Files.readAllBytes(snapshotPath)));
+                if (compilation != null) {
+                    compilation.setSchemaName(schemaName);
+                    return compilation;
+                }
+            } catch (IOException | RuntimeException e) {
+                //A truncated or unreadable snapshot is rebuilt below
+                System.err.println("Rebuilding unreadable snapshot : " + snapshotPath);
+            }
+        }
+
+        SchemaCompilation compilation = new SchemaCompilation();
+        compilation.setSchemaName(schemaName);
+        compilation.setSchemaFile(file);
+        compilation.compile(new ByteArrayInputStream(content));
+        if (compilation.getReferencedSchemaCount() == 0) {
+            store(snapshotPath, compilation);
+        }
+        return compilation;
+    }
+
+    /**
+     * Write the snapshot to a temporary file first, so that a concurrent reader never sees a partial snapshot
+     */
+    private void store(Path snapshotPath, SchemaCompilation compilation) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        Path temporaryPath = Files.createTempFile(cacheDirectory, "snapshot", ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+                CompilationSnapshot.write(compilation, output);
+            }
+            Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * SHA-256 of the schema content as a hex string
+     */
+    public static String contentHash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+}
@@ -0,0 +1,766 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.codegen;
+
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.CompiledType;
+import com.techsol.parser.SchemaCompilation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <h1>Message class generator</h1>
+ * <p>Generates Java sources specialised to one compiled schema, so that the message types of the hot paths are populated and
+ * rendered by straight-line code instead of by walking the compiled types:</p>
+ * <ul>
+ * <li>a plain class per complex type, with a field per child element, a String for a simple element</li>
+ * <li>{@value #SERIALIZER}, which writes the markup of the schema as pre-encoded UTF-8 bytes between the values of the fields</li>
+ * <li>{@value #SETTERS}, the setter of every leaf element by dotted path e.g. <code>FIToFICstmrCdtTrf.GrpHdr.MsgId</code>, to
+ * populate a message from MT fields through a mapping table</li>
+ * </ul>
+ * <p>The sources follow the compiled types as the runtime walks them, so a message renders to the same bytes as the
+ * {@link com.techsol.output.TemplateSkeleton} renders the {@link com.techsol.models.message.MessageInstance} populated through
+ * the same paths. The complex types that linking compiled more than once under one name share a class holding the children of
+ * all of them, while the serialiser keeps a method per compiled type, and per set of enclosing types where a type is cut short
+ * because it is already being expanded further up.</p>
+ * <p>Like the message instance, the classes hold one occurrence of every element. Attributes have no fields, so the attribute
+ * paths of a mapping, e.g. <code>FIToFICstmrCdtTrf.CdtTrfTxInf.IntrBkSttlmAmt@Ccy</code>, have no setter and are populated through
+ * the message instance instead.</p>
+ */
+public final class MessageClassGenerator {
+    public static final String SERIALIZER = "MessageSerializer";
+    public static final String SETTERS = "FieldSetters";
+    //Written before the root element, as the template skeleton writes it
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    //Markup of an empty complex type up to this many bytes is written in one go instead of through the method of the type
+    private static final int INLINE_LIMIT = 512;
+    //Characters per string literal of the markup, well below the 65535 bytes a class file constant holds
+    private static final int LITERAL_LENGTH = 8192;
+    //Setters registered per method, keeping every generated method far below the 64 KB of bytecode a method may hold
+    private static final int SETTERS_PER_METHOD = 200;
+    private static final Set<String> KEYWORDS = Set.of("abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+            "const", "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "goto", "if",
+            "implements", "import", "instanceof", "int", "interface", "long", "native", "new", "package", "private", "protected", "public",
+            "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try",
+            "void", "volatile", "while", "true", "false", "null", "var", "record", "yield", "sealed", "permits");
+    //Classes the generated sources refer to, which the class of a complex type must not hide
+    private static final Set<String> RESERVED_CLASS_NAMES = Set.of(SERIALIZER, SETTERS, "Object", "String", "Override", "IOException",
+            "XMLOutput", "MappingException", "StandardCharsets", "BiConsumer", "Collections", "HashMap", "LinkedHashMap", "Map", "Set");
+
+    private final String basePackage;
+
+    /**
+     * @param basePackage the package the package of every schema is generated in, e.g. com.techsol.generated
+     */
+    public MessageClassGenerator(String basePackage) {
+        this.basePackage = basePackage;
+    }
+
+    /**
+     * The package of the sources of a schema below the base package, e.g. mt103_schema for mt103_schema.xsd
+     *
+     * @param schemaName the file name of the schema
+     */
+    public static String packageNameOf(String schemaName) {
+        String name = schemaName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".xsd")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        String packageName = identifier(name);
+        return KEYWORDS.contains(packageName) ? packageName + "_" : packageName;
+    }
+
+    /**
+     * Generate the sources of the compiled schema into its package below the base package
+     *
+     * @param compilation     a compiled schema
+     * @param sourceDirectory the root of the generated source tree
+     * @return the generated files
+     * @throws IllegalStateException when an element is a simple type in one compiled type and a complex type in another of the same name
+     */
+    public List<Path> generate(SchemaCompilation compilation, Path sourceDirectory) throws IOException {
+        String schemaPackage = packageNameOf(compilation.getSchemaName());
+        String packageName = basePackage.isEmpty() ? schemaPackage : basePackage + "." + schemaPackage;
+        Sources sources = new Sources(compilation.getSchemaName(), packageName, compilation.getCompiledSchema());
+        sources.collectClasses();
+        Path packageDirectory = sourceDirectory.resolve(packageName.replace('.', '/'));
+        Files.createDirectories(packageDirectory);
+        //The classes of types the schema no longer declares are not left behind
+        try (DirectoryStream<Path> previousFiles = Files.newDirectoryStream(packageDirectory, "*.java")) {
+            for (Path previousFile : previousFiles) {
+                Files.delete(previousFile);
+            }
+        }
+        ArrayList<Path> files = new ArrayList<>();
+        for (MessageClass messageClass : sources.classes.values()) {
+            files.add(write(packageDirectory, messageClass.className, sources.messageClassSource(messageClass)));
+        }
+        files.add(write(packageDirectory, SERIALIZER, sources.serializerSource()));
+        files.add(write(packageDirectory, SETTERS, sources.settersSource()));
+        return files;
+    }
+
+    private static Path write(Path packageDirectory, String className, String source) throws IOException {
+        Path file = packageDirectory.resolve(className + ".java");
+        Files.writeString(file, source, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * The name with every character that cannot be part of a Java identifier replaced by an underscore
+     */
+    private static String identifier(String name) {
+        StringBuilder identifier = new StringBuilder(name.length() + 1);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            identifier.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        if (identifier.length() == 0 || !Character.isJavaIdentifierStart(identifier.charAt(0))) {
+            identifier.insert(0, '_');
+        }
+        return identifier.toString();
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * The field name of an element, decapitalized as a JavaBeans property e.g. msgId for MsgId but BIC for BIC
+     */
+    private static String fieldName(String elementName) {
+        String name = identifier(elementName);
+        if (!(name.length() > 1 && Character.isUpperCase(name.charAt(0)) && Character.isUpperCase(name.charAt(1)))) {
+            name = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+        }
+        return KEYWORDS.contains(name) ? name + "_" : name;
+    }
+
+    /**
+     * A Java string literal of the text, with everything outside printable ASCII escaped
+     */
+    private static String literal(CharSequence text) {
+        StringBuilder literal = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> literal.append("\\\"");
+                case '\\' -> literal.append("\\\\");
+                case '\n' -> literal.append("\\n");
+                default -> {
+                    if (c < 0x20 || c > 0x7e) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+                }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    /**
+     * The class generated for a complex type name
+     */
+    private static class MessageClass {
+        private final String typeName;
+        private final String className;
+        //Element name -> field, in the order the elements are first met
+        private final LinkedHashMap<String, Field> fields = new LinkedHashMap<>();
+        private final HashSet<String> fieldNames = new HashSet<>();
+
+        private MessageClass(String typeName, String className) {
+            this.typeName = typeName;
+            this.className = className;
+        }
+
+        /**
+         * The field of the element, added the first time the element is met
+         *
+         * @param fieldClass the class of a complex element, null for a simple one
+         */
+        private Field field(CompiledType complexType, CompiledElement element, MessageClass fieldClass) {
+            Field field = fields.get(element.getName());
+            if (field == null) {
+                String name = fieldName(element.getName());
+                //Accessors are told apart by the case of the field name after the first letter only
+                String unique = name;
+                for (int i = 2; !fieldNames.add(capitalize(unique).toLowerCase(Locale.ROOT)); i++) {
+                    unique = name + i;
+                }
+                field = new Field(element.getName(), unique, fieldClass);
+                fields.put(element.getName(), field);
+            } else if (field.fieldClass != fieldClass) {
+                throw new IllegalStateException("Element " + element.getName() + " of complex type " + complexType.getName()
+                        + " is " + describe(fieldClass) + " where another complex type of the same name has it as " + describe(field.fieldClass));
+            }
+            return field;
+        }
+
+        private static String describe(MessageClass fieldClass) {
+            return fieldClass == null ? "a simple type" : "complex type " + fieldClass.typeName;
+        }
+    }
+
+    /**
+     * A child element of a complex type
+     *
+     * @param elementName
+     * @param name        the name of the field
+     * @param fieldClass  the class of a complex element, null for a simple one
+     */
+    private record Field(String elementName, String name, MessageClass fieldClass) {
+        private String type() {
+            return fieldClass == null ? "String" : fieldClass.className;
+        }
+
+        private String accessor() {
+            return capitalize(name);
+        }
+    }
+
+    /**
+     * A serialiser method: the compiled type it writes, the enclosing types being expanded that the type can reach again, which
+     * are not expanded when empty, and whether the type is written as part of the template or as a message node, below which the
+     * enclosing types are counted from the node instead of from the root
+     */
+    private record MethodKey(CompiledType complexType, Set<CompiledType> expanding, boolean node) {
+    }
+
+    /**
+     * The sources of one schema
+     */
+    private static class Sources {
+        private final String schemaName;
+        private final String packageName;
+        private final CompiledSchema schema;
+        //Complex type name -> class
+        private final LinkedHashMap<String, MessageClass> classes = new LinkedHashMap<>();
+        private final HashSet<String> classNames = new HashSet<>();
+        //Compiled types in the order they are first met from the root type
+        private final ArrayList<CompiledType> compiledTypes = new ArrayList<>();
+        //Compiled type -> the compiled types below it, through the complex type every child resolves to
+        private final IdentityHashMap<CompiledType, Set<CompiledType>> reachable = new IdentityHashMap<>();
+        private final Set<CompiledType> recursive = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final LinkedHashMap<MethodKey, String> methodNames = new LinkedHashMap<>();
+        private final ArrayDeque<MethodKey> pendingMethods = new ArrayDeque<>();
+        private final HashMap<String, Integer> methodCounts = new HashMap<>();
+        //Empty markup of a method, null when longer than the inline limit
+        private final HashMap<MethodKey, String> emptyMarkups = new HashMap<>();
+        //The markup written by the serialiser, each distinct run once
+        private final StringBuilder markup = new StringBuilder();
+        private final HashMap<String, int[]> markupRuns = new HashMap<>();
+        private int markupBytes;
+
+        private Sources(String schemaName, String packageName, CompiledSchema schema) {
+            this.schemaName = schemaName;
+            this.packageName = packageName;
+            this.schema = schema;
+        }
+
+        private MessageClass messageClass(CompiledType complexType) {
+            return classes.computeIfAbsent(complexType.getName(), typeName -> {
+                String name = capitalize(identifier(typeName));
+                if (KEYWORDS.contains(name) || RESERVED_CLASS_NAMES.contains(name)) {
+                    name = name + "Type";
+                }
+                String unique = name;
+                for (int i = 2; !classNames.add(unique.toLowerCase(Locale.ROOT)); i++) {
+                    unique = name + i;
+                }
+                return new MessageClass(typeName, unique);
+            });
+        }
+
+        /**
+         * Walk the compiled types from the root type, giving every type name its class and every child element its field
+         */
+        private void collectClasses() {
+            Set<CompiledType> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            ArrayDeque<CompiledType> pending = new ArrayDeque<>();
+            seen.add(schema.getRootType());
+            pending.add(schema.getRootType());
+            while (!pending.isEmpty()) {
+                CompiledType complexType = pending.poll();
+                compiledTypes.add(complexType);
+                MessageClass messageClass = messageClass(complexType);
+                HashSet<String> names = new HashSet<>();
+                for (CompiledElement element : complexType.getChildrenElements()) {
+                    CompiledType childType = schema.resolveComplexType(element);
+                    if (names.add(element.getName())) {
+                        messageClass.field(complexType, element, childType == null ? null : messageClass(childType));
+                    }
+                    if (childType != null && seen.add(childType)) {
+                        pending.add(childType);
+                    }
+                }
+            }
+            for (CompiledType complexType : compiledTypes) {
+                Set<CompiledType> below = Collections.newSetFromMap(new IdentityHashMap<>());
+                ArrayDeque<CompiledType> walk = new ArrayDeque<>(List.of(complexType));
+                while (!walk.isEmpty()) {
+                    for (CompiledElement element : walk.poll().getChildrenElements()) {
+                        CompiledType childType = schema.resolveComplexType(element);
+                        if (childType != null && below.add(childType)) {
+                            walk.add(childType);
+                        }
+                    }
+                }
+                reachable.put(complexType, below);
+                if (below.contains(complexType)) {
+                    recursive.add(complexType);
+                }
+            }
+        }
+
+        /**
+         * The key of the method writing the complex type below the enclosing types, dropping the enclosing types it cannot reach
+         */
+        private MethodKey methodKey(CompiledType complexType, Set<CompiledType> enclosing, boolean node) {
+            Set<CompiledType> below = reachable.get(complexType);
+            Set<CompiledType> expanding = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (CompiledType enclosingType : enclosing) {
+                if (below.contains(enclosingType)) {
+                    expanding.add(enclosingType);
+                }
+            }
+            //Without recursion below the type, nothing below it is ever cut short whichever way it is written
+            boolean cyclic = recursive.contains(complexType);
+            for (CompiledType type : below) {
+                cyclic |= recursive.contains(type);
+            }
+            return new MethodKey(complexType, expanding, node && cyclic);
+        }
+
+        private String methodName(MethodKey key) {
+            return methodNames.computeIfAbsent(key, k -> {
+                pendingMethods.add(k);
+                String className = messageClass(k.complexType()).className;
+                int count = methodCounts.merge(className, 1, Integer::sum);
+                return "write" + className + (count > 1 ? "_" + count : "");
+            });
+        }
+
+        /**
+         * The enclosing types inside the method, the type itself included
+         */
+        private static Set<CompiledType> inside(MethodKey key) {
+            Set<CompiledType> inside = Collections.newSetFromMap(new IdentityHashMap<>());
+            inside.addAll(key.expanding());
+            inside.add(key.complexType());
+            return inside;
+        }
+
+        /**
+         * Whether the element is expanded into its complex type when empty, as opposed to written as an empty element
+         */
+        private static boolean expands(CompiledElement element, Set<CompiledType> inside) {
+            return element.getComplexType() != null && !inside.contains(element.getComplexType());
+        }
+
+        /**
+         * The markup of the method writing an empty instance of its type, null when longer than the inline limit
+         */
+        private String emptyMarkup(MethodKey key) {
+            if (emptyMarkups.containsKey(key)) {
+                return emptyMarkups.get(key);
+            }
+            Set<CompiledType> inside = inside(key);
+            StringBuilder empty = new StringBuilder();
+            for (CompiledElement element : key.complexType().getChildrenElements()) {
+                empty.append('<').append(element.getName()).append('>');
+                if (expands(element, inside)) {
+                    String childMarkup = emptyMarkup(methodKey(element.getComplexType(), inside, key.node()));
+                    if (childMarkup == null) {
+                        empty = null;
+                        break;
+                    }
+                    empty.append(childMarkup);
+                }
+                empty.append("</").append(element.getName()).append(">\n");
+                if (empty.length() > INLINE_LIMIT) {
+                    empty = null;
+                    break;
+                }
+            }
+            String emptyMarkup = empty == null || empty.toString().getBytes(StandardCharsets.UTF_8).length > INLINE_LIMIT ? null : empty.toString();
+            emptyMarkups.put(key, emptyMarkup);
+            return emptyMarkup;
+        }
+
+        /**
+         * The offset and length of the run in the markup, appending it unless the markup already holds it
+         */
+        private int[] markupRun(String run) {
+            return markupRuns.computeIfAbsent(run, r -> {
+                int length = r.getBytes(StandardCharsets.UTF_8).length;
+                int index = markup.indexOf(r);
+                if (index >= 0) {
+                    return new int[]{markup.substring(0, index).getBytes(StandardCharsets.UTF_8).length, length};
+                }
+                int[] offsetAndLength = {markupBytes, length};
+                markup.append(r);
+                markupBytes += length;
+                return offsetAndLength;
+            });
+        }
+
+        private String messageClassSource(MessageClass messageClass) {
+            StringBuilder source = new StringBuilder();
+            source.append("package ").append(packageName).append(";\n\n");
+            source.append("/**\n");
+            source.append(" * <h1>").append(messageClass.typeName).append("</h1>\n");
+            source.append(" * <p>Complex type ").append(messageClass.typeName).append(" of ").append(schemaName)
+                    .append(", generated by MessageClassGenerator, do not edit</p>\n");
+            source.append(" */\n");
+            source.append("public class ").append(messageClass.className).append(" {\n");
+            for (Field field : messageClass.fields.values()) {
+                source.append("    private ").append(field.type()).append(' ').append(field.name()).append(";\n");
+            }
+            for (Field field : messageClass.fields.values()) {
+                source.append('\n');
+                source.append("    public ").append(field.type()).append(" get").append(field.accessor()).append("() {\n");
+                source.append("        return ").append(field.name()).append(";\n");
+                source.append("    }\n\n");
+                source.append("    public void set").append(field.accessor()).append('(').append(field.type()).append(' ').append(field.name()).append(") {\n");
+                source.append("        this.").append(field.name()).append(" = ").append(field.name()).append(";\n");
+                source.append("    }\n");
+                if (field.fieldClass() != null) {
+                    source.append('\n');
+                    source.append("    public ").append(field.type()).append(" getOrCreate").append(field.accessor()).append("() {\n");
+                    source.append("        if (").append(field.name()).append(" == null) {\n");
+                    source.append("            ").append(field.name()).append(" = new ").append(field.type()).append("();\n");
+                    source.append("        }\n");
+                    source.append("        return ").append(field.name()).append(";\n");
+                    source.append("    }\n");
+                }
+            }
+            source.append("}\n");
+            return source.toString();
+        }
+
+        private String serializerSource() {
+            CompiledType rootType = schema.getRootType();
+            MessageClass rootClass = messageClass(rootType);
+            StringBuilder methods = new StringBuilder();
+            MethodKey rootKey = methodKey(rootType, Set.of(), false);
+            Statements write = new Statements("        ");
+            write.markup(DECLARATION + "<" + rootType.getName() + ">");
+            write.statement(methodName(rootKey) + "(message, output);");
+            write.markup("</" + rootType.getName() + ">");
+            write.statement("output.flush();");
+            while (!pendingMethods.isEmpty()) {
+                MethodKey key = pendingMethods.poll();
+                methods.append('\n').append(method(key));
+            }
+
+            StringBuilder source = new StringBuilder();
+            source.append("package ").append(packageName).append(";\n\n");
+            source.append("import com.techsol.output.XMLOutput;\n\n");
+            source.append("import java.io.IOException;\n");
+            source.append("import java.nio.charset.StandardCharsets;\n\n");
+            source.append("/**\n");
+            source.append(" * <h1>Message serializer</h1>\n");
+            source.append(" * <p>Renders a ").append(rootClass.className).append(" of ").append(schemaName)
+                    .append(" as the template skeleton of the schema renders it, generated by MessageClassGenerator, do not edit</p>\n");
+            source.append(" */\n");
+            source.append("public final class ").append(SERIALIZER).append(" {\n");
+            source.append("    //The markup of the schema, each run of markup between two values once\n");
+            source.append("    private static final byte[] MARKUP = String.join(\"\",");
+            for (int i = 0; i < markup.length(); i += LITERAL_LENGTH) {
+                source.append(i == 0 ? "\n" : ",\n").append("            ").append(literal(markup.subSequence(i, Math.min(markup.length(), i + LITERAL_LENGTH))));
+            }
+            source.append(").getBytes(StandardCharsets.UTF_8);\n\n");
+            source.append("    private ").append(SERIALIZER).append("() {\n");
+            source.append("    }\n\n");
+            source.append("    /**\n");
+            source.append("     * Render the message and flush it to the channel of the output\n");
+            source.append("     */\n");
+            source.append("    public static void write(").append(rootClass.className).append(" message, XMLOutput output) throws IOException {\n");
+            source.append(write.code());
+            source.append("    }\n\n");
+            source.append("    private static void text(String value, XMLOutput output) throws IOException {\n");
+            source.append("        if (value != null) {\n");
+            source.append("            output.writeText(value);\n");
+            source.append("        }\n");
+            source.append("    }\n");
+            source.append(methods);
+            source.append("}\n");
+            return source.toString();
+        }
+
+        /**
+         * The method writing an instance of the type of the key, or the empty markup of the type for null
+         */
+        private String method(MethodKey key) {
+            MessageClass messageClass = messageClass(key.complexType());
+            Set<CompiledType> inside = inside(key);
+            Statements empty = new Statements("            ");
+            Statements populated = new Statements("        ");
+            String emptyMarkup = emptyMarkup(key);
+            if (emptyMarkup != null) {
+                empty.markup(emptyMarkup);
+            }
+            //The message instance only ever writes to the first child of a name
+            HashSet<String> names = new HashSet<>();
+            for (CompiledElement element : key.complexType().getChildrenElements()) {
+                String startTag = "<" + element.getName() + ">";
+                String endTag = "</" + element.getName() + ">\n";
+                Field field = messageClass.fields.get(element.getName());
+                boolean written = names.add(element.getName());
+                String value = "value.get" + field.accessor() + "()";
+                if (expands(element, inside)) {
+                    String childMethod = methodName(methodKey(element.getComplexType(), inside, key.node()));
+                    if (emptyMarkup == null) {
+                        String childMarkup = emptyMarkup(methodKey(element.getComplexType(), inside, key.node()));
+                        empty.markup(startTag);
+                        if (childMarkup != null) {
+                            empty.markup(childMarkup);
+                        } else {
+                            empty.statement(childMethod + "(null, output);");
+                        }
+                        empty.markup(endTag);
+                    }
+                    populated.markup(startTag);
+                    populated.statement(childMethod + "(" + (written ? value : "null") + ", output);");
+                    populated.markup(endTag);
+                    continue;
+                }
+                if (emptyMarkup == null) {
+                    empty.markup(startTag + endTag);
+                }
+                populated.markup(startTag);
+                if (written && field.fieldClass() == null) {
+                    populated.statement("text(" + value + ", output);");
+                } else if (written) {
+                    //Cut short or not attached, so only written when the message holds it, as a node of its own
+                    CompiledType childType = schema.resolveComplexType(element);
+                    String childMethod = methodName(methodKey(childType, key.node() ? inside : Set.of(), true));
+                    populated.statement("if (" + value + " != null) {");
+                    populated.statement("    " + childMethod + "(" + value + ", output);");
+                    populated.statement("}");
+                }
+                populated.markup(endTag);
+            }
+
+            StringBuilder method = new StringBuilder();
+            method.append("    private static void ").append(methodName(key)).append('(').append(messageClass.className)
+                    .append(" value, XMLOutput output) throws IOException {\n");
+            method.append("        if (value == null) {\n");
+            method.append(empty.code());
+            method.append("            return;\n");
+            method.append("        }\n");
+            method.append(populated.code());
+            method.append("    }\n");
+            return method.toString();
+        }
+
+        /**
+         * Every leaf path of the schema with the chain of accessors from the root class to the setter of the leaf
+         */
+        private LinkedHashMap<String, String> setterChains() {
+            LinkedHashMap<String, String> chains = new LinkedHashMap<>();
+            ArrayList<CompiledType> path = new ArrayList<>();
+            path.add(schema.getRootType());
+            collectSetters(schema.getRootType(), "", "message", path, chains);
+            return chains;
+        }
+
+        private void collectSetters(CompiledType complexType, String dottedPath, String chain, ArrayList<CompiledType> path,
+                                    LinkedHashMap<String, String> chains) {
+            MessageClass messageClass = messageClass(complexType);
+            HashSet<String> names = new HashSet<>();
+            for (CompiledElement element : complexType.getChildrenElements()) {
+                if (!names.add(element.getName())) {
+                    continue;
+                }
+                Field field = messageClass.fields.get(element.getName());
+                String elementPath = dottedPath.isEmpty() ? element.getName() : dottedPath + "." + element.getName();
+                CompiledType childType = schema.resolveComplexType(element);
+                if (childType == null) {
+                    chains.putIfAbsent(elementPath, chain + ".set" + field.accessor() + "(value)");
+                } else if (path.stream().noneMatch(type -> type == childType)) {
+                    //Paths of recursive types end where the type repeats
+                    path.add(childType);
+                    collectSetters(childType, elementPath, chain + ".getOrCreate" + field.accessor() + "()", path, chains);
+                    path.remove(path.size() - 1);
+                }
+            }
+        }
+
+        private String settersSource() {
+            String rootClass = messageClass(schema.getRootType()).className;
+            LinkedHashMap<String, String> chains = setterChains();
+            StringBuilder registrations = new StringBuilder();
+            int methodCount = 0;
+            int count = 0;
+            for (Map.Entry<String, String> chain : chains.entrySet()) {
+                if (count++ % SETTERS_PER_METHOD == 0) {
+                    registrations.append(methodCount == 0 ? "" : "    }\n").append('\n');
+                    registrations.append("    private static void register").append(methodCount++).append("() {\n");
+                }
+                registrations.append("        SETTERS.put(").append(literal(chain.getKey())).append(", (message, value) -> ")
+                        .append(chain.getValue()).append(");\n");
+            }
+            if (methodCount > 0) {
+                registrations.append("    }\n");
+            }
+
+            StringBuilder source = new StringBuilder();
+            source.append("package ").append(packageName).append(";\n\n");
+            source.append("import com.techsol.mapping.MappingException;\n\n");
+            source.append("import java.util.ArrayList;\n");
+            source.append("import java.util.Collections;\n");
+            source.append("import java.util.HashMap;\n");
+            source.append("import java.util.LinkedHashMap;\n");
+            source.append("import java.util.List;\n");
+            source.append("import java.util.Map;\n");
+            source.append("import java.util.Set;\n");
+            source.append("import java.util.function.BiConsumer;\n\n");
+            source.append("/**\n");
+            source.append(" * <h1>Field setters</h1>\n");
+            source.append(" * <p>The setter of every leaf element of ").append(schemaName)
+                    .append(" by dotted path, e.g. FIToFICstmrCdtTrf.GrpHdr.MsgId, generated by MessageClassGenerator, do not edit</p>\n");
+            source.append(" */\n");
+            source.append("public final class ").append(SETTERS).append(" {\n");
+            source.append("    private static final Map<String, BiConsumer<").append(rootClass).append(", String>> SETTERS = new HashMap<>(")
+                    .append(Math.max(16, chains.size() * 4 / 3 + 1)).append(");\n\n");
+            source.append("    static {\n");
+            for (int i = 0; i < methodCount; i++) {
+                source.append("        register").append(i).append("();\n");
+            }
+            source.append("    }\n\n");
+            source.append("    private ").append(SETTERS).append("() {\n");
+            source.append("    }\n\n");
+            source.append("    /**\n");
+            source.append("     * @param path the dotted path of a leaf element\n");
+            source.append("     * @return the setter of the element, or null when the path is not a leaf of the schema\n");
+            source.append("     */\n");
+            source.append("    public static BiConsumer<").append(rootClass).append(", String> setter(String path) {\n");
+            source.append("        return SETTERS.get(path);\n");
+            source.append("    }\n\n");
+            source.append("    /**\n");
+            source.append("     * Write the value to the leaf element of the path\n");
+            source.append("     *\n");
+            source.append("     * @return whether the path is a leaf of the schema\n");
+            source.append("     */\n");
+            source.append("    public static boolean set(").append(rootClass).append(" message, String path, String value) {\n");
+            source.append("        BiConsumer<").append(rootClass).append(", String> setter = SETTERS.get(path);\n");
+            source.append("        if (setter == null) {\n");
+            source.append("            return false;\n");
+            source.append("        }\n");
+            source.append("        setter.accept(message, value);\n");
+            source.append("        return true;\n");
+            source.append("    }\n\n");
+            source.append("    public static Set<String> paths() {\n");
+            source.append("        return Collections.unmodifiableSet(SETTERS.keySet());\n");
+            source.append("    }\n\n");
+            source.append("    /**\n");
+            source.append("     * Compile the mappings into the setter of every MT tag, the first mapping of a tag winning\n");
+            source.append("     *\n");
+            source.append("     * @param mappings the mappings in the form tag:path\n");
+            source.append("     * @return MT tag -> setter\n");
+            source.append("     * @throws MappingException listing every mapping whose path is not a leaf of the schema\n");
+            source.append("     */\n");
+            source.append("    public static Map<String, BiConsumer<").append(rootClass).append(", String>> compile(String... mappings) {\n");
+            source.append("        LinkedHashMap<String, BiConsumer<").append(rootClass).append(", String>> setters = new LinkedHashMap<>();\n");
+            source.append("        List<String> unknownMappings = new ArrayList<>();\n");
+            source.append("        for (String mapping : mappings) {\n");
+            source.append("            int separator = mapping.indexOf(':');\n");
+            source.append("            if (separator < 0) {\n");
+            source.append("                throw new MappingException(\"Mapping \" + mapping + \" is not in the form tag:path\");\n");
+            source.append("            }\n");
+            source.append("            String tag = mapping.substring(0, separator);\n");
+            source.append("            if (setters.containsKey(tag)) {\n");
+            source.append("                continue;\n");
+            source.append("            }\n");
+            source.append("            BiConsumer<").append(rootClass).append(", String> setter = SETTERS.get(mapping.substring(separator + 1));\n");
+            source.append("            if (setter == null) {\n");
+            source.append("                unknownMappings.add(mapping);\n");
+            source.append("            } else {\n");
+            source.append("                setters.put(tag, setter);\n");
+            source.append("            }\n");
+            source.append("        }\n");
+            source.append("        if (!unknownMappings.isEmpty()) {\n");
+            source.append("            throw new MappingException(\"Unknown paths in schema ").append(schemaName)
+                    .append(" :\\n\" + String.join(\"\\n\", unknownMappings));\n");
+            source.append("        }\n");
+            source.append("        return setters;\n");
+            source.append("    }\n\n");
+            source.append("    /**\n");
+            source.append("     * Write the MT fields to the message\n");
+            source.append("     *\n");
+            source.append("     * @param setters  the compiled mappings\n");
+            source.append("     * @param mtFields the fields in the form tag:value\n");
+            source.append("     */\n");
+            source.append("    public static void populate(").append(rootClass).append(" message, Map<String, BiConsumer<").append(rootClass)
+                    .append(", String>> setters, String... mtFields) {\n");
+            source.append("        for (String field : mtFields) {\n");
+            source.append("            int separator = field.indexOf(':');\n");
+            source.append("            if (separator > 0) {\n");
+            source.append("                BiConsumer<").append(rootClass).append(", String> setter = setters.get(field.substring(0, separator));\n");
+            source.append("                if (setter != null) {\n");
+            source.append("                    setter.accept(message, field.substring(separator + 1));\n");
+            source.append("                }\n");
+            source.append("            }\n");
+            source.append("        }\n");
+            source.append("    }\n");
+            source.append(registrations);
+            source.append("}\n");
+            return source.toString();
+        }
+
+        /**
+         * The statements of a method body, merging consecutive markup into a single write of the markup bytes
+         */
+        private class Statements {
+            private final String indent;
+            private final StringBuilder code = new StringBuilder();
+            private final StringBuilder pendingMarkup = new StringBuilder();
+
+            private Statements(String indent) {
+                this.indent = indent;
+            }
+
+            private void markup(String text) {
+                pendingMarkup.append(text);
+            }
+
+            private void statement(String statement) {
+                flushMarkup();
+                code.append(indent).append(statement).append('\n');
+            }
+
+            private void flushMarkup() {
+                if (pendingMarkup.length() > 0) {
+                    int[] run = markupRun(pendingMarkup.toString());
+                    code.append(indent).append("output.writeBytes(MARKUP, ").append(run[0]).append(", ").append(run[1]).append(");\n");
+                    pendingMarkup.setLength(0);
+                }
+            }
+
+            private String code() {
+                flushMarkup();
+                return code.toString();
+            }
+        }
+    }
+}
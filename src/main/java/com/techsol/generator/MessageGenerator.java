@@ -0,0 +1,509 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.generator;
+
+import com.techsol.archive.ArchiveWriter;
+import com.techsol.batch.BatchConverter.BatchResult;
+import com.techsol.batch.OrderedWriter;
+import com.techsol.models.compiled.CompiledAttribute;
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSimpleType;
+import com.techsol.models.compiled.CompiledType;
+import com.techsol.output.PrunedRenderer;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.output.XMLOutput;
+import com.techsol.validation.MessageValidator;
+import com.techsol.validation.Violation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Synthetic message generator</h1>
+ * <p>Generates any number of valid messages of a schema for load testing. Every leaf element of the template skeleton with a
+ * simple type or simple content, such as an amount, and every attribute, such as its currency, gets a value producer compiled
+ * from the facets of its simple type, and a message is the skeleton rendered with one produced value per slot, so no message tree
+ * is built.</p>
+ * <p>The messages are generated in chunks by several threads. Each chunk draws from its own random generator seeded from the
+ * seed of the run and the position of the chunk, so a seed always generates the same messages whatever the number of threads.</p>
+ * <p>One alternative of every choice is picked at random for each message and only its slots get values. An optional element or
+ * an alternative that can not be written validly gets no values, so that it is left out in pruned mode: one below which a required
+ * element only holds content the schema leaves open (xs:any), or is not expanded by the skeleton although its complex type requires
+ * elements. A skeleton that expands the declared complex types, see {@link TemplateSkeleton#compile(com.techsol.models.compiled.CompiledSchema, int, boolean)},
+ * leaves only the recursive elements unexpanded.</p>
+ * <p>Only the pruned output is valid against the schema. The full template writes every optional element and alternative,
+ * empty when it got no value.</p>
+ * <p>Given the validator of the schema, every generated message is validated and a chunk holding an invalid message fails.</p>
+ */
+public class MessageGenerator {
+    //Messages per chunk claimed by a worker
+    private static final int CHUNK_SIZE = 64;
+    //Spreads the seeds of consecutive chunks
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final TemplateSkeleton skeleton;
+    //Producer of each slot, null for a slot that stays empty
+    private final ValueProducer[] producers;
+    //The choices with more than one alternative that gets values, of which a message only writes one
+    private final ChoiceGroup[] choiceGroups;
+    //Validates every generated message, null when the messages are not validated
+    private final MessageValidator validator;
+    //Renders the populated and mandatory elements only, null when every element is rendered
+    private final PrunedRenderer prunedRenderer;
+    private final long seed;
+    private final int threads;
+
+    /**
+     * @param skeleton the skeleton of the schema
+     * @param seed     the seed of the run
+     * @param threads  the number of worker threads
+     */
+    public MessageGenerator(TemplateSkeleton skeleton, long seed, int threads) {
+        this(skeleton, seed, threads, false);
+    }
+
+    /**
+     * @param skeleton the skeleton of the schema
+     * @param seed     the seed of the run
+     * @param threads  the number of worker threads
+     * @param pruned   whether to only write the populated and mandatory elements
+     */
+    public MessageGenerator(TemplateSkeleton skeleton, long seed, int threads, boolean pruned) {
+        this(skeleton, seed, threads, pruned, null);
+    }
+
+    /**
+     * @param skeleton  the skeleton of the schema
+     * @param seed      the seed of the run
+     * @param threads   the number of worker threads
+     * @param pruned    whether to only write the populated and mandatory elements
+     * @param validator the validator of the schema of the skeleton to validate every message with, or null
+     */
+    public MessageGenerator(TemplateSkeleton skeleton, long seed, int threads, boolean pruned, MessageValidator validator) {
+        if (validator != null && validator.getSkeleton().getSlotCount() != skeleton.getSlotCount()) {
+            throw new IllegalArgumentException("The validator of " + validator.getSkeleton().getSchema().getName() + " does not lay out the slots of the skeleton");
+        }
+        this.skeleton = skeleton;
+        this.validator = validator;
+        this.prunedRenderer = pruned ? PrunedRenderer.compile(skeleton) : null;
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+        this.producers = new ValueProducer[skeleton.getSlotCount()];
+        //Elements of the same simple type share its producer
+        HashMap<CompiledSimpleType, ValueProducer> producersByType = new HashMap<>();
+        for (int slot = 0; slot < producers.length; slot++) {
+            if (skeleton.isExpandable(slot)) {
+                continue;
+            }
+            CompiledSimpleType simpleType = valueType(skeleton, slot);
+            if (simpleType != null) {
+                producers[slot] = producersByType.computeIfAbsent(simpleType, ValueProducers::forSimpleType);
+            }
+        }
+        leaveOutUnwritable(skeleton, compileSubtrees(skeleton), producers);
+        this.choiceGroups = compileChoiceGroups(skeleton, producers);
+    }
+
+    /**
+     * The simple type of the values of the slot: of its attribute, of its element, or the one the simple content of the complex type
+     * of its element extends
+     */
+    private static CompiledSimpleType valueType(TemplateSkeleton skeleton, int slot) {
+        CompiledAttribute attribute = skeleton.getSlotAttribute(slot);
+        if (attribute != null) {
+            return attribute.simpleType();
+        }
+        CompiledElement element = skeleton.getSlotElement(slot);
+        if (element.getSimpleType() != null) {
+            return element.getSimpleType();
+        }
+        CompiledType complexType = skeleton.contentType(element);
+        return complexType != null ? complexType.getSimpleContent() : null;
+    }
+
+    /**
+     * The elements above the slots, the slots below an element being contiguous
+     *
+     * @return the subtrees with every parent before its children, starting with the subtree of the root whose element is null
+     */
+    private static ArrayList<Subtree> compileSubtrees(TemplateSkeleton skeleton) {
+        ArrayList<Subtree> subtrees = new ArrayList<>(List.of(new Subtree(null, 0)));
+        ArrayList<Subtree> open = new ArrayList<>(subtrees);
+        int[] previousPath = new int[0];
+        for (int slot = 0; slot < skeleton.getSlotCount(); slot++) {
+            int[] path = skeleton.getSlotPath(slot);
+            int common = 0;
+            while (common < previousPath.length && common < path.length && previousPath[common] == path[common]) {
+                common++;
+            }
+            while (open.size() > common + 1) {
+                open.remove(open.size() - 1).end = slot;
+            }
+            CompiledType complexType = skeleton.getSchema().getRootType();
+            for (int depth = 0; depth < path.length; depth++) {
+                CompiledElement element = complexType.getChild(path[depth]);
+                if (depth >= common) {
+                    Subtree subtree = new Subtree(element, slot);
+                    open.get(open.size() - 1).children.add(subtree);
+                    open.add(subtree);
+                    subtrees.add(subtree);
+                }
+                if (depth < path.length - 1) {
+                    complexType = skeleton.expandedType(element);
+                }
+            }
+            open.get(open.size() - 1).slots.add(slot);
+            previousPath = path;
+        }
+        for (Subtree subtree : open) {
+            subtree.end = skeleton.getSlotCount();
+        }
+        return subtrees;
+    }
+
+    /**
+     * Take the producers away from the optional elements and the alternatives that can not be written validly
+     *
+     * @param subtrees every parent before its children
+     */
+    private static void leaveOutUnwritable(TemplateSkeleton skeleton, ArrayList<Subtree> subtrees, ValueProducer[] producers) {
+        //Children first, so the subtrees below an element are settled before it
+        for (int i = subtrees.size() - 1; i >= 0; i--) {
+            Subtree subtree = subtrees.get(i);
+            boolean hasChoice = false;
+            boolean choiceOptional = false;
+            boolean alternativeWritable = false;
+            for (Subtree child : subtree.children) {
+                if (child.element.isChoice()) {
+                    hasChoice = true;
+                    choiceOptional |= child.element.getMinOccurs() == 0;
+                    alternativeWritable |= child.writable;
+                } else if (child.element.getMinOccurs() > 0) {
+                    subtree.writable &= child.writable;
+                }
+                if (!child.writable && (child.element.isChoice() || child.element.getMinOccurs() == 0)) {
+                    Arrays.fill(producers, child.start, child.end, null);
+                }
+            }
+            subtree.writable &= !hasChoice || choiceOptional || alternativeWritable;
+            for (int slot : subtree.slots) {
+                subtree.writable &= producers[slot] != null || !requiresValue(skeleton, slot);
+            }
+        }
+    }
+
+    /**
+     * Whether a message without a value in the slot is not valid once the element of the slot is written: the slot of a required
+     * attribute, or of an element the skeleton does not expand although its complex type requires elements
+     */
+    private static boolean requiresValue(TemplateSkeleton skeleton, int slot) {
+        CompiledAttribute attribute = skeleton.getSlotAttribute(slot);
+        if (attribute != null) {
+            return attribute.required();
+        }
+        CompiledType complexType = skeleton.isExpandable(slot) ? skeleton.contentType(skeleton.getSlotElement(slot)) : null;
+        if (complexType == null) {
+            return false;
+        }
+        if (complexType.isAnyElementRequired()) {
+            return true;
+        }
+        boolean hasChoice = false;
+        boolean choiceOptional = false;
+        for (int i = 0; i < complexType.getChildCount(); i++) {
+            CompiledElement child = complexType.getChild(i);
+            if (child.isChoice()) {
+                hasChoice = true;
+                choiceOptional |= child.getMinOccurs() == 0;
+            } else if (child.getMinOccurs() > 0) {
+                return true;
+            }
+        }
+        return hasChoice && !choiceOptional;
+    }
+
+    /**
+     * The slot ranges of the alternatives of every choice of the template that get values
+     * <p>The slots of an alternative are contiguous, and the alternatives of a choice are told apart by the path of the
+     * complex type holding them</p>
+     */
+    private static ChoiceGroup[] compileChoiceGroups(TemplateSkeleton skeleton, ValueProducer[] producers) {
+        //Path of the complex type holding the choice -> [child index, start, end, produced slots] of each alternative
+        LinkedHashMap<String, ArrayList<int[]>> alternativesByChoice = new LinkedHashMap<>();
+        for (int slot = 0; slot < producers.length; slot++) {
+            int[] path = skeleton.getSlotPath(slot);
+            CompiledType complexType = skeleton.getSchema().getRootType();
+            for (int depth = 0; depth < path.length; depth++) {
+                CompiledElement element = complexType.getChild(path[depth]);
+                if (element.isChoice()) {
+                    ArrayList<int[]> alternatives = alternativesByChoice.computeIfAbsent(Arrays.toString(Arrays.copyOf(path, depth)), key -> new ArrayList<>());
+                    int[] alternative = alternatives.isEmpty() ? null : alternatives.get(alternatives.size() - 1);
+                    if (alternative == null || alternative[0] != path[depth]) {
+                        alternative = new int[]{path[depth], slot, slot, 0};
+                        alternatives.add(alternative);
+                    }
+                    alternative[2] = slot + 1;
+                    if (producers[slot] != null) {
+                        alternative[3]++;
+                    }
+                }
+                if (depth < path.length - 1) {
+                    complexType = skeleton.expandedType(element);
+                }
+            }
+        }
+        ArrayList<ChoiceGroup> choiceGroups = new ArrayList<>();
+        for (ArrayList<int[]> alternatives : alternativesByChoice.values()) {
+            //An alternative without values is never written, so it is never picked either
+            int[][] produced = alternatives.stream().filter(alternative -> alternative[3] > 0).toArray(int[][]::new);
+            if (produced.length > 1) {
+                choiceGroups.add(new ChoiceGroup(Arrays.stream(produced).mapToInt(alternative -> alternative[1]).toArray(),
+                        Arrays.stream(produced).mapToInt(alternative -> alternative[2]).toArray()));
+            }
+        }
+        return choiceGroups.toArray(new ChoiceGroup[0]);
+    }
+
+    /**
+     * Write the generated documents one after the other to the output stream, each followed by a new line
+     *
+     * @param count        the number of messages to generate
+     * @param outputStream
+     * @return the counts and timing of the run
+     */
+    public BatchResult generateToStream(long count, OutputStream outputStream) throws IOException, InterruptedException {
+        OrderedWriter orderedWriter = new OrderedWriter(outputStream);
+        //Chunks a worker may finish ahead of the chunk being written
+        int window = threads * 4;
+        ThreadLocal<ByteArrayOutputStream> chunkBuffers = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(CHUNK_SIZE * 16384));
+        BatchResult result = generate(count, (chunk, slotValues, output) -> {
+            orderedWriter.awaitWindow(chunk, window);
+            ByteArrayOutputStream documents = chunkBuffers.get();
+            documents.reset();
+            output.open(documents);
+            for (String[] values : slotValues) {
+                render(values, output);
+                output.newLine();
+            }
+            output.flush();
+            orderedWriter.write(chunk, documents.toByteArray());
+            return slotValues.length;
+        }, chunk -> orderedWriter.write(chunk, null));
+        orderedWriter.checkError();
+        outputStream.flush();
+        return result;
+    }
+
+    /**
+     * Write one XML file per generated message to the output directory, named after the position of the message
+     *
+     * @param count           the number of messages to generate
+     * @param outputDirectory
+     * @return the counts and timing of the run
+     */
+    public BatchResult generateToDirectory(long count, Path outputDirectory) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        return generate(count, (chunk, slotValues, output) -> {
+            int written = 0;
+            for (int i = 0; i < slotValues.length; i++) {
+                long sequence = (chunk - 1) * CHUNK_SIZE + i + 1;
+                Path outputPath = outputDirectory.resolve(String.format("message_%08d.xml", sequence));
+                try (FileChannel channel = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    render(slotValues[i], output.open(channel));
+                    written++;
+                } catch (IOException e) {
+                    System.err.println("Failed to write message " + sequence + " : " + e);
+                }
+            }
+            return written;
+        }, chunk -> {
+        });
+    }
+
+    /**
+     * Compress the generated documents into the archive, named after the position of the message, and finish the archive
+     *
+     * @param count   the number of messages to generate
+     * @param archive
+     * @return the counts and timing of the run
+     */
+    public BatchResult generateToArchive(long count, ArchiveWriter archive) throws IOException, InterruptedException {
+        //Chunks a worker may finish ahead of the chunk being appended
+        int window = threads * 4;
+        ThreadLocal<ByteArrayOutputStream> chunkBuffers = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(CHUNK_SIZE * 16384));
+        BatchResult result = generate(count, (chunk, slotValues, output) -> {
+            archive.awaitWindow(chunk, window);
+            ByteArrayOutputStream documents = chunkBuffers.get();
+            documents.reset();
+            output.open(documents);
+            ArrayList<ArchiveWriter.Entry> entries = new ArrayList<>(slotValues.length);
+            for (int i = 0; i < slotValues.length; i++) {
+                int start = (int) output.getBytesWritten();
+                render(slotValues[i], output);
+                long sequence = (chunk - 1) * CHUNK_SIZE + i + 1;
+                entries.add(new ArchiveWriter.Entry(String.format("message_%08d.xml", sequence), start, (int) output.getBytesWritten() - start));
+                output.newLine();
+            }
+            output.flush();
+            archive.append(chunk, documents.toByteArray(), entries);
+            return slotValues.length;
+        }, archive::skip);
+        archive.finish();
+        return result;
+    }
+
+    /**
+     * The slot values of the messages of the chunk, the same for a chunk and seed on every run
+     *
+     * @param chunk        the position of the chunk, starting at 1
+     * @param messageCount the number of messages in the chunk
+     * @throws IllegalStateException when a message is not valid against the validator of the generator
+     */
+    public String[][] generateChunk(long chunk, int messageCount) {
+        SplittableRandom random = new SplittableRandom(seed ^ (chunk * GOLDEN_GAMMA));
+        String[][] slotValues = new String[messageCount][producers.length];
+        //Slots of the alternatives not picked for the message
+        boolean[] skipped = new boolean[producers.length];
+        for (int message = 0; message < messageCount; message++) {
+            String[] values = slotValues[message];
+            Arrays.fill(skipped, false);
+            for (ChoiceGroup choiceGroup : choiceGroups) {
+                int picked = random.nextInt(choiceGroup.starts.length);
+                for (int alternative = 0; alternative < choiceGroup.starts.length; alternative++) {
+                    if (alternative != picked) {
+                        Arrays.fill(skipped, choiceGroup.starts[alternative], choiceGroup.ends[alternative], true);
+                    }
+                }
+            }
+            for (int slot = 0; slot < producers.length; slot++) {
+                if (producers[slot] != null && !skipped[slot]) {
+                    values[slot] = producers[slot].next(random);
+                }
+            }
+            if (validator != null) {
+                Violation violation = validator.validate(values);
+                if (violation != null) {
+                    throw new IllegalStateException("Message " + ((chunk - 1) * CHUNK_SIZE + message + 1) + " is not valid : " + violation);
+                }
+            }
+        }
+        return slotValues;
+    }
+
+    private void render(String[] slotValues, XMLOutput output) throws IOException {
+        if (prunedRenderer != null) {
+            prunedRenderer.render(slotValues, output);
+        } else {
+            skeleton.render(slotValues, output);
+        }
+    }
+
+    private BatchResult generate(long count, ChunkSink sink, SkippedChunkSink skippedChunkSink) throws IOException, InterruptedException {
+        long chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        AtomicLong nextChunk = new AtomicLong(1);
+        AtomicLong generated = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long start = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(workers.submit(() -> {
+                XMLOutput output = new XMLOutput();
+                long chunk;
+                //Chunks are claimed in order, so the chunk the ordered writer waits for is always being worked on
+                while ((chunk = nextChunk.getAndIncrement()) <= chunks) {
+                    int messageCount = (int) Math.min(CHUNK_SIZE, count - (chunk - 1) * CHUNK_SIZE);
+                    try {
+                        int written = sink.write(chunk, generateChunk(chunk, messageCount), output);
+                        generated.addAndGet(written);
+                        failed.addAndGet(messageCount - written);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        failed.addAndGet(messageCount);
+                        System.err.println("Failed to generate chunk " + chunk + " : " + e);
+                        skippedChunkSink.skip(chunk);
+                    }
+                }
+                return null;
+            }));
+        }
+        workers.shutdown();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        return new BatchResult(generated.get(), failed.get(), System.nanoTime() - start);
+    }
+
+    public TemplateSkeleton getSkeleton() {
+        return skeleton;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * The slots [starts[i], ends[i]) of each alternative of a choice
+     */
+    private record ChoiceGroup(int[] starts, int[] ends) {
+    }
+
+    /**
+     * An element above the slots [start, end), its own attribute and value slots, and whether a message can write it validly
+     */
+    private static class Subtree {
+        private final CompiledElement element;
+        private final int start;
+        private int end;
+        private final ArrayList<Subtree> children = new ArrayList<>();
+        private final ArrayList<Integer> slots = new ArrayList<>();
+        private boolean writable = true;
+
+        private Subtree(CompiledElement element, int start) {
+            this.element = element;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Where a worker sends the slot values of a chunk
+     */
+    private interface ChunkSink {
+        /**
+         * @return the number of messages written
+         */
+        int write(long chunk, String[][] slotValues, XMLOutput output) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Told about a chunk that could not be written
+     */
+    private interface SkippedChunkSink {
+        void skip(long chunk) throws IOException;
+    }
+}
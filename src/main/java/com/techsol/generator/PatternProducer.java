@@ -0,0 +1,289 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.generator;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * <h1>Pattern value producer</h1>
+ * <p>Produces values matching an XSD pattern facet. The pattern is parsed once into a tree of literals, character classes,
+ * repeats and alternatives, and every value is a random walk through the tree.</p>
+ * <p>Supports literals, the escapes \d \w \s and escaped metacharacters, the wildcard, character classes with ranges, groups,
+ * alternation and the quantifiers ? * + {n} {n,} {n,m}. An unbounded quantifier repeats at most {@link #UNBOUNDED_REPEATS}
+ * times more than its minimum. Negated classes, class subtraction and the XSD name and category escapes are not supported.</p>
+ */
+public final class PatternProducer implements ValueProducer {
+    //Extra repeats of a quantifier without an upper bound
+    private static final int UNBOUNDED_REPEATS = 5;
+    private static final char[] DIGITS = "0123456789".toCharArray();
+    private static final char[] WORD_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private final String pattern;
+    private final Node root;
+
+    private PatternProducer(String pattern, Node root) {
+        this.pattern = pattern;
+        this.root = root;
+    }
+
+    /**
+     * Compile the pattern
+     *
+     * @param pattern an XSD pattern
+     * @return the producer
+     * @throws IllegalArgumentException when the pattern is not valid or uses syntax that is not supported
+     */
+    public static PatternProducer compile(String pattern) {
+        Parser parser = new Parser(pattern);
+        Node root = parser.parseAlternatives();
+        if (parser.position < pattern.length()) {
+            throw parser.error("Unexpected " + pattern.charAt(parser.position));
+        }
+        return new PatternProducer(pattern, root);
+    }
+
+    @Override
+    public String next(SplittableRandom random) {
+        StringBuilder value = new StringBuilder(16);
+        root.append(random, value);
+        return value.toString();
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    private interface Node {
+        void append(SplittableRandom random, StringBuilder value);
+    }
+
+    private record Literal(char character) implements Node {
+        @Override
+        public void append(SplittableRandom random, StringBuilder value) {
+            value.append(character);
+        }
+    }
+
+    /**
+     * One of a set of characters
+     */
+    private record CharacterClass(char[] characters) implements Node {
+        @Override
+        public void append(SplittableRandom random, StringBuilder value) {
+            value.append(characters[random.nextInt(characters.length)]);
+        }
+    }
+
+    private record Sequence(Node[] nodes) implements Node {
+        @Override
+        public void append(SplittableRandom random, StringBuilder value) {
+            for (Node node : nodes) {
+                node.append(random, value);
+            }
+        }
+    }
+
+    private record Alternatives(Node[] alternatives) implements Node {
+        @Override
+        public void append(SplittableRandom random, StringBuilder value) {
+            alternatives[random.nextInt(alternatives.length)].append(random, value);
+        }
+    }
+
+    private record Repeat(Node node, int min, int max) implements Node {
+        @Override
+        public void append(SplittableRandom random, StringBuilder value) {
+            int count = min == max ? min : random.nextInt(min, max + 1);
+            for (int i = 0; i < count; i++) {
+                node.append(random, value);
+            }
+        }
+    }
+
+    /**
+     * Recursive descent parser of the pattern, the nesting of groups is the only recursion
+     */
+    private static class Parser {
+        private final String pattern;
+        private int position;
+
+        private Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        private Node parseAlternatives() {
+            ArrayList<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseSequence());
+            while (position < pattern.length() && pattern.charAt(position) == '|') {
+                position++;
+                alternatives.add(parseSequence());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Alternatives(alternatives.toArray(new Node[0]));
+        }
+
+        private Node parseSequence() {
+            ArrayList<Node> nodes = new ArrayList<>();
+            while (position < pattern.length() && pattern.charAt(position) != '|' && pattern.charAt(position) != ')') {
+                nodes.add(parseQuantifier(parseAtom()));
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Sequence(nodes.toArray(new Node[0]));
+        }
+
+        private Node parseAtom() {
+            char character = pattern.charAt(position++);
+            switch (character) {
+                case '(' -> {
+                    Node group = parseAlternatives();
+                    expect(')');
+                    return group;
+                }
+                case '[' -> {
+                    return parseClass();
+                }
+                case '.' -> {
+                    return new CharacterClass(WORD_CHARACTERS);
+                }
+                case '\\' -> {
+                    char[] characters = parseEscape();
+                    return characters.length == 1 ? new Literal(characters[0]) : new CharacterClass(characters);
+                }
+                case '?', '*', '+', '{' -> throw error("Nothing to repeat");
+                default -> {
+                    return new Literal(character);
+                }
+            }
+        }
+
+        private Node parseQuantifier(Node node) {
+            if (position >= pattern.length()) {
+                return node;
+            }
+            int min;
+            int max;
+            switch (pattern.charAt(position)) {
+                case '?' -> {
+                    min = 0;
+                    max = 1;
+                }
+                case '*' -> {
+                    min = 0;
+                    max = UNBOUNDED_REPEATS;
+                }
+                case '+' -> {
+                    min = 1;
+                    max = 1 + UNBOUNDED_REPEATS;
+                }
+                case '{' -> {
+                    int end = pattern.indexOf('}', position);
+                    if (end < 0) {
+                        throw error("Unclosed quantifier");
+                    }
+                    String bounds = pattern.substring(position + 1, end);
+                    int comma = bounds.indexOf(',');
+                    try {
+                        min = Integer.parseInt(comma < 0 ? bounds : bounds.substring(0, comma));
+                        max = comma < 0 ? min : comma == bounds.length() - 1 ? min + UNBOUNDED_REPEATS : Integer.parseInt(bounds.substring(comma + 1));
+                    } catch (NumberFormatException e) {
+                        throw error("Bad quantifier {" + bounds + "}");
+                    }
+                    if (min < 0 || max < min) {
+                        throw error("Bad quantifier {" + bounds + "}");
+                    }
+                    position = end;
+                }
+                default -> {
+                    return node;
+                }
+            }
+            position++;
+            return new Repeat(node, min, max);
+        }
+
+        private Node parseClass() {
+            if (position < pattern.length() && pattern.charAt(position) == '^') {
+                throw error("Negated character classes are not supported");
+            }
+            StringBuilder characters = new StringBuilder();
+            boolean first = true;
+            while (true) {
+                if (position >= pattern.length()) {
+                    throw error("Unclosed character class");
+                }
+                char character = pattern.charAt(position++);
+                if (character == ']' && !first) {
+                    break;
+                }
+                first = false;
+                if (character == '[') {
+                    throw error("Character class subtraction is not supported");
+                }
+                if (character == '\\') {
+                    char[] escaped = parseEscape();
+                    if (escaped.length > 1) {
+                        characters.append(escaped);
+                        continue;
+                    }
+                    character = escaped[0];
+                }
+                //A range, unless the hyphen is the last character of the class
+                if (position + 1 < pattern.length() && pattern.charAt(position) == '-' && pattern.charAt(position + 1) != ']') {
+                    position++;
+                    char last = pattern.charAt(position++);
+                    if (last == '[') {
+                        throw error("Character class subtraction is not supported");
+                    }
+                    if (last == '\\') {
+                        char[] escaped = parseEscape();
+                        if (escaped.length > 1) {
+                            throw error("Bad range");
+                        }
+                        last = escaped[0];
+                    }
+                    if (last < character) {
+                        throw error("Bad range " + character + "-" + last);
+                    }
+                    for (char c = character; c <= last; c++) {
+                        characters.append(c);
+                    }
+                } else {
+                    characters.append(character);
+                }
+            }
+            return new CharacterClass(characters.toString().toCharArray());
+        }
+
+        /**
+         * The characters of the escape after a backslash
+         */
+        private char[] parseEscape() {
+            if (position >= pattern.length()) {
+                throw error("Trailing backslash");
+            }
+            char character = pattern.charAt(position++);
+            return switch (character) {
+                case 'd' -> DIGITS;
+                case 'w' -> WORD_CHARACTERS;
+                case 's' -> new char[]{' '};
+                case 'n' -> new char[]{'\n'};
+                case 'r' -> new char[]{'\r'};
+                case 't' -> new char[]{'\t'};
+                case '\\', '|', '.', '-', '^', '?', '*', '+', '{', '}', '(', ')', '[', ']' -> new char[]{character};
+                default -> throw error("Escape \\" + character + " is not supported");
+            };
+        }
+
+        private void expect(char character) {
+            if (position >= pattern.length() || pattern.charAt(position) != character) {
+                throw error("Expected " + character);
+            }
+            position++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + position + " of pattern " + pattern);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.generator;
+
+import java.util.SplittableRandom;
+
+/**
+ * <h1>Value producer</h1>
+ * <p>Produces random values that are valid for one simple type, compiled once per simple type and shared by every thread</p>
+ */
+@FunctionalInterface
+public interface ValueProducer {
+    /**
+     * @param random the generator of the calling thread
+     * @return a valid value
+     */
+    String next(SplittableRandom random);
+}
@@ -0,0 +1,191 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.generator;
+
+import com.techsol.models.compiled.CompiledSimpleType;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+/**
+ * <h1>Value producers</h1>
+ * <p>Compiles the facets of a simple type into a {@link ValueProducer}, picking the most specific facet the type has:
+ * the enumerations, then the pattern, then the built-in type it restricts with its length and digit facets</p>
+ */
+public final class ValueProducers {
+    //Longest text produced for a string without a maximum length
+    private static final int DEFAULT_MAX_LENGTH = 35;
+    //Most digits of a decimal without a total digits facet
+    private static final int DEFAULT_TOTAL_DIGITS = 18;
+    //Most digits of the integer part of a decimal, whatever the total digits allow
+    private static final int MAX_INTEGER_DIGITS = 9;
+    //Most digits after the decimal point, whatever the fraction digits allow
+    private static final int MAX_FRACTION_DIGITS = 2;
+    //Attempts at a pattern value within the length facets before the length is ignored
+    private static final int PATTERN_ATTEMPTS = 16;
+    //64 letters and digits, so that one random long gives ten characters
+    private static final char[] TEXT_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789XY".toCharArray();
+
+    private ValueProducers() {
+    }
+
+    /**
+     * Compile the producer of values of the simple type
+     *
+     * @param simpleType
+     * @return the producer
+     */
+    public static ValueProducer forSimpleType(CompiledSimpleType simpleType) {
+        if (!simpleType.enumerations().isEmpty()) {
+            String[] values = simpleType.enumerations().toArray(new String[0]);
+            return random -> values[random.nextInt(values.length)];
+        }
+        if (simpleType.pattern() != null) {
+            try {
+                return withinLength(PatternProducer.compile(simpleType.pattern()), simpleType.minLength(), simpleType.maxLength());
+            } catch (IllegalArgumentException e) {
+                //Fall back to the built-in type, the values may not match the pattern
+                System.err.println("Generating " + simpleType.name() + " without its pattern : " + e.getMessage());
+            }
+        }
+        return switch (localName(simpleType.base())) {
+            case "decimal" -> decimal(simpleType, false);
+            case "integer", "int", "long", "short", "byte", "nonNegativeInteger", "positiveInteger", "unsignedInt", "unsignedLong",
+                    "unsignedShort" -> decimal(simpleType, true);
+            case "boolean" -> random -> random.nextBoolean() ? "true" : "false";
+            case "date" -> random -> {
+                char[] value = new char[10];
+                writeDate(random, value, 0);
+                return new String(value);
+            };
+            case "dateTime" -> random -> {
+                char[] value = new char[19];
+                writeDate(random, value, 0);
+                value[10] = 'T';
+                writeTime(random, value, 11);
+                return new String(value);
+            };
+            case "time" -> random -> {
+                char[] value = new char[8];
+                writeTime(random, value, 0);
+                return new String(value);
+            };
+            case "gYear" -> random -> Integer.toString(random.nextInt(2020, 2030));
+            default -> text(simpleType.minLength(), simpleType.maxLength());
+        };
+    }
+
+    /**
+     * The name of the built-in type without its prefix, xs:string when there is no base
+     */
+    private static String localName(String base) {
+        if (base == null) {
+            return "string";
+        }
+        return base.substring(base.indexOf(':') + 1);
+    }
+
+    /**
+     * Redraw the values of the producer that are not within the length facets
+     */
+    private static ValueProducer withinLength(ValueProducer producer, int minLength, int maxLength) {
+        if (minLength == CompiledSimpleType.NOT_SET && maxLength == CompiledSimpleType.NOT_SET) {
+            return producer;
+        }
+        int max = maxLength != CompiledSimpleType.NOT_SET ? maxLength : Integer.MAX_VALUE;
+        return random -> {
+            String value = producer.next(random);
+            for (int attempt = 1; attempt < PATTERN_ATTEMPTS && (value.length() < minLength || value.length() > max); attempt++) {
+                value = producer.next(random);
+            }
+            return value;
+        };
+    }
+
+    private static ValueProducer text(int minLength, int maxLength) {
+        int min = Math.max(minLength, 1);
+        int max = Math.max(min, Math.min(maxLength != CompiledSimpleType.NOT_SET ? maxLength : DEFAULT_MAX_LENGTH, DEFAULT_MAX_LENGTH));
+        return random -> {
+            char[] value = new char[min == max ? min : random.nextInt(min, max + 1)];
+            long bits = 0;
+            for (int i = 0; i < value.length; i++) {
+                if (i % 10 == 0) {
+                    bits = random.nextLong();
+                }
+                value[i] = TEXT_CHARACTERS[(int) (bits & 63)];
+                bits >>>= 6;
+            }
+            return new String(value);
+        };
+    }
+
+    /**
+     * Non-negative numbers within the digit facets, clamped to the inclusive bounds
+     */
+    private static ValueProducer decimal(CompiledSimpleType simpleType, boolean integer) {
+        int totalDigits = simpleType.totalDigits() != CompiledSimpleType.NOT_SET ? simpleType.totalDigits() : DEFAULT_TOTAL_DIGITS;
+        int fractionDigits = integer ? 0 : Math.min(MAX_FRACTION_DIGITS,
+                simpleType.fractionDigits() != CompiledSimpleType.NOT_SET ? simpleType.fractionDigits() : MAX_FRACTION_DIGITS);
+        fractionDigits = Math.min(fractionDigits, totalDigits - 1);
+        int integerDigits = Math.max(1, Math.min(MAX_INTEGER_DIGITS, totalDigits - fractionDigits));
+        int fraction = Math.max(fractionDigits, 0);
+        //The numbers are never negative, so a minimum of zero or less needs no check
+        BigDecimal minInclusive = simpleType.minInclusive() != null && new BigDecimal(simpleType.minInclusive()).signum() > 0
+                ? new BigDecimal(simpleType.minInclusive()) : null;
+        BigDecimal maxInclusive = simpleType.maxInclusive() != null ? new BigDecimal(simpleType.maxInclusive()) : null;
+        return random -> {
+            char[] value = new char[integerDigits + (fraction > 0 ? fraction + 1 : 0)];
+            int digits = random.nextInt(1, integerDigits + 1);
+            int length = 0;
+            for (int i = 0; i < digits; i++) {
+                //No leading zeros
+                value[length++] = (char) ('0' + (i == 0 && digits > 1 ? random.nextInt(1, 10) : random.nextInt(10)));
+            }
+            if (fraction > 0) {
+                value[length++] = '.';
+                for (int i = 0; i < fraction; i++) {
+                    value[length++] = (char) ('0' + random.nextInt(10));
+                }
+            }
+            String number = new String(value, 0, length);
+            if (minInclusive != null && new BigDecimal(number).compareTo(minInclusive) < 0) {
+                return simpleType.minInclusive();
+            }
+            if (maxInclusive != null && new BigDecimal(number).compareTo(maxInclusive) > 0) {
+                return simpleType.maxInclusive();
+            }
+            return number;
+        };
+    }
+
+    /**
+     * yyyy-MM-dd, every month having 28 days
+     */
+    private static void writeDate(SplittableRandom random, char[] value, int offset) {
+        writeDigits(random.nextInt(2020, 2030), value, offset, 4);
+        value[offset + 4] = '-';
+        writeDigits(random.nextInt(1, 13), value, offset + 5, 2);
+        value[offset + 7] = '-';
+        writeDigits(random.nextInt(1, 29), value, offset + 8, 2);
+    }
+
+    /**
+     * HH:mm:ss
+     */
+    private static void writeTime(SplittableRandom random, char[] value, int offset) {
+        writeDigits(random.nextInt(24), value, offset, 2);
+        value[offset + 2] = ':';
+        writeDigits(random.nextInt(60), value, offset + 3, 2);
+        value[offset + 5] = ':';
+        writeDigits(random.nextInt(60), value, offset + 6, 2);
+    }
+
+    private static void writeDigits(int number, char[] value, int offset, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            value[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+    }
+}
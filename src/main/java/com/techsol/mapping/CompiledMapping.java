@@ -0,0 +1,235 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.mapping;
+
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.CompiledType;
+import com.techsol.models.message.MessageInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * <h1>Compiled mapping</h1>
+ * <p>A mapping table of MT field tags to dotted MX paths e.g. <code>20:FIToFICstmrCdtTrf.GrpHdr.MsgId</code>, or to an attribute
+ * of the element at the path e.g. <code>32A:FIToFICstmrCdtTrf.CdtTrfTxInf.IntrBkSttlmAmt@Ccy</code>,
+ * resolved once against a compiled schema into the child indexes to follow from the root complex type</p>
+ * <p>Populating a message is then a direct indexed walk per field. Paths that do not exist in the schema
+ * are collected when the mapping is compiled instead of being ignored when the message is populated.</p>
+ */
+public final class CompiledMapping {
+    private final CompiledSchema schema;
+    //MT tag -> resolved path
+    private final Map<String, ResolvedPath> resolvedPaths;
+    //"tag:path" -> why the path could not be resolved
+    private final Map<String, String> unresolvedMappings;
+
+    private CompiledMapping(CompiledSchema schema, Map<String, ResolvedPath> resolvedPaths, Map<String, String> unresolvedMappings) {
+        this.schema = schema;
+        this.resolvedPaths = resolvedPaths;
+        this.unresolvedMappings = unresolvedMappings;
+    }
+
+    /**
+     * Compile the mappings, keeping track of the ones that cannot be resolved
+     *
+     * @param schema
+     * @param mappings the mappings in the form tag:path
+     * @return the compiled mapping
+     */
+    public static CompiledMapping compile(CompiledSchema schema, String... mappings) {
+        LinkedHashMap<String, String> mappingTable = new LinkedHashMap<>();
+        for (String mapping : mappings) {
+            int separator = mapping.indexOf(':');
+            if (separator < 0) {
+                throw new MappingException("Mapping " + mapping + " is not in the form tag:path");
+            }
+            mappingTable.putIfAbsent(mapping.substring(0, separator), mapping.substring(separator + 1));
+        }
+        return compile(schema, mappingTable);
+    }
+
+    /**
+     * Read a mapping file with one tag:path mapping per line, skipping blank lines and lines starting with #
+     *
+     * @param path
+     * @return the mappings in the form tag:path
+     */
+    public static String[] readMappingFile(Path path) throws IOException {
+        try (Stream<String> lines = Files.lines(path)) {
+            return lines.map(String::strip).filter(line -> !line.isEmpty() && !line.startsWith("#")).toArray(String[]::new);
+        }
+    }
+
+    /**
+     * Compile the mapping table, keeping track of the paths that cannot be resolved
+     *
+     * @param schema
+     * @param mappingTable MT tag -> dotted MX path
+     * @return the compiled mapping
+     */
+    public static CompiledMapping compile(CompiledSchema schema, Map<String, String> mappingTable) {
+        LinkedHashMap<String, ResolvedPath> resolvedPaths = new LinkedHashMap<>();
+        LinkedHashMap<String, String> unresolvedMappings = new LinkedHashMap<>();
+        for (Map.Entry<String, String> mapping : mappingTable.entrySet()) {
+            int at = mapping.getValue().indexOf('@');
+            String elementPath = at >= 0 ? mapping.getValue().substring(0, at) : mapping.getValue();
+            String[] tags = elementPath.split("\\.");
+            int[] indexes = new int[tags.length];
+            CompiledType complexType = schema.getRootType();
+            String error = null;
+            for (int i = 0; i < tags.length && error == null; i++) {
+                int index = indexOf(complexType, schema.findNameId(tags[i]));
+                if (index < 0) {
+                    error = tags[i] + " is not a child of " + complexType.getName();
+                } else {
+                    indexes[i] = index;
+                    if (i < tags.length - 1) {
+                        complexType = schema.resolveComplexType(complexType.getChild(index));
+                        if (complexType == null) {
+                            error = tags[i] + " is a simple type";
+                        }
+                    }
+                }
+            }
+            int attribute = -1;
+            if (error == null && at >= 0) {
+                CompiledType elementType = schema.resolveComplexType(complexType.getChild(indexes[indexes.length - 1]));
+                String name = mapping.getValue().substring(at + 1);
+                for (int i = 0; elementType != null && i < elementType.getAttributeCount() && attribute < 0; i++) {
+                    if (elementType.getAttribute(i).name().equals(name)) {
+                        attribute = i;
+                    }
+                }
+                if (attribute < 0) {
+                    error = name + " is not an attribute of " + tags[tags.length - 1];
+                }
+            }
+            if (error == null) {
+                resolvedPaths.put(mapping.getKey(), new ResolvedPath(mapping.getKey(), mapping.getValue(), indexes, attribute));
+            } else {
+                unresolvedMappings.put(mapping.getKey() + ":" + mapping.getValue(), error);
+            }
+        }
+        return new CompiledMapping(schema, resolvedPaths, Collections.unmodifiableMap(unresolvedMappings));
+    }
+
+    /**
+     * Compile the mappings, failing if any of them cannot be resolved
+     *
+     * @param schema
+     * @param mappings the mappings in the form tag:path
+     * @return the compiled mapping
+     * @throws MappingException listing every mapping that cannot be resolved
+     */
+    public static CompiledMapping compileStrict(CompiledSchema schema, String... mappings) {
+        return compile(schema, mappings).requireResolved();
+    }
+
+    /**
+     * @return this mapping
+     * @throws MappingException listing every mapping that cannot be resolved
+     */
+    public CompiledMapping requireResolved() {
+        if (!unresolvedMappings.isEmpty()) {
+            StringBuilder message = new StringBuilder("Unknown paths in schema ").append(schema.getName()).append(" :");
+            unresolvedMappings.forEach((mapping, error) -> message.append("\n").append(mapping).append(" (").append(error).append(")"));
+            throw new MappingException(message.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Write the value of the MT field to the element its path resolves to
+     *
+     * @param message
+     * @param tag
+     * @param value
+     * @return whether the tag is mapped
+     */
+    public boolean populate(MessageInstance message, String tag, String value) {
+        ResolvedPath resolvedPath = resolvedPaths.get(tag);
+        if (resolvedPath == null) {
+            return false;
+        }
+        int[] indexes = resolvedPath.indexes();
+        MessageInstance.Node node = message.getRoot();
+        for (int i = 0; i < indexes.length - 1; i++) {
+            node = node.getOrCreateChild(indexes[i], schema);
+        }
+        if (resolvedPath.attribute() >= 0) {
+            node.setAttributeValue(indexes[indexes.length - 1], resolvedPath.attribute(), value);
+        } else {
+            node.setValue(indexes[indexes.length - 1], value);
+        }
+        return true;
+    }
+
+    /**
+     * Write the MT fields to the message
+     *
+     * @param message
+     * @param mtFields the fields in the form tag:value
+     */
+    public void populate(MessageInstance message, String... mtFields) {
+        for (String field : mtFields) {
+            int separator = field.indexOf(':');
+            if (separator > 0) {
+                populate(message, field.substring(0, separator), field.substring(separator + 1));
+            }
+        }
+    }
+
+    public CompiledSchema getSchema() {
+        return schema;
+    }
+
+    public ResolvedPath getResolvedPath(String tag) {
+        return resolvedPaths.get(tag);
+    }
+
+    public List<ResolvedPath> getResolvedPaths() {
+        return new ArrayList<>(resolvedPaths.values());
+    }
+
+    /**
+     * The mappings that could not be resolved, in the form tag:path, with the reason
+     */
+    public Map<String, String> getUnresolvedMappings() {
+        return unresolvedMappings;
+    }
+
+    /**
+     * The index of the child with the name, comparing the symbol IDs of the names
+     */
+    private static int indexOf(CompiledType complexType, int nameId) {
+        for (int i = 0; i < complexType.getChildCount(); i++) {
+            CompiledElement element = complexType.getChild(i);
+            if (element.getNameId() == nameId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A mapping resolved to the child indexes to follow from the root complex type
+     *
+     * @param tag       the MT field tag
+     * @param path      the dotted MX path
+     * @param indexes   the child index of each element of the path
+     * @param attribute the index of the attribute in the complex type of the last element, -1 for the element itself
+     */
+    public record ResolvedPath(String tag, String path, int[] indexes, int attribute) {
+    }
+}
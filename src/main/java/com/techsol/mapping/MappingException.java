@@ -0,0 +1,16 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.mapping;
+
+/**
+ * Thrown when a mapping table cannot be compiled against a schema
+ */
+public class MappingException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public MappingException(String message) {
+        super(message);
+    }
+}
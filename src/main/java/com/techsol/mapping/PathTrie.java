@@ -0,0 +1,132 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.mapping;
+
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.CompiledType;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <h1>Path trie</h1>
+ * <p>The reverse of a compiled mapping: the element paths of the mapping, e.g. <code>FIToFICstmrCdtTrf.GrpHdr.MsgId</code>,
+ * compiled from the complex types of the schema into a trie of element names rooted at the root element, each path ending
+ * at a node annotated with the MT tags mapped to it, e.g. <code>20</code>, or to one of its attributes, e.g. <code>32A</code> to the
+ * <code>Ccy</code> of <code>IntrBkSttlmAmt</code></p>
+ * <p>A document is matched against the trie one element at a time, and every element without a node holds no mapped leaf
+ * below it.</p>
+ */
+public final class PathTrie {
+    private final CompiledSchema schema;
+    private final Node root;
+
+    private PathTrie(CompiledSchema schema, Node root) {
+        this.schema = schema;
+        this.root = root;
+    }
+
+    /**
+     * Compile the resolved paths of the mapping into a trie
+     *
+     * @param mapping
+     * @return the trie
+     */
+    public static PathTrie compile(CompiledMapping mapping) {
+        CompiledSchema schema = mapping.getSchema();
+        Node root = new Node(schema.getRootType().getName());
+        for (CompiledMapping.ResolvedPath resolvedPath : mapping.getResolvedPaths()) {
+            Node node = root;
+            CompiledType complexType = schema.getRootType();
+            int[] indexes = resolvedPath.indexes();
+            for (int i = 0; i < indexes.length; i++) {
+                CompiledElement element = complexType.getChild(indexes[i]);
+                node = node.children.computeIfAbsent(element.getName(), Node::new);
+                if (i < indexes.length - 1) {
+                    complexType = schema.resolveComplexType(element);
+                }
+            }
+            if (resolvedPath.attribute() >= 0) {
+                CompiledType elementType = schema.resolveComplexType(complexType.getChild(indexes[indexes.length - 1]));
+                node.attributeNames = append(node.attributeNames, elementType.getAttribute(resolvedPath.attribute()).name());
+                node.attributeTags = append(node.attributeTags, resolvedPath.tag());
+            } else {
+                node.tags = append(node.tags, resolvedPath.tag());
+            }
+        }
+        return new PathTrie(schema, root);
+    }
+
+    private static String[] append(String[] array, String value) {
+        String[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+    public CompiledSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * The node of the root element e.g. Document
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * An element on the path to a mapped leaf
+     */
+    public static final class Node {
+        private static final String[] NO_TAGS = new String[0];
+
+        private final String name;
+        private final HashMap<String, Node> children = new HashMap<>();
+        //The MT tags mapped to the element, in mapping order
+        private String[] tags = NO_TAGS;
+        //The attributes with MT tags mapped to them and the tag of each, an attribute appearing once per tag
+        private String[] attributeNames = NO_TAGS;
+        private String[] attributeTags = NO_TAGS;
+
+        private Node(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param name the local name of a child element
+         * @return the node of the child, or null when no mapped leaf lies below it
+         */
+        public Node getChild(String name) {
+            return children.get(name);
+        }
+
+        public boolean hasChildren() {
+            return !children.isEmpty();
+        }
+
+        /**
+         * The MT tags mapped to the element, empty when the element only leads to mapped leaves
+         */
+        public String[] getTags() {
+            return tags;
+        }
+
+        /**
+         * The local names of the mapped attributes of the element, parallel to {@link #getAttributeTags()}
+         */
+        public String[] getAttributeNames() {
+            return attributeNames;
+        }
+
+        public String[] getAttributeTags() {
+            return attributeTags;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.metrics;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+
+/**
+ * <h1>Compilation metrics</h1>
+ * <p>Records the phases of the schema compilations as {@link CompilationPhaseEvent}s, which cost nothing when no recording is running,
+ * and, once {@link #enableSummary()} has been called, in per-phase latency histograms for an end-of-run summary</p>
+ */
+public final class CompilationMetrics {
+    private static volatile EnumMap<CompilationPhase, LatencyHistogram> summary;
+
+    private CompilationMetrics() {
+    }
+
+    /**
+     * Start collecting the latency histograms printed by {@link #printSummary(PrintStream)}
+     */
+    public static synchronized void enableSummary() {
+        if (summary == null) {
+            EnumMap<CompilationPhase, LatencyHistogram> histograms = new EnumMap<>(CompilationPhase.class);
+            for (CompilationPhase phase : CompilationPhase.values()) {
+                histograms.put(phase, new LatencyHistogram());
+            }
+            summary = histograms;
+        }
+    }
+
+    /**
+     * Record a finished phase
+     *
+     * @param schemaName   the name of the schema file
+     * @param phase
+     * @param nanos        the time spent in the phase
+     * @param nodeCount    the schema nodes, objects or slots handled by the phase
+     * @param bytesWritten the bytes written by the phase
+     */
+    public static void record(String schemaName, CompilationPhase phase, long nanos, long nodeCount, long bytesWritten) {
+        CompilationPhaseEvent event = new CompilationPhaseEvent();
+        if (event.shouldCommit()) {
+            event.schemaName = schemaName;
+            event.phase = phase.getLabel();
+            event.phaseDuration = nanos;
+            event.nodeCount = nodeCount;
+            event.bytesWritten = bytesWritten;
+            event.commit();
+        }
+        EnumMap<CompilationPhase, LatencyHistogram> histograms = summary;
+        if (histograms != null) {
+            histograms.get(phase).record(nanos);
+        }
+    }
+
+    /**
+     * Print the latency histogram of every phase recorded since the summary was enabled
+     *
+     * @param out
+     */
+    public static void printSummary(PrintStream out) {
+        EnumMap<CompilationPhase, LatencyHistogram> histograms = summary;
+        if (histograms == null) {
+            return;
+        }
+        out.println("Phase latencies (ms)");
+        out.printf("%-36s %8s %10s %10s %10s %10s %10s%n", "phase", "count", "total", "p50", "p90", "p99", "max");
+        for (CompilationPhase phase : CompilationPhase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            if (histogram.getCount() > 0) {
+                out.printf("%-36s %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", phase.getLabel(), histogram.getCount(), millis(histogram.getTotalNanos()),
+                        millis(histogram.percentile(0.50)), millis(histogram.percentile(0.90)), millis(histogram.percentile(0.99)), millis(histogram.getMaxNanos()));
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+}
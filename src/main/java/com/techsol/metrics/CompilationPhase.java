@@ -0,0 +1,29 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.metrics;
+
+/**
+ * The phases of compiling a schema and writing its XML
+ */
+public enum CompilationPhase {
+    PARSE("parse"),
+    CREATE_OBJECTS("createObjects"),
+    RESOLVE_REFERENCES("resolveReferences"),
+    MAP_ELEMENTS_TO_COMPLEX_TYPE("mapElementsToComplexType"),
+    ELEMENT_TYPE_MAPPER("elementTypeMapper"),
+    CREATE_COMPLEX_TYPES_FOR_CHILD_ELEMENTS("createComplexTypesForChildElements"),
+    RENDER("render"),
+    WRITE("write");
+
+    private final String label;
+
+    CompilationPhase(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
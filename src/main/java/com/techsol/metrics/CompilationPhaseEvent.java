@@ -0,0 +1,44 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * <p>JDK Flight Recorder event committed at the end of every phase of a schema compilation</p>
+ * <p>Parsing and object creation share one pass over the schema, as do rendering and writing, so the phase duration
+ * holds the time spent in the phase itself rather than the time between the begin and end of the event</p>
+ */
+@Name("com.techsol.CompilationPhase")
+@Label("Compilation Phase")
+@Description("A phase of compiling an XSD schema and writing its XML")
+@Category("XSDToXMLParser")
+@StackTrace(false)
+public class CompilationPhaseEvent extends Event {
+    @Label("Schema")
+    String schemaName;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Phase Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long phaseDuration;
+
+    @Label("Node Count")
+    @Description("The schema nodes, objects or slots handled by the phase")
+    long nodeCount;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+}
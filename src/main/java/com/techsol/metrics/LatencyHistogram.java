@@ -0,0 +1,55 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe latency histogram with power of two buckets, bucket i counts the latencies of less than 2^i nanoseconds
+ */
+public class LatencyHistogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * The upper bound of the bucket holding the percentile, capped at the largest latency recorded
+     *
+     * @param fraction e.g. 0.99 for the 99th percentile
+     */
+    public long percentile(double fraction) {
+        long rank = (long) Math.ceil(fraction * count.get());
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel that adds up the time spent writing to the channel it wraps, so that writing can be told apart from rendering
+ */
+public class TimedChannel implements WritableByteChannel {
+    private final WritableByteChannel channel;
+    private long writeNanos;
+
+    public TimedChannel(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return channel.write(source);
+        } finally {
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
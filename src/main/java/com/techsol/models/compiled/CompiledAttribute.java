@@ -0,0 +1,16 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.compiled;
+
+/**
+ * <h1>Compiled attribute</h1>
+ * <p>Immutable attribute of a compiled complex type</p>
+ *
+ * @param name       the name of the attribute
+ * @param simpleType the simple type of the values with its facets, or null when the declaration has no type
+ * @param required   whether the attribute is declared with use="required"
+ */
+public record CompiledAttribute(String name, CompiledSimpleType simpleType, boolean required) {
+}
@@ -0,0 +1,143 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.compiled;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * <h1>Compiled element</h1>
+ * <p>Immutable element of a compiled schema</p>
+ */
+public final class CompiledElement {
+    private final String name;
+    //Symbol ID of the name in the symbol table of the schema
+    private final int nameId;
+    private final String type;
+    //maxOccurs="unbounded"
+    public static final int UNBOUNDED = -1;
+
+    //Occurrence bounds, 1 when the schema does not set them
+    private final int minOccurs;
+    private final int maxOccurs;
+    //Whether the element is an alternative of the choice of its complex type
+    private final boolean choice;
+    //Whether the type of the element is a simple type
+    private final boolean simple;
+    //The simple type of the element with its facets, null for a complex type
+    private final CompiledSimpleType simpleType;
+    //Compiles the linked complex type the first time the element is navigated, null once it has
+    private volatile Supplier<CompiledType> complexTypeCompiler;
+    //The linked complex type, null for a simple type or a complex type that was not attached during linking
+    private volatile CompiledType complexType;
+
+    public CompiledElement(String name, int nameId, String type, int minOccurs, int maxOccurs, boolean choice, boolean simple, CompiledSimpleType simpleType,
+                           CompiledType complexType) {
+        this(name, nameId, type, minOccurs, maxOccurs, choice, simple, simpleType, (Supplier<CompiledType>) null);
+        this.complexType = complexType;
+    }
+
+    /**
+     * @param complexTypeCompiler supplies the linked complex type the first time it is asked for
+     */
+    public CompiledElement(String name, int nameId, String type, int minOccurs, int maxOccurs, boolean choice, boolean simple, CompiledSimpleType simpleType,
+                           Supplier<CompiledType> complexTypeCompiler) {
+        this.name = name;
+        this.nameId = nameId;
+        this.type = type;
+        this.minOccurs = minOccurs;
+        this.maxOccurs = maxOccurs;
+        this.choice = choice;
+        this.simple = simple;
+        this.simpleType = simpleType;
+        this.complexTypeCompiler = complexTypeCompiler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNameId() {
+        return nameId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getMinOccurs() {
+        return minOccurs;
+    }
+
+    /**
+     * @return the maximum number of occurrences, or {@link #UNBOUNDED}
+     */
+    public int getMaxOccurs() {
+        return maxOccurs;
+    }
+
+    public boolean isChoice() {
+        return choice;
+    }
+
+    public boolean isSimple() {
+        return simple;
+    }
+
+    public CompiledSimpleType getSimpleType() {
+        return simpleType;
+    }
+
+    /**
+     * The linked complex type, compiled the first time it is asked for
+     * <p>The compiler hands out the same compiled type to every thread, so threads racing on the first call agree on the result.
+     * The compiler is dropped after the complex type is set, so a thread that finds no compiler always finds the complex type.</p>
+     */
+    public CompiledType getComplexType() {
+        Supplier<CompiledType> compiler = complexTypeCompiler;
+        if (compiler != null) {
+            complexType = compiler.get();
+            complexTypeCompiler = null;
+        }
+        return complexType;
+    }
+
+    /**
+     * Whether the element has the same structure as the other element, comparing the complex types by identity
+     * <p>Only used on elements whose complex types are pooled, so identical complex types are the same object</p>
+     */
+    boolean sameStructure(CompiledElement element) {
+        return nameId == element.nameId && minOccurs == element.minOccurs && maxOccurs == element.maxOccurs && choice == element.choice
+                && simple == element.simple
+                && name.equals(element.name) && Objects.equals(type, element.type) && Objects.equals(simpleType, element.simpleType)
+                && getComplexType() == element.getComplexType();
+    }
+
+    /**
+     * Hash of the structure compared by {@link #sameStructure(CompiledElement)}
+     */
+    int structureHash() {
+        int hash = nameId;
+        hash = 31 * hash + Objects.hashCode(type);
+        hash = 31 * hash + minOccurs;
+        hash = 31 * hash + maxOccurs;
+        hash = 31 * hash + (choice ? 1 : 0);
+        hash = 31 * hash + (simple ? 1 : 0);
+        hash = 31 * hash + Objects.hashCode(simpleType);
+        return 31 * hash + System.identityHashCode(getComplexType());
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledElement{" +
+                "name='" + name + '\'' +
+                ", type='" + type + '\'' +
+                ", minOccurs=" + minOccurs +
+                ", maxOccurs=" + maxOccurs +
+                ", choice=" + choice +
+                ", simple=" + simple +
+                '}';
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.compiled;
+
+import com.techsol.models.handler.SymbolTable;
+import com.techsol.models.handler.XSDObjectsHandler;
+import com.techsol.models.xsd.Attribute;
+import com.techsol.models.xsd.ComplexType;
+import com.techsol.models.xsd.Element;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>Compiled schema</h1>
+ * <p>Immutable type graph of a linked schema. Complex types that are shared in the linked objects are compiled once
+ * and stay shared, so the graph can be used by any number of messages and threads at the same time.</p>
+ * <p>A schema compiled through a {@link TypePool} shares its complex types with every other schema compiled through the pool</p>
+ */
+public final class CompiledSchema {
+    private final String name;
+    private final CompiledType rootType;
+    //Resolves the declared complex types and the symbol IDs of the names
+    private final Types types;
+
+    private CompiledSchema(String name, CompiledType rootType, Types types) {
+        this.name = name;
+        this.rootType = rootType;
+        this.types = types;
+    }
+
+    /**
+     * Compile the linked objects of a schema
+     * <p>Only the root type is compiled here, the complex type of an element is compiled the first time the element is navigated</p>
+     *
+     * @param name                the schema name
+     * @param objectsHandler      the handler holding the declared objects
+     * @param finalObjectsHandler the handler holding the linked complex types
+     * @return the compiled schema
+     */
+    public static CompiledSchema compile(String name, XSDObjectsHandler objectsHandler, XSDObjectsHandler finalObjectsHandler) {
+        Compiler compiler = new Compiler(objectsHandler);
+        CompiledType rootType = compiler.compile(rootComplexType(name, objectsHandler, finalObjectsHandler));
+        return new CompiledSchema(name, rootType, compiler);
+    }
+
+    /**
+     * Compile the linked objects of a schema through the type pool
+     * <p>The whole type graph and every declared complex type are compiled here, so the compiled schema does not keep
+     * the linked objects and the objects handlers can be released</p>
+     *
+     * @param name                the schema name
+     * @param objectsHandler      the handler holding the declared objects
+     * @param finalObjectsHandler the handler holding the linked complex types
+     * @param typePool            the pool to share the complex types through
+     * @return the compiled schema
+     */
+    public static CompiledSchema compile(String name, XSDObjectsHandler objectsHandler, XSDObjectsHandler finalObjectsHandler, TypePool typePool) {
+        PooledCompiler compiler = new PooledCompiler(objectsHandler, typePool);
+        CompiledType rootType = compiler.compile(rootComplexType(name, objectsHandler, finalObjectsHandler));
+        HashMap<String, CompiledType> declaredTypes = new HashMap<>();
+        for (ComplexType complexType : objectsHandler.getComplexTypeArrayList()) {
+            if (!declaredTypes.containsKey(complexType.getName())) {
+                declaredTypes.put(complexType.getName(), compiler.compile(objectsHandler.getComplexTypeByName(complexType.getName())));
+            }
+        }
+        return new CompiledSchema(name, rootType, new PooledTypes(typePool, declaredTypes));
+    }
+
+    /**
+     * The linked complex type of the root element
+     *
+     * @throws IllegalStateException when the schema has no root element, or its complex type was not linked
+     */
+    private static ComplexType rootComplexType(String name, XSDObjectsHandler objectsHandler, XSDObjectsHandler finalObjectsHandler) {
+        Element rootElement = objectsHandler.getRootElement();
+        if (rootElement == null) {
+            throw new IllegalStateException("Schema " + name + " declares no root element of a complex type");
+        }
+        ComplexType complexType = finalObjectsHandler.getComplexTypeByName(rootElement.getType());
+        if (complexType == null) {
+            throw new IllegalStateException("Complex type " + rootElement.getType() + " of root element " + rootElement.getName() + " of schema " + name + " is not linked");
+        }
+        return complexType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CompiledType getRootType() {
+        return rootType;
+    }
+
+    /**
+     * The ID the name IDs of the compiled elements use for the name
+     *
+     * @param name
+     * @return the ID, or {@link SymbolTable#NOT_FOUND} when no element has the name
+     */
+    public int findNameId(String name) {
+        return types.findNameId(name);
+    }
+
+    /**
+     * The complex type to expand an element into when it is navigated but had no complex type attached during linking
+     *
+     * @param element
+     * @return the declared complex type, or null for a simple type
+     */
+    public CompiledType resolveComplexType(CompiledElement element) {
+        CompiledType complexType = element.getComplexType();
+        if (complexType != null) {
+            return complexType;
+        }
+        return element.isSimple() ? null : types.declaredType(element.getType());
+    }
+
+    /**
+     * The complex type the schema declares for the element, compiled from the declaration itself rather than from the copy
+     * attached during linking, whose children may not follow the declaration
+     *
+     * @param element
+     * @return the declared complex type, or null for a simple type
+     */
+    public CompiledType declaredComplexType(CompiledElement element) {
+        return element.isSimple() ? null : types.declaredType(element.getType());
+    }
+
+    /**
+     * The attributes of the complex type, their simple types compiled through the caches of the compiler
+     */
+    private static CompiledAttribute[] compileAttributes(SimpleTypes simpleTypes, ComplexType complexType) {
+        CompiledAttribute[] attributes = new CompiledAttribute[complexType.getAttributes().size()];
+        for (int i = 0; i < attributes.length; i++) {
+            Attribute attribute = complexType.getAttributes().get(i);
+            attributes[i] = new CompiledAttribute(attribute.getName(), simpleTypes.contentType(attribute.getType()), attribute.isRequired());
+        }
+        return attributes;
+    }
+
+    /**
+     * The compiled simple types of a schema by name, shared by the elements, attributes and simple contents of the type
+     */
+    private static class SimpleTypes {
+        private final XSDObjectsHandler objectsHandler;
+        //Name -> compiled simple type, empty when the schema declares no simple type of the name
+        private final HashMap<String, Optional<CompiledSimpleType>> declaredTypes = new HashMap<>();
+        //Name -> built-in type without facets
+        private final HashMap<String, CompiledSimpleType> builtInTypes = new HashMap<>();
+
+        private SimpleTypes(XSDObjectsHandler objectsHandler) {
+            this.objectsHandler = objectsHandler;
+        }
+
+        /**
+         * @return the declared simple type, or null when the schema declares none with the name
+         */
+        private CompiledSimpleType declaredType(String type) {
+            return declaredTypes.computeIfAbsent(type, key -> Optional.ofNullable(CompiledSimpleType.compile(objectsHandler, key))).orElse(null);
+        }
+
+        /**
+         * The type of an attribute or of a simple content, which can be a built-in type as well as a declared simple type
+         *
+         * @return the simple type, or null when there is no name
+         */
+        private CompiledSimpleType contentType(String type) {
+            if (type == null) {
+                return null;
+            }
+            CompiledSimpleType declaredType = declaredType(type);
+            return declaredType != null ? declaredType : builtInTypes.computeIfAbsent(type, CompiledSimpleType::builtIn);
+        }
+    }
+
+    /**
+     * The declared complex types and the symbol IDs of a compiled schema
+     */
+    private interface Types {
+        CompiledType declaredType(String type);
+
+        int findNameId(String name);
+    }
+
+    /**
+     * Turns the linked objects into compiled types, compiling every complex type object once
+     */
+    private static class Compiler implements Types {
+        private final XSDObjectsHandler objectsHandler;
+        private final IdentityHashMap<ComplexType, CompiledType> compiledTypes = new IdentityHashMap<>();
+        //Name -> compiled complex type as declared in the schema, used to expand elements whose complex type was not attached during linking
+        private final ConcurrentHashMap<String, Optional<CompiledType>> declaredTypes = new ConcurrentHashMap<>();
+        //Compiled simple types, shared by the elements of the type
+        private final SimpleTypes simpleTypes;
+
+        private Compiler(XSDObjectsHandler objectsHandler) {
+            this.objectsHandler = objectsHandler;
+            this.simpleTypes = new SimpleTypes(objectsHandler);
+        }
+
+        private synchronized CompiledType compile(ComplexType complexType) {
+            CompiledType compiledType = compiledTypes.get(complexType);
+            if (compiledType == null) {
+                CompiledElement[] childrenElements = new CompiledElement[complexType.getChildrenElements().size()];
+                for (int i = 0; i < childrenElements.length; i++) {
+                    Element element = complexType.getChildrenElements().get(i);
+                    childrenElements[i] = new CompiledElement(element.getName(), objectsHandler.getSymbolTable().find(element.getName()), element.getType(),
+                            occurs(element.getMinOccurs()), occurs(element.getMaxOccurs()), element.isChoice(),
+                            objectsHandler.elementTypeExistsAsSimpleType(element.getType()), simpleType(element.getType()), () -> compileComplexType(element));
+                }
+                compiledType = new CompiledType(complexType.getName(), childrenElements, simpleTypes.contentType(complexType.getSimpleContentBase()),
+                        compileAttributes(simpleTypes, complexType), complexType.isAnyElementRequired());
+                compiledTypes.put(complexType, compiledType);
+            }
+            return compiledType;
+        }
+
+        private static int occurs(Integer occurs) {
+            return occurs != null ? occurs : 1;
+        }
+
+        private synchronized CompiledSimpleType simpleType(String type) {
+            return simpleTypes.declaredType(type);
+        }
+
+        private synchronized CompiledType compileComplexType(Element element) {
+            ComplexType complexType = element.getComplexType();
+            return complexType != null ? compile(complexType) : null;
+        }
+
+        @Override
+        public CompiledType declaredType(String type) {
+            Optional<CompiledType> declaredType = declaredTypes.get(type);
+            if (declaredType == null) {
+                ComplexType complexType;
+                synchronized (this) {
+                    complexType = objectsHandler.getComplexTypeByName(type);
+                }
+                declaredType = Optional.ofNullable(complexType != null ? compile(complexType) : null);
+                declaredTypes.putIfAbsent(type, declaredType);
+            }
+            return declaredType.orElse(null);
+        }
+
+        @Override
+        public int findNameId(String name) {
+            return objectsHandler.getSymbolTable().find(name);
+        }
+    }
+
+    /**
+     * The declared complex types of a schema compiled through a type pool
+     */
+    private record PooledTypes(TypePool typePool, Map<String, CompiledType> declaredTypes) implements Types {
+        @Override
+        public CompiledType declaredType(String type) {
+            return declaredTypes.get(type);
+        }
+
+        @Override
+        public int findNameId(String name) {
+            return typePool.findNameId(name);
+        }
+    }
+
+    /**
+     * Turns the linked objects into pooled compiled types, children first so that every child type is pooled before its parent
+     */
+    private static class PooledCompiler {
+        private final XSDObjectsHandler objectsHandler;
+        private final TypePool typePool;
+        private final IdentityHashMap<ComplexType, CompiledType> compiledTypes = new IdentityHashMap<>();
+        private final SimpleTypes simpleTypes;
+
+        private PooledCompiler(XSDObjectsHandler objectsHandler, TypePool typePool) {
+            this.objectsHandler = objectsHandler;
+            this.typePool = typePool;
+            this.simpleTypes = new SimpleTypes(objectsHandler);
+        }
+
+        private CompiledType compile(ComplexType rootType) {
+            CompiledType compiledRootType = compiledTypes.get(rootType);
+            if (rootType == null || compiledRootType != null) {
+                return compiledRootType;
+            }
+            ArrayDeque<ComplexType> stack = new ArrayDeque<>();
+            //The complex types on the stack, a child that is one of them would be a cycle and is left without a complex type
+            IdentityHashMap<ComplexType, Boolean> compiling = new IdentityHashMap<>();
+            stack.push(rootType);
+            compiling.put(rootType, Boolean.TRUE);
+            while (!stack.isEmpty()) {
+                ComplexType complexType = stack.peek();
+                ComplexType pendingType = null;
+                for (Element element : complexType.getChildrenElements()) {
+                    ComplexType childType = element.getComplexType();
+                    if (childType != null && !compiledTypes.containsKey(childType) && !compiling.containsKey(childType)) {
+                        pendingType = childType;
+                        break;
+                    }
+                }
+                if (pendingType != null) {
+                    stack.push(pendingType);
+                    compiling.put(pendingType, Boolean.TRUE);
+                    continue;
+                }
+                stack.pop();
+                compiling.remove(complexType);
+                CompiledElement[] childrenElements = new CompiledElement[complexType.getChildrenElements().size()];
+                for (int i = 0; i < childrenElements.length; i++) {
+                    Element element = complexType.getChildrenElements().get(i);
+                    childrenElements[i] = new CompiledElement(typePool.internSymbol(element.getName()), typePool.nameIdOf(element.getName()),
+                            typePool.internSymbol(element.getType()), Compiler.occurs(element.getMinOccurs()), Compiler.occurs(element.getMaxOccurs()), element.isChoice(),
+                            objectsHandler.elementTypeExistsAsSimpleType(element.getType()), simpleType(element.getType()),
+                            compiledTypes.get(element.getComplexType()));
+                }
+                compiledTypes.put(complexType, typePool.intern(typePool.internSymbol(complexType.getName()), childrenElements,
+                        simpleTypes.contentType(complexType.getSimpleContentBase()), compileAttributes(simpleTypes, complexType), complexType.isAnyElementRequired()));
+            }
+            return compiledTypes.get(rootType);
+        }
+
+        private CompiledSimpleType simpleType(String type) {
+            return simpleTypes.declaredType(type);
+        }
+    }
+}
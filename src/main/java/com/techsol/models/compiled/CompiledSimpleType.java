@@ -0,0 +1,94 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.compiled;
+
+import com.techsol.models.handler.XSDObjectsHandler;
+import com.techsol.models.xsd.SimpleType;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * <h1>Compiled simple type</h1>
+ * <p>Immutable simple type of a compiled schema with the facets of its restriction. A simple type restricting another simple
+ * type of the schema takes the facets it does not set itself from that simple type, so the base is always a built-in type.</p>
+ *
+ * @param name           the name of the simple type
+ * @param base           the built-in type the simple type restricts e.g. xs:string
+ * @param pattern        the pattern the values must match, or null
+ * @param minLength      the minimum length of the values, or {@link #NOT_SET}
+ * @param maxLength      the maximum length of the values, or {@link #NOT_SET}
+ * @param totalDigits    the maximum number of digits of the values, or {@link #NOT_SET}
+ * @param fractionDigits the maximum number of digits after the decimal point, or {@link #NOT_SET}
+ * @param minInclusive   the smallest value, or null
+ * @param maxInclusive   the largest value, or null
+ * @param enumerations   the allowed values, empty when any value is allowed
+ */
+public record CompiledSimpleType(String name, String base, String pattern, int minLength, int maxLength, int totalDigits, int fractionDigits,
+                                 String minInclusive, String maxInclusive, List<String> enumerations) {
+    //Value of a facet the restriction does not have
+    public static final int NOT_SET = -1;
+
+    /**
+     * Compile the simple type of the schema with the name
+     *
+     * @param objectsHandler the handler holding the declared simple types
+     * @param type           the name of the simple type
+     * @return the compiled simple type, or null when the schema declares no simple type with the name
+     */
+    public static CompiledSimpleType compile(XSDObjectsHandler objectsHandler, String type) {
+        SimpleType simpleType = objectsHandler.getSimpleTypeByName(type);
+        if (simpleType == null) {
+            return null;
+        }
+        //The chain of restrictions down to a built-in type, stopping at a simple type already in the chain
+        ArrayList<SimpleType> restrictions = new ArrayList<>();
+        IdentityHashMap<SimpleType, Boolean> seen = new IdentityHashMap<>();
+        for (SimpleType restriction = simpleType; restriction != null && seen.put(restriction, Boolean.TRUE) == null;
+             restriction = restriction.getBase() != null ? objectsHandler.getSimpleTypeByName(restriction.getBase()) : null) {
+            restrictions.add(restriction);
+        }
+
+        String pattern = null;
+        Integer minLength = null;
+        Integer maxLength = null;
+        Integer totalDigits = null;
+        Integer fractionDigits = null;
+        String minInclusive = null;
+        String maxInclusive = null;
+        List<String> enumerations = List.of();
+        //The closest restriction that sets a facet wins
+        for (int i = restrictions.size() - 1; i >= 0; i--) {
+            SimpleType restriction = restrictions.get(i);
+            pattern = restriction.getPattern() != null ? restriction.getPattern() : pattern;
+            minLength = restriction.getMinLength() != null ? restriction.getMinLength() : minLength;
+            maxLength = restriction.getMaxLength() != null ? restriction.getMaxLength() : maxLength;
+            totalDigits = restriction.getTotalDigits() != null ? restriction.getTotalDigits() : totalDigits;
+            fractionDigits = restriction.getFractionDigits() != null ? restriction.getFractionDigits() : fractionDigits;
+            minInclusive = restriction.getMinInclusive() != null ? restriction.getMinInclusive() : minInclusive;
+            maxInclusive = restriction.getMaxInclusive() != null ? restriction.getMaxInclusive() : maxInclusive;
+            enumerations = !restriction.getEnumerations().isEmpty() ? List.copyOf(restriction.getEnumerations()) : enumerations;
+        }
+        //The base of the last restriction is the built-in type, unless the chain ends at an undeclared type
+        String base = restrictions.get(restrictions.size() - 1).getBase();
+        return new CompiledSimpleType(simpleType.getName(), base, pattern, orNotSet(minLength), orNotSet(maxLength), orNotSet(totalDigits),
+                orNotSet(fractionDigits), minInclusive, maxInclusive, enumerations);
+    }
+
+    /**
+     * The built-in type with the name, without facets
+     *
+     * @param type the name of the built-in type e.g. xs:decimal
+     * @return the simple type
+     */
+    public static CompiledSimpleType builtIn(String type) {
+        return new CompiledSimpleType(type, type, null, NOT_SET, NOT_SET, NOT_SET, NOT_SET, null, null, List.of());
+    }
+
+    private static int orNotSet(Integer value) {
+        return value != null ? value : NOT_SET;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.compiled;
+
+import java.util.List;
+
+/**
+ * <h1>Compiled complex type</h1>
+ * <p>Immutable complex type of a compiled schema, shared by every element and message that uses it</p>
+ * <p>Besides its child elements, a complex type can hold a value of a simple type (xs:simpleContent), have attributes, and
+ * require an element the schema does not declare (xs:any)</p>
+ */
+public final class CompiledType {
+    private final String name;
+    private final CompiledElement[] childrenElements;
+    //The simple type of the value of an xs:simpleContent, null for element content
+    private final CompiledSimpleType simpleContent;
+    private final CompiledAttribute[] attributes;
+    //Whether the content has an xs:any that must occur
+    private final boolean anyElementRequired;
+
+    public CompiledType(String name, CompiledElement[] childrenElements) {
+        this(name, childrenElements, null, new CompiledAttribute[0], false);
+    }
+
+    public CompiledType(String name, CompiledElement[] childrenElements, CompiledSimpleType simpleContent, CompiledAttribute[] attributes,
+                        boolean anyElementRequired) {
+        this.name = name;
+        this.childrenElements = childrenElements;
+        this.simpleContent = simpleContent;
+        this.attributes = attributes;
+        this.anyElementRequired = anyElementRequired;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getChildCount() {
+        return childrenElements.length;
+    }
+
+    public CompiledElement getChild(int index) {
+        return childrenElements[index];
+    }
+
+    public List<CompiledElement> getChildrenElements() {
+        return List.of(childrenElements);
+    }
+
+    /**
+     * The simple type of the value the complex type holds instead of child elements, or null for element content
+     */
+    public CompiledSimpleType getSimpleContent() {
+        return simpleContent;
+    }
+
+    public int getAttributeCount() {
+        return attributes.length;
+    }
+
+    public CompiledAttribute getAttribute(int index) {
+        return attributes[index];
+    }
+
+    public List<CompiledAttribute> getAttributes() {
+        return List.of(attributes);
+    }
+
+    /**
+     * Whether the content must have an element the schema does not declare, which a message has no way to hold
+     */
+    public boolean isAnyElementRequired() {
+        return anyElementRequired;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledType{" +
+                "name='" + name + '\'' +
+                ", childCount=" + childrenElements.length +
+                ", attributeCount=" + attributes.length +
+                '}';
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.compiled;
+
+import com.techsol.models.handler.SymbolTable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Compiled type pool</h1>
+ * <p>Process-wide pool of compiled complex types shared by every schema compiled through it</p>
+ * <p>Message definitions such as pacs.008, pacs.009 and pacs.004 declare many structurally identical complex types.
+ * A type is fingerprinted by its name, its children, its simple content and its attributes, and the children of a pooled type
+ * are pooled themselves, so comparing the child types by identity compares the whole subtrees. Loading many schemas then keeps one compiled type
+ * per distinct structure instead of one per declaration.</p>
+ * <p>The names of the pooled elements have IDs in the symbol table of the pool so that the IDs agree across schemas.
+ * A pooled type is dropped once no compiled schema uses it any more.</p>
+ */
+public final class TypePool {
+    private static final TypePool SHARED = new TypePool();
+
+    //Element names of every schema compiled through the pool
+    private final SymbolTable symbolTable = new SymbolTable();
+    //Fingerprint -> pooled type
+    private final ConcurrentHashMap<Fingerprint, PooledType> types = new ConcurrentHashMap<>();
+    //Pooled types that are no longer used, whose entries are removed on the next lookup
+    private final ReferenceQueue<CompiledType> unusedTypes = new ReferenceQueue<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The pool shared by the whole process
+     */
+    public static TypePool shared() {
+        return SHARED;
+    }
+
+    /**
+     * The pooled type with the name and children, pooling a new type if there is none yet
+     *
+     * @param name             the name of the complex type
+     * @param childrenElements the children, whose complex types must be pooled already
+     * @return the pooled type
+     */
+    public CompiledType intern(String name, CompiledElement[] childrenElements) {
+        return intern(name, childrenElements, null, new CompiledAttribute[0], false);
+    }
+
+    /**
+     * The pooled type with the name, children and content, pooling a new type if there is none yet
+     *
+     * @param name               the name of the complex type
+     * @param childrenElements   the children, whose complex types must be pooled already
+     * @param simpleContent      the simple type of the value of an xs:simpleContent, or null
+     * @param attributes         the attributes
+     * @param anyElementRequired whether the content has an xs:any that must occur
+     * @return the pooled type
+     */
+    public CompiledType intern(String name, CompiledElement[] childrenElements, CompiledSimpleType simpleContent, CompiledAttribute[] attributes,
+                               boolean anyElementRequired) {
+        removeUnusedTypes();
+        lookups.incrementAndGet();
+        Fingerprint fingerprint = new Fingerprint(name, childrenElements, simpleContent, attributes, anyElementRequired);
+        while (true) {
+            PooledType pooledType = types.get(fingerprint);
+            CompiledType compiledType = pooledType != null ? pooledType.get() : null;
+            if (compiledType != null) {
+                hits.incrementAndGet();
+                return compiledType;
+            }
+            compiledType = new CompiledType(name, childrenElements, simpleContent, attributes, anyElementRequired);
+            PooledType newPooledType = new PooledType(compiledType, fingerprint, unusedTypes);
+            boolean added = pooledType == null ? types.putIfAbsent(fingerprint, newPooledType) == null : types.replace(fingerprint, pooledType, newPooledType);
+            //Another thread pooled the same structure first, use its type
+            if (added) {
+                return compiledType;
+            }
+        }
+    }
+
+    /**
+     * The ID of the element name, adding the name if it is not in the pool yet
+     *
+     * @param name
+     * @return the ID
+     */
+    public synchronized int nameIdOf(String name) {
+        return symbolTable.idOf(name);
+    }
+
+    /**
+     * The ID of the element name without adding it
+     *
+     * @param name
+     * @return the ID, or {@link SymbolTable#NOT_FOUND}
+     */
+    public synchronized int findNameId(String name) {
+        return symbolTable.find(name);
+    }
+
+    /**
+     * The shared string of the name or type, adding it if it is not in the pool yet
+     *
+     * @param symbol
+     * @return the shared string
+     */
+    public synchronized String internSymbol(String symbol) {
+        return symbolTable.intern(symbol);
+    }
+
+    /**
+     * @return the number of distinct types in the pool
+     */
+    public int getTypeCount() {
+        removeUnusedTypes();
+        return types.size();
+    }
+
+    /**
+     * @return the number of types looked up since the pool was created
+     */
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * @return the number of looked up types that were already in the pool
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    private void removeUnusedTypes() {
+        PooledType pooledType;
+        while ((pooledType = (PooledType) unusedTypes.poll()) != null) {
+            types.remove(pooledType.fingerprint, pooledType);
+        }
+    }
+
+    /**
+     * The structure of a complex type, with the complex types of the children compared by identity
+     */
+    private static final class Fingerprint {
+        private final String name;
+        private final CompiledElement[] childrenElements;
+        private final CompiledSimpleType simpleContent;
+        private final CompiledAttribute[] attributes;
+        private final boolean anyElementRequired;
+        private final int hash;
+
+        private Fingerprint(String name, CompiledElement[] childrenElements, CompiledSimpleType simpleContent, CompiledAttribute[] attributes,
+                            boolean anyElementRequired) {
+            this.name = name;
+            this.childrenElements = childrenElements;
+            this.simpleContent = simpleContent;
+            this.attributes = attributes;
+            this.anyElementRequired = anyElementRequired;
+            int hash = name != null ? name.hashCode() : 0;
+            for (CompiledElement element : childrenElements) {
+                hash = 31 * hash + element.structureHash();
+            }
+            hash = 31 * hash + Objects.hashCode(simpleContent);
+            hash = 31 * hash + Arrays.hashCode(attributes);
+            this.hash = 31 * hash + (anyElementRequired ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint fingerprint) || hash != fingerprint.hash || childrenElements.length != fingerprint.childrenElements.length
+                    || !Objects.equals(name, fingerprint.name) || anyElementRequired != fingerprint.anyElementRequired
+                    || !Objects.equals(simpleContent, fingerprint.simpleContent) || !Arrays.equals(attributes, fingerprint.attributes)) {
+                return false;
+            }
+            for (int i = 0; i < childrenElements.length; i++) {
+                if (!childrenElements[i].sameStructure(fingerprint.childrenElements[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A pooled type, removed from the pool once it is collected
+     */
+    private static final class PooledType extends WeakReference<CompiledType> {
+        private final Fingerprint fingerprint;
+
+        private PooledType(CompiledType compiledType, Fingerprint fingerprint, ReferenceQueue<CompiledType> queue) {
+            super(compiledType, queue);
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.handler;
+
+import java.util.ArrayList;
+
+/**
+ * <h1>Symbol table</h1>
+ * <p>Interns the names and types of a schema. Every object of the schema shares one string per symbol, and the indexes
+ * refer to a symbol by its int ID so that their lookups compare ints instead of strings.</p>
+ * <p>Symbols are only added while a schema is being loaded, after which the table is read by any number of threads</p>
+ */
+public class SymbolTable {
+    //Returned by find for a symbol that is not in the table
+    public static final int NOT_FOUND = -1;
+
+    //Open addressing hash table of the symbols, with the ID of each symbol at the same position
+    private String[] slots = new String[64];
+    private int[] slotIds = new int[64];
+    //ID of the null symbol, which is kept out of the hash table
+    private int nullId = NOT_FOUND;
+    private final ArrayList<String> symbols = new ArrayList<>();
+
+    /**
+     * The ID of the symbol, adding the symbol if it is not in the table yet
+     *
+     * @param symbol may be null
+     * @return the ID
+     */
+    public int idOf(String symbol) {
+        if (symbol == null) {
+            if (nullId == NOT_FOUND) {
+                nullId = add(null);
+            }
+            return nullId;
+        }
+        int slot = slotOf(symbol);
+        if (slots[slot] == null) {
+            slots[slot] = symbol;
+            slotIds[slot] = add(symbol);
+            //Keep the table at most half full so probe sequences stay short
+            if (symbols.size() * 2 > slots.length) {
+                grow();
+            }
+            return symbols.size() - 1;
+        }
+        return slotIds[slot];
+    }
+
+    /**
+     * The ID of the symbol without adding it
+     *
+     * @param symbol
+     * @return the ID, or {@link #NOT_FOUND}
+     */
+    public int find(String symbol) {
+        if (symbol == null) {
+            return nullId;
+        }
+        int slot = slotOf(symbol);
+        return slots[slot] != null ? slotIds[slot] : NOT_FOUND;
+    }
+
+    /**
+     * The string held by the table for the symbol, adding the symbol if it is not in the table yet
+     *
+     * @param symbol
+     * @return the shared string
+     */
+    public String intern(String symbol) {
+        return symbols.get(idOf(symbol));
+    }
+
+    public String symbolOf(int id) {
+        return symbols.get(id);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    private int add(String symbol) {
+        symbols.add(symbol);
+        return symbols.size() - 1;
+    }
+
+    /**
+     * The slot holding the symbol, or the empty slot it would be added to
+     */
+    private int slotOf(String symbol) {
+        int mask = slots.length - 1;
+        int hash = symbol.hashCode();
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (slots[slot] != null && !slots[slot].equals(symbol)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldSlots = slots;
+        int[] oldSlotIds = slotIds;
+        slots = new String[oldSlots.length * 2];
+        slotIds = new int[oldSlots.length * 2];
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != null) {
+                int slot = slotOf(oldSlots[i]);
+                slots[slot] = oldSlots[i];
+                slotIds[slot] = oldSlotIds[i];
+            }
+        }
+    }
+}
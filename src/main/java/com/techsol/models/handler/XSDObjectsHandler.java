@@ -9,13 +9,46 @@ import com.techsol.models.xsd.Element;
 import com.techsol.models.xsd.SimpleType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * <p>Orchestrates the objects created from a schema</p>
+ * <p>The array lists keep the objects in document order while the hash indexes serve the lookups,
+ * so that linking a schema scales with its size instead of with the square of its size.
+ * The indexes are only kept in sync through the add, remove and set methods of this class.</p>
+ * <p>The indexes are arrays indexed by the symbol IDs of the names and types, so a lookup hashes its strings once
+ * in the symbol table and otherwise only compares ints</p>
+ */
 public class XSDObjectsHandler {
     public ArrayList<Element> elementArrayList = new ArrayList<>();
     public ArrayList<ComplexType> complexTypeArrayList = new ArrayList<>();
     public ArrayList<SimpleType> simpleTypeArrayList = new ArrayList<>();
 
+    //Interned names and types of the objects
+    private final SymbolTable symbolTable;
+    //Name ID -> first complex type / simple type declared with that name
+    private ComplexType[] complexTypeIndex = new ComplexType[0];
+    private SimpleType[] simpleTypeIndex = new SimpleType[0];
+    //Name ID -> the elements declared with that name, one bucket per type, each in document order
+    private ElementBucket[] elementIndex = new ElementBucket[0];
+    //Name ID -> all the elements declared with that name, in document order
+    private final ArrayList<ArrayList<Element>> elementNameIndex = new ArrayList<>();
+    //The elements declared directly in xs:schema, in document order
+    private final ArrayList<Element> topLevelElements = new ArrayList<>();
+
     public XSDObjectsHandler() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * @param symbolTable the symbol table of the schema, shared by the handlers of one compilation
+     */
+    public XSDObjectsHandler(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
     }
 
     public ArrayList<Element> getElementArrayList() {
@@ -24,6 +57,11 @@ public class XSDObjectsHandler {
 
     public void setElementArrayList(ArrayList<Element> elementArrayList) {
         this.elementArrayList = elementArrayList;
+        elementIndex = new ElementBucket[0];
+        elementNameIndex.clear();
+        for (Element element : elementArrayList) {
+            indexElement(element);
+        }
     }
 
     public ArrayList<ComplexType> getComplexTypeArrayList() {
@@ -32,6 +70,10 @@ public class XSDObjectsHandler {
 
     public void setComplexTypeArrayList(ArrayList<ComplexType> complexTypeArrayList) {
         this.complexTypeArrayList = complexTypeArrayList;
+        complexTypeIndex = new ComplexType[0];
+        for (ComplexType complexType : complexTypeArrayList) {
+            indexComplexType(complexType);
+        }
     }
 
     public ArrayList<SimpleType> getSimpleTypeArrayList() {
@@ -40,18 +82,25 @@ public class XSDObjectsHandler {
 
     public void setSimpleTypeArrayList(ArrayList<SimpleType> simpleTypeArrayList) {
         this.simpleTypeArrayList = simpleTypeArrayList;
+        simpleTypeIndex = new SimpleType[0];
+        for (SimpleType simpleType : simpleTypeArrayList) {
+            indexSimpleType(simpleType);
+        }
     }
 
     public void addElementToArrayList(Element element) {
         elementArrayList.add(element);
+        indexElement(element);
     }
 
     public void addComplexTypeToArrayList(ComplexType complexType) {
         complexTypeArrayList.add(complexType);
+        indexComplexType(complexType);
     }
 
     public void addSimpleTypeToArrayList(SimpleType simpleType) {
         simpleTypeArrayList.add(simpleType);
+        indexSimpleType(simpleType);
     }
 
     public Element getElementByType(String typeName) {
@@ -65,30 +114,20 @@ public class XSDObjectsHandler {
     }
 
     public Element getElementByName(String name) {
-        for (Element element : elementArrayList) {
-            if (element.getName().equals(name)) {
-                return element;
-            }
-        }
-
-        return null;
+        ArrayList<Element> elements = elementsNamed(symbolTable.find(name));
+        return elements == null ? null : elements.get(0);
     }
 
     public ArrayList<Element> getElementsByName(String name) {
-        ArrayList<Element> elementArrayList1 = new ArrayList<>();
-        for (Element element : elementArrayList) {
-            if (element.getName().equals(name)) {
-                elementArrayList1.add(element);
-            }
-        }
-
-        return elementArrayList1;
+        ArrayList<Element> elements = elementsNamed(symbolTable.find(name));
+        return elements == null ? new ArrayList<>() : new ArrayList<>(elements);
     }
 
     public boolean removeElementFromList(Element element) {
         for (Element element1 : elementArrayList) {
             if (element1.equals(element)) {
                 elementArrayList.remove(element1);
+                unindexElement(element1);
                 return true;
             }
         }
@@ -107,19 +146,37 @@ public class XSDObjectsHandler {
         return complexTypes;
     }
 
-    public Element getParentComplexTypeNotSetElement(String type, String name) {
-        for (Element element : elementArrayList) {
-            if (element.getName().equals(name) && element.getType().equals(type) && element.getParentComplexType() == null) {
-                return element;
-            }
-        }
+    public Element getSimpleTypeNotSetElement(String type, String name) {
+        ElementBucket bucket = findBucket(name, type);
+        return bucket == null ? null : bucket.firstWithoutSimpleType();
+    }
 
-        return null;
+    public ComplexType getComplexTypeByName(String complexName) {
+        int id = symbolTable.find(complexName);
+        return id >= 0 && id < complexTypeIndex.length ? complexTypeIndex[id] : null;
     }
 
-    public Element getSimpleTypeNotSetElement(String type, String name) {
-        for (Element element : elementArrayList) {
-            if (element.getName().equals(name) && element.getType().equals(type) && element.getSimpleType() == null) {
+    /**
+     * Record a global element of the schema, one declared directly in xs:schema
+     *
+     * @param element an element already added to the element array list
+     */
+    public void addTopLevelElement(Element element) {
+        topLevelElements.add(element);
+    }
+
+    public ArrayList<Element> getTopLevelElements() {
+        return topLevelElements;
+    }
+
+    /**
+     * The element of the message e.g. Document: the first global element whose type is a declared complex type
+     *
+     * @return the root element, or null for a schema of types only
+     */
+    public Element getRootElement() {
+        for (Element element : topLevelElements) {
+            if (getComplexTypeByName(element.getType()) != null) {
                 return element;
             }
         }
@@ -127,53 +184,134 @@ public class XSDObjectsHandler {
         return null;
     }
 
-    public ComplexType getComplexTypeByName(String complexName) {
-        for (ComplexType complexType : complexTypeArrayList) {
-            if (complexType.getName().equals(complexName)) {
-                return complexType;
-            }
+    public boolean elementTypeExistsAsSimpleType(String type) {
+        return getSimpleTypeByName(type) != null;
+    }
+
+    public SimpleType getSimpleTypeByName(String name) {
+        int id = symbolTable.find(name);
+        return id >= 0 && id < simpleTypeIndex.length ? simpleTypeIndex[id] : null;
+    }
+
+    public Element getElementWithoutComplex(String type, String name) {
+        ElementBucket bucket = findBucket(name, type);
+        return bucket == null ? null : bucket.firstWithoutComplexType();
+    }
+
+    private void indexComplexType(ComplexType complexType) {
+        int id = symbolTable.idOf(complexType.getName());
+        if (id >= complexTypeIndex.length) {
+            complexTypeIndex = Arrays.copyOf(complexTypeIndex, Math.max(id + 1, symbolTable.size()));
+        }
+        if (complexTypeIndex[id] == null) {
+            complexTypeIndex[id] = complexType;
         }
+    }
 
-        return null;
+    private void indexSimpleType(SimpleType simpleType) {
+        int id = symbolTable.idOf(simpleType.getName());
+        if (id >= simpleTypeIndex.length) {
+            simpleTypeIndex = Arrays.copyOf(simpleTypeIndex, Math.max(id + 1, symbolTable.size()));
+        }
+        if (simpleTypeIndex[id] == null) {
+            simpleTypeIndex[id] = simpleType;
+        }
     }
 
-    public Element getRootElement() {
-        for (Element element : elementArrayList) {
-            if (element.getParentComplexType() == null) {
-                return element;
-            }
+    /**
+     * The bucket of the (name, type) key, comparing the symbol IDs of the types of the buckets declared with the name
+     */
+    private ElementBucket findBucket(String name, String type) {
+        int nameId = symbolTable.find(name);
+        int typeId = symbolTable.find(type);
+        if (nameId < 0 || typeId < 0 || nameId >= elementIndex.length) {
+            return null;
+        }
+        ElementBucket bucket = elementIndex[nameId];
+        while (bucket != null && bucket.typeId != typeId) {
+            bucket = bucket.next;
         }
+        return bucket;
+    }
 
-        return null;
+    private ArrayList<Element> elementsNamed(int nameId) {
+        return nameId >= 0 && nameId < elementNameIndex.size() ? elementNameIndex.get(nameId) : null;
     }
 
-    public boolean elementTypeExistsAsSimpleType(String type) {
-        for (SimpleType simpleType : simpleTypeArrayList) {
-            if (simpleType.getName().equals(type)) {
-                return true;
-            }
+    private void indexElement(Element element) {
+        int nameId = symbolTable.idOf(element.getName());
+        int typeId = symbolTable.idOf(element.getType());
+        if (nameId >= elementIndex.length) {
+            elementIndex = Arrays.copyOf(elementIndex, Math.max(nameId + 1, symbolTable.size()));
+        }
+        ElementBucket bucket = elementIndex[nameId];
+        while (bucket != null && bucket.typeId != typeId) {
+            bucket = bucket.next;
+        }
+        if (bucket == null) {
+            bucket = new ElementBucket(typeId, elementIndex[nameId]);
+            elementIndex[nameId] = bucket;
         }
+        bucket.elements.add(element);
 
-        return false;
+        while (elementNameIndex.size() <= nameId) {
+            elementNameIndex.add(null);
+        }
+        if (elementNameIndex.get(nameId) == null) {
+            elementNameIndex.set(nameId, new ArrayList<>(1));
+        }
+        elementNameIndex.get(nameId).add(element);
     }
 
-    public SimpleType getSimpleTypeByName(String name) {
-        for (SimpleType simpleType : simpleTypeArrayList) {
-            if (simpleType.getName().equals(name)) {
-                return simpleType;
+    private void unindexElement(Element element) {
+        ElementBucket bucket = findBucket(element.getName(), element.getType());
+        if (bucket != null) {
+            bucket.elements.remove(element);
+            bucket.resetCursors();
+        }
+        ArrayList<Element> elements = elementsNamed(symbolTable.find(element.getName()));
+        if (elements != null) {
+            elements.remove(element);
+            if (elements.isEmpty()) {
+                elementNameIndex.set(symbolTable.find(element.getName()), null);
             }
         }
-
-        return null;
     }
 
-    public Element getElementWithoutComplex(String type, String name) {
-        for (Element element : elementArrayList) {
-            if (element.getName().equals(name) && element.getType().equals(type) && element.getComplexType() == null) {
-                return element;
+    /**
+     * <p>The elements sharing a (name, type) key, chained to the buckets of the other types declared with the name</p>
+     * <p>Linking only ever binds the parent, simple type and complex type of an element once, so each "not yet bound" lookup
+     * keeps a cursor past the elements that it has already seen bound instead of rescanning them on every call</p>
+     */
+    private static class ElementBucket {
+        private final int typeId;
+        private final ElementBucket next;
+        private final ArrayList<Element> elements = new ArrayList<>(1);
+        private int simpleTypeCursor;
+        private int complexTypeCursor;
+
+        private ElementBucket(int typeId, ElementBucket next) {
+            this.typeId = typeId;
+            this.next = next;
+        }
+
+        private Element firstWithoutSimpleType() {
+            while (simpleTypeCursor < elements.size() && elements.get(simpleTypeCursor).getSimpleType() != null) {
+                simpleTypeCursor++;
             }
+            return simpleTypeCursor < elements.size() ? elements.get(simpleTypeCursor) : null;
         }
 
-        return null;
+        private Element firstWithoutComplexType() {
+            while (complexTypeCursor < elements.size() && elements.get(complexTypeCursor).isComplexTypeLinked()) {
+                complexTypeCursor++;
+            }
+            return complexTypeCursor < elements.size() ? elements.get(complexTypeCursor) : null;
+        }
+
+        private void resetCursors() {
+            simpleTypeCursor = 0;
+            complexTypeCursor = 0;
+        }
     }
 }
@@ -0,0 +1,171 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.message;
+
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.CompiledType;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * <h1>Message instance</h1>
+ * <p>The values of one message, kept apart from the shared {@link CompiledSchema}</p>
+ * <p>Nodes are only allocated along the paths that are navigated when writing values, everything else is read from the compiled types</p>
+ */
+public class MessageInstance {
+    private final CompiledSchema schema;
+    private final Node root;
+
+    public MessageInstance(CompiledSchema schema) {
+        this.schema = schema;
+        this.root = new Node(schema.getRootType());
+    }
+
+    public CompiledSchema getSchema() {
+        return schema;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Write the value to the last element specified in the mapping path, starting from the root complex type
+     *
+     * @param tags       the element names of the path e.g. FIToFICstmrCdtTrf, GrpHdr, MsgId
+     * @param writeValue
+     */
+    public void writeToElement(String[] tags, String writeValue) {
+        //The nodes still to search, each with the position of the tag to match among its children
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> tagIndexes = new ArrayDeque<>();
+        nodes.push(root);
+        tagIndexes.push(0);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            int i = tagIndexes.pop();
+            CompiledType complexType = node.getType();
+            for (int index = 0; index < complexType.getChildCount(); index++) {
+                CompiledElement element = complexType.getChild(index);
+                //The element name is the same as the tag being searched for, but we are not at the end of the mapping path
+                if (element.getName().equals(tags[i]) && tags.length - 1 != i) {
+                    Node child = node.getOrCreateChild(index, schema);
+                    if (child != null) {
+                        nodes.push(child);
+                        tagIndexes.push(i + 1);
+                    }
+                } else if (element.getName().equals(tags[i]) && tags.length - 1 == i) {
+                    node.setValue(index, writeValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>A navigated complex type of the message</p>
+     * <p>Each child slot holds either the node of a navigated child or the value of a leaf, and the slots are only allocated once something is written.
+     * The attribute values of a child are kept by the node as well, by child and attribute index of the complex type of the child.</p>
+     */
+    public static class Node {
+        private final CompiledType type;
+        private Object[] slots;
+        private String[][] attributeValues;
+
+        private Node(CompiledType type) {
+            this.type = type;
+        }
+
+        public CompiledType getType() {
+            return type;
+        }
+
+        /**
+         * The node of a navigated child, or null if the child was never navigated
+         */
+        public Node getChild(int index) {
+            return slots != null && slots[index] instanceof Node node ? node : null;
+        }
+
+        /**
+         * The value of a leaf child, or null if no value was written
+         */
+        public String getValue(int index) {
+            return slots != null && slots[index] instanceof String value ? value : null;
+        }
+
+        /**
+         * Get the node of the child, expanding its complex type if it was not attached during linking
+         *
+         * @return the child node, or null if the child is a simple type
+         */
+        public Node getOrCreateChild(int index, CompiledSchema schema) {
+            Node child = getChild(index);
+            if (child == null) {
+                CompiledType childType = schema.resolveComplexType(type.getChild(index));
+                if (childType == null) {
+                    return null;
+                }
+                child = new Node(childType);
+                slots()[index] = child;
+            }
+            return child;
+        }
+
+        /**
+         * Set the value of a leaf child, a child with a navigated complex type keeps rendering its complex type
+         */
+        public void setValue(int index, String value) {
+            if (getChild(index) == null) {
+                slots()[index] = value;
+            }
+        }
+
+        /**
+         * The value of an attribute of a child, or null if no value was written
+         *
+         * @param index     the index of the child
+         * @param attribute the index of the attribute in the complex type of the child
+         */
+        public String getAttributeValue(int index, int attribute) {
+            String[] values = attributeValues != null ? attributeValues[index] : null;
+            return values != null && attribute < values.length ? values[attribute] : null;
+        }
+
+        /**
+         * Whether a value was written to any attribute of the child
+         */
+        public boolean hasAttributeValues(int index) {
+            return attributeValues != null && attributeValues[index] != null;
+        }
+
+        /**
+         * Set the value of an attribute of a child
+         *
+         * @param index     the index of the child
+         * @param attribute the index of the attribute in the complex type of the child
+         * @param value
+         */
+        public void setAttributeValue(int index, int attribute, String value) {
+            if (attributeValues == null) {
+                attributeValues = new String[type.getChildCount()][];
+            }
+            String[] values = attributeValues[index];
+            if (values == null || attribute >= values.length) {
+                values = values == null ? new String[attribute + 1] : Arrays.copyOf(values, attribute + 1);
+                attributeValues[index] = values;
+            }
+            values[attribute] = value;
+        }
+
+        private Object[] slots() {
+            if (slots == null) {
+                slots = new Object[type.getChildCount()];
+            }
+            return slots;
+        }
+    }
+}
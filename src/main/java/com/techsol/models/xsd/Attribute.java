@@ -0,0 +1,59 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.xsd;
+
+/**
+ * <h1>&lt xs:attribute&gt</h1>
+ * <p>Object representing an attribute of a complex type</p>
+ */
+public class Attribute {
+    private String name = "";
+    //The simple type of the values, null when the declaration has no type attribute
+    private String type;
+    //use="required"
+    private boolean required;
+
+    public Attribute() {
+    }
+
+    public Attribute(String name, String type, boolean required) {
+        this.name = name;
+        this.type = type;
+        this.required = required;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+
+    public void setRequired(boolean required) {
+        this.required = required;
+    }
+
+    @Override
+    public String toString() {
+        return "Attribute{" +
+                "name='" + name + '\'' +
+                ", type='" + type + '\'' +
+                ", required=" + required +
+                '}';
+    }
+}
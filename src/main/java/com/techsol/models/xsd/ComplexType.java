@@ -4,7 +4,9 @@
 
 package com.techsol.models.xsd;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 /**
  * <h1>&lt xs:complexType&gt</h1>
@@ -15,34 +17,119 @@ public class ComplexType {
     private String tagName = "";
     //Arraylist that stores <xs:element> objects
     private ArrayList<Element> childrenElements = new ArrayList<>(0);
+    //The simple type an <xs:simpleContent> extends or restricts, null for element content
+    private String simpleContentBase;
+    //Arraylist that stores <xs:attribute> objects
+    private ArrayList<Attribute> attributes = new ArrayList<>(0);
+    //Whether the content has an <xs:any> that must occur, i.e. content the schema does not declare
+    private boolean anyElementRequired;
 
     public ComplexType() {
     }
 
+    /**
+     * @param childCount the number of child elements the complex type will have
+     */
+    public ComplexType(int childCount) {
+        this.childrenElements = new ArrayList<>(childCount);
+    }
+
+    /**
+     * Deep copy of the complex type, every complex type below it is copied as well
+     *
+     * @param complexType
+     */
     public ComplexType(ComplexType complexType) {
         this.name = complexType.getName();
         this.tagName = complexType.getTagName();
-        ArrayList<Element> newElementArrayList = new ArrayList<>();
+        ArrayList<Element> newElementArrayList = new ArrayList<>(complexType.getChildrenElements().size());
         for (Element element : complexType.getChildrenElements()) {
-            Element element1 = new Element(element);
-            recursivelyCreateNewElements(element1);
-            newElementArrayList.add(element1);
+            newElementArrayList.add(new Element(element));
         }
         this.childrenElements = newElementArrayList;
+        copyContentOf(complexType);
+        recursivelyCreateNewElements(this, complexType);
     }
 
-    private static void recursivelyCreateNewElements(Element element) {
-        if (element.getComplexType() != null) {
-            ComplexType complexType = new ComplexType(element.getComplexType());
-            element.setComplexType(complexType);
-            if (complexType.getChildrenElements().size() > 0) {
-                for (Element element1 : complexType.getChildrenElements()) {
-                    recursivelyCreateNewElements(element1);
-                }
+    /**
+     * Copy the complex type and its list of child elements, sharing the complex types of the children instead of copying them
+     * <p>Linking only ever sets the complex type of an element once, so the state of the complex type at the time of the copy
+     * is kept without cloning the whole subtree. The copies must not be written to afterwards, values go in a message instance.</p>
+     *
+     * @param complexType
+     * @return the copy
+     */
+    public static ComplexType snapshotOf(ComplexType complexType) {
+        ComplexType snapshot = new ComplexType();
+        snapshot.name = complexType.getName();
+        snapshot.tagName = complexType.getTagName();
+        snapshot.copyContentOf(complexType);
+        snapshot.childrenElements = new ArrayList<>(complexType.getChildrenElements().size());
+        for (Element element : complexType.getChildrenElements()) {
+            snapshot.childrenElements.add(new Element(element));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replace the complex types of the copied elements with copies, walking the tree with an explicit stack
+     * <p>A complex type that is already being copied further up the path is a recursive reference, the element referring
+     * to it is left without a complex type instead of being copied forever</p>
+     */
+    private static void recursivelyCreateNewElements(ComplexType root, ComplexType rootSource) {
+        ArrayDeque<ComplexType> copies = new ArrayDeque<>();
+        ArrayDeque<ComplexType> sources = new ArrayDeque<>();
+        ArrayDeque<Integer> nextChildren = new ArrayDeque<>();
+        IdentityHashMap<ComplexType, Boolean> copying = new IdentityHashMap<>();
+        copies.push(root);
+        sources.push(rootSource);
+        nextChildren.push(0);
+        copying.put(rootSource, Boolean.TRUE);
+        while (!copies.isEmpty()) {
+            ComplexType copy = copies.peek();
+            int nextChild = nextChildren.pop();
+            if (nextChild == copy.childrenElements.size()) {
+                copies.pop();
+                copying.remove(sources.pop());
+                continue;
             }
+            nextChildren.push(nextChild + 1);
+            Element element = copy.childrenElements.get(nextChild);
+            ComplexType source = element.getComplexType();
+            if (source == null) {
+                continue;
+            }
+            if (copying.containsKey(source)) {
+                element.setComplexType(null);
+                continue;
+            }
+            ComplexType complexType = new ComplexType(source.getChildrenElements().size());
+            complexType.name = source.getName();
+            complexType.tagName = source.getTagName();
+            complexType.copyContentOf(source);
+            for (Element child : source.getChildrenElements()) {
+                complexType.childrenElements.add(new Element(child));
+            }
+            element.setComplexType(complexType);
+            copies.push(complexType);
+            sources.push(source);
+            nextChildren.push(0);
+            copying.put(source, Boolean.TRUE);
         }
     }
 
+    /**
+     * Take the simple content, the attributes and the wildcard of the other complex type, sharing the list of attributes
+     * <p>The attributes are not changed once the schema is loaded, like the facets of a simple type</p>
+     *
+     * @param complexType
+     */
+    public void copyContentOf(ComplexType complexType) {
+        this.simpleContentBase = complexType.simpleContentBase;
+        this.attributes = complexType.attributes;
+        this.anyElementRequired = complexType.anyElementRequired;
+    }
+
     public String getName() {
         return name;
     }
@@ -71,6 +158,34 @@ public class ComplexType {
         childrenElements.add(element);
     }
 
+    public String getSimpleContentBase() {
+        return simpleContentBase;
+    }
+
+    public void setSimpleContentBase(String simpleContentBase) {
+        this.simpleContentBase = simpleContentBase;
+    }
+
+    public ArrayList<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(ArrayList<Attribute> attributes) {
+        this.attributes = attributes;
+    }
+
+    public void addAttributeToArrayList(Attribute attribute) {
+        attributes.add(attribute);
+    }
+
+    public boolean isAnyElementRequired() {
+        return anyElementRequired;
+    }
+
+    public void setAnyElementRequired(boolean anyElementRequired) {
+        this.anyElementRequired = anyElementRequired;
+    }
+
     public Element getChildElementByName(String name) {
         for (Element element : childrenElements) {
             if (element.getName().equals(name)) {
@@ -87,6 +202,8 @@ public class ComplexType {
                 "name='" + name + '\'' +
                 ", tagName='" + tagName + '\'' +
                 ", childrenElements=" + childrenElements +
+                ", simpleContentBase='" + simpleContentBase + '\'' +
+                ", attributes=" + attributes +
                 '}';
     }
 }
@@ -0,0 +1,65 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.models.xsd;
+
+import com.techsol.models.handler.XSDObjectsHandler;
+
+import java.util.IdentityHashMap;
+
+/**
+ * <h1>Complex type linker</h1>
+ * <p>Materialises the complex type of a linked element the first time it is navigated, instead of copying it when the element is linked</p>
+ * <p>Linking an element in document order used to attach a copy of its declared complex type as it stood at that moment, i.e. with
+ * complex types only on the children that had been linked before it. The linker records the position each element was linked at
+ * and rebuilds that copy on demand. Copies with the same linked children are the same, so they are built once and shared.</p>
+ */
+public final class ComplexTypeLinker {
+    //Position of an element that was never linked, past every linked element
+    public static final int UNLINKED = Integer.MAX_VALUE;
+
+    private final XSDObjectsHandler objectsHandler;
+    //Declared complex type -> its copies, indexed by the number of children linked when the copy was taken
+    private final IdentityHashMap<ComplexType, ComplexType[]> copies = new IdentityHashMap<>();
+
+    /**
+     * @param objectsHandler the handler holding the declared objects
+     */
+    public ComplexTypeLinker(XSDObjectsHandler objectsHandler) {
+        this.objectsHandler = objectsHandler;
+    }
+
+    /**
+     * The declared complex type as it stood before the element linked at the given position
+     *
+     * @param type      the name of the declared complex type
+     * @param linkOrder the position the element was linked at, or {@link #UNLINKED} for the complex type once linking was done
+     * @return the copy, or null when no complex type of that name is declared
+     */
+    public synchronized ComplexType complexTypeAt(String type, int linkOrder) {
+        ComplexType complexType = objectsHandler.getComplexTypeByName(type);
+        if (complexType == null) {
+            return null;
+        }
+        int linkedChildren = 0;
+        for (Element element : complexType.getChildrenElements()) {
+            if (element.getLinkOrder() < linkOrder) {
+                linkedChildren++;
+            }
+        }
+        ComplexType[] complexTypeCopies = copies.computeIfAbsent(complexType, key -> new ComplexType[key.getChildrenElements().size() + 1]);
+        ComplexType copy = complexTypeCopies[linkedChildren];
+        if (copy == null) {
+            copy = ComplexType.snapshotOf(complexType);
+            for (Element element : copy.getChildrenElements()) {
+                //A child linked after the copy was taken had no complex type yet
+                if (element.getLinkOrder() >= linkOrder) {
+                    element.setComplexType(null);
+                }
+            }
+            complexTypeCopies[linkedChildren] = copy;
+        }
+        return copy;
+    }
+}
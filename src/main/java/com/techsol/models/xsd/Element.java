@@ -9,14 +9,27 @@ package com.techsol.models.xsd;
  * <p>Object representing an element</p>
  */
 public class Element {
+    private static final int NOT_SET = Integer.MIN_VALUE;
+    //maxOccurs="unbounded"
+    public static final int UNBOUNDED = -1;
+
     private String name = "";
     private String type = "";
     private String value = null;
-    private Integer minOccurs;
-    private Integer maxOccurs;
+    //Occurrence bounds, NOT_SET when the attribute is absent
+    private int minOccurs = NOT_SET;
+    private int maxOccurs = NOT_SET;
+    //Whether the element is an alternative of an xs:choice
+    private boolean choice;
     private ComplexType parentComplexType;
     private ComplexType complexType = null;
     private SimpleType simpleType = null;
+    //Position of the element in the order its complex type was linked
+    private int linkOrder = ComplexTypeLinker.UNLINKED;
+    //Materialises the complex type on first use, null once the complex type is set directly
+    private ComplexTypeLinker complexTypeLinker;
+    //The link position the complex type is materialised at
+    private int complexTypeOrder;
 
     public Element() {
     }
@@ -25,11 +38,16 @@ public class Element {
         this.name = element.getName();
         this.type = element.getType();
         this.value = element.getValue();
-        this.minOccurs = element.getMinOccurs();
-        this.maxOccurs = element.getMaxOccurs();
-        this.complexType = element.getComplexType();
+        this.minOccurs = element.minOccurs;
+        this.maxOccurs = element.maxOccurs;
+        this.choice = element.choice;
+        //The fields are copied as they are so that a complex type that was not materialised yet stays lazy in the copy
+        this.complexType = element.complexType;
         this.simpleType = element.getSimpleType();
         this.parentComplexType = element.getParentComplexType();
+        this.linkOrder = element.linkOrder;
+        this.complexTypeLinker = element.complexTypeLinker;
+        this.complexTypeOrder = element.complexTypeOrder;
     }
 
     public String getName() {
@@ -57,19 +75,27 @@ public class Element {
     }
 
     public Integer getMinOccurs() {
-        return minOccurs;
+        return minOccurs != NOT_SET ? minOccurs : null;
     }
 
     public void setMinOccurs(Integer minOccurs) {
-        this.minOccurs = minOccurs;
+        this.minOccurs = minOccurs != null ? minOccurs : NOT_SET;
     }
 
     public Integer getMaxOccurs() {
-        return maxOccurs;
+        return maxOccurs != NOT_SET ? maxOccurs : null;
     }
 
     public void setMaxOccurs(Integer maxOccurs) {
-        this.maxOccurs = maxOccurs;
+        this.maxOccurs = maxOccurs != null ? maxOccurs : NOT_SET;
+    }
+
+    public boolean isChoice() {
+        return choice;
+    }
+
+    public void setChoice(boolean choice) {
+        this.choice = choice;
     }
 
     public ComplexType getParentComplexType() {
@@ -80,12 +106,54 @@ public class Element {
         this.parentComplexType = parentComplexType;
     }
 
+    /**
+     * The complex type of the element, materialised the first time it is asked for when the element was linked lazily
+     */
     public ComplexType getComplexType() {
+        if (complexType == null && complexTypeLinker != null) {
+            complexType = complexTypeLinker.complexTypeAt(type, complexTypeOrder);
+        }
         return complexType;
     }
 
     public void setComplexType(ComplexType complexType) {
         this.complexType = complexType;
+        this.complexTypeLinker = null;
+    }
+
+    /**
+     * Link the complex type of the element without materialising it
+     *
+     * @param complexTypeLinker
+     * @param complexTypeOrder  the link position the complex type is materialised at
+     */
+    public void linkComplexType(ComplexTypeLinker complexTypeLinker, int complexTypeOrder) {
+        this.complexType = null;
+        this.complexTypeLinker = complexTypeLinker;
+        this.complexTypeOrder = complexTypeOrder;
+    }
+
+    /**
+     * Whether the element has a complex type, materialised or not
+     */
+    public boolean isComplexTypeLinked() {
+        return complexType != null || complexTypeLinker != null;
+    }
+
+    public ComplexTypeLinker getComplexTypeLinker() {
+        return complexTypeLinker;
+    }
+
+    public int getComplexTypeOrder() {
+        return complexTypeOrder;
+    }
+
+    public int getLinkOrder() {
+        return linkOrder;
+    }
+
+    public void setLinkOrder(int linkOrder) {
+        this.linkOrder = linkOrder;
     }
 
     public SimpleType getSimpleType() {
@@ -102,8 +170,8 @@ public class Element {
                 "name='" + name + '\'' +
                 ", type='" + type + '\'' +
                 ", value='" + value + '\'' +
-                ", minOccurs=" + minOccurs +
-                ", maxOccurs=" + maxOccurs +
+                ", minOccurs=" + getMinOccurs() +
+                ", maxOccurs=" + getMaxOccurs() +
                 ", complexType=" + complexType +
                 ", simpleType=" + simpleType +
                 ", parentComplexType=" + complexType +
@@ -4,9 +4,30 @@
 
 package com.techsol.models.xsd;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>&lt xs:simpleType&gt</h1>
+ * <p>Object representing a simple type and the facets of its restriction</p>
+ */
 public class SimpleType {
+    private static final int NOT_SET = Integer.MIN_VALUE;
+
     private String name = "";
     private Element element;
+    //The type the simple type restricts e.g. xs:string
+    private String base;
+    //The pattern the values must match, several patterns of one restriction are alternatives
+    private String pattern;
+    //Facets, NOT_SET when the restriction does not have them
+    private int minLength = NOT_SET;
+    private int maxLength = NOT_SET;
+    private int totalDigits = NOT_SET;
+    private int fractionDigits = NOT_SET;
+    private String minInclusive;
+    private String maxInclusive;
+    private List<String> enumerations = new ArrayList<>(0);
 
     public SimpleType() {
     }
@@ -14,6 +35,16 @@ public class SimpleType {
     public SimpleType(SimpleType simpleType) {
         this.name = simpleType.getName();
         this.element = simpleType.getElement();
+        this.base = simpleType.base;
+        this.pattern = simpleType.pattern;
+        this.minLength = simpleType.minLength;
+        this.maxLength = simpleType.maxLength;
+        this.totalDigits = simpleType.totalDigits;
+        this.fractionDigits = simpleType.fractionDigits;
+        this.minInclusive = simpleType.minInclusive;
+        this.maxInclusive = simpleType.maxInclusive;
+        //The facets are not changed once the schema is loaded, so the copies share the list
+        this.enumerations = simpleType.enumerations;
     }
 
     public String getName() {
@@ -32,10 +63,96 @@ public class SimpleType {
         this.element = element;
     }
 
+    public String getBase() {
+        return base;
+    }
+
+    public void setBase(String base) {
+        this.base = base;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Add a pattern of the restriction, a value has to match one of the patterns
+     *
+     * @param pattern
+     */
+    public void addPattern(String pattern) {
+        this.pattern = this.pattern == null ? pattern : "(" + this.pattern + ")|(" + pattern + ")";
+    }
+
+    public Integer getMinLength() {
+        return minLength != NOT_SET ? minLength : null;
+    }
+
+    public void setMinLength(Integer minLength) {
+        this.minLength = minLength != null ? minLength : NOT_SET;
+    }
+
+    public Integer getMaxLength() {
+        return maxLength != NOT_SET ? maxLength : null;
+    }
+
+    public void setMaxLength(Integer maxLength) {
+        this.maxLength = maxLength != null ? maxLength : NOT_SET;
+    }
+
+    public Integer getTotalDigits() {
+        return totalDigits != NOT_SET ? totalDigits : null;
+    }
+
+    public void setTotalDigits(Integer totalDigits) {
+        this.totalDigits = totalDigits != null ? totalDigits : NOT_SET;
+    }
+
+    public Integer getFractionDigits() {
+        return fractionDigits != NOT_SET ? fractionDigits : null;
+    }
+
+    public void setFractionDigits(Integer fractionDigits) {
+        this.fractionDigits = fractionDigits != null ? fractionDigits : NOT_SET;
+    }
+
+    public String getMinInclusive() {
+        return minInclusive;
+    }
+
+    public void setMinInclusive(String minInclusive) {
+        this.minInclusive = minInclusive;
+    }
+
+    public String getMaxInclusive() {
+        return maxInclusive;
+    }
+
+    public void setMaxInclusive(String maxInclusive) {
+        this.maxInclusive = maxInclusive;
+    }
+
+    public List<String> getEnumerations() {
+        return enumerations;
+    }
+
+    public void setEnumerations(List<String> enumerations) {
+        this.enumerations = enumerations;
+    }
+
+    public void addEnumeration(String enumeration) {
+        enumerations.add(enumeration);
+    }
+
     @Override
     public String toString() {
         return "SimpleType{" +
                 "name='" + name + '\'' +
+                ", base='" + base + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,474 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.output;
+
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.CompiledType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * <h1>Columnar renderer</h1>
+ * <p>Renders many messages of a schema from their values in columnar form, one array of values per mapped leaf path covering
+ * all the messages, without building a message tree per message</p>
+ * <p>The template skeleton and the mapped paths are compiled once into a flat program of pre-encoded markup and value writes.
+ * A message only expands the complex type of an element when it writes something below it, so the markup of such an element
+ * is compiled both expanded and empty and the program branches on whether the message has a value in any column below it.
+ * A message rendered from its columns is byte for byte the document of a {@link com.techsol.models.message.MessageInstance}
+ * populated with the same values, a null value meaning the path was not written.</p>
+ * <p>A column can also hold the values of an attribute slot of the skeleton, e.g. FIToFICstmrCdtTrf.CdtTrfTxInf.IntrBkSttlmAmt@Ccy,
+ * which a message instance has no counterpart for.</p>
+ */
+public final class ColumnarRenderer {
+    //Program instructions, each an opcode followed by two arguments
+    //Write the markup bytes [argument 1, argument 1 + argument 2)
+    private static final int MARKUP = 0;
+    //Write the value of the message in column argument 1
+    private static final int VALUE = 1;
+    //Carry on when the message has a value in a column of junction argument 1, otherwise jump to argument 2
+    private static final int BRANCH = 2;
+    //Jump to argument 1
+    private static final int JUMP = 3;
+    //Write the value of the message in column argument 1 as the attribute argument 2
+    private static final int ATTRIBUTE = 4;
+
+    private final TemplateSkeleton skeleton;
+    private final List<String> paths;
+    private final HashMap<String, Integer> columnsByPath;
+    private final byte[] markup;
+    private final int[] program;
+    //The columns below the element of each junction
+    private final int[][] junctionColumns;
+    //The names of the attributes of the ATTRIBUTE instructions
+    private final String[] attributeNames;
+
+    private ColumnarRenderer(TemplateSkeleton skeleton, List<String> paths, HashMap<String, Integer> columnsByPath, byte[] markup, int[] program,
+                             int[][] junctionColumns, String[] attributeNames) {
+        this.skeleton = skeleton;
+        this.paths = Collections.unmodifiableList(paths);
+        this.columnsByPath = columnsByPath;
+        this.markup = markup;
+        this.program = program;
+        this.junctionColumns = junctionColumns;
+        this.attributeNames = attributeNames;
+    }
+
+    /**
+     * Compile the rendering of messages whose values come in one column per path
+     *
+     * @param skeleton the skeleton of the schema
+     * @param paths    the dotted path of each column from the root complex type e.g. FIToFICstmrCdtTrf.GrpHdr.MsgId
+     * @return the renderer
+     * @throws IllegalArgumentException when a path does not resolve to an element of the schema or is given twice
+     */
+    public static ColumnarRenderer compile(TemplateSkeleton skeleton, List<String> paths) {
+        Builder builder = new Builder(skeleton);
+        HashMap<String, Integer> columnsByPath = new HashMap<>();
+        for (int column = 0; column < paths.size(); column++) {
+            if (columnsByPath.putIfAbsent(paths.get(column), column) != null) {
+                throw new IllegalArgumentException("Path " + paths.get(column) + " is given more than once");
+            }
+            builder.addPath(paths.get(column), column);
+        }
+        builder.compile();
+        return new ColumnarRenderer(skeleton, new ArrayList<>(paths), columnsByPath, builder.markup.toByteArray(),
+                builder.program.stream().mapToInt(Integer::intValue).toArray(), builder.junctionColumns.toArray(new int[0][]),
+                builder.attributeNames.toArray(new String[0]));
+    }
+
+    /**
+     * Render one message, without flushing the output
+     *
+     * @param columns the values of each column by message, a null column has no values
+     * @param message the position of the message in the columns
+     * @param output
+     */
+    public void render(String[][] columns, int message, XMLOutput output) throws IOException {
+        int pc = 0;
+        while (pc < program.length) {
+            switch (program[pc]) {
+                case MARKUP -> {
+                    output.writeBytes(markup, program[pc + 1], program[pc + 2]);
+                    pc += 3;
+                }
+                case VALUE -> {
+                    String[] column = columns[program[pc + 1]];
+                    String value = column != null ? column[message] : null;
+                    if (value != null) {
+                        output.writeText(value);
+                    }
+                    pc += 3;
+                }
+                case ATTRIBUTE -> {
+                    String[] column = columns[program[pc + 1]];
+                    String value = column != null ? column[message] : null;
+                    if (value != null) {
+                        output.writeAttribute(attributeNames[program[pc + 2]], value);
+                    }
+                    pc += 3;
+                }
+                case BRANCH -> pc = hasValue(columns, junctionColumns[program[pc + 1]], message) ? pc + 3 : program[pc + 2];
+                default -> pc = program[pc + 1];
+            }
+        }
+    }
+
+    /**
+     * Render all the messages of the columns one after the other, each followed by a new line, and flush the output once at the end
+     *
+     * @param columns the values of each column by message, every column that is not null holding a value per message
+     * @param output
+     * @return the number of messages rendered
+     */
+    public int renderAll(String[][] columns, XMLOutput output) throws IOException {
+        int messageCount = messageCount(columns);
+        for (int message = 0; message < messageCount; message++) {
+            render(columns, message, output);
+            output.newLine();
+        }
+        output.flush();
+        return messageCount;
+    }
+
+    /**
+     * The number of messages in the columns
+     *
+     * @throws IllegalArgumentException when there is not one array per column, or the arrays have different lengths
+     */
+    public int messageCount(String[][] columns) {
+        if (columns.length != paths.size()) {
+            throw new IllegalArgumentException("Expected " + paths.size() + " columns but got " + columns.length);
+        }
+        int messageCount = -1;
+        for (int column = 0; column < columns.length; column++) {
+            if (columns[column] == null) {
+                continue;
+            }
+            if (messageCount >= 0 && columns[column].length != messageCount) {
+                throw new IllegalArgumentException("Column " + paths.get(column) + " has " + columns[column].length + " values but the columns before it have "
+                        + messageCount);
+            }
+            messageCount = columns[column].length;
+        }
+        return Math.max(messageCount, 0);
+    }
+
+    private static boolean hasValue(String[][] columns, int[] junction, int message) {
+        for (int column : junction) {
+            if (columns[column] != null && columns[column][message] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public TemplateSkeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * The path of each column in column order
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public int getColumnCount() {
+        return paths.size();
+    }
+
+    /**
+     * @param path
+     * @return the column of the path, or -1 if the path has no column
+     */
+    public int getColumn(String path) {
+        Integer column = columnsByPath.get(path);
+        return column != null ? column : -1;
+    }
+
+    /**
+     * Compiles the program, mirroring {@link TemplateSkeleton#render} for the slots and {@link MessageRenderer} below an expanded slot
+     */
+    private static class Builder {
+        private final TemplateSkeleton skeleton;
+        private final CompiledSchema schema;
+        private final int maxDepth;
+        //Mapped paths below each slot
+        private final HashMap<Integer, PathNode> slotNodes = new HashMap<>();
+        private final ByteArrayOutputStream markup = new ByteArrayOutputStream();
+        //Start of the markup not yet covered by a MARKUP instruction
+        private int pendingMarkup;
+        private final ArrayList<Integer> program = new ArrayList<>();
+        private final ArrayList<int[]> junctionColumns = new ArrayList<>();
+        private final ArrayList<String> attributeNames = new ArrayList<>();
+        //The complex types being expanded on the path of the element being compiled, by the number of times they are on it
+        private final IdentityHashMap<CompiledType, Integer> expanding = new IdentityHashMap<>();
+
+        private Builder(TemplateSkeleton skeleton) {
+            this.skeleton = skeleton;
+            this.schema = skeleton.getSchema();
+            this.maxDepth = skeleton.getMaxDepth();
+        }
+
+        /**
+         * Resolve the path to a slot of the skeleton, or to an element below an expandable slot
+         */
+        private void addPath(String path, int column) {
+            int slot = skeleton.getSlot(path);
+            String[] rest = new String[0];
+            if (slot < 0) {
+                //The longest prefix of the path that is an expandable slot
+                for (int end = path.lastIndexOf('.'); end > 0 && slot < 0; end = path.lastIndexOf('.', end - 1)) {
+                    int prefixSlot = skeleton.getSlot(path.substring(0, end));
+                    if (prefixSlot >= 0 && skeleton.isExpandable(prefixSlot)) {
+                        slot = prefixSlot;
+                        rest = path.substring(end + 1).split("\\.");
+                    }
+                }
+                if (slot < 0) {
+                    throw new IllegalArgumentException("Path " + path + " is not a path of " + schema.getRootType().getName());
+                }
+            }
+
+            PathNode node = slotNodes.computeIfAbsent(slot, key -> new PathNode());
+            CompiledType complexType = rest.length > 0 ? schema.resolveComplexType(skeleton.getSlotElement(slot)) : null;
+            for (int i = 0; i < rest.length; i++) {
+                node.columnsBelow.add(column);
+                int index = indexOf(complexType, rest[i]);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Path " + path + " : " + rest[i] + " is not a child of " + complexType.getName());
+                }
+                node = node.children.computeIfAbsent(index, key -> new PathNode());
+                if (i < rest.length - 1) {
+                    complexType = schema.resolveComplexType(complexType.getChild(index));
+                    if (complexType == null) {
+                        throw new IllegalArgumentException("Path " + path + " : " + rest[i] + " is a simple type");
+                    }
+                }
+            }
+            node.column = column;
+        }
+
+        private int indexOf(CompiledType complexType, String name) {
+            int nameId = schema.findNameId(name);
+            for (int i = 0; i < complexType.getChildCount(); i++) {
+                if (complexType.getChild(i).getNameId() == nameId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void compile() {
+            for (int slot = 0; slot < skeleton.getSlotCount(); slot++) {
+                skeleton.copySegment(slot, markup);
+                PathNode node = slotNodes.get(slot);
+                if (node == null) {
+                    continue;
+                }
+                if (skeleton.getSlotAttribute(slot) != null) {
+                    attribute(node.column, skeleton.getSlotAttribute(slot).name());
+                    continue;
+                }
+                if (node.columnsBelow.isEmpty()) {
+                    value(node.column);
+                    continue;
+                }
+                //The slot renders its expanded complex type when the message wrote below it, and its value otherwise
+                CompiledType complexType = schema.resolveComplexType(skeleton.getSlotElement(slot));
+                int branch = branch(node.columnsBelow);
+                compileExpanded(complexType, node, skeleton.getSlotPath(slot).length);
+                int jump = jump();
+                setTarget(branch, label());
+                value(node.column);
+                setTarget(jump, label());
+            }
+            skeleton.copySegment(skeleton.getSlotCount(), markup);
+            label();
+        }
+
+        /**
+         * The children of a complex type the message wrote below, as {@link MessageRenderer} renders a message node
+         */
+        private void compileExpanded(CompiledType complexType, PathNode node, int depth) {
+            ArrayList<Frame> stack = new ArrayList<>();
+            stack.add(new Frame(complexType, node, depth, -1));
+            expanding.merge(complexType, 1, Integer::sum);
+            while (!stack.isEmpty()) {
+                Frame frame = stack.get(stack.size() - 1);
+                if (frame.nextChild == frame.complexType.getChildCount()) {
+                    stack.remove(stack.size() - 1);
+                    expanding.merge(frame.complexType, -1, Integer::sum);
+                    if (!stack.isEmpty()) {
+                        //Every frame below the first was entered through a branch, the message may not have written below it after all
+                        Frame parent = stack.get(stack.size() - 1);
+                        CompiledElement element = parent.complexType.getChild(parent.nextChild - 1);
+                        int jump = jump();
+                        setTarget(frame.branch, label());
+                        compileUnwritten(parent, element, frame.node);
+                        setTarget(jump, label());
+                        markup("</" + element.getName() + ">\n");
+                    }
+                    continue;
+                }
+
+                CompiledElement element = frame.complexType.getChild(frame.nextChild++);
+                PathNode child = frame.node.children.get(frame.nextChild - 1);
+                markup("<" + element.getName() + ">");
+                if (child != null && !child.columnsBelow.isEmpty()) {
+                    CompiledType childType = schema.resolveComplexType(element);
+                    stack.add(new Frame(childType, child, frame.depth + 1, branch(child.columnsBelow)));
+                    expanding.merge(childType, 1, Integer::sum);
+                    continue;
+                }
+                compileUnwritten(frame, element, child);
+                markup("</" + element.getName() + ">\n");
+            }
+        }
+
+        /**
+         * A child the message wrote nothing below, which expands its linked complex type or holds the value of the message
+         */
+        private void compileUnwritten(Frame parent, CompiledElement element, PathNode node) {
+            CompiledType complexType = element.getComplexType();
+            if (complexType != null && parent.depth + 1 < maxDepth && expanding.getOrDefault(complexType, 0) == 0) {
+                compileTemplate(complexType, parent.depth + 1);
+            } else if (node != null) {
+                value(node.column);
+            }
+        }
+
+        /**
+         * The children of a complex type expanded from the schema alone
+         */
+        private void compileTemplate(CompiledType complexType, int depth) {
+            ArrayList<Frame> stack = new ArrayList<>();
+            stack.add(new Frame(complexType, null, depth, -1));
+            expanding.merge(complexType, 1, Integer::sum);
+            while (!stack.isEmpty()) {
+                Frame frame = stack.get(stack.size() - 1);
+                if (frame.nextChild == frame.complexType.getChildCount()) {
+                    stack.remove(stack.size() - 1);
+                    expanding.merge(frame.complexType, -1, Integer::sum);
+                    if (!stack.isEmpty()) {
+                        Frame parent = stack.get(stack.size() - 1);
+                        markup("</" + parent.complexType.getChild(parent.nextChild - 1).getName() + ">\n");
+                    }
+                    continue;
+                }
+
+                CompiledElement element = frame.complexType.getChild(frame.nextChild++);
+                markup("<" + element.getName() + ">");
+                CompiledType childType = element.getComplexType();
+                if (childType != null && frame.depth + 1 < maxDepth && expanding.getOrDefault(childType, 0) == 0) {
+                    stack.add(new Frame(childType, null, frame.depth + 1, -1));
+                    expanding.merge(childType, 1, Integer::sum);
+                    continue;
+                }
+                markup("</" + element.getName() + ">\n");
+            }
+        }
+
+        private void markup(String markup) {
+            this.markup.writeBytes(markup.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Cover the pending markup with a MARKUP instruction
+         *
+         * @return the position of the next instruction
+         */
+        private int label() {
+            if (markup.size() > pendingMarkup) {
+                instruction(MARKUP, pendingMarkup, markup.size() - pendingMarkup);
+                pendingMarkup = markup.size();
+            }
+            return program.size();
+        }
+
+        private void value(int column) {
+            if (column >= 0) {
+                label();
+                instruction(VALUE, column, 0);
+            }
+        }
+
+        private void attribute(int column, String name) {
+            label();
+            attributeNames.add(name);
+            instruction(ATTRIBUTE, column, attributeNames.size() - 1);
+        }
+
+        /**
+         * @return the position of the BRANCH instruction, whose target is set once it is known
+         */
+        private int branch(List<Integer> columns) {
+            int position = label();
+            junctionColumns.add(columns.stream().mapToInt(Integer::intValue).toArray());
+            instruction(BRANCH, junctionColumns.size() - 1, -1);
+            return position;
+        }
+
+        /**
+         * @return the position of the JUMP instruction, whose target is set once it is known
+         */
+        private int jump() {
+            int position = label();
+            instruction(JUMP, -1, 0);
+            return position;
+        }
+
+        private void setTarget(int position, int target) {
+            program.set(program.get(position) == BRANCH ? position + 2 : position + 1, target);
+        }
+
+        private void instruction(int opcode, int argument1, int argument2) {
+            program.add(opcode);
+            program.add(argument1);
+            program.add(argument2);
+        }
+    }
+
+    /**
+     * The mapped paths below an element
+     */
+    private static class PathNode {
+        //The column of the element itself, -1 if no path ends at it
+        private int column = -1;
+        //The columns of the paths that go below the element
+        private final ArrayList<Integer> columnsBelow = new ArrayList<>();
+        //Child index -> mapped paths below the child
+        private final HashMap<Integer, PathNode> children = new HashMap<>();
+    }
+
+    /**
+     * A complex type being compiled and the next of its children to compile
+     */
+    private static class Frame {
+        private final CompiledType complexType;
+        //The mapped paths below the element of the complex type, null for a complex type expanded from the schema alone
+        private final PathNode node;
+        //The depth of the element of the complex type below the root
+        private final int depth;
+        //The BRANCH instruction the frame was entered through
+        private final int branch;
+        private int nextChild;
+
+        private Frame(CompiledType complexType, PathNode node, int depth, int branch) {
+            this.complexType = complexType;
+            this.node = node;
+            this.depth = depth;
+            this.branch = branch;
+        }
+    }
+}
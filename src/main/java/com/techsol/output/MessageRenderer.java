@@ -0,0 +1,140 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.output;
+
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.CompiledType;
+import com.techsol.models.message.MessageInstance;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * <h1>Message renderer</h1>
+ * <p>Streams the XML of a message to an {@link XMLOutput}</p>
+ */
+public final class MessageRenderer {
+
+    private MessageRenderer() {
+    }
+
+    /**
+     * Render the whole document of the message and flush it to the channel of the output
+     *
+     * @param message
+     * @param output
+     */
+    public static void render(MessageInstance message, XMLOutput output) throws IOException {
+        CompiledType complexType = message.getRoot().getType();
+        output.writeDeclaration();
+        output.startTag(complexType.getName());
+        createOutputXML(message.getSchema(), complexType, message.getRoot(), 0, TemplateSkeleton.UNLIMITED_DEPTH, output);
+        output.endTag(complexType.getName());
+        output.flush();
+    }
+
+    /**
+     * Create the output xml by mapping through the initial complex type e.g.
+     * <p>
+     * Document has child element FIToFICstmrCdtTrf, of which this element has a complex type with child elements, and so on and so forth
+     * <p>
+     * The types are walked with an explicit stack. The nodes of the message are always rendered, while a complex type that nothing
+     * was written to is not expanded when it is already being expanded further up the path or its element lies at the maximum depth.
+     *
+     * @param schema      the schema of the message, which declares the attributes of the elements
+     * @param complexType
+     * @param node        the message node of the complex type, null when nothing was written below it
+     * @param depth       the depth of the element of the complex type below the root, 0 for the root
+     * @param maxDepth    the deepest element level below the root whose complex type is expanded from the schema alone
+     * @param output
+     */
+    static void createOutputXML(CompiledSchema schema, CompiledType complexType, MessageInstance.Node node, int depth, int maxDepth, XMLOutput output) throws IOException {
+        ArrayList<Frame> stack = new ArrayList<>();
+        IdentityHashMap<CompiledType, Integer> expanding = new IdentityHashMap<>();
+        stack.add(new Frame(complexType, node, depth));
+        expanding.merge(complexType, 1, Integer::sum);
+        while (!stack.isEmpty()) {
+            Frame frame = stack.get(stack.size() - 1);
+            if (frame.nextChild == frame.complexType.getChildCount()) {
+                stack.remove(stack.size() - 1);
+                expanding.merge(frame.complexType, -1, Integer::sum);
+                if (!stack.isEmpty()) {
+                    Frame parent = stack.get(stack.size() - 1);
+                    output.endTag(parent.complexType.getChild(parent.nextChild - 1).getName());
+                    output.newLine();
+                }
+                continue;
+            }
+
+            int i = frame.nextChild++;
+            CompiledElement element = frame.complexType.getChild(i);
+            MessageInstance.Node child = frame.node != null ? frame.node.getChild(i) : null;
+            startTag(schema, element, frame.node, i, output);
+            Frame childFrame = null;
+            if (child != null) {
+                childFrame = new Frame(child.getType(), child, frame.depth + 1);
+            } else if (element.getComplexType() != null && frame.depth + 1 < maxDepth && expanding.getOrDefault(element.getComplexType(), 0) == 0) {
+                childFrame = new Frame(element.getComplexType(), null, frame.depth + 1);
+            }
+            if (childFrame != null) {
+                stack.add(childFrame);
+                expanding.merge(childFrame.complexType, 1, Integer::sum);
+                continue;
+            }
+            String value = frame.node != null ? frame.node.getValue(i) : null;
+            if (value != null) {
+                output.writeText(value);
+            }
+            output.endTag(element.getName());
+            output.newLine();
+        }
+    }
+
+    /**
+     * Write the start tag of a child of the node with the values written to its attributes, in the order the complex type of the
+     * child declares them
+     *
+     * @param schema
+     * @param element the child
+     * @param node    the node of the parent complex type, null when nothing was written below it
+     * @param index   the index of the child
+     * @param output
+     */
+    static void startTag(CompiledSchema schema, CompiledElement element, MessageInstance.Node node, int index, XMLOutput output) throws IOException {
+        if (node == null || !node.hasAttributeValues(index)) {
+            output.startTag(element.getName());
+            return;
+        }
+        CompiledType complexType = schema.resolveComplexType(element);
+        output.beginStartTag(element.getName());
+        for (int attribute = 0; complexType != null && attribute < complexType.getAttributeCount(); attribute++) {
+            String value = node.getAttributeValue(index, attribute);
+            if (value != null) {
+                output.writeAttribute(complexType.getAttribute(attribute).name(), value);
+            }
+        }
+        output.endStartTag();
+    }
+
+    /**
+     * A complex type being rendered and the next of its children to render
+     */
+    private static class Frame {
+        private final CompiledType complexType;
+        //The message node of the complex type, null when nothing was written below it
+        private final MessageInstance.Node node;
+        //The depth of the element of the complex type below the root
+        private final int depth;
+        private int nextChild;
+
+        private Frame(CompiledType complexType, MessageInstance.Node node, int depth) {
+            this.complexType = complexType;
+            this.node = node;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.output;
+
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledType;
+import com.techsol.models.message.MessageInstance;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * <h1>Pruned renderer</h1>
+ * <p>Renders only the populated and mandatory elements of a message, where the template skeleton writes every element of the schema.
+ * An element is written when something was written below it, or when it is required (minOccurs above 0) and its parent is written,
+ * in which case its own required elements are written empty too. Of the alternatives of a choice, only the first one the message
+ * wrote to is written.</p>
+ * <p>An attribute is written when it has a value, and an element with an attribute value is written even if it has no other value.</p>
+ * <p>The elements of the skeleton are compiled once into a flat list in document order, each knowing the range of slots below it
+ * and where its subtree ends. Rendering a message sets one bit per slot that has a value, and an element whose range has no bit
+ * set and that is not required is skipped in one jump to the end of its subtree.</p>
+ */
+public final class PrunedRenderer {
+    private static final byte[] CLOSE_START_TAG = {'>'};
+
+    private final TemplateSkeleton skeleton;
+    private final byte[] rootStartTag;
+    private final byte[] rootEndTag;
+    //The elements of the skeleton in document order
+    private final byte[][] startTags;
+    //The start tag without its closing '>', to write the attributes after
+    private final byte[][] openTags;
+    //The attribute slots of the element are [attributeStarts[i], attributeEnds[i])
+    private final int[] attributeStarts;
+    private final int[] attributeEnds;
+    //End tag and new line
+    private final byte[][] endTags;
+    //The level of the element below the root, 1 for the children of the root
+    private final int[] levels;
+    //The index of the element among the children of its parent complex type
+    private final int[] childIndexes;
+    //The first element after the subtree of the element
+    private final int[] subtreeEnds;
+    //The slots below the element are [firstSlots[i], slotEnds[i])
+    private final int[] firstSlots;
+    private final int[] slotEnds;
+    //The slot of an element the skeleton does not expand, -1 for an expanded element
+    private final int[] slots;
+    //minOccurs above 0 and not an alternative of a choice
+    private final boolean[] required;
+    private final boolean[] choices;
+    private final int maxLevel;
+
+    private PrunedRenderer(TemplateSkeleton skeleton, Builder builder) {
+        this.skeleton = skeleton;
+        String rootName = skeleton.getSchema().getRootType().getName();
+        this.rootStartTag = (new String(TemplateSkeleton.DECLARATION, StandardCharsets.UTF_8) + "<" + rootName + ">").getBytes(StandardCharsets.UTF_8);
+        this.rootEndTag = ("</" + rootName + ">").getBytes(StandardCharsets.UTF_8);
+        int count = builder.elements.size();
+        this.startTags = new byte[count][];
+        this.openTags = new byte[count][];
+        this.attributeStarts = new int[count];
+        this.attributeEnds = new int[count];
+        this.endTags = new byte[count][];
+        this.levels = new int[count];
+        this.childIndexes = new int[count];
+        this.subtreeEnds = new int[count];
+        this.firstSlots = new int[count];
+        this.slotEnds = new int[count];
+        this.slots = new int[count];
+        this.required = new boolean[count];
+        this.choices = new boolean[count];
+        //Elements of the same name share their tags
+        HashMap<String, byte[][]> tagsByName = new HashMap<>();
+        int maxLevel = 0;
+        for (int i = 0; i < count; i++) {
+            ElementEntry entry = builder.elements.get(i);
+            byte[][] tags = tagsByName.computeIfAbsent(entry.element.getName(), name -> new byte[][]{
+                    ("<" + name + ">").getBytes(StandardCharsets.UTF_8), ("</" + name + ">\n").getBytes(StandardCharsets.UTF_8),
+                    ("<" + name).getBytes(StandardCharsets.UTF_8)});
+            startTags[i] = tags[0];
+            endTags[i] = tags[1];
+            openTags[i] = tags[2];
+            attributeStarts[i] = entry.firstSlot;
+            attributeEnds[i] = entry.attributeEnd;
+            levels[i] = entry.level;
+            childIndexes[i] = entry.childIndex;
+            subtreeEnds[i] = entry.subtreeEnd;
+            firstSlots[i] = entry.firstSlot;
+            slotEnds[i] = entry.slotEnd;
+            slots[i] = entry.slot;
+            required[i] = entry.element.getMinOccurs() > 0 && !entry.element.isChoice();
+            choices[i] = entry.element.isChoice();
+            maxLevel = Math.max(maxLevel, entry.level);
+        }
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Compile the elements of the skeleton
+     *
+     * @param skeleton
+     * @return the renderer
+     */
+    public static PrunedRenderer compile(TemplateSkeleton skeleton) {
+        Builder builder = new Builder(skeleton);
+        builder.compile(skeleton.getSchema().getRootType(), skeleton.getMaxDepth());
+        if (builder.slotCount != skeleton.getSlotCount()) {
+            throw new IllegalStateException("Compiled " + builder.slotCount + " slots for a skeleton of " + skeleton.getSlotCount());
+        }
+        return new PrunedRenderer(skeleton, builder);
+    }
+
+    /**
+     * Render a message given as one value per slot of the skeleton, null for an empty slot, and flush it to the channel of the output
+     *
+     * @param slotValues
+     * @param output
+     */
+    public void render(String[] slotValues, XMLOutput output) throws IOException {
+        //One bit per slot with a value
+        long[] written = new long[(slotValues.length + 63) >>> 6];
+        for (int slot = 0; slot < slotValues.length; slot++) {
+            if (slotValues[slot] != null) {
+                written[slot >>> 6] |= 1L << slot;
+            }
+        }
+
+        output.writeBytes(rootStartTag);
+        //The open elements by level and whether an alternative of their choice was written, level 0 being the root
+        int[] open = new int[maxLevel + 1];
+        boolean[] chosen = new boolean[maxLevel + 1];
+        int level = 0;
+        int i = 0;
+        while (i < startTags.length) {
+            while (level >= levels[i]) {
+                output.writeBytes(endTags[open[level--]]);
+            }
+            boolean hasValue = anySet(written, firstSlots[i], slotEnds[i]);
+            if (choices[i]) {
+                if (!hasValue || chosen[level]) {
+                    i = subtreeEnds[i];
+                    continue;
+                }
+                chosen[level] = true;
+            } else if (!hasValue && !required[i]) {
+                i = subtreeEnds[i];
+                continue;
+            }
+            if (anySet(written, attributeStarts[i], attributeEnds[i])) {
+                output.writeBytes(openTags[i]);
+                for (int slot = attributeStarts[i]; slot < attributeEnds[i]; slot++) {
+                    if (slotValues[slot] != null) {
+                        output.writeAttribute(skeleton.getSlotAttribute(slot).name(), slotValues[slot]);
+                    }
+                }
+                output.writeBytes(CLOSE_START_TAG);
+            } else {
+                output.writeBytes(startTags[i]);
+            }
+            if (slots[i] >= 0) {
+                if (slotValues[slots[i]] != null) {
+                    output.writeText(slotValues[slots[i]]);
+                }
+                output.writeBytes(endTags[i]);
+            } else {
+                open[++level] = i;
+                chosen[level] = false;
+            }
+            i++;
+        }
+        while (level > 0) {
+            output.writeBytes(endTags[open[level--]]);
+        }
+        output.writeBytes(rootEndTag);
+        output.flush();
+    }
+
+    /**
+     * Render the message and flush it to the channel of the output
+     *
+     * @param message a message of the schema the skeleton was compiled from
+     * @param output
+     */
+    public void render(MessageInstance message, XMLOutput output) throws IOException {
+        output.writeBytes(rootStartTag);
+        //The open elements by level, their message nodes, null when nothing was written below, and whether an alternative of their choice was written
+        int[] open = new int[maxLevel + 1];
+        MessageInstance.Node[] nodes = new MessageInstance.Node[maxLevel + 1];
+        boolean[] chosen = new boolean[maxLevel + 1];
+        nodes[0] = message.getRoot();
+        int level = 0;
+        int i = 0;
+        while (i < startTags.length) {
+            while (level >= levels[i]) {
+                output.writeBytes(endTags[open[level--]]);
+            }
+            //Nodes are only allocated along the paths something was written to
+            MessageInstance.Node parent = nodes[level];
+            MessageInstance.Node child = parent != null ? parent.getChild(childIndexes[i]) : null;
+            String value = parent != null && slots[i] >= 0 ? parent.getValue(childIndexes[i]) : null;
+            boolean hasAttributes = parent != null && parent.hasAttributeValues(childIndexes[i]);
+            boolean hasValue = child != null || value != null || hasAttributes;
+            if (choices[i]) {
+                if (!hasValue || chosen[level]) {
+                    i = subtreeEnds[i];
+                    continue;
+                }
+                chosen[level] = true;
+            } else if (!hasValue && !required[i]) {
+                i = subtreeEnds[i];
+                continue;
+            }
+            if (hasAttributes) {
+                output.writeBytes(openTags[i]);
+                for (int slot = attributeStarts[i]; slot < attributeEnds[i]; slot++) {
+                    String attributeValue = parent.getAttributeValue(childIndexes[i], slot - attributeStarts[i]);
+                    if (attributeValue != null) {
+                        output.writeAttribute(skeleton.getSlotAttribute(slot).name(), attributeValue);
+                    }
+                }
+                output.writeBytes(CLOSE_START_TAG);
+            } else {
+                output.writeBytes(startTags[i]);
+            }
+            if (slots[i] >= 0) {
+                if (child != null) {
+                    renderExpanded(child, levels[i], output);
+                } else if (value != null) {
+                    output.writeText(value);
+                }
+                output.writeBytes(endTags[i]);
+            } else {
+                open[++level] = i;
+                nodes[level] = child;
+                chosen[level] = false;
+            }
+            i++;
+        }
+        while (level > 0) {
+            output.writeBytes(endTags[open[level--]]);
+        }
+        output.writeBytes(rootEndTag);
+        output.flush();
+    }
+
+    /**
+     * The children of a complex type a message expanded below a slot, pruned as the elements of the skeleton are
+     *
+     * @param node  the node of the complex type
+     * @param depth the depth of the element of the complex type below the root
+     */
+    private void renderExpanded(MessageInstance.Node node, int depth, XMLOutput output) throws IOException {
+        ArrayList<Frame> stack = new ArrayList<>();
+        IdentityHashMap<CompiledType, Integer> expanding = new IdentityHashMap<>();
+        stack.add(new Frame(node.getType(), node, depth));
+        expanding.merge(node.getType(), 1, Integer::sum);
+        while (!stack.isEmpty()) {
+            Frame frame = stack.get(stack.size() - 1);
+            if (frame.nextChild == frame.complexType.getChildCount()) {
+                stack.remove(stack.size() - 1);
+                expanding.merge(frame.complexType, -1, Integer::sum);
+                if (!stack.isEmpty()) {
+                    Frame parent = stack.get(stack.size() - 1);
+                    output.endTag(parent.complexType.getChild(parent.nextChild - 1).getName());
+                    output.newLine();
+                }
+                continue;
+            }
+
+            int i = frame.nextChild++;
+            CompiledElement element = frame.complexType.getChild(i);
+            MessageInstance.Node child = frame.node != null ? frame.node.getChild(i) : null;
+            String value = frame.node != null ? frame.node.getValue(i) : null;
+            boolean hasValue = child != null || value != null || frame.node != null && frame.node.hasAttributeValues(i);
+            if (element.isChoice()) {
+                if (!hasValue || frame.chosen) {
+                    continue;
+                }
+                frame.chosen = true;
+            } else if (!hasValue && element.getMinOccurs() == 0) {
+                continue;
+            }
+            MessageRenderer.startTag(skeleton.getSchema(), element, frame.node, i, output);
+            Frame childFrame = null;
+            if (child != null) {
+                childFrame = new Frame(child.getType(), child, frame.depth + 1);
+            } else if (value == null && element.getComplexType() != null && frame.depth + 1 < skeleton.getMaxDepth()
+                    && expanding.getOrDefault(element.getComplexType(), 0) == 0) {
+                //A required element nothing was written below, only its own required elements are written
+                childFrame = new Frame(element.getComplexType(), null, frame.depth + 1);
+            }
+            if (childFrame != null) {
+                stack.add(childFrame);
+                expanding.merge(childFrame.complexType, 1, Integer::sum);
+                continue;
+            }
+            if (value != null) {
+                output.writeText(value);
+            }
+            output.endTag(element.getName());
+            output.newLine();
+        }
+    }
+
+    /**
+     * Whether any bit in [from, to) is set
+     */
+    private static boolean anySet(long[] bits, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            return (bits[first] & firstMask & lastMask) != 0;
+        }
+        if ((bits[first] & firstMask) != 0 || (bits[last] & lastMask) != 0) {
+            return true;
+        }
+        for (int word = first + 1; word < last; word++) {
+            if (bits[word] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public TemplateSkeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * Walks the compiled types in document order as {@link TemplateSkeleton} does, numbering the slots the same way
+     */
+    private static class Builder {
+        private final TemplateSkeleton skeleton;
+        private final ArrayList<ElementEntry> elements = new ArrayList<>();
+        private int slotCount;
+
+        private Builder(TemplateSkeleton skeleton) {
+            this.skeleton = skeleton;
+        }
+
+        private void compile(CompiledType rootType, int maxDepth) {
+            //The complex types being expanded, from the root type down to the type whose children are being walked
+            ArrayList<BuilderFrame> stack = new ArrayList<>();
+            IdentityHashMap<CompiledType, BuilderFrame> expanding = new IdentityHashMap<>();
+            stack.add(new BuilderFrame(rootType, null));
+            expanding.put(rootType, stack.get(0));
+            while (!stack.isEmpty()) {
+                BuilderFrame frame = stack.get(stack.size() - 1);
+                if (frame.nextChild == frame.complexType.getChildCount()) {
+                    stack.remove(stack.size() - 1);
+                    expanding.remove(frame.complexType);
+                    if (frame.entry != null) {
+                        frame.entry.subtreeEnd = elements.size();
+                        frame.entry.slotEnd = slotCount;
+                    }
+                    continue;
+                }
+
+                int childIndex = frame.nextChild++;
+                CompiledElement element = frame.complexType.getChild(childIndex);
+                ElementEntry entry = new ElementEntry(element, stack.size(), childIndex, slotCount);
+                elements.add(entry);
+                CompiledType complexType = skeleton.expandedType(element);
+                CompiledType contentType = skeleton.contentType(element);
+                slotCount += contentType != null ? contentType.getAttributeCount() : 0;
+                entry.attributeEnd = slotCount;
+                if (complexType != null && TemplateSkeleton.hasElementContent(complexType) && stack.size() < maxDepth && !expanding.containsKey(complexType)) {
+                    BuilderFrame child = new BuilderFrame(complexType, entry);
+                    stack.add(child);
+                    expanding.put(complexType, child);
+                    continue;
+                }
+                entry.slot = slotCount++;
+                entry.subtreeEnd = elements.size();
+                entry.slotEnd = slotCount;
+            }
+        }
+    }
+
+    /**
+     * An element of the skeleton being compiled
+     */
+    private static class ElementEntry {
+        private final CompiledElement element;
+        private final int level;
+        private final int childIndex;
+        private final int firstSlot;
+        //The slots of the attributes of the element are [firstSlot, attributeEnd)
+        private int attributeEnd;
+        private int slotEnd;
+        private int subtreeEnd;
+        private int slot = -1;
+
+        private ElementEntry(CompiledElement element, int level, int childIndex, int firstSlot) {
+            this.element = element;
+            this.level = level;
+            this.childIndex = childIndex;
+            this.firstSlot = firstSlot;
+        }
+    }
+
+    /**
+     * A complex type being compiled, the element it is the type of, null for the root, and the next of its children to walk
+     */
+    private static class BuilderFrame {
+        private final CompiledType complexType;
+        private final ElementEntry entry;
+        private int nextChild;
+
+        private BuilderFrame(CompiledType complexType, ElementEntry entry) {
+            this.complexType = complexType;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * A complex type being rendered below an expanded slot and the next of its children to render
+     */
+    private static class Frame {
+        private final CompiledType complexType;
+        //The message node of the complex type, null when nothing was written below it
+        private final MessageInstance.Node node;
+        //The depth of the element of the complex type below the root
+        private final int depth;
+        private int nextChild;
+        //Whether an alternative of the choice of the complex type was written
+        private boolean chosen;
+
+        private Frame(CompiledType complexType, MessageInstance.Node node, int depth) {
+            this.complexType = complexType;
+            this.node = node;
+            this.depth = depth;
+        }
+    }
+}
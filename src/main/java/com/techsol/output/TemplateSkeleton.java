@@ -0,0 +1,413 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.output;
+
+import com.techsol.models.compiled.CompiledAttribute;
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.CompiledType;
+import com.techsol.models.message.MessageInstance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>Template skeleton</h1>
+ * <p>The markup of a compiled schema encoded once as UTF-8, with a slot for every leaf element</p>
+ * <p>The tags of a document never change between messages, so rendering a message only interleaves the pre-encoded
+ * segments with the escaped slot values. An element whose complex type was not attached during linking also gets a slot,
+ * which renders its expanded complex type when a message navigated into it.</p>
+ * <p>The types are walked with an explicit stack, so deep schemas do not overflow the Java stack. A complex type that is already
+ * being expanded further up the path is not expanded again, and neither is any complex type below the maximum depth; both
+ * are rendered as empty elements with an expandable slot.</p>
+ * <p>An element of a complex type with simple content, such as an amount, has a slot for its value, and every attribute of
+ * a complex type has a slot inside the start tag of the element, named by the path of the element, '@' and the attribute name
+ * e.g. FIToFICstmrCdtTrf.CdtTrfTxInf.IntrBkSttlmAmt@Ccy. An empty attribute slot renders nothing, so the markup is the same
+ * as without attributes until a value is given.</p>
+ * <p>By default the skeleton expands the complex types as they were attached during linking. A skeleton can instead expand every
+ * element into its declared complex type, so that the elements the linked template leaves unexpanded get slots as well.</p>
+ */
+public final class TemplateSkeleton {
+    static final byte[] DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes(StandardCharsets.UTF_8);
+    //Expand the complex types however deep they go
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    private final CompiledSchema schema;
+    //The deepest element level below the root whose complex type is expanded
+    private final int maxDepth;
+    //Whether every element is expanded into its declared complex type rather than the one attached during linking
+    private final boolean expandsDeclaredTypes;
+    //All the segments one after the other, segment i is [segmentOffsets[i], segmentOffsets[i + 1]) and slot i sits between segments i and i + 1
+    private final byte[] markup;
+    private final int[] segmentOffsets;
+    //The child indexes from the root complex type to the element of each slot
+    private final int[][] slotPaths;
+    //Whether the element of the slot can be expanded into a complex type by a message
+    private final boolean[] expandable;
+    //The attribute of each attribute slot and its index in the complex type of the element, null and -1 for the slot of an element
+    private final CompiledAttribute[] slotAttributes;
+    private final int[] attributeIndexes;
+    //Dotted path e.g. FIToFICstmrCdtTrf.GrpHdr.MsgId -> slot
+    private final Map<String, Integer> slotsByPath;
+    private final List<String> slotNames;
+
+    private TemplateSkeleton(CompiledSchema schema, int maxDepth, boolean expandsDeclaredTypes, byte[] markup, int[] segmentOffsets, int[][] slotPaths,
+                             boolean[] expandable, CompiledAttribute[] slotAttributes, int[] attributeIndexes, List<String> slotNames) {
+        this.schema = schema;
+        this.maxDepth = maxDepth;
+        this.expandsDeclaredTypes = expandsDeclaredTypes;
+        this.markup = markup;
+        this.segmentOffsets = segmentOffsets;
+        this.slotPaths = slotPaths;
+        this.expandable = expandable;
+        this.slotAttributes = slotAttributes;
+        this.attributeIndexes = attributeIndexes;
+        this.slotNames = Collections.unmodifiableList(slotNames);
+        HashMap<String, Integer> slotsByPath = new HashMap<>();
+        for (int i = 0; i < slotNames.size(); i++) {
+            slotsByPath.putIfAbsent(slotNames.get(i), i);
+        }
+        this.slotsByPath = slotsByPath;
+    }
+
+    /**
+     * Pre-encode the markup of the schema
+     *
+     * @param schema
+     * @return the skeleton
+     */
+    public static TemplateSkeleton compile(CompiledSchema schema) {
+        return compile(schema, UNLIMITED_DEPTH);
+    }
+
+    /**
+     * Pre-encode the markup of the schema down to a maximum depth
+     *
+     * @param schema
+     * @param maxDepth the deepest element level below the root whose complex type is expanded, e.g. 1 only expands the children of the root
+     * @return the skeleton
+     */
+    public static TemplateSkeleton compile(CompiledSchema schema, int maxDepth) {
+        return compile(schema, maxDepth, false);
+    }
+
+    /**
+     * Pre-encode the markup of the schema down to a maximum depth
+     *
+     * @param schema
+     * @param maxDepth             the deepest element level below the root whose complex type is expanded
+     * @param expandsDeclaredTypes whether to expand every element into its declared complex type, instead of the complex type
+     *                             attached during linking
+     * @return the skeleton
+     */
+    public static TemplateSkeleton compile(CompiledSchema schema, int maxDepth, boolean expandsDeclaredTypes) {
+        Builder builder = new Builder(schema, expandsDeclaredTypes);
+        CompiledType rootType = schema.getRootType();
+        builder.markup(DECLARATION);
+        builder.markup("<" + rootType.getName() + ">");
+        builder.compile(rootType, maxDepth);
+        builder.markup("</" + rootType.getName() + ">");
+        builder.endSegment();
+
+        int[][] slotPaths = builder.slotPaths.toArray(new int[0][]);
+        boolean[] expandable = new boolean[builder.expandable.size()];
+        for (int i = 0; i < expandable.length; i++) {
+            expandable[i] = builder.expandable.get(i);
+        }
+        int[] segmentOffsets = builder.segmentOffsets.stream().mapToInt(Integer::intValue).toArray();
+        return new TemplateSkeleton(schema, maxDepth, expandsDeclaredTypes, builder.markup.toByteArray(), segmentOffsets, slotPaths, expandable,
+                builder.slotAttributes.toArray(new CompiledAttribute[0]), builder.attributeIndexes.stream().mapToInt(Integer::intValue).toArray(),
+                builder.slotNames);
+    }
+
+    /**
+     * Render the message and flush it to the channel of the output
+     *
+     * @param message a message of the schema the skeleton was compiled from
+     * @param output
+     */
+    public void render(MessageInstance message, XMLOutput output) throws IOException {
+        writeSegment(0, output);
+        for (int slot = 0; slot < slotPaths.length; slot++) {
+            int[] path = slotPaths[slot];
+            MessageInstance.Node parent = message.getRoot();
+            for (int i = 0; i < path.length - 1 && parent != null; i++) {
+                parent = parent.getChild(path[i]);
+            }
+            if (parent != null && slotAttributes[slot] != null) {
+                String value = parent.getAttributeValue(path[path.length - 1], attributeIndexes[slot]);
+                if (value != null) {
+                    output.writeAttribute(slotAttributes[slot].name(), value);
+                }
+            } else if (parent != null) {
+                int index = path[path.length - 1];
+                MessageInstance.Node expanded = expandable[slot] ? parent.getChild(index) : null;
+                if (expanded != null) {
+                    MessageRenderer.createOutputXML(schema, expanded.getType(), expanded, path.length, maxDepth, output);
+                } else {
+                    String value = parent.getValue(index);
+                    if (value != null) {
+                        output.writeText(value);
+                    }
+                }
+            }
+            writeSegment(slot + 1, output);
+        }
+        output.flush();
+    }
+
+    /**
+     * Render a message given as one value per slot, null for an empty slot, and flush it to the channel of the output
+     *
+     * @param slotValues
+     * @param output
+     */
+    public void render(String[] slotValues, XMLOutput output) throws IOException {
+        writeSegment(0, output);
+        for (int slot = 0; slot < slotPaths.length; slot++) {
+            if (slotValues[slot] != null) {
+                if (slotAttributes[slot] != null) {
+                    output.writeAttribute(slotAttributes[slot].name(), slotValues[slot]);
+                } else {
+                    output.writeText(slotValues[slot]);
+                }
+            }
+            writeSegment(slot + 1, output);
+        }
+        output.flush();
+    }
+
+    private void writeSegment(int segment, XMLOutput output) throws IOException {
+        output.writeBytes(markup, segmentOffsets[segment], segmentOffsets[segment + 1] - segmentOffsets[segment]);
+    }
+
+    /**
+     * Append the pre-encoded bytes of the segment, segment i comes before slot i
+     */
+    void copySegment(int segment, ByteArrayOutputStream outputStream) {
+        outputStream.write(markup, segmentOffsets[segment], segmentOffsets[segment + 1] - segmentOffsets[segment]);
+    }
+
+    public CompiledSchema getSchema() {
+        return schema;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public boolean expandsDeclaredTypes() {
+        return expandsDeclaredTypes;
+    }
+
+    /**
+     * The complex type the skeleton expands the element into, the declared one or the one attached during linking
+     *
+     * @param element
+     * @return the complex type, or null for a simple type or an element the skeleton does not expand
+     */
+    public CompiledType expandedType(CompiledElement element) {
+        return expandedType(schema, expandsDeclaredTypes, element);
+    }
+
+    private static CompiledType expandedType(CompiledSchema schema, boolean expandsDeclaredTypes, CompiledElement element) {
+        return expandsDeclaredTypes ? schema.declaredComplexType(element) : element.getComplexType();
+    }
+
+    /**
+     * The complex type whose attributes and simple content the slots of the element follow, the expanded one or, for an element
+     * the skeleton does not expand, the one a message expands it into
+     *
+     * @param element
+     * @return the complex type, or null for a simple type
+     */
+    public CompiledType contentType(CompiledElement element) {
+        return contentType(schema, expandsDeclaredTypes, element);
+    }
+
+    private static CompiledType contentType(CompiledSchema schema, boolean expandsDeclaredTypes, CompiledElement element) {
+        CompiledType complexType = expandedType(schema, expandsDeclaredTypes, element);
+        return complexType != null ? complexType : schema.resolveComplexType(element);
+    }
+
+    public int getSlotCount() {
+        return slotPaths.length;
+    }
+
+    /**
+     * The slot of the element at the dotted path from the root complex type e.g. FIToFICstmrCdtTrf.GrpHdr.MsgId, or of the attribute
+     * at the path of its element, '@' and its name
+     *
+     * @param path
+     * @return the slot, or -1 if no leaf element or attribute has the path
+     */
+    public int getSlot(String path) {
+        Integer slot = slotsByPath.get(path);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * The dotted paths of the slots in slot order
+     */
+    public List<String> getSlotNames() {
+        return slotNames;
+    }
+
+    public int[] getSlotPath(int slot) {
+        return slotPaths[slot].clone();
+    }
+
+    /**
+     * The element of the slot, or the element the attribute of an attribute slot belongs to
+     */
+    public CompiledElement getSlotElement(int slot) {
+        int[] slotPath = slotPaths[slot];
+        CompiledType complexType = schema.getRootType();
+        for (int i = 0; i < slotPath.length - 1; i++) {
+            complexType = expandedType(complexType.getChild(slotPath[i]));
+        }
+        return complexType.getChild(slotPath[slotPath.length - 1]);
+    }
+
+    /**
+     * The attribute of an attribute slot
+     *
+     * @return the attribute, or null for the slot of an element
+     */
+    public CompiledAttribute getSlotAttribute(int slot) {
+        return slotAttributes[slot];
+    }
+
+    /**
+     * The index of the attribute of an attribute slot in the complex type of its element, as a message instance keeps the value
+     *
+     * @return the index, or -1 for the slot of an element
+     */
+    public int getSlotAttributeIndex(int slot) {
+        return attributeIndexes[slot];
+    }
+
+    /**
+     * Whether a message can expand the element of the slot into its complex type instead of giving it a value, which is the case
+     * for an element of a complex type that the skeleton does not expand and that has no simple content
+     */
+    public boolean isExpandable(int slot) {
+        return expandable[slot];
+    }
+
+    /**
+     * Whether the skeleton expands an element of the complex type into its child elements, which it does unless the content of
+     * the complex type is a value or an element the schema does not declare
+     */
+    static boolean hasElementContent(CompiledType complexType) {
+        return complexType.getSimpleContent() == null && (complexType.getChildCount() > 0 || !complexType.isAnyElementRequired());
+    }
+
+    /**
+     * Walks the compiled types in document order, cutting a segment at every leaf element and every attribute
+     */
+    private static class Builder {
+        private final CompiledSchema schema;
+        private final boolean expandsDeclaredTypes;
+        private final ByteArrayOutputStream markup = new ByteArrayOutputStream();
+        private final ArrayList<Integer> segmentOffsets = new ArrayList<>(List.of(0));
+        private final ArrayList<int[]> slotPaths = new ArrayList<>();
+        private final ArrayList<Boolean> expandable = new ArrayList<>();
+        private final ArrayList<CompiledAttribute> slotAttributes = new ArrayList<>();
+        private final ArrayList<Integer> attributeIndexes = new ArrayList<>();
+        private final ArrayList<String> slotNames = new ArrayList<>();
+
+        private Builder(CompiledSchema schema, boolean expandsDeclaredTypes) {
+            this.schema = schema;
+            this.expandsDeclaredTypes = expandsDeclaredTypes;
+        }
+
+        private void compile(CompiledType rootType, int maxDepth) {
+            //The complex types being expanded, from the root type down to the type whose children are being walked
+            ArrayList<Frame> stack = new ArrayList<>();
+            IdentityHashMap<CompiledType, Frame> expanding = new IdentityHashMap<>();
+            stack.add(new Frame(rootType, ""));
+            expanding.put(rootType, stack.get(0));
+            while (!stack.isEmpty()) {
+                Frame frame = stack.get(stack.size() - 1);
+                if (frame.nextChild == frame.complexType.getChildCount()) {
+                    stack.remove(stack.size() - 1);
+                    expanding.remove(frame.complexType);
+                    if (!stack.isEmpty()) {
+                        Frame parent = stack.get(stack.size() - 1);
+                        markup("</" + parent.complexType.getChild(parent.nextChild - 1).getName() + ">\n");
+                    }
+                    continue;
+                }
+
+                CompiledElement element = frame.complexType.getChild(frame.nextChild++);
+                String elementPath = frame.dottedPath.isEmpty() ? element.getName() : frame.dottedPath + "." + element.getName();
+                int[] path = new int[stack.size()];
+                for (int i = 0; i < path.length; i++) {
+                    path[i] = stack.get(i).nextChild - 1;
+                }
+                CompiledType complexType = expandedType(schema, expandsDeclaredTypes, element);
+                CompiledType contentType = contentType(schema, expandsDeclaredTypes, element);
+                markup("<" + element.getName());
+                for (int i = 0; contentType != null && i < contentType.getAttributeCount(); i++) {
+                    endSegment();
+                    slot(path, false, contentType.getAttribute(i), i, elementPath + "@" + contentType.getAttribute(i).name());
+                }
+                markup(">");
+                //The depth of the element is the number of complex types expanded above it
+                if (complexType != null && hasElementContent(complexType) && stack.size() < maxDepth && !expanding.containsKey(complexType)) {
+                    Frame child = new Frame(complexType, elementPath);
+                    stack.add(child);
+                    expanding.put(complexType, child);
+                    continue;
+                }
+                endSegment();
+                slot(path, !element.isSimple() && (contentType == null || contentType.getSimpleContent() == null), null, -1, elementPath);
+                markup("</" + element.getName() + ">\n");
+            }
+        }
+
+        private void slot(int[] path, boolean expandable, CompiledAttribute attribute, int attributeIndex, String name) {
+            slotPaths.add(path);
+            this.expandable.add(expandable);
+            slotAttributes.add(attribute);
+            attributeIndexes.add(attributeIndex);
+            slotNames.add(name);
+        }
+
+        private void markup(String markup) {
+            markup(markup.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void markup(byte[] bytes) {
+            markup.writeBytes(bytes);
+        }
+
+        private void endSegment() {
+            segmentOffsets.add(markup.size());
+        }
+    }
+
+    /**
+     * A complex type being expanded and the next of its children to walk
+     */
+    private static class Frame {
+        private final CompiledType complexType;
+        private final String dottedPath;
+        private int nextChild;
+
+        private Frame(CompiledType complexType, String dottedPath) {
+            this.complexType = complexType;
+            this.dottedPath = dottedPath;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.output;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <h1>Streaming XML output</h1>
+ * <p>Encodes markup and escaped text as UTF-8 into a fixed size buffer that is drained to a channel whenever it fills up,
+ * so the memory used does not depend on the size of the document</p>
+ * <p>An output is not thread safe, but it can be reused for any number of documents by opening it on the next channel</p>
+ */
+public final class XMLOutput implements Flushable {
+    public static final int DEFAULT_CAPACITY = 8192;
+    //Longest UTF-8 encoding of a character
+    private static final int MAX_CHARACTER_BYTES = 4;
+
+    private final ByteBuffer buffer;
+    private WritableByteChannel channel;
+    private long bytesWritten;
+
+    public XMLOutput() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public XMLOutput(int capacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(capacity, 64));
+    }
+
+    /**
+     * Start writing to the channel, discarding anything that was not flushed to the previous channel
+     *
+     * @param channel
+     * @return this output
+     */
+    public XMLOutput open(WritableByteChannel channel) {
+        this.channel = channel;
+        this.buffer.clear();
+        this.bytesWritten = 0;
+        return this;
+    }
+
+    /**
+     * Start writing to the output stream
+     *
+     * @param outputStream
+     * @return this output
+     */
+    public XMLOutput open(OutputStream outputStream) {
+        return open(Channels.newChannel(outputStream));
+    }
+
+    /**
+     * Write the XML declaration and a new line
+     */
+    public void writeDeclaration() throws IOException {
+        writeMarkup("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        newLine();
+    }
+
+    public void startTag(String name) throws IOException {
+        writeByte('<');
+        writeMarkup(name);
+        writeByte('>');
+    }
+
+    /**
+     * Write the start tag without its closing '>', for the attributes to be written after it
+     *
+     * @param name
+     */
+    public void beginStartTag(String name) throws IOException {
+        writeByte('<');
+        writeMarkup(name);
+    }
+
+    public void endStartTag() throws IOException {
+        writeByte('>');
+    }
+
+    public void endTag(String name) throws IOException {
+        writeByte('<');
+        writeByte('/');
+        writeMarkup(name);
+        writeByte('>');
+    }
+
+    public void newLine() throws IOException {
+        writeByte('\n');
+    }
+
+    /**
+     * Write markup as it is e.g. a tag name
+     *
+     * @param markup
+     */
+    public void writeMarkup(String markup) throws IOException {
+        for (int i = 0; i < markup.length(); i++) {
+            i = writeCharacter(markup, i);
+        }
+    }
+
+    /**
+     * Write element text, escaping the characters that have a meaning in XML
+     * <p>Control characters that XML 1.0 does not allow are left out</p>
+     *
+     * @param text
+     */
+    public void writeText(String text) throws IOException {
+        writeEscaped(text, false);
+    }
+
+    /**
+     * Write an attribute of the start tag being written, preceded by a space, escaping its value as {@link #writeText} does
+     * and escaping the quote and the white space characters an attribute value would normalise
+     *
+     * @param name
+     * @param value
+     */
+    public void writeAttribute(String name, String value) throws IOException {
+        writeByte(' ');
+        writeMarkup(name);
+        writeByte('=');
+        writeByte('"');
+        writeEscaped(value, true);
+        writeByte('"');
+    }
+
+    private void writeEscaped(String text, boolean attribute) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> writeMarkup("&amp;");
+                case '<' -> writeMarkup("&lt;");
+                case '>' -> writeMarkup("&gt;");
+                case '\r' -> writeMarkup("&#13;");
+                case '"', '\t', '\n' -> {
+                    if (attribute) {
+                        writeMarkup(c == '"' ? "&quot;" : c == '\t' ? "&#9;" : "&#10;");
+                    } else {
+                        writeByte(c);
+                    }
+                }
+                default -> {
+                    if (c >= 0x20) {
+                        i = writeCharacter(text, i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write bytes that are already encoded as UTF-8
+     *
+     * @param bytes
+     */
+    public void writeBytes(byte[] bytes) throws IOException {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Drain the buffer to the channel
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * The number of bytes written since the output was opened
+     */
+    public long getBytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) b);
+    }
+
+    /**
+     * Encode the character at the index, or the surrogate pair starting at it
+     *
+     * @return the index of the last character consumed
+     */
+    private int writeCharacter(String string, int i) throws IOException {
+        if (buffer.remaining() < MAX_CHARACTER_BYTES) {
+            drain();
+        }
+        char c = string.charAt(i);
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, string.charAt(i + 1));
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            return i + 1;
+        } else if (Character.isSurrogate(c)) {
+            //An unpaired surrogate cannot be encoded
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+        return i;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        bytesWritten += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.parser;
+
+import com.techsol.models.handler.XSDObjectsHandler;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Referenced schema cache</h1>
+ * <p>Process-wide cache of the schemas brought in through xs:include and xs:import, keyed by namespace and path, so that a file
+ * of common types shared by many message schemas is read once however many of them reference it</p>
+ * <p>The references of a schema are loaded concurrently, and a referenced schema starts loading its own references as soon as
+ * it has been read. A file is read again once its last-modified time changes.</p>
+ * <p>The cached declarations are never linked, every compilation links its own copies of them</p>
+ */
+public final class ReferencedSchemaCache {
+    private static final ReferencedSchemaCache SHARED = new ReferencedSchemaCache(ForkJoinPool.commonPool());
+
+    private final Executor executor;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    //Number of files read, as opposed to served from the cache
+    private final AtomicLong loadCount = new AtomicLong();
+
+    /**
+     * @param executor runs the loads of the referenced files
+     */
+    public ReferencedSchemaCache(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * The cache shared by the whole process
+     */
+    public static ReferencedSchemaCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * The schemas referenced by a schema, directly or through other referenced schemas, each once in the order it is first referenced
+     *
+     * @param schemaKey  the schema itself, left out when a referenced schema refers back to it
+     * @param references the xs:include and xs:import references of the schema
+     * @return the referenced schemas
+     */
+    public List<ReferencedSchema> resolve(Key schemaKey, List<XSDSchemaLoader.SchemaReference> references) throws IOException, XMLStreamException {
+        HashSet<Key> seen = new HashSet<>();
+        seen.add(schemaKey);
+        //Every reference starts loading before the first one is waited on
+        ArrayDeque<CompletableFuture<ReferencedSchema>> pending = new ArrayDeque<>();
+        for (XSDSchemaLoader.SchemaReference reference : references) {
+            Key key = schemaKey.resolve(reference);
+            if (seen.add(key)) {
+                pending.add(load(key));
+            }
+        }
+        ArrayList<ReferencedSchema> referencedSchemas = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            ReferencedSchema referencedSchema = join(pending.poll());
+            referencedSchemas.add(referencedSchema);
+            for (Key key : referencedSchema.references()) {
+                if (seen.add(key)) {
+                    pending.add(load(key));
+                }
+            }
+        }
+        return referencedSchemas;
+    }
+
+    /**
+     * The schema of the key, starting to read the file unless the cache holds it as it was last modified
+     */
+    private CompletableFuture<ReferencedSchema> load(Key key) {
+        FileTime lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(key.path());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new IOException("Cannot read referenced schema : " + key.path(), e));
+        }
+        Entry[] created = new Entry[1];
+        Entry entry = entries.compute(key, (k, current) -> {
+            if (current != null && current.lastModified().equals(lastModified)) {
+                return current;
+            }
+            created[0] = new Entry(lastModified, new CompletableFuture<>());
+            return created[0];
+        });
+        //The file is read outside of compute, since reading it loads its own references through the map
+        if (created[0] != null) {
+            loadCount.incrementAndGet();
+            executor.execute(() -> read(key, entry.schema()));
+        }
+        return entry.schema();
+    }
+
+    private void read(Key key, CompletableFuture<ReferencedSchema> schema) {
+        try {
+            XSDSchemaLoader schemaLoader = new XSDSchemaLoader(new XSDObjectsHandler());
+            schemaLoader.load(key.path().toFile());
+            ArrayList<Key> references = new ArrayList<>();
+            for (XSDSchemaLoader.SchemaReference reference : schemaLoader.getReferences()) {
+                references.add(key.resolve(reference));
+            }
+            schema.complete(new ReferencedSchema(key, schemaLoader.getObjectsHandler(), List.copyOf(schemaLoader.getChildDeclarations()), List.copyOf(references)));
+            for (Key reference : references) {
+                load(reference);
+            }
+        } catch (XMLStreamException e) {
+            schema.completeExceptionally(new XMLStreamException("Failed to load referenced schema " + key.path() + " : " + e.getMessage(), e));
+        } catch (Exception e) {
+            schema.completeExceptionally(e);
+        }
+    }
+
+    private static ReferencedSchema join(CompletableFuture<ReferencedSchema> schema) throws IOException, XMLStreamException {
+        try {
+            return schema.join();
+        } catch (CompletionException e) {
+            //The failure is shared by every schema waiting on the file, so each gets its own exception
+            if (e.getCause() instanceof IOException cause) {
+                throw new IOException(cause.getMessage(), cause);
+            } else if (e.getCause() instanceof XMLStreamException cause) {
+                throw new XMLStreamException(cause.getMessage(), cause);
+            }
+            throw e;
+        }
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * A schema file in the namespace it is referenced in
+     *
+     * @param namespace the target namespace, "" for none
+     * @param path      the absolute normalised path of the file
+     */
+    public record Key(String namespace, Path path) {
+        public static Key of(String namespace, Path file) {
+            return new Key(namespace, file.toAbsolutePath().normalize());
+        }
+
+        /**
+         * The key of a schema referenced by the schema of this key
+         *
+         * @param reference
+         */
+        Key resolve(XSDSchemaLoader.SchemaReference reference) throws IOException {
+            if (reference.location().contains("://")) {
+                throw new IOException("Only local schema locations are resolved : " + reference.location() + " referenced by " + path);
+            }
+            //An included schema is in the namespace of the schema including it, even when it declares none
+            String referenceNamespace = reference.namespace() != null ? reference.namespace() : namespace;
+            return new Key(referenceNamespace, path.resolveSibling(reference.location()).normalize());
+        }
+    }
+
+    /**
+     * The declarations read from a referenced schema file, which are only ever read once loaded
+     *
+     * @param key
+     * @param declarations      the element, simple type and complex type objects in document order
+     * @param childDeclarations the elements declared inside complex types
+     * @param references        the schemas the file references in turn
+     */
+    public record ReferencedSchema(Key key, XSDObjectsHandler declarations, List<XSDSchemaLoader.ChildDeclaration> childDeclarations,
+                                   List<Key> references) {
+    }
+
+    private record Entry(FileTime lastModified, CompletableFuture<ReferencedSchema> schema) {
+    }
+}
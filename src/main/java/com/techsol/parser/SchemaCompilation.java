@@ -0,0 +1,545 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.parser;
+
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.metrics.CompilationMetrics;
+import com.techsol.metrics.CompilationPhase;
+import com.techsol.metrics.TimedChannel;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.TypePool;
+import com.techsol.models.handler.SymbolTable;
+import com.techsol.models.handler.XSDObjectsHandler;
+import com.techsol.models.message.MessageInstance;
+import com.techsol.models.xsd.ComplexType;
+import com.techsol.models.xsd.ComplexTypeLinker;
+import com.techsol.models.xsd.Element;
+import com.techsol.models.xsd.SimpleType;
+import com.techsol.output.PrunedRenderer;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.output.XMLOutput;
+import com.techsol.validation.MessageValidator;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * <h1>Schema compilation</h1>
+ * <p>Holds all the state used to compile one XSD schema and render its XML, so that several schemas can be compiled at the same time</p>
+ * <p>The phases are run in the order load, {@link #mapElementsToComplexType()}, {@link #elementTypeMapper()} and
+ * {@link #createComplexTypesForChildElements()}, or all at once with {@link #compile(File)}</p>
+ * <p>The schemas the schema includes and imports are resolved while it is loaded, through a {@link ReferencedSchemaCache}, and their
+ * declarations are linked after those of the schema itself as if the schemas were one file</p>
+ */
+public class SchemaCompilation {
+    //The name of the schema file, used to label the metrics
+    private String schemaName = "schema";
+    //The schema file, which the locations of its references are relative to, null when the schema is not read from a file
+    private Path schemaFile;
+    //Cache the included and imported schemas are read through
+    private ReferencedSchemaCache referencedSchemaCache = ReferencedSchemaCache.shared();
+    //The schemas included and imported, directly or not, in the order they are first referenced
+    private List<ReferencedSchemaCache.Key> referencedSchemas = List.of();
+
+    //Class that orchestrates the management of the objects in use
+    //The linked objects, released once the schema is compiled through a type pool
+    private XSDObjectsHandler objectsHandler;
+    private XSDObjectsHandler finalObjectsHandler;
+    //Materialises the complex types of the linked elements when they are first navigated
+    private ComplexTypeLinker complexTypeLinker;
+
+    //The elements declared inside complex types, as read by the loader
+    private ArrayList<XSDSchemaLoader.ChildDeclaration> childDeclarations = new ArrayList<>();
+
+    //Immutable type graph shared by the messages of the schema
+    private CompiledSchema compiledSchema;
+    //Pre-encoded markup of the compiled schema
+    private TemplateSkeleton templateSkeleton;
+    //Validator of the populated messages of the schema
+    private MessageValidator messageValidator;
+    private PrunedRenderer prunedRenderer;
+    //How many levels of complex types the template expands
+    private int maxTemplateDepth = TemplateSkeleton.UNLIMITED_DEPTH;
+    //Pool to share the compiled complex types through, null to keep them to this schema
+    private TypePool typePool;
+
+    public SchemaCompilation() {
+        this(new SymbolTable());
+    }
+
+    private SchemaCompilation(SymbolTable symbolTable) {
+        this(new XSDObjectsHandler(symbolTable), new XSDObjectsHandler(symbolTable));
+    }
+
+    /**
+     * Create a compilation from handlers that are already linked e.g. restored from a snapshot
+     *
+     * @param objectsHandler
+     * @param finalObjectsHandler
+     */
+    public SchemaCompilation(XSDObjectsHandler objectsHandler, XSDObjectsHandler finalObjectsHandler) {
+        this.objectsHandler = objectsHandler;
+        this.finalObjectsHandler = finalObjectsHandler;
+        this.complexTypeLinker = new ComplexTypeLinker(objectsHandler);
+    }
+
+    /**
+     * Run all the compilation phases on the schema file
+     *
+     * @param file
+     */
+    public void compile(File file) throws IOException, XMLStreamException {
+        load(file);
+        link();
+    }
+
+    /**
+     * Run all the compilation phases on the schema read from the input stream
+     *
+     * @param inputStream
+     */
+    public void compile(InputStream inputStream) throws XMLStreamException {
+        load(inputStream);
+        link();
+    }
+
+    private void link() {
+        mapElementsToComplexType();
+        elementTypeMapper();
+        createComplexTypesForChildElements();
+    }
+
+    /**
+     * Create the element, simple type and complex type objects in a single pass over the file
+     *
+     * @param file
+     */
+    public void load(File file) throws IOException, XMLStreamException {
+        schemaName = file.getName();
+        schemaFile = file.toPath();
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            load(inputStream);
+        }
+    }
+
+    /**
+     * Create the element, simple type and complex type objects in a single pass over the input stream
+     *
+     * @param inputStream
+     */
+    public void load(InputStream inputStream) throws XMLStreamException {
+        long start = System.nanoTime();
+        XSDSchemaLoader schemaLoader = new XSDSchemaLoader(objectsHandler);
+        schemaLoader.load(inputStream);
+        childDeclarations = schemaLoader.getChildDeclarations();
+        long loadNanos = System.nanoTime() - start;
+        CompilationMetrics.record(schemaName, CompilationPhase.PARSE, loadNanos - schemaLoader.getCreateObjectsNanos(), schemaLoader.getSchemaNodeCount(), 0);
+        CompilationMetrics.record(schemaName, CompilationPhase.CREATE_OBJECTS, schemaLoader.getCreateObjectsNanos(), schemaLoader.getObjectCount(), 0);
+        if (!schemaLoader.getReferences().isEmpty()) {
+            resolveReferences(schemaLoader);
+        }
+    }
+
+    /**
+     * Add the declarations of the included and imported schemas after those of the schema
+     * <p>Only the reading of a referenced file is shared. Its declarations are copied, interned and linked again by every schema
+     * referencing it, since the declarations of the schema itself take precedence over those of the same name.</p>
+     *
+     * @param schemaLoader the loader the schema was read with
+     */
+    private void resolveReferences(XSDSchemaLoader schemaLoader) throws XMLStreamException {
+        if (schemaFile == null) {
+            throw new XMLStreamException("Schema " + schemaName + " includes or imports other schemas but its location is not known");
+        }
+        long start = System.nanoTime();
+        List<ReferencedSchemaCache.ReferencedSchema> referencedSchemas;
+        try {
+            referencedSchemas = referencedSchemaCache.resolve(ReferencedSchemaCache.Key.of(schemaLoader.getTargetNamespace(), schemaFile),
+                    schemaLoader.getReferences());
+        } catch (IOException e) {
+            throw new XMLStreamException("Failed to resolve the schemas referenced by " + schemaName + " : " + e.getMessage(), e);
+        }
+        SymbolTable symbolTable = objectsHandler.getSymbolTable();
+        long objectCount = 0;
+        for (ReferencedSchemaCache.ReferencedSchema referencedSchema : referencedSchemas) {
+            //The cached objects are shared by every schema referencing the file, so each compilation links copies of them
+            XSDObjectsHandler declarations = referencedSchema.declarations();
+            IdentityHashMap<Element, Element> elementCopies = new IdentityHashMap<>(declarations.getElementArrayList().size());
+            for (Element element : declarations.getElementArrayList()) {
+                Element copy = new Element(element);
+                copy.setName(symbolTable.intern(element.getName()));
+                copy.setType(symbolTable.intern(element.getType()));
+                objectsHandler.addElementToArrayList(copy);
+                elementCopies.put(element, copy);
+            }
+            for (SimpleType simpleType : declarations.getSimpleTypeArrayList()) {
+                SimpleType copy = new SimpleType(simpleType);
+                copy.setName(symbolTable.intern(simpleType.getName()));
+                copy.setBase(symbolTable.intern(simpleType.getBase()));
+                objectsHandler.addSimpleTypeToArrayList(copy);
+            }
+            IdentityHashMap<ComplexType, ComplexType> complexTypeCopies = new IdentityHashMap<>(declarations.getComplexTypeArrayList().size());
+            for (ComplexType complexType : declarations.getComplexTypeArrayList()) {
+                ComplexType copy = new ComplexType();
+                copy.setName(symbolTable.intern(complexType.getName()));
+                copy.copyContentOf(complexType);
+                objectsHandler.addComplexTypeToArrayList(copy);
+                complexTypeCopies.put(complexType, copy);
+            }
+            //The children are mapped to the copy of the complex type they were mapped to in their own file, so a type of the schema
+            //hiding a referenced type of the same name keeps only its own children
+            for (XSDSchemaLoader.ChildDeclaration childDeclaration : referencedSchema.childDeclarations()) {
+                childDeclarations.add(new XSDSchemaLoader.ChildDeclaration(complexTypeCopies.get(childDeclaration.complexType()),
+                        elementCopies.get(childDeclaration.element())));
+            }
+            objectCount += declarations.getElementArrayList().size() + declarations.getSimpleTypeArrayList().size() + declarations.getComplexTypeArrayList().size();
+        }
+        this.referencedSchemas = referencedSchemas.stream().map(ReferencedSchemaCache.ReferencedSchema::key).toList();
+        CompilationMetrics.record(schemaName, CompilationPhase.RESOLVE_REFERENCES, System.nanoTime() - start, objectCount, 0);
+    }
+
+    /**
+     * Adds the element children to the enclosing complex type
+     */
+    public void mapElementsToComplexType() {
+        long start = System.nanoTime();
+        for (XSDSchemaLoader.ChildDeclaration childDeclaration : childDeclarations) {
+            //The child is its own declaration, so it keeps its occurrences even when another complex type declares an element of
+            //the same name and type
+            Element element = childDeclaration.element();
+            if (!objectsHandler.elementTypeExistsAsSimpleType(element.getType())) {
+                element.setParentComplexType(childDeclaration.complexType());
+            }
+            childDeclaration.complexType().addChildElementToArrayList(element);
+        }
+        //The children are complete, so the lists are cut down to their size
+        for (ComplexType complexType : objectsHandler.getComplexTypeArrayList()) {
+            complexType.getChildrenElements().trimToSize();
+        }
+        int childDeclarationCount = childDeclarations.size();
+        //Only needed by this phase, so not kept for the lifetime of the compilation
+        childDeclarations = new ArrayList<>(0);
+        CompilationMetrics.record(schemaName, CompilationPhase.MAP_ELEMENTS_TO_COMPLEX_TYPE, System.nanoTime() - start, childDeclarationCount, 0);
+    }
+
+    /**
+     * Go through each element declaration in document order, adding the complex type or simple type as necessary
+     * <p>The complex type is only linked here, it is materialised as it stood at this point of the linking when the element is first navigated</p>
+     */
+    public void elementTypeMapper() {
+        long start = System.nanoTime();
+        ArrayList<Element> elementDeclarations = new ArrayList<>(objectsHandler.getElementArrayList());
+        for (int linkOrder = 0; linkOrder < elementDeclarations.size(); linkOrder++) {
+            Element declaration = elementDeclarations.get(linkOrder);
+            String type = declaration.getType();
+            String name = declaration.getName();
+            Element element;
+            if (objectsHandler.elementTypeExistsAsSimpleType(type)) {
+                element = objectsHandler.getSimpleTypeNotSetElement(type, name);
+                SimpleType simpleType = new SimpleType(objectsHandler.getSimpleTypeByName(type));
+                element.setSimpleType(simpleType);
+            } else {
+                element = objectsHandler.getElementWithoutComplex(type, name);
+                element.setLinkOrder(linkOrder);
+                element.linkComplexType(complexTypeLinker, linkOrder);
+            }
+        }
+        CompilationMetrics.record(schemaName, CompilationPhase.ELEMENT_TYPE_MAPPER, System.nanoTime() - start, elementDeclarations.size(), 0);
+    }
+
+    /**
+     * Create the corresponding complex types for the child elements in each complex type
+     */
+    public void createComplexTypesForChildElements() {
+        long start = System.nanoTime();
+        for (ComplexType complexType : objectsHandler.getComplexTypeArrayList()) {
+            ComplexType complexType1 = new ComplexType(complexType.getChildrenElements().size());
+            complexType1.setName(complexType.getName());
+            complexType1.copyContentOf(complexType);
+            for (Element element : complexType.getChildrenElements()) {
+                Element element1 = new Element(element);
+                if (!objectsHandler.elementTypeExistsAsSimpleType(element1.getType())) {
+                    //The complex type as it stands once every element is linked
+                    element1.linkComplexType(complexTypeLinker, ComplexTypeLinker.UNLINKED);
+                }
+                complexType1.addChildElementToArrayList(element1);
+            }
+            finalObjectsHandler.addComplexTypeToArrayList(complexType1);
+        }
+        CompilationMetrics.record(schemaName, CompilationPhase.CREATE_COMPLEX_TYPES_FOR_CHILD_ELEMENTS, System.nanoTime() - start,
+                objectsHandler.getComplexTypeArrayList().size(), 0);
+    }
+
+    /**
+     * Sample code for obtaining the field values from an MT,
+     * grabbing the compiled mapping path for the field
+     * and setting the field value to the element at the end of the path
+     *
+     * @param message the message to write the values to
+     */
+    public void dynamicMappingLogicSample(MessageInstance message) {
+        String[] mtFields = {"20:FX1708062250", "57D:J.P Morgan Chase Co", "58D:Standard Chartered Bank Kenya", "21:123456789", "22:987654321", "53A:Cyrus Wanyaga", "56A:Shem Muchemi", "23:893512519", "32A:STANBICKKEEE", "53B:PARKLANDS 256789"};
+        String[] mappings = {"20:FIToFICstmrCdtTrf.GrpHdr.MsgId", "57D:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.PstlAdr.AdrLine", "58D:FIToFICstmrCdtTrf.CdtTrfTxInf.InstdAgt.FinInstnId.PstlAdr.AdrLine", "21:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.BICFI", "23:FIToFICstmrCdtTrf.CdtTrfTxInf.InstdAgt.FinInstnId.BICFI", "22:FIToFICstmrCdtTrf.CdtTrfTxInf.PmtId.TxId", "56A:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.Nm", "53A:FIToFICstmrCdtTrf.CdtTrfTxInf.DbtrAcct.Nm", "32A:FIToFICstmrCdtTrf.GrpHdr.CreDtTm", "53B:FIToFICstmrCdtTrf.CdtTrfTxInf.ChrgsInf.Agt.FinInstnId.PstlAdr.AdrLine"};
+
+        CompiledMapping compiledMapping = CompiledMapping.compile(getCompiledSchema(), mappings);
+        compiledMapping.getUnresolvedMappings().forEach((mapping, error) -> System.err.println("Unknown mapping path " + mapping + " : " + error));
+        compiledMapping.populate(message, mtFields);
+    }
+
+    /**
+     * The immutable type graph of the linked schema, compiled the first time it is needed
+     *
+     * @return the compiled schema
+     */
+    public synchronized CompiledSchema getCompiledSchema() {
+        if (compiledSchema == null) {
+            Element rootElement = objectsHandler.getRootElement();
+            if (rootElement == null) {
+                throw new IllegalStateException("Schema " + schemaName + " declares no root element of a complex type");
+            }
+            String name = rootElement.getName();
+            if (typePool != null) {
+                compiledSchema = CompiledSchema.compile(name, objectsHandler, finalObjectsHandler, typePool);
+                //The compiled schema holds everything needed from here on
+                objectsHandler = null;
+                finalObjectsHandler = null;
+                complexTypeLinker = null;
+                childDeclarations = null;
+            } else {
+                compiledSchema = CompiledSchema.compile(name, objectsHandler, finalObjectsHandler);
+            }
+        }
+        return compiledSchema;
+    }
+
+    /**
+     * Whether the schema declares a root element, as opposed to a schema of common types that is only included or imported by others
+     */
+    public synchronized boolean hasRootElement() {
+        return compiledSchema != null || objectsHandler.getRootElement() != null;
+    }
+
+    /**
+     * The pre-encoded markup of the compiled schema, compiled the first time it is needed
+     *
+     * @return the template skeleton
+     */
+    public synchronized TemplateSkeleton getTemplateSkeleton() {
+        if (templateSkeleton == null) {
+            templateSkeleton = TemplateSkeleton.compile(getCompiledSchema(), maxTemplateDepth);
+        }
+        return templateSkeleton;
+    }
+
+    /**
+     * The validator of the messages of the schema, compiled the first time it is needed
+     *
+     * @return the message validator
+     */
+    public synchronized MessageValidator getMessageValidator() {
+        if (messageValidator == null) {
+            messageValidator = MessageValidator.compile(getTemplateSkeleton());
+        }
+        return messageValidator;
+    }
+
+    /**
+     * The renderer of the populated and mandatory elements only, compiled the first time it is needed
+     *
+     * @return the pruned renderer
+     */
+    public synchronized PrunedRenderer getPrunedRenderer() {
+        if (prunedRenderer == null) {
+            prunedRenderer = PrunedRenderer.compile(getTemplateSkeleton());
+        }
+        return prunedRenderer;
+    }
+
+    /**
+     * Create an empty message of the schema
+     *
+     * @return the message
+     */
+    public MessageInstance createMessage() {
+        return new MessageInstance(getCompiledSchema());
+    }
+
+    /**
+     * The linked complex type of the root element e.g. Document
+     *
+     * @return the root complex type
+     */
+    public ComplexType getRootComplexType() {
+        Element rootElement = objectsHandler.getRootElement();
+        return rootElement != null ? finalObjectsHandler.getComplexTypeByName(rootElement.getType()) : null;
+    }
+
+    /**
+     * Stream the XML of the message to the output stream
+     *
+     * @param message
+     * @param outputStream
+     */
+    public void render(MessageInstance message, OutputStream outputStream) throws IOException {
+        TemplateSkeleton skeleton = getTemplateSkeleton();
+        long start = System.nanoTime();
+        XMLOutput output = new XMLOutput().open(outputStream);
+        skeleton.render(message, output);
+        CompilationMetrics.record(schemaName, CompilationPhase.RENDER, System.nanoTime() - start, skeleton.getSlotCount(), output.getBytesWritten());
+    }
+
+    /**
+     * Stream the XML of the populated and mandatory elements of the message to the output stream
+     *
+     * @param message
+     * @param outputStream
+     */
+    public void renderPruned(MessageInstance message, OutputStream outputStream) throws IOException {
+        PrunedRenderer renderer = getPrunedRenderer();
+        long start = System.nanoTime();
+        XMLOutput output = new XMLOutput().open(outputStream);
+        renderer.render(message, output);
+        CompilationMetrics.record(schemaName, CompilationPhase.RENDER, System.nanoTime() - start, renderer.getSkeleton().getSlotCount(), output.getBytesWritten());
+    }
+
+    /**
+     * Write the XML of the message to a file in the output directory
+     *
+     * @param message
+     * @param outputDirectory
+     * @param outputFileName  the name of the schema file, the extension is replaced with .xml
+     */
+    public void writeToFile(MessageInstance message, Path outputDirectory, String outputFileName) throws IOException {
+        Files.createDirectories(outputDirectory);
+        Path outputPath = outputDirectory.resolve(outputFileName.replace(".xsd", ".xml"));
+        TemplateSkeleton skeleton = getTemplateSkeleton();
+        XMLOutput output = new XMLOutput();
+        long start = System.nanoTime();
+        TimedChannel channel = new TimedChannel(FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        long renderNanos;
+        try (channel) {
+            long renderStart = System.nanoTime();
+            skeleton.render(message, output.open(channel));
+            renderNanos = System.nanoTime() - renderStart - channel.getWriteNanos();
+        }
+        //Opening, writing to and closing the file count as writing
+        long writeNanos = System.nanoTime() - start - renderNanos;
+        CompilationMetrics.record(schemaName, CompilationPhase.RENDER, renderNanos, skeleton.getSlotCount(), 0);
+        CompilationMetrics.record(schemaName, CompilationPhase.WRITE, writeNanos, 0, output.getBytesWritten());
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public void setSchemaName(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    public Path getSchemaFile() {
+        return schemaFile;
+    }
+
+    /**
+     * Set the file the schema is read from when it is loaded from a stream, so that its xs:include and xs:import locations can be resolved
+     *
+     * @param schemaFile
+     */
+    public void setSchemaFile(Path schemaFile) {
+        this.schemaFile = schemaFile;
+    }
+
+    public ReferencedSchemaCache getReferencedSchemaCache() {
+        return referencedSchemaCache;
+    }
+
+    /**
+     * Read the included and imported schemas through another cache than the shared one. Must be set before the schema is loaded.
+     *
+     * @param referencedSchemaCache
+     */
+    public void setReferencedSchemaCache(ReferencedSchemaCache referencedSchemaCache) {
+        this.referencedSchemaCache = referencedSchemaCache;
+    }
+
+    /**
+     * The number of schemas included and imported by the schema, directly or through other referenced schemas
+     */
+    public int getReferencedSchemaCount() {
+        return referencedSchemas.size();
+    }
+
+    /**
+     * The schemas included and imported by the schema, directly or through other referenced schemas, e.g. to tell which
+     * compilations a change to a file of common types affects
+     */
+    public List<ReferencedSchemaCache.Key> getReferencedSchemas() {
+        return referencedSchemas;
+    }
+
+    public int getMaxTemplateDepth() {
+        return maxTemplateDepth;
+    }
+
+    /**
+     * Limit how many levels of complex types the template expands, deeper elements are written empty
+     *
+     * @param maxTemplateDepth the number of levels, {@link TemplateSkeleton#UNLIMITED_DEPTH} for no limit
+     */
+    public synchronized void setMaxTemplateDepth(int maxTemplateDepth) {
+        if (maxTemplateDepth < 1) {
+            throw new IllegalArgumentException("The template depth must be at least 1 : " + maxTemplateDepth);
+        }
+        if (maxTemplateDepth != this.maxTemplateDepth) {
+            this.maxTemplateDepth = maxTemplateDepth;
+            templateSkeleton = null;
+            messageValidator = null;
+            prunedRenderer = null;
+        }
+    }
+
+    public TypePool getTypePool() {
+        return typePool;
+    }
+
+    /**
+     * Share the compiled complex types with the other schemas compiled through the pool
+     * <p>The whole type graph is then compiled at once and the linked objects are released, after which
+     * {@link #getObjectsHandler()}, {@link #getFinalObjectsHandler()} and {@link #getRootComplexType()} can no longer be used.
+     * Must be set before the schema is compiled.</p>
+     *
+     * @param typePool the pool, e.g. {@link TypePool#shared()}
+     */
+    public synchronized void setTypePool(TypePool typePool) {
+        if (compiledSchema != null) {
+            throw new IllegalStateException("Schema " + schemaName + " is already compiled");
+        }
+        this.typePool = typePool;
+    }
+
+    public XSDObjectsHandler getObjectsHandler() {
+        return objectsHandler;
+    }
+
+    public XSDObjectsHandler getFinalObjectsHandler() {
+        return finalObjectsHandler;
+    }
+
+    public ComplexTypeLinker getComplexTypeLinker() {
+        return complexTypeLinker;
+    }
+}
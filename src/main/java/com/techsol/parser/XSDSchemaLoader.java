@@ -0,0 +1,307 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.parser;
+
+import com.techsol.models.handler.SymbolTable;
+import com.techsol.models.handler.XSDObjectsHandler;
+import com.techsol.models.xsd.Attribute;
+import com.techsol.models.xsd.ComplexType;
+import com.techsol.models.xsd.Element;
+import com.techsol.models.xsd.SimpleType;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * <h1>Streaming XSD loader</h1>
+ * <p>Reads an XSD schema in a single pass with an {@link XMLStreamReader} and fills the objects handler
+ * with the element, simple type and complex type objects in document order</p>
+ * <p>The enclosing complex type of every element is tracked on a stack and recorded as a child declaration,
+ * which is linked once the whole schema has been read since only then is it known whether the type of an element is a simple type</p>
+ * <p>The xs:simpleContent, xs:attribute and xs:any of a named complex type are recorded on it, so that the values an element
+ * holds besides its child elements are known. Anonymous complex types are not recorded, as for their child elements.</p>
+ * <p>The xs:include and xs:import elements are recorded as references for the compilation to resolve. Type names whose prefix is
+ * bound to a schema namespace are read as their local names, since the declarations of every referenced schema are looked up by
+ * name alongside those of the schema itself.</p>
+ */
+public class XSDSchemaLoader {
+    private final XMLInputFactory inputFactory;
+    private final XSDObjectsHandler objectsHandler;
+    //The (enclosing complex type, element) pairs in document order
+    private final ArrayList<ChildDeclaration> childDeclarations = new ArrayList<>();
+    //The schemas included and imported by the schema, in document order
+    private final ArrayList<SchemaReference> references = new ArrayList<>();
+    //The targetNamespace of the schema, "" when it has none
+    private String targetNamespace = "";
+    //Number of XML schema nodes read, objects created and the time spent creating them
+    private long schemaNodeCount;
+    private long objectCount;
+    private long createObjectsNanos;
+
+    public XSDSchemaLoader(XSDObjectsHandler objectsHandler) {
+        this.objectsHandler = objectsHandler;
+        this.inputFactory = XMLInputFactory.newInstance();
+        //Schemas are local files, there is no reason to resolve a DTD or an external entity
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Load the schema in the file
+     *
+     * @param file
+     */
+    public void load(File file) throws IOException, XMLStreamException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            load(inputStream);
+        }
+    }
+
+    /**
+     * Load the schema read from the input stream
+     *
+     * @param inputStream
+     */
+    public void load(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(inputStream);
+        SymbolTable symbolTable = objectsHandler.getSymbolTable();
+        //Stack of the enclosing complex types, null for an anonymous complex type
+        ArrayList<ComplexType> complexTypeStack = new ArrayList<>();
+        //The named simple type whose restriction facets are being read, null outside of one
+        SimpleType simpleType = null;
+        //Stack of the enclosing compositors, true for an xs:choice
+        ArrayList<Boolean> compositorStack = new ArrayList<>();
+        //Whether the xs:extension or xs:restriction being read is the one of an xs:simpleContent
+        boolean simpleContent = false;
+        //Number of open schema elements, 1 inside xs:schema itself
+        int depth = 0;
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(reader.getNamespaceURI())) {
+                    schemaNodeCount++;
+                    depth++;
+                    long start = System.nanoTime();
+                    switch (reader.getLocalName()) {
+                        case "element" -> {
+                            Element element = new Element();
+                            element.setName(symbolTable.intern(reader.getAttributeValue(null, "name")));
+                            element.setType(symbolTable.intern(typeName(reader, reader.getAttributeValue(null, "type"))));
+                            String minOccurs = reader.getAttributeValue(null, "minOccurs");
+                            if (minOccurs != null) {
+                                element.setMinOccurs(Integer.parseInt(minOccurs));
+                            }
+                            String maxOccurs = reader.getAttributeValue(null, "maxOccurs");
+                            if (maxOccurs != null) {
+                                element.setMaxOccurs(maxOccurs.equals("unbounded") ? Element.UNBOUNDED : Integer.parseInt(maxOccurs));
+                            }
+                            element.setChoice(!compositorStack.isEmpty() && compositorStack.get(compositorStack.size() - 1));
+                            objectsHandler.addElementToArrayList(element);
+                            objectCount++;
+                            //Only a global element, declared directly in xs:schema, can be the root of a message
+                            if (depth == 2) {
+                                objectsHandler.addTopLevelElement(element);
+                            }
+                            ComplexType enclosingComplexType = enclosingComplexType(complexTypeStack);
+                            if (enclosingComplexType != null) {
+                                childDeclarations.add(new ChildDeclaration(enclosingComplexType, element));
+                            }
+                        }
+                        case "simpleType" -> {
+                            String name = reader.getAttributeValue(null, "name");
+                            if (name != null) {
+                                simpleType = new SimpleType();
+                                simpleType.setName(symbolTable.intern(name));
+                                objectsHandler.addSimpleTypeToArrayList(simpleType);
+                                objectCount++;
+                            }
+                        }
+                        case "restriction", "extension" -> {
+                            if (simpleType != null && reader.getLocalName().equals("restriction")) {
+                                simpleType.setBase(symbolTable.intern(typeName(reader, reader.getAttributeValue(null, "base"))));
+                            } else if (simpleContent && enclosingComplexType(complexTypeStack) != null) {
+                                enclosingComplexType(complexTypeStack).setSimpleContentBase(symbolTable.intern(typeName(reader, reader.getAttributeValue(null, "base"))));
+                            }
+                        }
+                        case "simpleContent" -> simpleContent = true;
+                        case "attribute" -> {
+                            ComplexType enclosingComplexType = enclosingComplexType(complexTypeStack);
+                            String name = reader.getAttributeValue(null, "name");
+                            //An attribute referring to a global attribute declaration is not recorded
+                            if (enclosingComplexType != null && name != null) {
+                                enclosingComplexType.addAttributeToArrayList(new Attribute(name,
+                                        symbolTable.intern(typeName(reader, reader.getAttributeValue(null, "type"))), "required".equals(reader.getAttributeValue(null, "use"))));
+                                objectCount++;
+                            }
+                        }
+                        case "any" -> {
+                            ComplexType enclosingComplexType = enclosingComplexType(complexTypeStack);
+                            //An xs:any that is optional or an alternative of a choice does not have to occur
+                            boolean inChoice = !compositorStack.isEmpty() && compositorStack.get(compositorStack.size() - 1);
+                            if (enclosingComplexType != null && !"0".equals(reader.getAttributeValue(null, "minOccurs")) && !inChoice) {
+                                enclosingComplexType.setAnyElementRequired(true);
+                            }
+                        }
+                        case "pattern", "minLength", "maxLength", "totalDigits", "fractionDigits", "minInclusive", "maxInclusive", "enumeration" -> {
+                            if (simpleType != null) {
+                                readFacet(simpleType, reader.getLocalName(), reader.getAttributeValue(null, "value"));
+                            }
+                        }
+                        case "schema" -> {
+                            String namespace = reader.getAttributeValue(null, "targetNamespace");
+                            targetNamespace = namespace != null ? namespace : "";
+                        }
+                        case "include", "import" -> {
+                            String location = reader.getAttributeValue(null, "schemaLocation");
+                            //An import without a location e.g. of a well-known namespace has nothing to load
+                            if (location != null) {
+                                if (reader.getLocalName().equals("include")) {
+                                    references.add(new SchemaReference(null, location));
+                                } else {
+                                    String namespace = reader.getAttributeValue(null, "namespace");
+                                    references.add(new SchemaReference(namespace != null ? namespace : "", location));
+                                }
+                            }
+                        }
+                        case "sequence", "choice", "all" -> compositorStack.add(reader.getLocalName().equals("choice"));
+                        case "complexType" -> {
+                            String name = reader.getAttributeValue(null, "name");
+                            if (name != null) {
+                                ComplexType complexType = new ComplexType();
+                                complexType.setName(symbolTable.intern(name));
+                                objectsHandler.addComplexTypeToArrayList(complexType);
+                                objectCount++;
+                                //The first complex type declared with a name is the one that children are mapped to
+                                complexTypeStack.add(objectsHandler.getComplexTypeByName(name));
+                            } else {
+                                complexTypeStack.add(null);
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                    createObjectsNanos += System.nanoTime() - start;
+                } else if (event == XMLStreamConstants.END_ELEMENT && XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(reader.getNamespaceURI())) {
+                    depth--;
+                    if (reader.getLocalName().equals("complexType")) {
+                        complexTypeStack.remove(complexTypeStack.size() - 1);
+                    } else if (reader.getLocalName().equals("simpleType")) {
+                        simpleType = null;
+                    } else if (reader.getLocalName().equals("simpleContent")) {
+                        simpleContent = false;
+                    } else if (reader.getLocalName().equals("sequence") || reader.getLocalName().equals("choice") || reader.getLocalName().equals("all")) {
+                        compositorStack.remove(compositorStack.size() - 1);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The innermost enclosing complex type, null outside of one or inside an anonymous complex type
+     */
+    private static ComplexType enclosingComplexType(ArrayList<ComplexType> complexTypeStack) {
+        return complexTypeStack.isEmpty() ? null : complexTypeStack.get(complexTypeStack.size() - 1);
+    }
+
+    /**
+     * The local name of a type whose prefix is bound to a schema namespace, or the name as it is written
+     * for an unprefixed name or a built-in type e.g. xs:string
+     *
+     * @param reader
+     * @param qualifiedName
+     */
+    private static String typeName(XMLStreamReader reader, String qualifiedName) {
+        int colon = qualifiedName != null ? qualifiedName.indexOf(':') : -1;
+        if (colon < 0) {
+            return qualifiedName;
+        }
+        String namespace = reader.getNamespaceURI(qualifiedName.substring(0, colon));
+        if (namespace == null || XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(namespace)) {
+            return qualifiedName;
+        }
+        return qualifiedName.substring(colon + 1);
+    }
+
+    /**
+     * Set a facet of the restriction of the simple type
+     *
+     * @param simpleType
+     * @param facet      the local name of the facet element e.g. maxLength
+     * @param value
+     */
+    private static void readFacet(SimpleType simpleType, String facet, String value) {
+        switch (facet) {
+            case "pattern" -> simpleType.addPattern(value);
+            case "minLength" -> simpleType.setMinLength(Integer.parseInt(value));
+            case "maxLength" -> simpleType.setMaxLength(Integer.parseInt(value));
+            case "totalDigits" -> simpleType.setTotalDigits(Integer.parseInt(value));
+            case "fractionDigits" -> simpleType.setFractionDigits(Integer.parseInt(value));
+            case "minInclusive" -> simpleType.setMinInclusive(value);
+            case "maxInclusive" -> simpleType.setMaxInclusive(value);
+            default -> simpleType.addEnumeration(value);
+        }
+    }
+
+    public long getSchemaNodeCount() {
+        return schemaNodeCount;
+    }
+
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * The time spent creating objects, as opposed to parsing
+     */
+    public long getCreateObjectsNanos() {
+        return createObjectsNanos;
+    }
+
+    public XSDObjectsHandler getObjectsHandler() {
+        return objectsHandler;
+    }
+
+    public ArrayList<ChildDeclaration> getChildDeclarations() {
+        return childDeclarations;
+    }
+
+    public ArrayList<SchemaReference> getReferences() {
+        return references;
+    }
+
+    public String getTargetNamespace() {
+        return targetNamespace;
+    }
+
+    /**
+     * An element declared inside a complex type
+     *
+     * @param complexType the enclosing complex type
+     * @param element     the element object created for the declaration
+     */
+    public record ChildDeclaration(ComplexType complexType, Element element) {
+    }
+
+    /**
+     * An xs:include or xs:import of the schema
+     *
+     * @param namespace the namespace of an imported schema, null for an included schema which takes the namespace of the schema including it
+     * @param location  the schemaLocation, relative to the referencing schema
+     */
+    public record SchemaReference(String namespace, String location) {
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.metrics.LatencyHistogram;
+import com.techsol.models.message.MessageInstance;
+import com.techsol.parser.SchemaCompilation;
+import com.techsol.validation.Violation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Local XML generation service</h1>
+ * <p>Keeps the compiled schemas in memory and serves their XML over HTTP, so a caller pays for compiling a schema once
+ * when the service starts instead of on every document</p>
+ * <ul>
+ *     <li><code>GET /schemas</code> lists the message types, one per line</li>
+ *     <li><code>GET /template/{type}</code> returns the empty XML representation of the message type</li>
+ *     <li><code>POST /message/{type}</code> takes <code>path=value</code> lines, the path being the dotted path of an element
+ *     below the root element, and returns the populated XML. With <code>?validate</code> the message is validated against the
+ *     schema first and the first violation is returned instead of an invalid document. With <code>?pruned</code> only the populated
+ *     and mandatory elements are written.</li>
+ *     <li><code>GET /metrics</code> returns the request counts, latencies and throughput of the service</li>
+ * </ul>
+ * <p>The compiled schemas are immutable and shared by every request, a request only allocates its own message and output buffer</p>
+ */
+public class GenerationServer {
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    //Compiled schemas by message type
+    private final ConcurrentHashMap<String, ServedSchema> schemas = new ConcurrentHashMap<>();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param address the address to listen on
+     */
+    public GenerationServer(InetSocketAddress address) throws IOException {
+        this.httpServer = HttpServer.create(address, 0);
+        this.executor = newRequestExecutor();
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/schemas", exchange -> handle(exchange, "GET", this::listSchemas));
+        httpServer.createContext("/template/", exchange -> handle(exchange, "GET", this::writeTemplate));
+        httpServer.createContext("/message/", exchange -> handle(exchange, "POST", this::writeMessage));
+        httpServer.createContext("/metrics", exchange -> handle(exchange, "GET", this::writeMetrics));
+    }
+
+    /**
+     * One virtual thread per request where the runtime has them, otherwise a pool of platform threads grown on demand
+     * <p>The project targets Java 17, so the virtual thread executor is looked up when the service starts</p>
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Serve the compilation under the message type, replacing the compilation served under it before
+     *
+     * @param messageType
+     * @param compilation a linked compilation
+     */
+    public void register(String messageType, SchemaCompilation compilation) {
+        //Compile the template, the validator and the pruned renderer before the first request for them arrives
+        compilation.getTemplateSkeleton();
+        compilation.getMessageValidator();
+        compilation.getPrunedRenderer();
+        schemas.put(messageType, new ServedSchema(compilation));
+    }
+
+    /**
+     * Stop serving the message type
+     *
+     * @param messageType
+     */
+    public void unregister(String messageType) {
+        schemas.remove(messageType);
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    public void stop() {
+        httpServer.stop(0);
+        executor.shutdown();
+    }
+
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            try {
+                if (!exchange.getRequestMethod().equals(method)) {
+                    sendError(exchange, 405, method + " only");
+                    return;
+                }
+                handler.handle(exchange);
+            } catch (Exception e) {
+                System.err.println("Failed to handle request : " + exchange.getRequestURI());
+                e.printStackTrace();
+                //The client gets a status unless the failure came after the response was started
+                if (exchange.getResponseCode() == -1) {
+                    sendError(exchange, 500, "Failed to handle request : " + exchange.getRequestURI().getPath());
+                } else {
+                    failedRequests.incrementAndGet();
+                }
+            }
+        } finally {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    private void listSchemas(HttpExchange exchange) throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (String messageType : new TreeSet<>(schemas.keySet())) {
+            body.append(messageType).append('\n');
+        }
+        send(exchange, 200, "text/plain; charset=utf-8", body.toString());
+    }
+
+    private void writeTemplate(HttpExchange exchange) throws IOException {
+        ServedSchema schema = findSchema(exchange, "/template/");
+        if (schema != null) {
+            sendXML(exchange, schema.compilation, schema.compilation.createMessage(), false);
+        }
+    }
+
+    private void writeMessage(HttpExchange exchange) throws IOException {
+        ServedSchema schema = findSchema(exchange, "/message/");
+        if (schema == null) {
+            return;
+        }
+        MessageInstance message = schema.compilation.createMessage();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            if (separator < 0) {
+                sendError(exchange, 400, "Field " + line + " is not in the form path=value");
+                return;
+            }
+            String path = line.substring(0, separator).trim();
+            CompiledMapping mapping = schema.mappingOf(path);
+            if (!mapping.populate(message, path, line.substring(separator + 1))) {
+                sendError(exchange, 400, String.join("\n", mapping.getUnresolvedMappings().values()));
+                return;
+            }
+        }
+        //Query flags e.g. ?validate&pruned
+        List<String> flags = exchange.getRequestURI().getQuery() != null ? List.of(exchange.getRequestURI().getQuery().split("&")) : List.of();
+        if (flags.contains("validate")) {
+            Violation violation = schema.compilation.getMessageValidator().validate(message);
+            if (violation != null) {
+                sendError(exchange, 422, violation.toString());
+                return;
+            }
+        }
+        sendXML(exchange, schema.compilation, message, flags.contains("pruned"));
+    }
+
+    private void writeMetrics(HttpExchange exchange) throws IOException {
+        long requests = latencies.getCount();
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000d;
+        String body = "schemas " + schemas.size() + '\n'
+                + "requests " + requests + '\n'
+                + "failed_requests " + failedRequests.get() + '\n'
+                + "bytes_written " + bytesWritten.get() + '\n'
+                + String.format("requests_per_second %.3f%n", requests / seconds)
+                + String.format("latency_mean_ms %.3f%n", requests == 0 ? 0 : millis(latencies.getTotalNanos() / requests))
+                + String.format("latency_p50_ms %.3f%n", millis(latencies.percentile(0.50)))
+                + String.format("latency_p90_ms %.3f%n", millis(latencies.percentile(0.90)))
+                + String.format("latency_p99_ms %.3f%n", millis(latencies.percentile(0.99)))
+                + String.format("latency_max_ms %.3f%n", millis(latencies.getMaxNanos()));
+        send(exchange, 200, "text/plain; charset=utf-8", body);
+    }
+
+    /**
+     * The schema of the message type named by the rest of the request path, an error response is sent when there is none
+     */
+    private ServedSchema findSchema(HttpExchange exchange, String prefix) throws IOException {
+        String messageType = exchange.getRequestURI().getPath().substring(prefix.length());
+        ServedSchema schema = schemas.get(messageType);
+        if (schema == null) {
+            sendError(exchange, 404, "No schema for message type " + messageType);
+        }
+        return schema;
+    }
+
+    /**
+     * Stream the XML straight to the response body
+     *
+     * @param pruned whether to only write the populated and mandatory elements
+     */
+    private void sendXML(HttpExchange exchange, SchemaCompilation compilation, MessageInstance message, boolean pruned) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        CountingOutputStream outputStream = new CountingOutputStream(exchange.getResponseBody());
+        if (pruned) {
+            compilation.renderPruned(message, outputStream);
+        } else {
+            compilation.render(message, outputStream);
+        }
+        bytesWritten.addAndGet(outputStream.count);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        failedRequests.incrementAndGet();
+        send(exchange, status, "text/plain; charset=utf-8", message + '\n');
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        bytesWritten.addAndGet(bytes.length);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * A compiled schema together with the paths of its elements compiled so far
+     */
+    private static class ServedSchema {
+        private final SchemaCompilation compilation;
+        private final Map<String, CompiledMapping> pathMappings = new ConcurrentHashMap<>();
+
+        private ServedSchema(SchemaCompilation compilation) {
+            this.compilation = compilation;
+        }
+
+        /**
+         * The mapping of the path onto itself, compiled on first use
+         */
+        private CompiledMapping mappingOf(String path) {
+            CompiledMapping mapping = pathMappings.get(path);
+            if (mapping == null) {
+                mapping = CompiledMapping.compile(compilation.getCompiledSchema(), Map.of(path, path));
+                //Only the paths that resolve are kept, so a caller can not grow the map with bad paths
+                if (mapping.getResolvedPath(path) != null) {
+                    pathMappings.put(path, mapping);
+                }
+            }
+            return mapping;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream outputStream;
+        private long count;
+
+        private CountingOutputStream(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            outputStream.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            outputStream.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.validation;
+
+import com.techsol.models.compiled.CompiledSimpleType;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * <h1>Facet validator</h1>
+ * <p>Checks values against the facets of one simple type and the lexical form of the built-in type it restricts.
+ * Everything that can be prepared is prepared once: the pattern is compiled once per distinct pattern for the whole process,
+ * the enumerations are hashed and the bounds parsed.</p>
+ */
+final class FacetValidator {
+    //XSD pattern -> compiled pattern, shared by every validator
+    private static final ConcurrentHashMap<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+    private final CompiledSimpleType simpleType;
+    private final BuiltInType builtInType;
+    private final Pattern pattern;
+    //Matcher of the pattern per thread, reset for every value instead of allocated
+    private final ThreadLocal<Matcher> matchers;
+    private final HashSet<String> enumerations;
+    private final BigDecimal minInclusive;
+    private final BigDecimal maxInclusive;
+
+    private FacetValidator(CompiledSimpleType simpleType) {
+        this.simpleType = simpleType;
+        this.builtInType = BuiltInType.of(simpleType.base());
+        this.pattern = simpleType.pattern() != null ? compilePattern(simpleType.pattern()) : null;
+        this.matchers = pattern != null ? ThreadLocal.withInitial(() -> pattern.matcher("")) : null;
+        this.enumerations = simpleType.enumerations().isEmpty() ? null : new HashSet<>(simpleType.enumerations());
+        this.minInclusive = simpleType.minInclusive() != null ? new BigDecimal(simpleType.minInclusive()) : null;
+        this.maxInclusive = simpleType.maxInclusive() != null ? new BigDecimal(simpleType.maxInclusive()) : null;
+    }
+
+    static FacetValidator compile(CompiledSimpleType simpleType) {
+        return new FacetValidator(simpleType);
+    }
+
+    /**
+     * The pattern as a Java pattern, or null when the XSD pattern uses syntax Java does not have, in which case it is not checked
+     */
+    private static Pattern compilePattern(String pattern) {
+        return PATTERNS.computeIfAbsent(pattern, key -> {
+            try {
+                //XSD patterns always match the whole value, as Matcher.matches does
+                return Pattern.compile(key);
+            } catch (PatternSyntaxException e) {
+                System.err.println("Pattern " + key + " is not checked : " + e.getDescription());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @param value
+     * @return why the value is not valid, or null if it is
+     */
+    String check(String value) {
+        if (enumerations != null && !enumerations.contains(value)) {
+            return "is not one of the values of " + simpleType.name();
+        }
+        String lexicalError = builtInType.check(value);
+        if (lexicalError != null) {
+            return lexicalError;
+        }
+        if (simpleType.minLength() != CompiledSimpleType.NOT_SET || simpleType.maxLength() != CompiledSimpleType.NOT_SET) {
+            int length = value.codePointCount(0, value.length());
+            if (simpleType.minLength() != CompiledSimpleType.NOT_SET && length < simpleType.minLength()) {
+                return "is shorter than the minimum length " + simpleType.minLength() + " of " + simpleType.name();
+            }
+            if (simpleType.maxLength() != CompiledSimpleType.NOT_SET && length > simpleType.maxLength()) {
+                return "is longer than the maximum length " + simpleType.maxLength() + " of " + simpleType.name();
+            }
+        }
+        if (builtInType.numeric) {
+            String digitsError = checkDigits(value);
+            if (digitsError != null) {
+                return digitsError;
+            }
+        }
+        if (pattern != null && !matchers.get().reset(value).matches()) {
+            return "does not match the pattern " + simpleType.pattern() + " of " + simpleType.name();
+        }
+        return null;
+    }
+
+    /**
+     * The digit and bound facets of a value already known to be a decimal
+     */
+    private String checkDigits(String value) {
+        if (simpleType.totalDigits() != CompiledSimpleType.NOT_SET || simpleType.fractionDigits() != CompiledSimpleType.NOT_SET) {
+            //Significant digits, without the leading zeros of the integer part and the trailing zeros of the fraction
+            int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+            int point = value.indexOf('.');
+            int integerEnd = point >= 0 ? point : value.length();
+            while (start < integerEnd && value.charAt(start) == '0') {
+                start++;
+            }
+            int fractionEnd = value.length();
+            while (point >= 0 && fractionEnd > point + 1 && value.charAt(fractionEnd - 1) == '0') {
+                fractionEnd--;
+            }
+            int fractionDigits = point >= 0 ? fractionEnd - point - 1 : 0;
+            if (simpleType.fractionDigits() != CompiledSimpleType.NOT_SET && fractionDigits > simpleType.fractionDigits()) {
+                return "has more than " + simpleType.fractionDigits() + " fraction digits";
+            }
+            if (simpleType.totalDigits() != CompiledSimpleType.NOT_SET && integerEnd - start + fractionDigits > simpleType.totalDigits()) {
+                return "has more than " + simpleType.totalDigits() + " digits";
+            }
+        }
+        if (minInclusive != null) {
+            //The common lower bound of zero only needs the sign
+            boolean belowMinimum = minInclusive.signum() == 0 ? isNegative(value) : new BigDecimal(value).compareTo(minInclusive) < 0;
+            if (belowMinimum) {
+                return "is less than the minimum " + simpleType.minInclusive();
+            }
+        }
+        if (maxInclusive != null && new BigDecimal(value).compareTo(maxInclusive) > 0) {
+            return "is greater than the maximum " + simpleType.maxInclusive();
+        }
+        return null;
+    }
+
+    private static boolean isNegative(String value) {
+        if (value.charAt(0) != '-') {
+            return false;
+        }
+        for (int i = 1; i < value.length(); i++) {
+            if (value.charAt(i) != '0' && value.charAt(i) != '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The lexical forms of the built-in types the ISO 20022 simple types restrict, any other type accepts every value
+     */
+    private enum BuiltInType {
+        STRING(false),
+        DECIMAL(true),
+        INTEGER(true),
+        BOOLEAN(false),
+        DATE(false),
+        DATE_TIME(false),
+        TIME(false);
+
+        private final boolean numeric;
+
+        BuiltInType(boolean numeric) {
+            this.numeric = numeric;
+        }
+
+        private static BuiltInType of(String base) {
+            if (base == null) {
+                return STRING;
+            }
+            return switch (base.substring(base.indexOf(':') + 1)) {
+                case "decimal" -> DECIMAL;
+                case "integer", "int", "long", "short", "byte", "nonNegativeInteger", "positiveInteger", "unsignedInt", "unsignedLong",
+                        "unsignedShort" -> INTEGER;
+                case "boolean" -> BOOLEAN;
+                case "date" -> DATE;
+                case "dateTime" -> DATE_TIME;
+                case "time" -> TIME;
+                default -> STRING;
+            };
+        }
+
+        /**
+         * @return why the value is not of the type, or null if it is
+         */
+        private String check(String value) {
+            return switch (this) {
+                case STRING -> null;
+                case DECIMAL -> isDecimal(value, true) ? null : "is not a decimal";
+                case INTEGER -> isDecimal(value, false) ? null : "is not an integer";
+                case BOOLEAN -> value.equals("true") || value.equals("false") || value.equals("1") || value.equals("0") ? null : "is not a boolean";
+                case DATE -> isTimeZone(value, dateEnd(value, 0)) ? null : "is not a date";
+                case DATE_TIME -> {
+                    int dateEnd = dateEnd(value, 0);
+                    yield dateEnd > 0 && dateEnd < value.length() && value.charAt(dateEnd) == 'T' && isTimeZone(value, timeEnd(value, dateEnd + 1))
+                            ? null : "is not a date and time";
+                }
+                case TIME -> isTimeZone(value, timeEnd(value, 0)) ? null : "is not a time";
+            };
+        }
+
+        /**
+         * The end of the yyyy-MM-dd date starting at the offset, or -1 if there is none
+         */
+        private static int dateEnd(String value, int offset) {
+            int i = offset < value.length() && value.charAt(offset) == '-' ? offset + 1 : offset;
+            int yearStart = i;
+            while (i < value.length() && isDigit(value.charAt(i))) {
+                i++;
+            }
+            if (i - yearStart < 4 || !isSeparated(value, i, '-') || !isSeparated(value, i + 3, '-')) {
+                return -1;
+            }
+            return i + 6;
+        }
+
+        /**
+         * The end of the HH:mm:ss time with optional fraction starting at the offset, or -1 if there is none
+         */
+        private static int timeEnd(String value, int offset) {
+            if (!areDigits(value, offset, 2) || !isSeparated(value, offset + 2, ':') || !isSeparated(value, offset + 5, ':')) {
+                return -1;
+            }
+            int i = offset + 8;
+            if (i < value.length() && value.charAt(i) == '.') {
+                int fractionStart = ++i;
+                while (i < value.length() && isDigit(value.charAt(i))) {
+                    i++;
+                }
+                if (i == fractionStart) {
+                    return -1;
+                }
+            }
+            return i;
+        }
+
+        /**
+         * Whether the value ends at the offset with nothing, Z or a +hh:mm offset
+         */
+        private static boolean isTimeZone(String value, int offset) {
+            if (offset < 0) {
+                return false;
+            }
+            int remaining = value.length() - offset;
+            if (remaining == 0) {
+                return true;
+            }
+            if (remaining == 1) {
+                return value.charAt(offset) == 'Z';
+            }
+            return remaining == 6 && (value.charAt(offset) == '+' || value.charAt(offset) == '-') && areDigits(value, offset + 1, 2)
+                    && isSeparated(value, offset + 3, ':');
+        }
+
+        /**
+         * Whether the separator at the offset is followed by two digits
+         */
+        private static boolean isSeparated(String value, int offset, char separator) {
+            return offset < value.length() && value.charAt(offset) == separator && areDigits(value, offset + 1, 2);
+        }
+
+        private static boolean areDigits(String value, int offset, int count) {
+            if (offset < 0 || offset + count > value.length()) {
+                return false;
+            }
+            for (int i = offset; i < offset + count; i++) {
+                if (!isDigit(value.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isDecimal(String value, boolean fraction) {
+            int i = !value.isEmpty() && (value.charAt(0) == '-' || value.charAt(0) == '+') ? 1 : 0;
+            int digits = 0;
+            boolean point = false;
+            for (; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digits++;
+                } else if (c == '.' && fraction && !point) {
+                    point = true;
+                } else {
+                    return false;
+                }
+            }
+            return digits > 0;
+        }
+    }
+}
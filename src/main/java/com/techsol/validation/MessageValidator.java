@@ -0,0 +1,576 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.validation;
+
+import com.techsol.models.compiled.CompiledAttribute;
+import com.techsol.models.compiled.CompiledElement;
+import com.techsol.models.compiled.CompiledSchema;
+import com.techsol.models.compiled.CompiledSimpleType;
+import com.techsol.models.compiled.CompiledType;
+import com.techsol.models.message.MessageInstance;
+import com.techsol.output.TemplateSkeleton;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <h1>Message validator</h1>
+ * <p>Validates populated messages against the compiled schema they were populated from, without rendering them and parsing
+ * the schema and the document again as a JAXP validator would</p>
+ * <p>The facets of every simple type reachable from the root are compiled once. For slot arrays the structure of the template
+ * skeleton is compiled as well: the slots below an element are contiguous, so whether an element was written is a difference
+ * of two running counts of the written slots.</p>
+ * <p>Validation stops at the first violation. A message tree is checked in document order, a slot array has its values checked
+ * before its structure. It checks:</p>
+ * <ul>
+ *     <li>the values against the facets and the built-in type of their simple type</li>
+ *     <li>the attribute values against their simple type, and that a required attribute is given when its element is written</li>
+ *     <li>the value of an element of a complex type with simple content, such as an amount, against the simple type it extends,
+ *     an element written for its attributes alone having the empty value</li>
+ *     <li>that an element with a minOccurs of 1 or more is written when its parent is</li>
+ *     <li>that exactly one alternative of a choice is written, or at most one when an alternative is optional</li>
+ *     <li>that no element with a maxOccurs of 0 is written</li>
+ *     <li>that an element of a complex type with element content is given no value, and that one the skeleton does not expand
+ *     is not written for its attributes alone when its complex type requires elements</li>
+ * </ul>
+ * <p>A message holds one occurrence of each element, so maxOccurs can not be exceeded otherwise. A complex type whose required
+ * content is an element the schema does not declare (xs:any) can not be given by a message, so such an element is reported
+ * as unsupported whenever it has to be written.</p>
+ */
+public final class MessageValidator {
+    private static final String UNSUPPORTED = "is not supported, its complex type only holds elements the schema does not declare";
+    private final TemplateSkeleton skeleton;
+    private final CompiledSchema schema;
+    //Compiled facets of every simple type reachable from the root
+    private final IdentityHashMap<CompiledSimpleType, FacetValidator> facets;
+    //Facets of the value of each slot, null for a slot without a simple type
+    private final FacetValidator[] slotFacets;
+    //Structure of the slot arrays in document order
+    private final StructureCheck[] structureChecks;
+
+    private MessageValidator(TemplateSkeleton skeleton, IdentityHashMap<CompiledSimpleType, FacetValidator> facets, FacetValidator[] slotFacets,
+                             StructureCheck[] structureChecks) {
+        this.skeleton = skeleton;
+        this.schema = skeleton.getSchema();
+        this.facets = facets;
+        this.slotFacets = slotFacets;
+        this.structureChecks = structureChecks;
+    }
+
+    /**
+     * Compile the validator of the messages of the schema of the skeleton
+     *
+     * @param skeleton the skeleton the slot arrays are laid out by
+     * @return the validator
+     */
+    public static MessageValidator compile(TemplateSkeleton skeleton) {
+        CompiledSchema schema = skeleton.getSchema();
+        IdentityHashMap<CompiledSimpleType, FacetValidator> facets = compileFacets(schema);
+
+        FacetValidator[] slotFacets = new FacetValidator[skeleton.getSlotCount()];
+        for (int slot = 0; slot < slotFacets.length; slot++) {
+            CompiledSimpleType simpleType = skeleton.isExpandable(slot) ? null : valueType(skeleton, skeleton.getSlotElement(slot), skeleton.getSlotAttribute(slot));
+            if (simpleType != null) {
+                slotFacets[slot] = facets.get(simpleType);
+            }
+        }
+        return new MessageValidator(skeleton, facets, slotFacets, compileStructure(skeleton, slotFacets));
+    }
+
+    /**
+     * The simple type of the values of the attribute, or of the element when the attribute is null, which for an element of a complex
+     * type is the simple type its simple content extends
+     *
+     * @return the simple type, or null when the values are not checked
+     */
+    private static CompiledSimpleType valueType(TemplateSkeleton skeleton, CompiledElement element, CompiledAttribute attribute) {
+        if (attribute != null) {
+            return attribute.simpleType();
+        }
+        if (element.getSimpleType() != null) {
+            return element.getSimpleType();
+        }
+        CompiledType complexType = skeleton.contentType(element);
+        return complexType != null ? complexType.getSimpleContent() : null;
+    }
+
+    /**
+     * Compile the facets of the simple types of every complex type a message can expand, however it was linked, and of every
+     * declared complex type a skeleton can expand
+     */
+    private static IdentityHashMap<CompiledSimpleType, FacetValidator> compileFacets(CompiledSchema schema) {
+        IdentityHashMap<CompiledSimpleType, FacetValidator> facets = new IdentityHashMap<>();
+        Set<CompiledType> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<CompiledType> complexTypes = new ArrayDeque<>();
+        complexTypes.push(schema.getRootType());
+        visited.add(schema.getRootType());
+        while (!complexTypes.isEmpty()) {
+            CompiledType complexType = complexTypes.pop();
+            if (complexType.getSimpleContent() != null) {
+                facets.computeIfAbsent(complexType.getSimpleContent(), FacetValidator::compile);
+            }
+            for (CompiledAttribute attribute : complexType.getAttributes()) {
+                if (attribute.simpleType() != null) {
+                    facets.computeIfAbsent(attribute.simpleType(), FacetValidator::compile);
+                }
+            }
+            for (int i = 0; i < complexType.getChildCount(); i++) {
+                CompiledElement element = complexType.getChild(i);
+                if (element.getSimpleType() != null) {
+                    facets.computeIfAbsent(element.getSimpleType(), FacetValidator::compile);
+                }
+                CompiledType childType = schema.resolveComplexType(element);
+                if (childType != null && visited.add(childType)) {
+                    complexTypes.push(childType);
+                }
+                CompiledType declaredType = schema.declaredComplexType(element);
+                if (declaredType != null && visited.add(declaredType)) {
+                    complexTypes.push(declaredType);
+                }
+            }
+        }
+        return facets;
+    }
+
+    /**
+     * Compile the occurrence, choice, attribute and content checks of the elements above the slots
+     */
+    private static StructureCheck[] compileStructure(TemplateSkeleton skeleton, FacetValidator[] slotFacets) {
+        CompiledSchema schema = skeleton.getSchema();
+        CompiledType rootType = schema.getRootType();
+        //The element ranges in document order, each below the range at the previous depth that is still open
+        ArrayList<ElementRange> ranges = new ArrayList<>();
+        ArrayList<ElementRange> rootRanges = new ArrayList<>();
+        ArrayList<ElementRange> open = new ArrayList<>();
+        int[] previousPath = new int[0];
+        for (int slot = 0; slot <= skeleton.getSlotCount(); slot++) {
+            int[] path = slot < skeleton.getSlotCount() ? skeleton.getSlotPath(slot) : new int[0];
+            int common = 0;
+            while (common < previousPath.length && common < path.length && previousPath[common] == path[common]) {
+                common++;
+            }
+            while (open.size() > common) {
+                open.remove(open.size() - 1).end = slot;
+            }
+            CompiledType complexType = rootType;
+            for (int depth = 0; depth < path.length; depth++) {
+                CompiledElement element = complexType.getChild(path[depth]);
+                if (depth >= common) {
+                    ElementRange parent = depth > 0 ? open.get(depth - 1) : null;
+                    ElementRange range = new ElementRange(element, parent, dottedPrefix(skeleton.getSlotNames().get(slot), depth + 1), slot);
+                    ranges.add(range);
+                    open.add(range);
+                    (parent != null ? parent.children : rootRanges).add(range);
+                }
+                if (depth < path.length - 1) {
+                    complexType = skeleton.expandedType(element);
+                }
+            }
+            if (slot < skeleton.getSlotCount()) {
+                open.get(open.size() - 1).slots.add(slot);
+            }
+            previousPath = path;
+        }
+
+        ArrayList<StructureCheck> checks = new ArrayList<>();
+        addChoiceCheck(checks, rootType, null, rootRanges);
+        for (ElementRange range : ranges) {
+            CompiledElement element = range.element;
+            CompiledType contentType = skeleton.contentType(element);
+            if (element.getMaxOccurs() == 0) {
+                checks.add(new NotAllowedCheck(range.path, range.start, range.end));
+            }
+            if (!element.isChoice() && element.getMinOccurs() > 0 && (contentType == null || !hasNoContent(contentType))) {
+                checks.add(new RequiredCheck(range.path, range.start, range.end, range.parent != null ? range.parent.start : -1,
+                        range.parent != null ? range.parent.end : -1, contentType != null && isWildcardOnly(contentType) ? UNSUPPORTED : "is required"));
+            }
+            for (int slot : range.slots) {
+                CompiledAttribute attribute = skeleton.getSlotAttribute(slot);
+                if (attribute != null && attribute.required()) {
+                    checks.add(new RequiredAttributeCheck(skeleton.getSlotNames().get(slot), slot, range.start, range.end));
+                } else if (attribute == null && skeleton.isExpandable(slot) && contentType != null) {
+                    checks.add(new ElementContentCheck(range.path, slot, range.start, range.end, contentType.getName(), isWildcardOnly(contentType),
+                            requiresContent(contentType)));
+                } else if (attribute == null && slotFacets[slot] != null && range.end - range.start > 1 && slotFacets[slot].check("") != null) {
+                    //Written for its attributes alone, the element renders with the empty value
+                    checks.add(new EmptyValueCheck(range.path, slot, range.start, range.end, slotFacets[slot].check("")));
+                }
+            }
+            CompiledType complexType = skeleton.expandedType(element);
+            if (complexType != null && !range.children.isEmpty()) {
+                addChoiceCheck(checks, complexType, range, range.children);
+            }
+        }
+        return checks.toArray(new StructureCheck[0]);
+    }
+
+    /**
+     * Whether the only content the complex type requires is an element the schema does not declare
+     */
+    private static boolean isWildcardOnly(CompiledType complexType) {
+        return complexType.isAnyElementRequired() && complexType.getChildCount() == 0;
+    }
+
+    /**
+     * Whether an element of the complex type can not be written empty, because a child element or an alternative of its choice is required
+     */
+    private static boolean requiresContent(CompiledType complexType) {
+        if (complexType.isAnyElementRequired()) {
+            return true;
+        }
+        boolean hasChoice = false;
+        boolean choiceOptional = false;
+        for (int i = 0; i < complexType.getChildCount(); i++) {
+            CompiledElement child = complexType.getChild(i);
+            if (child.isChoice()) {
+                hasChoice = true;
+                choiceOptional |= child.getMinOccurs() == 0;
+            } else if (child.getMinOccurs() > 0) {
+                return true;
+            }
+        }
+        return hasChoice && !choiceOptional;
+    }
+
+    /**
+     * The check of the choice of the complex type of the range, when the complex type has one
+     */
+    private static void addChoiceCheck(ArrayList<StructureCheck> checks, CompiledType complexType, ElementRange parent, List<ElementRange> childRanges) {
+        int alternatives = 0;
+        boolean optional = false;
+        for (int i = 0; i < complexType.getChildCount(); i++) {
+            if (complexType.getChild(i).isChoice()) {
+                alternatives++;
+                optional |= complexType.getChild(i).getMinOccurs() == 0;
+            }
+        }
+        if (alternatives == 0) {
+            return;
+        }
+        ArrayList<ElementRange> alternativeRanges = new ArrayList<>();
+        for (ElementRange range : childRanges) {
+            if (range.element.isChoice()) {
+                alternativeRanges.add(range);
+            }
+        }
+        //An alternative without slots can never be written, so it can not be told apart from no alternative being chosen
+        optional |= alternativeRanges.size() < alternatives;
+        int[] starts = alternativeRanges.stream().mapToInt(range -> range.start).toArray();
+        int[] ends = alternativeRanges.stream().mapToInt(range -> range.end).toArray();
+        String path = parent != null ? parent.path : complexType.getName();
+        checks.add(new ChoiceCheck(path, complexType.getName(), parent != null ? parent.start : -1, parent != null ? parent.end : -1, starts, ends, optional));
+    }
+
+    private static String dottedPrefix(String path, int names) {
+        int end = -1;
+        for (int i = 0; i < names; i++) {
+            end = path.indexOf('.', end + 1);
+            if (end < 0) {
+                return path;
+            }
+        }
+        return path.substring(0, end);
+    }
+
+    /**
+     * Validate a message populated through the message tree
+     *
+     * @param message a message of the schema of the validator
+     * @return the first violation, or null if the message is valid
+     */
+    public Violation validate(MessageInstance message) {
+        //The nodes from the root down to the node whose children are being checked, so the elements are checked in document order
+        ArrayList<Frame> frames = new ArrayList<>();
+        frames.add(new Frame(message.getRoot(), null, null));
+        while (!frames.isEmpty()) {
+            Frame frame = frames.get(frames.size() - 1);
+            CompiledType complexType = frame.node.getType();
+            if (frame.nextChild == complexType.getChildCount()) {
+                frames.remove(frames.size() - 1);
+                if (frame.alternatives > 0 && frame.chosen == 0 && !frame.choiceOptional) {
+                    return new Violation(pathOf(frame, null), null, "has none of the alternatives of the choice of " + complexType.getName());
+                }
+                continue;
+            }
+
+            int index = frame.nextChild++;
+            CompiledElement element = complexType.getChild(index);
+            MessageInstance.Node child = frame.node.getChild(index);
+            String value = frame.node.getValue(index);
+            boolean written = child != null || value != null || frame.node.hasAttributeValues(index);
+            CompiledType contentType = schema.resolveComplexType(element);
+            if (element.isChoice()) {
+                frame.alternatives++;
+                frame.choiceOptional |= element.getMinOccurs() == 0;
+                if (written && ++frame.chosen > 1) {
+                    return new Violation(pathOf(frame, element.getName()), value, "is a second alternative of the choice of " + complexType.getName());
+                }
+            } else if (!written && element.getMinOccurs() > 0 && (contentType == null || !hasNoContent(contentType))) {
+                return new Violation(pathOf(frame, element.getName()), null, contentType != null && isWildcardOnly(contentType) ? UNSUPPORTED : "is required");
+            }
+            if (written && element.getMaxOccurs() == 0) {
+                return new Violation(pathOf(frame, element.getName()), value, "is not allowed");
+            }
+            if (value != null && element.getSimpleType() != null) {
+                String reason = facets.get(element.getSimpleType()).check(value);
+                if (reason != null) {
+                    return new Violation(pathOf(frame, element.getName()), value, reason);
+                }
+            }
+            if (written && contentType != null) {
+                Violation violation = checkContent(frame, index, element.getName(), contentType, child, value);
+                if (violation != null) {
+                    return violation;
+                }
+            }
+            if (child != null) {
+                frames.add(new Frame(child, element.getName(), frame));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validate a message given as one value per slot of the skeleton, null for an empty slot
+     *
+     * @param slotValues
+     * @return the first violation, or null if the message is valid
+     * @throws IllegalArgumentException when there is not one value per slot
+     */
+    public Violation validate(String[] slotValues) {
+        if (slotValues.length != slotFacets.length) {
+            throw new IllegalArgumentException("Expected " + slotFacets.length + " slot values but got " + slotValues.length);
+        }
+        //written[i] is the number of written slots before slot i
+        int[] written = new int[slotValues.length + 1];
+        for (int slot = 0; slot < slotValues.length; slot++) {
+            String value = slotValues[slot];
+            written[slot + 1] = value != null ? written[slot] + 1 : written[slot];
+            if (value != null && slotFacets[slot] != null) {
+                String reason = slotFacets[slot].check(value);
+                if (reason != null) {
+                    return new Violation(skeleton.getSlotNames().get(slot), value, reason);
+                }
+            }
+        }
+        for (StructureCheck check : structureChecks) {
+            Violation violation = check.check(written);
+            if (violation != null) {
+                return violation;
+            }
+        }
+        return null;
+    }
+
+    public boolean isValid(MessageInstance message) {
+        return validate(message) == null;
+    }
+
+    public boolean isValid(String[] slotValues) {
+        return validate(slotValues) == null;
+    }
+
+    public TemplateSkeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * Check the attributes of a written child of the frame and its content, its child elements being checked as the frame of the child
+     *
+     * @param name        the name of the child
+     * @param contentType the declared complex type of the child
+     * @param child       the node of the child, null when it was not navigated
+     * @param value       the value of the child, null when none was written
+     */
+    private Violation checkContent(Frame frame, int index, String name, CompiledType contentType, MessageInstance.Node child, String value) {
+        String path = pathOf(frame, name);
+        for (int i = 0; i < contentType.getAttributeCount(); i++) {
+            CompiledAttribute attribute = contentType.getAttribute(i);
+            String attributeValue = frame.node.getAttributeValue(index, i);
+            if (attributeValue == null && attribute.required()) {
+                return new Violation(path + "@" + attribute.name(), null, "is required");
+            }
+            String reason = attributeValue != null && attribute.simpleType() != null ? facets.get(attribute.simpleType()).check(attributeValue) : null;
+            if (reason != null) {
+                return new Violation(path + "@" + attribute.name(), attributeValue, reason);
+            }
+        }
+        if (contentType.getSimpleContent() != null) {
+            //Written for its attributes alone, the element renders with the empty value
+            String reason = facets.get(contentType.getSimpleContent()).check(value != null ? value : "");
+            return reason != null ? new Violation(path, value, reason) : null;
+        }
+        if (value != null) {
+            return new Violation(path, value, "has a value, but " + contentType.getName() + " has element content");
+        }
+        if (isWildcardOnly(contentType)) {
+            return new Violation(path, null, UNSUPPORTED);
+        }
+        return child == null && requiresContent(contentType) ? new Violation(path, null, "is missing the required elements of " + contentType.getName()) : null;
+    }
+
+    /**
+     * Whether an element of the complex type has no content at all, so it is valid when written empty
+     */
+    private static boolean hasNoContent(CompiledType complexType) {
+        return complexType.getSimpleContent() == null && complexType.getChildCount() == 0 && !complexType.isAnyElementRequired();
+    }
+
+    /**
+     * The dotted path of the child of the frame, or of the frame itself when the name is null
+     */
+    private String pathOf(Frame frame, String name) {
+        ArrayList<String> names = new ArrayList<>();
+        if (name != null) {
+            names.add(name);
+        }
+        for (Frame ancestor = frame; ancestor.name != null; ancestor = ancestor.parent) {
+            names.add(ancestor.name);
+        }
+        if (names.isEmpty()) {
+            return schema.getRootType().getName();
+        }
+        Collections.reverse(names);
+        return String.join(".", names);
+    }
+
+    private static boolean isWritten(int[] written, int start, int end) {
+        return written[end] - written[start] > 0;
+    }
+
+    /**
+     * A node of the message being validated, the element it is the complex type of, null for the root, and the next child to check
+     */
+    private static class Frame {
+        private final MessageInstance.Node node;
+        private final String name;
+        private final Frame parent;
+        private int nextChild;
+        //The alternatives of the choice of the complex type checked so far, and how many of them were written
+        private int alternatives;
+        private int chosen;
+        private boolean choiceOptional;
+
+        private Frame(MessageInstance.Node node, String name, Frame parent) {
+            this.node = node;
+            this.name = name;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * An element above the slots [start, end)
+     */
+    private static class ElementRange {
+        private final CompiledElement element;
+        private final ElementRange parent;
+        private final String path;
+        private final int start;
+        private int end;
+        private final ArrayList<ElementRange> children = new ArrayList<>();
+        //The attribute slots of the element and its value slot, if the skeleton does not expand it
+        private final ArrayList<Integer> slots = new ArrayList<>();
+
+        private ElementRange(CompiledElement element, ElementRange parent, String path, int start) {
+            this.element = element;
+            this.parent = parent;
+            this.path = path;
+            this.start = start;
+        }
+    }
+
+    private interface StructureCheck {
+        /**
+         * @param written the running count of the written slots
+         * @return the violation, or null
+         */
+        Violation check(int[] written);
+    }
+
+    /**
+     * The element of [start, end) is written when its parent of [parentStart, parentEnd) is, the parent start being -1 for the root
+     */
+    private record RequiredCheck(String path, int start, int end, int parentStart, int parentEnd, String reason) implements StructureCheck {
+        @Override
+        public Violation check(int[] written) {
+            return !isWritten(written, start, end) && (parentStart < 0 || isWritten(written, parentStart, parentEnd)) ? new Violation(path, null, reason) : null;
+        }
+    }
+
+    /**
+     * The attribute slot is written when its element of [start, end) is
+     */
+    private record RequiredAttributeCheck(String path, int slot, int start, int end) implements StructureCheck {
+        @Override
+        public Violation check(int[] written) {
+            return isWritten(written, start, end) && !isWritten(written, slot, slot + 1) ? new Violation(path, null, "is required") : null;
+        }
+    }
+
+    /**
+     * The element of [start, end) whose simple content does not allow the empty value is not written without a value in its slot
+     */
+    private record EmptyValueCheck(String path, int slot, int start, int end, String reason) implements StructureCheck {
+        @Override
+        public Violation check(int[] written) {
+            return isWritten(written, start, end) && !isWritten(written, slot, slot + 1) ? new Violation(path, "", reason) : null;
+        }
+    }
+
+    /**
+     * The element of [start, end) that the skeleton does not expand into its complex type of element content is given no value
+     * in its slot, and is not written at all when its complex type requires elements, which the slot can not give
+     */
+    private record ElementContentCheck(String path, int slot, int start, int end, String complexType, boolean wildcardOnly,
+                                       boolean requiresContent) implements StructureCheck {
+        @Override
+        public Violation check(int[] written) {
+            if (!isWritten(written, start, end)) {
+                return null;
+            }
+            if (wildcardOnly) {
+                return new Violation(path, null, UNSUPPORTED);
+            }
+            if (isWritten(written, slot, slot + 1)) {
+                return new Violation(path, null, "has a value, but " + complexType + " has element content");
+            }
+            return requiresContent ? new Violation(path, null, "is missing the required elements of " + complexType) : null;
+        }
+    }
+
+    /**
+     * The element of [start, end) is never written
+     */
+    private record NotAllowedCheck(String path, int start, int end) implements StructureCheck {
+        @Override
+        public Violation check(int[] written) {
+            return isWritten(written, start, end) ? new Violation(path, null, "is not allowed") : null;
+        }
+    }
+
+    /**
+     * One alternative is written when the parent is, the parent start being -1 for the root
+     */
+    private record ChoiceCheck(String path, String complexType, int parentStart, int parentEnd, int[] starts, int[] ends,
+                               boolean optional) implements StructureCheck {
+        @Override
+        public Violation check(int[] written) {
+            if (parentStart >= 0 && !isWritten(written, parentStart, parentEnd)) {
+                return null;
+            }
+            int chosen = 0;
+            for (int i = 0; i < starts.length; i++) {
+                if (isWritten(written, starts[i], ends[i]) && ++chosen > 1) {
+                    return new Violation(path, null, "has more than one alternative of the choice of " + complexType);
+                }
+            }
+            return chosen == 0 && !optional ? new Violation(path, null, "has none of the alternatives of the choice of " + complexType) : null;
+        }
+    }
+}
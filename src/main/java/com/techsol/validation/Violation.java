@@ -0,0 +1,21 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.validation;
+
+/**
+ * <h1>Violation</h1>
+ * <p>The first rule of the schema a message breaks</p>
+ *
+ * @param path   the dotted path of the element from the root complex type e.g. FIToFICstmrCdtTrf.GrpHdr.MsgId
+ * @param value  the value of the element, or null when the element has no value
+ * @param reason what is wrong with the element
+ */
+public record Violation(String path, String value, String reason) {
+
+    @Override
+    public String toString() {
+        return value != null ? path + " : '" + value + "' " + reason : path + " : " + reason;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.watch;
+
+import com.techsol.cache.CompiledSchemaCache;
+import com.techsol.parser.ReferencedSchemaCache;
+import com.techsol.parser.SchemaCompilation;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h1>Schema registry</h1>
+ * <p>In-memory registry of the compiled schemas of a directory, keyed by file and remembering the SHA-256 hash of the content
+ * each compilation was made from, so that a schema is only compiled again when its content actually changes</p>
+ * <p>The hash of the content of a schema that includes or imports other files also covers the content of those files,
+ * so that a change to a file of common types compiles every schema referencing it again</p>
+ */
+public class SchemaRegistry {
+    //Compiled schemas by schema file
+    private final ConcurrentHashMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    //Snapshot cache to compile through, null to always compile from the content
+    private final CompiledSchemaCache compiledSchemaCache;
+
+    /**
+     * @param compiledSchemaCache the snapshot cache to compile through, or null
+     */
+    public SchemaRegistry(CompiledSchemaCache compiledSchemaCache) {
+        this.compiledSchemaCache = compiledSchemaCache;
+    }
+
+    /**
+     * Compile the schema file again if its content, or that of a schema it references, differs from the content of its
+     * registered compilation
+     *
+     * @param file
+     * @return the new compilation, or null when the content has not changed
+     */
+    public SchemaCompilation update(Path file) throws IOException, XMLStreamException {
+        byte[] content = Files.readAllBytes(file);
+        String contentHash = CompiledSchemaCache.contentHash(content);
+        Entry entry = entries.get(file);
+        if (entry != null && entry.contentHash().equals(contentHash)
+                && entry.referencedContentHash().equals(referencedContentHash(entry.referencedSchemas()))) {
+            return null;
+        }
+
+        String schemaName = file.getFileName().toString();
+        SchemaCompilation compilation;
+        if (compiledSchemaCache != null) {
+            compilation = compiledSchemaCache.compile(file, content, contentHash);
+        } else {
+            compilation = new SchemaCompilation();
+            compilation.setSchemaName(schemaName);
+            compilation.setSchemaFile(file);
+            compilation.compile(new ByteArrayInputStream(content));
+        }
+        List<ReferencedSchemaCache.Key> referencedSchemas = compilation.getReferencedSchemas();
+        entries.put(file, new Entry(contentHash, referencedSchemas, referencedContentHash(referencedSchemas), compilation));
+        return compilation;
+    }
+
+    /**
+     * The registered schema files that include or import the file, directly or through other referenced schemas
+     *
+     * @param file
+     */
+    public List<Path> dependentsOf(Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        ArrayList<Path> dependents = new ArrayList<>();
+        entries.forEach((schemaFile, entry) -> {
+            for (ReferencedSchemaCache.Key key : entry.referencedSchemas()) {
+                if (key.path().equals(path)) {
+                    dependents.add(schemaFile);
+                    return;
+                }
+            }
+        });
+        return dependents;
+    }
+
+    /**
+     * The SHA-256 hash of the content hashes of the referenced schemas, "" when there are none
+     * <p>A referenced file that is missing is hashed as empty, the compilation then reports it</p>
+     */
+    private static String referencedContentHash(List<ReferencedSchemaCache.Key> referencedSchemas) throws IOException {
+        if (referencedSchemas.isEmpty()) {
+            return "";
+        }
+        StringBuilder contentHashes = new StringBuilder();
+        for (ReferencedSchemaCache.Key key : referencedSchemas) {
+            byte[] content = Files.isRegularFile(key.path()) ? Files.readAllBytes(key.path()) : new byte[0];
+            contentHashes.append(CompiledSchemaCache.contentHash(content)).append('\n');
+        }
+        return CompiledSchemaCache.contentHash(contentHashes.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param file
+     * @return whether the file had a registered compilation
+     */
+    public boolean remove(Path file) {
+        return entries.remove(file) != null;
+    }
+
+    public SchemaCompilation get(Path file) {
+        Entry entry = entries.get(file);
+        return entry != null ? entry.compilation() : null;
+    }
+
+    public Map<Path, Entry> getEntries() {
+        return Map.copyOf(entries);
+    }
+
+    /**
+     * @param contentHash           the SHA-256 hash of the content the schema was compiled from
+     * @param referencedSchemas     the schemas the schema includes and imports, directly or not
+     * @param referencedContentHash the hash of the content of the referenced schemas the schema was compiled with
+     * @param compilation
+     */
+    public record Entry(String contentHash, List<ReferencedSchemaCache.Key> referencedSchemas, String referencedContentHash,
+                        SchemaCompilation compilation) {
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.watch;
+
+import com.techsol.parser.ReferencedSchemaCache;
+import com.techsol.parser.SchemaCompilation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Schema watcher</h1>
+ * <p>Watches a schema directory and hands every XSD file whose content changed to a listener, compiled</p>
+ * <p>The events of a burst of changes, e.g. an editor saving a file in several writes or a release replacing many files,
+ * are collected until the directory has been quiet for the debounce delay and each file is then handled once.
+ * Files whose content hash did not change are skipped by the {@link SchemaRegistry}.</p>
+ * <p>A change to a file included or imported by registered schemas compiles those schemas again. The directories of referenced
+ * files outside the schema directory, e.g. a subdirectory of common types, are watched as well.</p>
+ */
+public class SchemaWatcher implements Closeable {
+    private static final String SCHEMA_EXTENSION = ".xsd";
+
+    private final Path directory;
+    private final SchemaRegistry registry;
+    private final Listener listener;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    //The absolute directories registered with the watch service
+    private final Set<Path> watchedDirectories = new HashSet<>();
+
+    /**
+     * @param directory      the schema directory
+     * @param registry       the registry of the compiled schemas
+     * @param listener       told about every schema that changed or was removed
+     * @param debounceMillis how long the directory has to be quiet before the changes are handled
+     */
+    public SchemaWatcher(Path directory, SchemaRegistry registry, Listener listener, long debounceMillis) throws IOException {
+        this.directory = directory;
+        this.registry = registry;
+        this.listener = listener;
+        this.debounceMillis = debounceMillis;
+        this.watchService = directory.getFileSystem().newWatchService();
+        watch(directory);
+    }
+
+    private void watch(Path watchedDirectory) throws IOException {
+        if (watchedDirectories.add(watchedDirectory.toAbsolutePath().normalize())) {
+            watchedDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        }
+    }
+
+    /**
+     * Handle every schema file of the directory, and the registered schemas whose files are gone
+     */
+    public void scan() throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory, "*" + SCHEMA_EXTENSION)) {
+            directoryStream.forEach(files::add);
+        }
+        files.addAll(registry.getEntries().keySet());
+        files.forEach(this::handle);
+    }
+
+    /**
+     * Handle the changes to the directory until the thread is interrupted or the directory can no longer be watched
+     */
+    public void run() throws InterruptedException, IOException {
+        while (true) {
+            WatchKey key = watchService.take();
+            Set<Path> changedFiles = new LinkedHashSet<>();
+            boolean overflow = false;
+            //Keep collecting until no event arrives for the debounce delay
+            while (key != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        changedFiles.add(((Path) key.watchable()).resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    if (key.watchable().equals(directory)) {
+                        System.err.println("Schema directory can no longer be watched : " + directory);
+                        return;
+                    }
+                    //A directory of referenced files was removed, it is watched again once a schema references it
+                    watchedDirectories.remove(((Path) key.watchable()).toAbsolutePath().normalize());
+                }
+                key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+            }
+
+            if (overflow) {
+                //Events were lost, so every file is checked against its content hash
+                scan();
+            } else {
+                Set<Path> files = new LinkedHashSet<>();
+                for (Path file : changedFiles) {
+                    if (file.getFileName().toString().endsWith(SCHEMA_EXTENSION)) {
+                        //Only the files of the schema directory are schemas, the others are only referenced
+                        if (directory.equals(file.getParent())) {
+                            files.add(file);
+                        }
+                        files.addAll(registry.dependentsOf(file));
+                    }
+                }
+                files.forEach(this::handle);
+            }
+        }
+    }
+
+    /**
+     * Compile the file if its content changed and tell the listener, a failure is reported and the previous compilation is kept
+     */
+    private void handle(Path file) {
+        if (!Files.isRegularFile(file)) {
+            if (registry.remove(file)) {
+                listener.schemaRemoved(file);
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            SchemaCompilation compilation = registry.update(file);
+            if (compilation != null) {
+                for (ReferencedSchemaCache.Key key : compilation.getReferencedSchemas()) {
+                    watch(key.path().getParent());
+                }
+                listener.schemaChanged(file, compilation);
+                System.out.printf("Regenerated %s in %.1f ms%n", file.getFileName(), (System.nanoTime() - start) / 1_000_000d);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to compile XSD file : " + file.getFileName());
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Told about the schemas of the watched directory
+     */
+    public interface Listener {
+        /**
+         * The schema is new or its content changed
+         *
+         * @param file
+         * @param compilation the compilation of the new content
+         */
+        void schemaChanged(Path file, SchemaCompilation compilation) throws Exception;
+
+        /**
+         * The schema file was deleted
+         *
+         * @param file
+         */
+        void schemaRemoved(Path file);
+    }
+}
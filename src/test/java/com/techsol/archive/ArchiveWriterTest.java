@@ -0,0 +1,153 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.archive;
+
+import com.techsol.batch.BatchConverter;
+import com.techsol.batch.MTMessageReader;
+import com.techsol.generator.MessageGenerator;
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.parser.SchemaCompilation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * <h1>Archive writer tests</h1>
+ * <p>A ZIP archive holds the files the same run writes to an output directory, in input order, and a gzip archive decompresses to
+ * the documents the same run writes to a single output file</p>
+ */
+class ArchiveWriterTest {
+    //More messages than a chunk holds, so that several workers append chunks
+    private static final int MESSAGE_COUNT = 300;
+    private static final String[] MAPPINGS = {"20:FIToFICstmrCdtTrf.GrpHdr.MsgId", "22:FIToFICstmrCdtTrf.CdtTrfTxInf.PmtId.TxId",
+            "57D:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.PstlAdr.AdrLine"};
+
+    private static SchemaCompilation compilation;
+    private static CompiledMapping mapping;
+    private static String mtFile;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void compileMapping() throws Exception {
+        compilation = new SchemaCompilation();
+        compilation.compile(Path.of("schemas", "mt103_schema.xsd").toFile());
+        mapping = CompiledMapping.compileStrict(compilation.getCompiledSchema(), MAPPINGS);
+        StringBuilder messages = new StringBuilder();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            messages.append("{1:F01BANKKENXAXXX0000000000}{2:I103BANKUS33XXXXN}{4:\n:20:REF").append(i).append("\n:22:TX").append(i)
+                    .append("\n:57D:LINE ONE\nLINE \u00e9 ").append(i).append("\n-}\n");
+        }
+        mtFile = messages.toString();
+    }
+
+    @Test
+    void zipArchiveOfABatchHoldsTheFilesOfTheOutputDirectory() throws Exception {
+        Path outputDirectory = directory.resolve("messages");
+        converter().convertToDirectory(reader(), outputDirectory);
+        Path archive = directory.resolve("messages.zip");
+        try (OutputStream outputStream = Files.newOutputStream(archive)) {
+            converter().convertToArchive(reader(), new ArchiveWriter(outputStream, ArchiveFormat.ZIP));
+        }
+        assertArchiveHoldsDirectory(archive, outputDirectory);
+    }
+
+    @Test
+    void gzipArchiveOfABatchDecompressesToTheOutputFile() throws Exception {
+        ByteArrayOutputStream documents = new ByteArrayOutputStream();
+        converter().convertToStream(reader(), documents);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        converter().convertToArchive(reader(), new ArchiveWriter(archive, ArchiveFormat.GZIP));
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            assertArrayEquals(documents.toByteArray(), inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    void zipArchiveOfGeneratedMessagesHoldsTheFilesOfTheOutputDirectory() throws Exception {
+        Path outputDirectory = directory.resolve("generated");
+        generator().generateToDirectory(MESSAGE_COUNT, outputDirectory);
+        Path archive = directory.resolve("generated.zip");
+        try (OutputStream outputStream = Files.newOutputStream(archive)) {
+            generator().generateToArchive(MESSAGE_COUNT, new ArchiveWriter(outputStream, ArchiveFormat.ZIP));
+        }
+        assertArchiveHoldsDirectory(archive, outputDirectory);
+    }
+
+    @Test
+    void gzipArchiveOfGeneratedMessagesDecompressesToTheOutputFile() throws Exception {
+        ByteArrayOutputStream documents = new ByteArrayOutputStream();
+        generator().generateToStream(MESSAGE_COUNT, documents);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        generator().generateToArchive(MESSAGE_COUNT, new ArchiveWriter(archive, ArchiveFormat.GZIP));
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            assertArrayEquals(documents.toByteArray(), inputStream.readAllBytes());
+        }
+    }
+
+    /**
+     * The entries of the archive, read both through its central directory and in stream order, are the files of the directory in
+     * name order
+     */
+    private static void assertArchiveHoldsDirectory(Path archive, Path outputDirectory) throws Exception {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(outputDirectory)) {
+            files = list.sorted().toList();
+        }
+        assertEquals(MESSAGE_COUNT, files.size());
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            List<? extends ZipEntry> entries = Collections.list(zipFile.entries());
+            assertEquals(files.size(), entries.size());
+            for (int i = 0; i < files.size(); i++) {
+                assertEquals(files.get(i).getFileName().toString(), entries.get(i).getName());
+                try (InputStream inputStream = zipFile.getInputStream(entries.get(i))) {
+                    assertArrayEquals(Files.readAllBytes(files.get(i)), inputStream.readAllBytes(), entries.get(i).getName());
+                }
+            }
+        }
+        //Reading the local headers in order checks the sizes and CRC of every entry
+        ArrayList<String> names = new ArrayList<>();
+        try (ZipInputStream inputStream = new ZipInputStream(Files.newInputStream(archive))) {
+            for (ZipEntry entry = inputStream.getNextEntry(); entry != null; entry = inputStream.getNextEntry()) {
+                names.add(entry.getName());
+                assertArrayEquals(Files.readAllBytes(outputDirectory.resolve(entry.getName())), inputStream.readAllBytes(), entry.getName());
+            }
+        }
+        assertEquals(files.stream().map(file -> file.getFileName().toString()).toList(), names);
+    }
+
+    private static BatchConverter converter() {
+        return new BatchConverter(mapping, compilation.getTemplateSkeleton(), 4);
+    }
+
+    private static MTMessageReader reader() {
+        return new MTMessageReader(new StringReader(mtFile));
+    }
+
+    private static MessageGenerator generator() {
+        return new MessageGenerator(compilation.getTemplateSkeleton(), 17, 4, true);
+    }
+}
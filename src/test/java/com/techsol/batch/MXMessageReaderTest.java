@@ -0,0 +1,96 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.batch;
+
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.mapping.PathTrie;
+import com.techsol.parser.SchemaCompilation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * <h1>MX message reader tests</h1>
+ * <p>MT messages converted to MX documents by the batch conversion and read back with the same mapping give back their fields,
+ * in document order</p>
+ */
+class MXMessageReaderTest {
+    //In document order of pacs.008, which the fields read back follow
+    private static final String[] MAPPINGS = {
+            "20:FIToFICstmrCdtTrf.GrpHdr.MsgId",
+            "32A:FIToFICstmrCdtTrf.GrpHdr.CreDtTm",
+            "22:FIToFICstmrCdtTrf.CdtTrfTxInf.PmtId.TxId",
+            "33B:FIToFICstmrCdtTrf.CdtTrfTxInf.IntrBkSttlmAmt@Ccy",
+            "32B:FIToFICstmrCdtTrf.CdtTrfTxInf.IntrBkSttlmAmt",
+            "21:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.BICFI",
+            "57D:FIToFICstmrCdtTrf.CdtTrfTxInf.InstgAgt.FinInstnId.PstlAdr.AdrLine"};
+
+    private static SchemaCompilation compilation;
+    private static CompiledMapping mapping;
+
+    @BeforeAll
+    static void compileMapping() throws Exception {
+        compilation = new SchemaCompilation();
+        compilation.compile(Path.of("schemas", "mt103_schema.xsd").toFile());
+        mapping = CompiledMapping.compileStrict(compilation.getCompiledSchema(), MAPPINGS);
+    }
+
+    @Test
+    void readsBackTheFieldsOfConvertedMessages() throws Exception {
+        ArrayList<MTMessage> messages = new ArrayList<>();
+        StringBuilder mtFile = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            MTMessage message = new MTMessage(i + 1, new String[]{"20:REF" + i, "32A:2023-01-01T10:00:0" + (i % 10), "22:TX" + i, "33B:USD",
+                    "32B:" + (1000 + i) + ".50", "21:A<&>\"B\"" + i, "57D:LINE ONE\nLINE TWO " + i});
+            messages.add(message);
+            mtFile.append("{1:F01BANKKENXAXXX0000000000}{2:I103BANKUS33XXXXN}{4:\n");
+            for (String field : message.fields()) {
+                mtFile.append(':').append(field).append('\n');
+            }
+            mtFile.append("-}\n");
+        }
+
+        for (boolean pruned : new boolean[]{false, true}) {
+            ByteArrayOutputStream documents = new ByteArrayOutputStream();
+            BatchConverter converter = new BatchConverter(mapping, compilation.getTemplateSkeleton(), 4, pruned);
+            BatchConverter.BatchResult result = converter.convertToStream(new MTMessageReader(new StringReader(mtFile.toString())), documents);
+            assertEquals(messages.size(), result.converted());
+
+            try (MXMessageReader reader = new MXMessageReader(new StringReader(documents.toString(StandardCharsets.UTF_8)), PathTrie.compile(mapping))) {
+                for (MTMessage message : messages) {
+                    MTMessage read = reader.next();
+                    assertArrayEquals(message.fields(), read.fields(), "pruned " + pruned + " message " + message.sequence());
+                    assertEquals(message.sequence(), read.sequence());
+                }
+                assertNull(reader.next());
+            }
+        }
+    }
+
+    @Test
+    void givesTheTagsMappedToOneElementInMappingOrder() throws Exception {
+        String[] mappings = {"21:FIToFICstmrCdtTrf.GrpHdr.MsgId", "20:FIToFICstmrCdtTrf.GrpHdr.MsgId", "23:FIToFICstmrCdtTrf.GrpHdr.MsgId"};
+        PathTrie trie = PathTrie.compile(CompiledMapping.compileStrict(compilation.getCompiledSchema(), mappings));
+        String documents = "<Documents><Document><FIToFICstmrCdtTrf><GrpHdr><MsgId>M1</MsgId><NbOfTxs>1</NbOfTxs></GrpHdr></FIToFICstmrCdtTrf></Document>"
+                + "<Document><FIToFICstmrCdtTrf><GrpHdr><MsgId></MsgId></GrpHdr></FIToFICstmrCdtTrf></Document></Documents>";
+        try (MXMessageReader reader = new MXMessageReader(new StringReader(documents), trie)) {
+            assertEquals(List.of("21:M1", "20:M1", "23:M1"), Arrays.asList(reader.next().fields()));
+            //An empty element gives no field
+            assertEquals(List.of(), Arrays.asList(reader.next().fields()));
+            assertNull(reader.next());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.cache;
+
+import com.techsol.generator.MessageGenerator;
+import com.techsol.output.XMLOutput;
+import com.techsol.parser.SchemaCompilation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * <h1>Compilation snapshot tests</h1>
+ * <p>A compilation read back from its snapshot renders the same documents as the compilation it was written from, and the cache
+ * rebuilds the snapshots it can not read</p>
+ */
+class CompilationSnapshotTest {
+    private static final List<String> BUNDLED_SCHEMAS = List.of("mt103_schema.xsd", "mt104_schema.xsd", "mt202_schema.xsd");
+
+    @TempDir
+    Path cacheDirectory;
+
+    @Test
+    void rendersTheSameDocumentsAfterARoundTrip() throws Exception {
+        for (String schemaName : BUNDLED_SCHEMAS) {
+            SchemaCompilation compiled = new SchemaCompilation();
+            compiled.compile(Path.of("schemas", schemaName).toFile());
+            SchemaCompilation read = CompilationSnapshot.read(ByteBuffer.wrap(snapshotOf(compiled)));
+            assertNotNull(read, schemaName);
+
+            assertEquals(compiled.getTemplateSkeleton().getSlotNames(), read.getTemplateSkeleton().getSlotNames(), schemaName);
+            assertArrayEquals(renderTemplate(compiled), renderTemplate(read), schemaName);
+            for (String[] slotValues : new MessageGenerator(compiled.getTemplateSkeleton(), 3, 1, true).generateChunk(1, 10)) {
+                assertArrayEquals(renderPruned(compiled, slotValues), renderPruned(read, slotValues), schemaName);
+                assertEquals(String.valueOf(compiled.getMessageValidator().validate(slotValues)),
+                        String.valueOf(read.getMessageValidator().validate(slotValues)), schemaName);
+            }
+            //Writing the compilation that was read gives the same snapshot again
+            assertArrayEquals(snapshotOf(compiled), snapshotOf(read), schemaName);
+        }
+    }
+
+    @Test
+    void doesNotReadASnapshotOfAnotherFormatVersion() throws Exception {
+        SchemaCompilation compiled = new SchemaCompilation();
+        compiled.compile(Path.of("schemas", "mt202_schema.xsd").toFile());
+        ByteBuffer snapshot = ByteBuffer.wrap(snapshotOf(compiled));
+        snapshot.putInt(4, CompilationSnapshot.FORMAT_VERSION - 1);
+        assertNull(CompilationSnapshot.read(snapshot));
+    }
+
+    @Test
+    void rebuildsStaleAndTruncatedSnapshots() throws Exception {
+        Path schemaFile = Path.of("schemas", "mt202_schema.xsd");
+        CompiledSchemaCache cache = new CompiledSchemaCache(cacheDirectory);
+        byte[] template = renderTemplate(cache.compile(schemaFile.toFile()));
+        Path snapshotPath = snapshotPath();
+        byte[] snapshot = Files.readAllBytes(snapshotPath);
+        assertArrayEquals(template, renderTemplate(cache.compile(schemaFile.toFile())));
+
+        ByteBuffer stale = ByteBuffer.wrap(snapshot.clone());
+        stale.putInt(4, CompilationSnapshot.FORMAT_VERSION - 1);
+        Files.write(snapshotPath, stale.array());
+        assertArrayEquals(template, renderTemplate(cache.compile(schemaFile.toFile())));
+        assertArrayEquals(snapshot, Files.readAllBytes(snapshotPath));
+
+        Files.write(snapshotPath, Arrays.copyOf(snapshot, snapshot.length / 2));
+        assertArrayEquals(template, renderTemplate(cache.compile(schemaFile.toFile())));
+        assertArrayEquals(snapshot, Files.readAllBytes(snapshotPath));
+    }
+
+    private Path snapshotPath() throws Exception {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            List<Path> snapshots = files.filter(file -> file.toString().endsWith(".xsdc")).toList();
+            assertEquals(1, snapshots.size(), snapshots.toString());
+            return snapshots.get(0);
+        }
+    }
+
+    private static byte[] snapshotOf(SchemaCompilation compilation) throws Exception {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(snapshot)) {
+            CompilationSnapshot.write(compilation, output);
+        }
+        return snapshot.toByteArray();
+    }
+
+    private static byte[] renderTemplate(SchemaCompilation compilation) throws Exception {
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        compilation.render(compilation.createMessage(), rendered);
+        return rendered.toByteArray();
+    }
+
+    private static byte[] renderPruned(SchemaCompilation compilation, String[] slotValues) throws Exception {
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        compilation.getPrunedRenderer().render(slotValues, new XMLOutput().open(rendered));
+        return rendered.toByteArray();
+    }
+}
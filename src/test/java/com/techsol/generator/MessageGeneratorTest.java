@@ -0,0 +1,85 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.generator;
+
+import com.techsol.output.PrunedRenderer;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.output.XMLOutput;
+import com.techsol.parser.SchemaCompilation;
+import com.techsol.validation.JaxpValidation;
+import com.techsol.validation.MessageValidator;
+import com.techsol.validation.Violation;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>Message generator tests</h1>
+ * <p>The pruned messages generated from a skeleton of the declared complex types are valid for javax.xml.validation and for the
+ * compiled validator, and the two validators agree on the same messages with one slot broken</p>
+ */
+class MessageGeneratorTest {
+    private static final List<String> BUNDLED_SCHEMAS = List.of("mt103_schema.xsd", "mt104_schema.xsd", "mt202_schema.xsd");
+
+    @Test
+    void generatesValidPrunedMessagesOfTheBundledSchemas() throws Exception {
+        for (String schemaName : BUNDLED_SCHEMAS) {
+            Path schemaFile = Path.of("schemas", schemaName);
+            SchemaCompilation compilation = new SchemaCompilation();
+            compilation.compile(schemaFile.toFile());
+            TemplateSkeleton skeleton = TemplateSkeleton.compile(compilation.getCompiledSchema(), TemplateSkeleton.UNLIMITED_DEPTH, true);
+            MessageValidator validator = MessageValidator.compile(skeleton);
+            PrunedRenderer renderer = PrunedRenderer.compile(skeleton);
+            JaxpValidation jaxp = JaxpValidation.of(schemaFile);
+
+            for (String[] slotValues : new MessageGenerator(skeleton, 11, 1, true, validator).generateChunk(1, 60)) {
+                assertNull(jaxp.validate(render(renderer, slotValues)), schemaName);
+            }
+        }
+    }
+
+    @Test
+    void agreesWithJaxpOnBrokenMessages() throws Exception {
+        SplittableRandom random = new SplittableRandom(5);
+        for (String schemaName : BUNDLED_SCHEMAS) {
+            Path schemaFile = Path.of("schemas", schemaName);
+            SchemaCompilation compilation = new SchemaCompilation();
+            compilation.compile(schemaFile.toFile());
+            TemplateSkeleton skeleton = TemplateSkeleton.compile(compilation.getCompiledSchema(), TemplateSkeleton.UNLIMITED_DEPTH, true);
+            MessageValidator validator = MessageValidator.compile(skeleton);
+            PrunedRenderer renderer = PrunedRenderer.compile(skeleton);
+            JaxpValidation jaxp = JaxpValidation.of(schemaFile);
+
+            int invalid = 0;
+            for (String[] slotValues : new MessageGenerator(skeleton, 13, 1, true).generateChunk(1, 60)) {
+                //Clear a written slot or give it a value no facet allows
+                int slot;
+                do {
+                    slot = random.nextInt(slotValues.length);
+                } while (slotValues[slot] == null);
+                slotValues[slot] = random.nextBoolean() ? null : "#";
+                String jaxpError = jaxp.validate(render(renderer, slotValues));
+                Violation violation = validator.validate(slotValues);
+                assertEquals(jaxpError == null, violation == null, schemaName + " " + skeleton.getSlotNames().get(slot) + ": JAXP " + jaxpError
+                        + ", compiled " + violation);
+                invalid += violation != null ? 1 : 0;
+            }
+            assertTrue(invalid > 0, schemaName + " has no broken message");
+        }
+    }
+
+    private static byte[] render(PrunedRenderer renderer, String[] slotValues) throws Exception {
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        renderer.render(slotValues, new XMLOutput().open(rendered));
+        return rendered.toByteArray();
+    }
+}
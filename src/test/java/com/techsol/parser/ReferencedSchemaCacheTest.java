@@ -0,0 +1,95 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>Referenced schema cache tests</h1>
+ * <p>A file of common types is read once however many schemas include it, and a schema including it compiles to the same template
+ * as the schema with the common declarations written inline</p>
+ */
+class ReferencedSchemaCacheTest {
+    private static final Path INCLUDES = Path.of("schemas", "includes");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsAReferencedFileOnceForEveryReferencingSchema() throws Exception {
+        Files.copy(INCLUDES.resolve("common.xsd"), directory.resolve("common.xsd"));
+        ReferencedSchemaCache cache = new ReferencedSchemaCache(ForkJoinPool.commonPool());
+        byte[] template = null;
+        for (int i = 0; i < 3; i++) {
+            Path schemaFile = Files.copy(INCLUDES.resolve("main.xsd"), directory.resolve("main" + i + ".xsd"));
+            SchemaCompilation compilation = new SchemaCompilation();
+            compilation.setReferencedSchemaCache(cache);
+            compilation.compile(schemaFile.toFile());
+            assertEquals(1, compilation.getReferencedSchemaCount());
+            byte[] rendered = renderTemplate(compilation);
+            if (template != null) {
+                assertArrayEquals(template, rendered);
+            }
+            template = rendered;
+        }
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void compilesLikeTheSchemaWithTheReferencedDeclarationsInline() throws Exception {
+        SchemaCompilation included = new SchemaCompilation();
+        included.setReferencedSchemaCache(new ReferencedSchemaCache(ForkJoinPool.commonPool()));
+        included.compile(INCLUDES.resolve("main.xsd").toFile());
+
+        String main = Files.readString(INCLUDES.resolve("main.xsd"));
+        String common = Files.readString(INCLUDES.resolve("common.xsd"));
+        String commonDeclarations = common.substring(common.indexOf('>', common.indexOf("<xs:schema")) + 1, common.indexOf("</xs:schema>"));
+        String inline = main.replaceFirst("\\s*<xs:include [^>]*/>", "").replace("</xs:schema>", commonDeclarations + "</xs:schema>");
+        SchemaCompilation inlined = new SchemaCompilation();
+        inlined.compile(new ByteArrayInputStream(inline.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(inlined.getTemplateSkeleton().getSlotNames(), included.getTemplateSkeleton().getSlotNames());
+        assertArrayEquals(renderTemplate(inlined), renderTemplate(included));
+    }
+
+    @Test
+    void takesTheDeclarationOfTheSchemaOverAReferencedOneOfTheSameName() throws Exception {
+        Files.copy(INCLUDES.resolve("common.xsd"), directory.resolve("common.xsd"));
+        Path schemaFile = directory.resolve("main.xsd");
+        Files.writeString(schemaFile, Files.readString(INCLUDES.resolve("main.xsd")).replace("</xs:schema>", """
+                    <xs:complexType name="Hdr">
+                        <xs:sequence>
+                            <xs:element name="Nm" type="Max35Text"/>
+                        </xs:sequence>
+                    </xs:complexType>
+                </xs:schema>"""));
+        SchemaCompilation compilation = new SchemaCompilation();
+        compilation.setReferencedSchemaCache(new ReferencedSchemaCache(ForkJoinPool.commonPool()));
+        compilation.compile(schemaFile.toFile());
+
+        assertTrue(compilation.getTemplateSkeleton().getSlotNames().contains("Hdr.Nm"), compilation.getTemplateSkeleton().getSlotNames().toString());
+        assertFalse(compilation.getTemplateSkeleton().getSlotNames().contains("Hdr.MsgId"));
+    }
+
+    private static byte[] renderTemplate(SchemaCompilation compilation) throws Exception {
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        compilation.render(compilation.createMessage(), rendered);
+        return rendered.toByteArray();
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.validation;
+
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * <h1>JAXP validation</h1>
+ * <p>Validates rendered documents with javax.xml.validation, the reference the compiled validator is compared with</p>
+ */
+public final class JaxpValidation {
+    private final Validator validator;
+    private final String namespace;
+
+    private JaxpValidation(Validator validator, String namespace) {
+        this.validator = validator;
+        this.namespace = namespace;
+    }
+
+    /**
+     * Parse the schema once
+     *
+     * @param schemaFile
+     * @return the validation
+     */
+    public static JaxpValidation of(Path schemaFile) throws IOException, SAXException, XMLStreamException {
+        Validator validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(schemaFile.toFile()).newValidator();
+        return new JaxpValidation(validator, targetNamespace(schemaFile));
+    }
+
+    private static String targetNamespace(Path schemaFile) throws IOException, XMLStreamException {
+        try (InputStream inputStream = Files.newInputStream(schemaFile)) {
+            XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(inputStream);
+            reader.nextTag();
+            String namespace = reader.getAttributeValue(null, "targetNamespace");
+            reader.close();
+            return namespace != null ? namespace : "";
+        }
+    }
+
+    /**
+     * Validate a document rendered from the schema
+     *
+     * @param document the UTF-8 bytes of the document, without a namespace as the renderers write it
+     * @return the first error, or null if the document is valid
+     */
+    public String validate(byte[] document) throws IOException {
+        //The renderers write no namespace, JAXP needs the target namespace of the schema to find the declarations
+        String namespaced = new String(document, StandardCharsets.UTF_8).replaceFirst("<Document>", "<Document xmlns=\"" + namespace + "\">");
+        try {
+            validator.validate(new StreamSource(new ByteArrayInputStream(namespaced.getBytes(StandardCharsets.UTF_8))));
+            return null;
+        } catch (SAXException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * @author Cyrus Wanyaga
+ */
+
+package com.techsol.validation;
+
+import com.techsol.generator.MessageGenerator;
+import com.techsol.mapping.CompiledMapping;
+import com.techsol.models.message.MessageInstance;
+import com.techsol.output.TemplateSkeleton;
+import com.techsol.output.XMLOutput;
+import com.techsol.parser.SchemaCompilation;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <h1>Message validator tests</h1>
+ * <p>The compiled validator must accept exactly the messages whose pruned rendering javax.xml.validation accepts, for slot arrays
+ * and message trees alike</p>
+ */
+class MessageValidatorTest {
+    private static final Path PAYMENT_SCHEMA = Path.of("src/test/resources/schemas/payment_schema.xsd");
+    private static final List<String> BUNDLED_SCHEMAS = List.of("mt103_schema.xsd", "mt104_schema.xsd", "mt202_schema.xsd");
+
+    private static SchemaCompilation compilation;
+    private static JaxpValidation jaxpValidation;
+
+    @BeforeAll
+    static void compilePaymentSchema() throws Exception {
+        compilation = new SchemaCompilation();
+        compilation.compile(PAYMENT_SCHEMA.toFile());
+        jaxpValidation = JaxpValidation.of(PAYMENT_SCHEMA);
+    }
+
+    @Test
+    void acceptsAnAmountWithItsCurrency() throws Exception {
+        assertValidity(true, Map.of("Pmt.Id", "P1", "Pmt.Amt", "1250.5", "Pmt.Amt@Ccy", "EUR"));
+    }
+
+    @Test
+    void rejectsAnAmountWithoutItsRequiredCurrency() throws Exception {
+        assertValidity(false, Map.of("Pmt.Id", "P1", "Pmt.Amt", "1250.5"));
+    }
+
+    @Test
+    void checksTheCurrencyAgainstItsPattern() throws Exception {
+        assertValidity(false, Map.of("Pmt.Id", "P1", "Pmt.Amt", "1250.5", "Pmt.Amt@Ccy", "eur"));
+    }
+
+    @Test
+    void checksTheAmountAgainstTheFacetsOfItsSimpleContent() throws Exception {
+        assertValidity(false, Map.of("Pmt.Id", "P1", "Pmt.Amt", "1.123456", "Pmt.Amt@Ccy", "EUR"));
+        assertValidity(false, Map.of("Pmt.Id", "P1", "Pmt.Amt", "-1", "Pmt.Amt@Ccy", "EUR"));
+        assertValidity(false, Map.of("Pmt.Id", "P1", "Pmt.Amt", "ten", "Pmt.Amt@Ccy", "EUR"));
+    }
+
+    @Test
+    void rejectsAnAmountWrittenForItsCurrencyAlone() throws Exception {
+        assertValidity(false, Map.of("Pmt.Id", "P1", "Pmt.Amt@Ccy", "EUR"));
+        assertValidity(false, Map.of("Pmt.Id", "P1", "Pmt.Amt", "1", "Pmt.Amt@Ccy", "EUR", "Pmt.Fee@Ccy", "EUR"));
+    }
+
+    @Test
+    void requiresTheMandatoryElements() throws Exception {
+        assertValidity(false, Map.of("Pmt.Amt", "1", "Pmt.Amt@Ccy", "EUR"));
+        assertValidity(false, Map.of("Pmt.Id", "P1"));
+    }
+
+    @Test
+    void writesOneAlternativeOfAChoice() throws Exception {
+        assertValidity(true, Map.of("Pmt.Id", "P1", "Pmt.Amt", "1", "Pmt.Amt@Ccy", "EUR", "Pmt.Acct.IBAN", "DE89370400440532013000"));
+        //The pruned rendering only writes the first alternative, so only the validator sees the second one
+        String[] slotValues = slotValues(Map.of("Pmt.Id", "P1", "Pmt.Amt", "1", "Pmt.Amt@Ccy", "EUR", "Pmt.Acct.IBAN", "DE89370400440532013000",
+                "Pmt.Acct.Othr", "12345"));
+        Violation violation = compilation.getMessageValidator().validate(slotValues);
+        assertTrue(violation != null && violation.reason().startsWith("has more than one alternative"), String.valueOf(violation));
+    }
+
+    @Test
+    void reportsContentTheSchemaLeavesOpenAsUnsupported() throws Exception {
+        Map<String, String> values = Map.of("Pmt.Id", "P1", "Pmt.Amt", "1", "Pmt.Amt@Ccy", "EUR", "Pmt.SplmtryData.PlcAndNm", "Here");
+        assertValidity(false, values);
+        Violation violation = compilation.getMessageValidator().validate(slotValues(values));
+        assertTrue(violation.reason().startsWith("is not supported"), violation.toString());
+    }
+
+    /**
+     * Generated messages of the bundled schemas, valid or not, get the same verdict from both validators
+     */
+    @Test
+    void agreesWithJaxpOnTheBundledSchemas() throws Exception {
+        for (String schemaName : BUNDLED_SCHEMAS) {
+            Path schemaFile = Path.of("schemas", schemaName);
+            SchemaCompilation bundled = new SchemaCompilation();
+            bundled.compile(schemaFile.toFile());
+            JaxpValidation jaxp = JaxpValidation.of(schemaFile);
+            MessageValidator validator = bundled.getMessageValidator();
+            MessageGenerator generator = new MessageGenerator(bundled.getTemplateSkeleton(), 7, 1, true);
+            for (String[] slotValues : generator.generateChunk(1, 20)) {
+                String jaxpError = jaxp.validate(renderPruned(bundled, slotValues));
+                Violation violation = validator.validate(slotValues);
+                assertEquals(jaxpError == null, violation == null, schemaName + ": JAXP " + jaxpError + ", compiled " + violation);
+            }
+        }
+    }
+
+    /**
+     * Validate the values as a slot array and as a message tree, and compare both verdicts with JAXP on the pruned rendering
+     *
+     * @param valid  the expected verdict
+     * @param values slot name -> value
+     */
+    private static void assertValidity(boolean valid, Map<String, String> values) throws Exception {
+        String[] slotValues = slotValues(values);
+        String jaxpError = jaxpValidation.validate(renderPruned(compilation, slotValues));
+        assertEquals(valid, jaxpError == null, "JAXP " + jaxpError);
+        Violation violation = compilation.getMessageValidator().validate(slotValues);
+        assertEquals(valid, violation == null, "Slot array " + violation + ", JAXP " + jaxpError);
+
+        ArrayList<String> mappings = new ArrayList<>();
+        ArrayList<String> fields = new ArrayList<>();
+        for (Map.Entry<String, String> value : new LinkedHashMap<>(values).entrySet()) {
+            mappings.add("T" + mappings.size() + ":" + value.getKey());
+            fields.add("T" + fields.size() + ":" + value.getValue());
+        }
+        MessageInstance message = compilation.createMessage();
+        CompiledMapping.compileStrict(compilation.getCompiledSchema(), mappings.toArray(new String[0])).populate(message, fields.toArray(new String[0]));
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        compilation.getPrunedRenderer().render(message, new XMLOutput().open(rendered));
+        jaxpError = jaxpValidation.validate(rendered.toByteArray());
+        assertEquals(valid, jaxpError == null, "JAXP of the message tree " + jaxpError);
+        violation = compilation.getMessageValidator().validate(message);
+        assertEquals(valid, violation == null, "Message tree " + violation + ", JAXP " + jaxpError);
+    }
+
+    private static String[] slotValues(Map<String, String> values) {
+        TemplateSkeleton skeleton = compilation.getTemplateSkeleton();
+        String[] slotValues = new String[skeleton.getSlotCount()];
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            int slot = skeleton.getSlot(value.getKey());
+            assertTrue(slot >= 0, value.getKey() + " has no slot");
+            slotValues[slot] = value.getValue();
+        }
+        return slotValues;
+    }
+
+    private static byte[] renderPruned(SchemaCompilation compilation, String[] slotValues) throws Exception {
+        ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+        compilation.getPrunedRenderer().render(slotValues, new XMLOutput().open(rendered));
+        return rendered.toByteArray();
+    }
+}